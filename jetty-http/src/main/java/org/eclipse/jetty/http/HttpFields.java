@@ -515,6 +515,8 @@ public interface HttpFields extends Iterable<HttpField>
     {
         private HttpField[] _fields;
         private int _size;
+        // Counts the modifications other than appending fields.
+        private int _modCount;
 
         /**
          * Initialize an empty HttpFields.
@@ -658,6 +660,7 @@ public interface HttpFields extends Iterable<HttpField>
                 for (HttpField f : fields)
                     _fields[_size++] = f;
             }
+            _modCount++;
             return this;
         }
 
@@ -735,6 +738,7 @@ public interface HttpFields extends Iterable<HttpField>
         public Mutable clear()
         {
             _size = 0;
+            _modCount++;
             return this;
         }
 
@@ -977,7 +981,9 @@ public interface HttpFields extends Iterable<HttpField>
                     }
                 }
             }
-            if (!put)
+            if (put)
+                _modCount++;
+            else
                 add(field);
             return this;
         }
@@ -1224,9 +1230,14 @@ public interface HttpFields extends Iterable<HttpField>
 
             HttpField newField = computeFn.apply(header, found);
             if (newField == null)
+            {
                 remove(first);
+            }
             else
+            {
                 _fields[first] = newField;
+                _modCount++;
+            }
         }
 
         /**
@@ -1276,6 +1287,7 @@ public interface HttpFields extends Iterable<HttpField>
 
         private void remove(int i)
         {
+            _modCount++;
             _size--;
             System.arraycopy(_fields, i + 1, _fields, i, _size - i);
             _fields[_size] = null;
@@ -1348,6 +1360,7 @@ public interface HttpFields extends Iterable<HttpField>
                 _fields = Arrays.copyOf(_fields, _fields.length + 1);
                 System.arraycopy(_fields, _cursor, _fields, _cursor + 1, _size++);
                 _fields[_cursor++] = field;
+                _modCount++;
                 _current = -1;
             }
 
@@ -1409,10 +1422,323 @@ public interface HttpFields extends Iterable<HttpField>
                 if (_current < 0)
                     throw new IllegalStateException();
                 if (field == null)
+                {
                     remove();
+                }
                 else
+                {
                     _fields[_current] = field;
+                    _modCount++;
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>A {@link Mutable} that indexes its fields by {@link HttpHeader} and by name,
+     * so that looking up a field does not require to scan all the fields.</p>
+     * <p>The fields are kept in insertion order, and the index is made of a chain of
+     * field positions for each {@link HttpHeader}, plus a hash table of chains of field
+     * positions for each case insensitive name, which is only built when a field is
+     * looked up by name.
+     * The index is built lazily by the first lookup after the fields have been modified,
+     * and extended incrementally when fields have only been added, which is the typical
+     * case of fields parsed and then looked up.</p>
+     * <p>This class is not synchronized as it is expected that modifications will only be performed by a
+     * single thread.</p>
+     */
+    class Indexed extends Mutable
+    {
+        private static final int HEADERS = HttpHeader.values().length;
+
+        // Positions are stored plus one, so that zero means no field.
+        private final int[] _first = new int[HEADERS];
+        private final int[] _last = new int[HEADERS];
+        private int[] _next = new int[0];
+        // Open addressing hash table of the first and last positions for each name.
+        private int[] _nameFirst = new int[0];
+        private int[] _nameLast = new int[0];
+        private int[] _nameNext = new int[0];
+        private int _nameCount;
+        private boolean _namesIndexed;
+        private int _indexedModCount = -1;
+        private int _indexedSize;
+
+        /**
+         * Initialize an empty indexed HttpFields.
+         */
+        public Indexed()
+        {
+            super();
+        }
+
+        /**
+         * Initialize an empty indexed HttpFields.
+         *
+         * @param capacity the capacity of the http fields
+         */
+        public Indexed(int capacity)
+        {
+            super(capacity);
+        }
+
+        /**
+         * Initialize indexed HttpFields from another.
+         *
+         * @param fields the fields to copy data from
+         */
+        public Indexed(HttpFields fields)
+        {
+            super(fields);
+        }
+
+        @Override
+        public boolean contains(HttpHeader header)
+        {
+            if (header == null)
+                return super.contains(header);
+            return headerHead(header) > 0;
+        }
+
+        @Override
+        public boolean contains(String name)
+        {
+            if (name == null)
+                return super.contains(name);
+            return nameHead(name) > 0;
+        }
+
+        @Override
+        public String get(HttpHeader header)
+        {
+            if (header == null)
+                return super.get(header);
+            int position = headerHead(header);
+            return position == 0 ? null : field(position).getValue();
+        }
+
+        @Override
+        public String get(String name)
+        {
+            if (name == null)
+                return super.get(name);
+            int position = nameHead(name);
+            return position == 0 ? null : field(position).getValue();
+        }
+
+        @Override
+        public HttpField getField(HttpHeader header)
+        {
+            if (header == null)
+                return super.getField(header);
+            int position = headerHead(header);
+            return position == 0 ? null : field(position);
+        }
+
+        @Override
+        public HttpField getField(String name)
+        {
+            if (name == null)
+                return super.getField(name);
+            int position = nameHead(name);
+            return position == 0 ? null : field(position);
+        }
+
+        @Override
+        public List<HttpField> getFields(HttpHeader header)
+        {
+            if (header == null)
+                return super.getFields(header);
+            List<HttpField> list = new ArrayList<>();
+            for (int position = headerHead(header); position > 0; position = _next[position - 1])
+            {
+                list.add(field(position));
+            }
+            return list;
+        }
+
+        @Override
+        public List<HttpField> getFields(String name)
+        {
+            if (name == null)
+                return super.getFields(name);
+            List<HttpField> list = new ArrayList<>();
+            for (int position = nameHead(name); position > 0; position = _nameNext[position - 1])
+            {
+                list.add(field(position));
+            }
+            return list;
+        }
+
+        @Override
+        public List<String> getValuesList(HttpHeader header)
+        {
+            if (header == null)
+                return super.getValuesList(header);
+            List<String> list = new ArrayList<>();
+            for (int position = headerHead(header); position > 0; position = _next[position - 1])
+            {
+                list.add(field(position).getValue());
+            }
+            return list;
+        }
+
+        @Override
+        public List<String> getValuesList(String name)
+        {
+            if (name == null)
+                return super.getValuesList(name);
+            List<String> list = new ArrayList<>();
+            for (int position = nameHead(name); position > 0; position = _nameNext[position - 1])
+            {
+                list.add(field(position).getValue());
+            }
+            return list;
+        }
+
+        private HttpField field(int position)
+        {
+            return ((Mutable)this)._fields[position - 1];
+        }
+
+        /**
+         * @param header the header to look up
+         * @return the position plus one of the first field with the given header, or 0 if there is no such field
+         */
+        private int headerHead(HttpHeader header)
+        {
+            index();
+            return _first[header.ordinal()];
+        }
+
+        /**
+         * @param name the case insensitive name to look up
+         * @return the position plus one of the first field with the given name, or 0 if there is no such field
+         */
+        private int nameHead(String name)
+        {
+            index();
+            if (!_namesIndexed)
+            {
+                _namesIndexed = true;
+                for (int i = 0; i < _indexedSize; i++)
+                {
+                    indexName(i);
+                }
+            }
+            if (_nameCount == 0)
+                return 0;
+
+            int hash = HttpField.nameHashCode(name);
+            int mask = _nameFirst.length - 1;
+            int slot = hash & mask;
+            while (true)
+            {
+                int position = _nameFirst[slot];
+                if (position == 0)
+                    return 0;
+                HttpField field = field(position);
+                if (field.nameHashCode() == hash && field.is(name))
+                    return position;
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        /**
+         * <p>Updates the index with the modifications of the fields.</p>
+         */
+        private void index()
+        {
+            Mutable mutable = this;
+            if (_indexedModCount != mutable._modCount)
+            {
+                Arrays.fill(_first, 0);
+                Arrays.fill(_last, 0);
+                if (_namesIndexed)
+                {
+                    Arrays.fill(_nameFirst, 0);
+                    _nameCount = 0;
+                    _namesIndexed = false;
+                }
+                _indexedSize = 0;
+                _indexedModCount = mutable._modCount;
+            }
+
+            int size = mutable._size;
+            if (_indexedSize < size)
+            {
+                if (_next.length < size)
+                {
+                    _next = Arrays.copyOf(_next, mutable._fields.length);
+                    _nameNext = Arrays.copyOf(_nameNext, mutable._fields.length);
+                }
+                for (int i = _indexedSize; i < size; i++)
+                {
+                    _next[i] = 0;
+                    HttpHeader header = mutable._fields[i].getHeader();
+                    if (header != null)
+                    {
+                        int ordinal = header.ordinal();
+                        if (_first[ordinal] == 0)
+                            _first[ordinal] = i + 1;
+                        else
+                            _next[_last[ordinal] - 1] = i + 1;
+                        _last[ordinal] = i + 1;
+                    }
+                    if (_namesIndexed)
+                        indexName(i);
+                }
+                _indexedSize = size;
+            }
+        }
+
+        private void indexName(int i)
+        {
+            if (2 * (_nameCount + 1) > _nameFirst.length)
+            {
+                // Rehash the chains into a larger table.
+                int[] first = _nameFirst;
+                int[] last = _nameLast;
+                _nameFirst = new int[Math.max(16, 2 * first.length)];
+                _nameLast = new int[_nameFirst.length];
+                int mask = _nameFirst.length - 1;
+                for (int s = 0; s < first.length; s++)
+                {
+                    if (first[s] == 0)
+                        continue;
+                    int slot = field(first[s]).nameHashCode() & mask;
+                    while (_nameFirst[slot] != 0)
+                    {
+                        slot = (slot + 1) & mask;
+                    }
+                    _nameFirst[slot] = first[s];
+                    _nameLast[slot] = last[s];
+                }
+            }
+
+            HttpField field = field(i + 1);
+            _nameNext[i] = 0;
+            int hash = field.nameHashCode();
+            int mask = _nameFirst.length - 1;
+            int slot = hash & mask;
+            while (true)
+            {
+                int position = _nameFirst[slot];
+                if (position == 0)
+                {
+                    _nameFirst[slot] = i + 1;
+                    _nameCount++;
+                    break;
+                }
+                HttpField head = field(position);
+                if (head.nameHashCode() == hash && head.is(field.getName()))
+                {
+                    _nameNext[_nameLast[slot] - 1] = i + 1;
+                    break;
+                }
+                slot = (slot + 1) & mask;
             }
+            _nameLast[slot] = i + 1;
         }
     }
 
@@ -599,6 +599,23 @@ public class HttpGenerator
             for (int f = 0; f < n; f++)
             {
                 HttpField field = fields.getField(f);
+
+                // Write a block of pre-encoded fields in a single copy if it is intact.
+                if (field instanceof PreEncodedHttpField)
+                {
+                    PreEncodedHttpField.Block block = ((PreEncodedHttpField)field).getBlock();
+                    if (block != null)
+                    {
+                        int count = block.putTo(fields, f, header);
+                        if (count > 0)
+                        {
+                            contentType |= block.hasContentType();
+                            f += count - 1;
+                            continue;
+                        }
+                    }
+                }
+
                 HttpHeader h = field.getHeader();
                 if (h == null)
                     putTo(field, header);
@@ -19,8 +19,9 @@
 package org.eclipse.jetty.http;
 
 import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
 
-import org.eclipse.jetty.util.ArrayTrie;
 import org.eclipse.jetty.util.StringUtil;
 import org.eclipse.jetty.util.Trie;
 
@@ -137,16 +138,17 @@ public enum HttpHeader
 
     UNKNOWN("::UNKNOWN::");
 
-    public static final Trie<HttpHeader> CACHE = new ArrayTrie<>(630);
+    public static final Trie<HttpHeader> CACHE;
 
     static
     {
+        Map<String, HttpHeader> headers = new HashMap<>();
         for (HttpHeader header : HttpHeader.values())
         {
             if (header != UNKNOWN)
-                if (!CACHE.put(header.toString(), header))
-                    throw new IllegalStateException();
+                headers.put(header.toString(), header);
         }
+        CACHE = Trie.immutable(true, headers);
     }
 
     private final String _string;
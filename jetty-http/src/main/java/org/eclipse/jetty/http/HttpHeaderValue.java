@@ -20,8 +20,9 @@ package org.eclipse.jetty.http;
 
 import java.nio.ByteBuffer;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
 
-import org.eclipse.jetty.util.ArrayTrie;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Trie;
 
@@ -43,15 +44,17 @@ public enum HttpHeaderValue
     UPGRADE("Upgrade"),
     UNKNOWN("::UNKNOWN::");
 
-    public static final Trie<HttpHeaderValue> CACHE = new ArrayTrie<HttpHeaderValue>();
+    public static final Trie<HttpHeaderValue> CACHE;
 
     static
     {
+        Map<String, HttpHeaderValue> values = new HashMap<>();
         for (HttpHeaderValue value : HttpHeaderValue.values())
         {
             if (value != UNKNOWN)
-                CACHE.put(value.toString(), value);
+                values.put(value.toString(), value);
         }
+        CACHE = Trie.immutable(true, values);
     }
 
     private final String _string;
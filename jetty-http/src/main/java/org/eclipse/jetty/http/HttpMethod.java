@@ -19,9 +19,9 @@
 package org.eclipse.jetty.http;
 
 import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
 
-import org.eclipse.jetty.util.ArrayTernaryTrie;
-import org.eclipse.jetty.util.ArrayTrie;
 import org.eclipse.jetty.util.StringUtil;
 import org.eclipse.jetty.util.Trie;
 
@@ -131,24 +131,18 @@ public enum HttpMethod
         return null;
     }
 
-    public static final Trie<HttpMethod> INSENSITIVE_CACHE = new ArrayTrie<>();
+    public static final Trie<HttpMethod> INSENSITIVE_CACHE;
+    public static final Trie<HttpMethod> CACHE;
 
     static
     {
+        Map<String, HttpMethod> methods = new HashMap<>();
         for (HttpMethod method : HttpMethod.values())
         {
-            INSENSITIVE_CACHE.put(method.toString(), method);
-        }
-    }
-
-    public static final Trie<HttpMethod> CACHE = new ArrayTernaryTrie<>(false);
-
-    static
-    {
-        for (HttpMethod method : HttpMethod.values())
-        {
-            CACHE.put(method.toString(), method);
+            methods.put(method.toString(), method);
         }
+        INSENSITIVE_CACHE = Trie.immutable(true, methods);
+        CACHE = Trie.immutable(false, methods);
     }
 
     private final ByteBuffer _buffer;
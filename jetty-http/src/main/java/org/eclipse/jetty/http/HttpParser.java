@@ -106,7 +106,7 @@ public class HttpParser
      * determine the header name even if the name:value combination is not cached
      * </ul>
      */
-    public static final Trie<HttpField> CACHE = new ArrayTrie<>(2048);
+    public static final Trie<HttpField> CACHE;
 
     // States
     public enum FieldState
@@ -181,6 +181,8 @@ public class HttpParser
     private boolean _cr;
     private ByteBuffer _contentChunk;
     private Trie<HttpField> _fieldCache;
+    private LearnedHttpFieldCache _learnedFieldCache;
+    private boolean _learnField;
     private int _length;
     private final StringBuilder _string = new StringBuilder();
     private int _headerCacheSize = 1024;
@@ -188,31 +190,32 @@ public class HttpParser
 
     static
     {
-        CACHE.put(new HttpField(HttpHeader.CONNECTION, HttpHeaderValue.CLOSE));
-        CACHE.put(new HttpField(HttpHeader.CONNECTION, HttpHeaderValue.KEEP_ALIVE));
-        CACHE.put(new HttpField(HttpHeader.CONNECTION, HttpHeaderValue.UPGRADE));
-        CACHE.put(new HttpField(HttpHeader.ACCEPT_ENCODING, "gzip"));
-        CACHE.put(new HttpField(HttpHeader.ACCEPT_ENCODING, "gzip, deflate"));
-        CACHE.put(new HttpField(HttpHeader.ACCEPT_ENCODING, "gzip, deflate, br"));
-        CACHE.put(new HttpField(HttpHeader.ACCEPT_ENCODING, "gzip,deflate,sdch"));
-        CACHE.put(new HttpField(HttpHeader.ACCEPT_LANGUAGE, "en-US,en;q=0.5"));
-        CACHE.put(new HttpField(HttpHeader.ACCEPT_LANGUAGE, "en-GB,en-US;q=0.8,en;q=0.6"));
-        CACHE.put(new HttpField(HttpHeader.ACCEPT_LANGUAGE, "en-AU,en;q=0.9,it-IT;q=0.8,it;q=0.7,en-GB;q=0.6,en-US;q=0.5"));
-        CACHE.put(new HttpField(HttpHeader.ACCEPT_CHARSET, "ISO-8859-1,utf-8;q=0.7,*;q=0.3"));
-        CACHE.put(new HttpField(HttpHeader.ACCEPT, "*/*"));
-        CACHE.put(new HttpField(HttpHeader.ACCEPT, "image/png,image/*;q=0.8,*/*;q=0.5"));
-        CACHE.put(new HttpField(HttpHeader.ACCEPT, "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8"));
-        CACHE.put(new HttpField(HttpHeader.ACCEPT, "text/html,application/xhtml+xml,application/xml;q=0.9,image/webp,image/apng,*/*;q=0.8"));
-        CACHE.put(new HttpField(HttpHeader.ACCEPT_RANGES, HttpHeaderValue.BYTES));
-        CACHE.put(new HttpField(HttpHeader.PRAGMA, "no-cache"));
-        CACHE.put(new HttpField(HttpHeader.CACHE_CONTROL, "private, no-cache, no-cache=Set-Cookie, proxy-revalidate"));
-        CACHE.put(new HttpField(HttpHeader.CACHE_CONTROL, "no-cache"));
-        CACHE.put(new HttpField(HttpHeader.CACHE_CONTROL, "max-age=0"));
-        CACHE.put(new HttpField(HttpHeader.CONTENT_LENGTH, "0"));
-        CACHE.put(new HttpField(HttpHeader.CONTENT_ENCODING, "gzip"));
-        CACHE.put(new HttpField(HttpHeader.CONTENT_ENCODING, "deflate"));
-        CACHE.put(new HttpField(HttpHeader.TRANSFER_ENCODING, "chunked"));
-        CACHE.put(new HttpField(HttpHeader.EXPIRES, "Fri, 01 Jan 1990 00:00:00 GMT"));
+        Trie<HttpField> cache = new ArrayTrie<>(2048);
+        cache.put(new HttpField(HttpHeader.CONNECTION, HttpHeaderValue.CLOSE));
+        cache.put(new HttpField(HttpHeader.CONNECTION, HttpHeaderValue.KEEP_ALIVE));
+        cache.put(new HttpField(HttpHeader.CONNECTION, HttpHeaderValue.UPGRADE));
+        cache.put(new HttpField(HttpHeader.ACCEPT_ENCODING, "gzip"));
+        cache.put(new HttpField(HttpHeader.ACCEPT_ENCODING, "gzip, deflate"));
+        cache.put(new HttpField(HttpHeader.ACCEPT_ENCODING, "gzip, deflate, br"));
+        cache.put(new HttpField(HttpHeader.ACCEPT_ENCODING, "gzip,deflate,sdch"));
+        cache.put(new HttpField(HttpHeader.ACCEPT_LANGUAGE, "en-US,en;q=0.5"));
+        cache.put(new HttpField(HttpHeader.ACCEPT_LANGUAGE, "en-GB,en-US;q=0.8,en;q=0.6"));
+        cache.put(new HttpField(HttpHeader.ACCEPT_LANGUAGE, "en-AU,en;q=0.9,it-IT;q=0.8,it;q=0.7,en-GB;q=0.6,en-US;q=0.5"));
+        cache.put(new HttpField(HttpHeader.ACCEPT_CHARSET, "ISO-8859-1,utf-8;q=0.7,*;q=0.3"));
+        cache.put(new HttpField(HttpHeader.ACCEPT, "*/*"));
+        cache.put(new HttpField(HttpHeader.ACCEPT, "image/png,image/*;q=0.8,*/*;q=0.5"));
+        cache.put(new HttpField(HttpHeader.ACCEPT, "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8"));
+        cache.put(new HttpField(HttpHeader.ACCEPT, "text/html,application/xhtml+xml,application/xml;q=0.9,image/webp,image/apng,*/*;q=0.8"));
+        cache.put(new HttpField(HttpHeader.ACCEPT_RANGES, HttpHeaderValue.BYTES));
+        cache.put(new HttpField(HttpHeader.PRAGMA, "no-cache"));
+        cache.put(new HttpField(HttpHeader.CACHE_CONTROL, "private, no-cache, no-cache=Set-Cookie, proxy-revalidate"));
+        cache.put(new HttpField(HttpHeader.CACHE_CONTROL, "no-cache"));
+        cache.put(new HttpField(HttpHeader.CACHE_CONTROL, "max-age=0"));
+        cache.put(new HttpField(HttpHeader.CONTENT_LENGTH, "0"));
+        cache.put(new HttpField(HttpHeader.CONTENT_ENCODING, "gzip"));
+        cache.put(new HttpField(HttpHeader.CONTENT_ENCODING, "deflate"));
+        cache.put(new HttpField(HttpHeader.TRANSFER_ENCODING, "chunked"));
+        cache.put(new HttpField(HttpHeader.EXPIRES, "Fri, 01 Jan 1990 00:00:00 GMT"));
 
         // Add common Content types as fields
         for (String type : new String[]{
@@ -220,23 +223,25 @@ public class HttpParser
         })
         {
             HttpField field = new PreEncodedHttpField(HttpHeader.CONTENT_TYPE, type);
-            CACHE.put(field);
+            cache.put(field);
 
             for (String charset : new String[]{"utf-8", "iso-8859-1"})
             {
-                CACHE.put(new PreEncodedHttpField(HttpHeader.CONTENT_TYPE, type + ";charset=" + charset));
-                CACHE.put(new PreEncodedHttpField(HttpHeader.CONTENT_TYPE, type + "; charset=" + charset));
-                CACHE.put(new PreEncodedHttpField(HttpHeader.CONTENT_TYPE, type + ";charset=" + charset.toUpperCase(Locale.ENGLISH)));
-                CACHE.put(new PreEncodedHttpField(HttpHeader.CONTENT_TYPE, type + "; charset=" + charset.toUpperCase(Locale.ENGLISH)));
+                cache.put(new PreEncodedHttpField(HttpHeader.CONTENT_TYPE, type + ";charset=" + charset));
+                cache.put(new PreEncodedHttpField(HttpHeader.CONTENT_TYPE, type + "; charset=" + charset));
+                cache.put(new PreEncodedHttpField(HttpHeader.CONTENT_TYPE, type + ";charset=" + charset.toUpperCase(Locale.ENGLISH)));
+                cache.put(new PreEncodedHttpField(HttpHeader.CONTENT_TYPE, type + "; charset=" + charset.toUpperCase(Locale.ENGLISH)));
             }
         }
 
         // Add headers with null values so HttpParser can avoid looking up name again for unknown values
         for (HttpHeader h : HttpHeader.values())
         {
-            if (!CACHE.put(new HttpField(h, (String)null)))
+            if (!cache.put(new HttpField(h, (String)null)))
                 throw new IllegalStateException("CACHE FULL");
         }
+
+        CACHE = Trie.immutable(cache);
     }
 
     private static HttpCompliance compliance()
@@ -1055,7 +1060,13 @@ public class HttpParser
                     _fieldCache.put(_field);
                 }
             }
-            _handler.parsedHeader(_field != null ? _field : new HttpField(_header, _headerString, _valueString));
+            HttpField field = _field != null ? _field : new HttpField(_header, _headerString, _valueString);
+            if (_learnField)
+            {
+                _learnField = false;
+                _learnedFieldCache.learn(field);
+            }
+            _handler.parsedHeader(field);
         }
 
         _headerString = _valueString = null;
@@ -1234,6 +1245,15 @@ public class HttpParser
                                 HttpField cachedField = _fieldCache == null ? null : _fieldCache.getBest(buffer, -1, buffer.remaining());
                                 if (cachedField == null)
                                     cachedField = CACHE.getBest(buffer, -1, buffer.remaining());
+                                // Try the learned cache if there is no cached value for the header.
+                                if ((cachedField == null || cachedField.getValue() == null) && _learnedFieldCache != null && _state == State.HEADER)
+                                {
+                                    HttpField learnedField = _learnedFieldCache.get(buffer, buffer.position() - 1);
+                                    if (learnedField == null)
+                                        _learnField = true;
+                                    else
+                                        cachedField = learnedField;
+                                }
 
                                 if (cachedField != null)
                                 {
@@ -1446,6 +1466,7 @@ public class HttpParser
                         case OTEXT: // TODO review? should this be a utf8 string?
                             _string.append(t.getChar());
                             _length = _string.length();
+                            parseFieldValueWords(buffer);
                             break;
 
                         default:
@@ -1461,6 +1482,72 @@ public class HttpParser
         return false;
     }
 
+    /**
+     * <p>Fast path of the {@link FieldState#IN_VALUE} state, that scans a field value 8 bytes
+     * at a time with SWAR (SIMD within a register) operations on long words, until a word that
+     * contains a control character (such as CR, LF or HTAB) or DEL is found.
+     * The bytes of that word are then parsed one at a time by {@link #parseFields(ByteBuffer)},
+     * so that the end of the value and any violation are handled as before.</p>
+     *
+     * @param buffer the buffer positioned within a field value
+     */
+    private void parseFieldValueWords(ByteBuffer buffer)
+    {
+        int position = buffer.position();
+        int limit = buffer.limit();
+        // Do not scan beyond the max header bytes, so that it is detected as before.
+        if (_maxHeaderBytes > 0)
+            limit = Math.min(limit, position + _maxHeaderBytes - _headerBytes);
+
+        int end = position;
+        while (limit - end >= 8 && isFieldValueWord(buffer.getLong(end)))
+        {
+            end += 8;
+        }
+        if (end == position)
+            return;
+
+        _headerBytes += end - position;
+        if (buffer.hasArray())
+        {
+            byte[] array = buffer.array();
+            int offset = buffer.arrayOffset();
+            for (int i = offset + position; i < offset + end; i++)
+            {
+                byte b = array[i];
+                _string.append((char)(0xff & b));
+                // Trailing white space is not part of the value.
+                if (b != HttpTokens.SPACE)
+                    _length = _string.length();
+            }
+        }
+        else
+        {
+            for (int i = position; i < end; i++)
+            {
+                byte b = buffer.get(i);
+                _string.append((char)(0xff & b));
+                if (b != HttpTokens.SPACE)
+                    _length = _string.length();
+            }
+        }
+        buffer.position(end);
+    }
+
+    /**
+     * @param word 8 bytes of a field value
+     * @return whether all the bytes are SPACE, VCHAR or obs-text
+     */
+    private static boolean isFieldValueWord(long word)
+    {
+        // Bytes lower than SPACE; obs-text bytes have the high bit set, so they are excluded by ~word.
+        long controls = (word - 0x2020202020202020L) & ~word & 0x8080808080808080L;
+        // Bytes equal to DEL.
+        long del = word ^ 0x7F7F7F7F7F7F7F7FL;
+        del = (del - 0x0101010101010101L) & ~del & 0x8080808080808080L;
+        return (controls | del) == 0;
+    }
+
     /**
      * Parse until next Event.
      *
@@ -1871,6 +1958,7 @@ public class HttpParser
         _responseStatus = 0;
         _contentChunk = null;
         _headerBytes = 0;
+        _learnField = false;
         _host = false;
         _headerComplete = false;
     }
@@ -1894,6 +1982,23 @@ public class HttpParser
         return _fieldCache;
     }
 
+    public LearnedHttpFieldCache getLearnedFieldCache()
+    {
+        return _learnedFieldCache;
+    }
+
+    /**
+     * <p>Sets a cache of fields, usually shared with other parsers, that is looked up
+     * when a header line is neither in the per-connection field cache nor in {@link #CACHE}
+     * and that learns the header lines most often repeated.</p>
+     *
+     * @param learnedFieldCache the learned field cache, or null for no learned field cache
+     */
+    public void setLearnedFieldCache(LearnedHttpFieldCache learnedFieldCache)
+    {
+        _learnedFieldCache = learnedFieldCache;
+    }
+
     @Override
     public String toString()
     {
@@ -19,8 +19,9 @@
 package org.eclipse.jetty.http;
 
 import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
 
-import org.eclipse.jetty.util.ArrayTrie;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Trie;
 
@@ -34,14 +35,16 @@ public enum HttpScheme
     WS("ws"),
     WSS("wss");
 
-    public static final Trie<HttpScheme> CACHE = new ArrayTrie<HttpScheme>();
+    public static final Trie<HttpScheme> CACHE;
 
     static
     {
+        Map<String, HttpScheme> schemes = new HashMap<>();
         for (HttpScheme version : HttpScheme.values())
         {
-            CACHE.put(version.asString(), version);
+            schemes.put(version.asString(), version);
         }
+        CACHE = Trie.immutable(true, schemes);
     }
 
     private final String _string;
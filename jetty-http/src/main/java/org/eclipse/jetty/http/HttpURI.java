@@ -48,6 +48,9 @@ import org.eclipse.jetty.util.UrlEncoded;
  * <p>Any parameters will be returned from {@link #getPath()}, but are excluded from the
  * return value of {@link #getDecodedPath()}.   If there are multiple parameters, the
  * {@link #getParam()} method returns only the last one.
+ * <p>A parsed path and query are retained as offsets into the parsed string and are only
+ * extracted when first accessed.  If the path contains no percent encoding, dot segments
+ * or parameters, then it is also the decoded path and is never decoded.
  */
 public interface HttpURI
 {
@@ -154,10 +157,16 @@ public interface HttpURI
         private final String _user;
         private final String _host;
         private final int _port;
-        private final String _path;
         private final String _param;
-        private final String _query;
         private final String _fragment;
+        private final String _source;
+        private final int _pathStart;
+        private final int _pathEnd;
+        private final int _queryStart;
+        private final int _queryEnd;
+        private final boolean _plainPath;
+        private String _path;
+        private String _query;
         private String _uri;
         private String _decodedPath;
 
@@ -171,6 +180,12 @@ public interface HttpURI
             _param = builder._param;
             _query = builder._query;
             _fragment = builder._fragment;
+            _source = builder._source;
+            _pathStart = builder._pathStart;
+            _pathEnd = builder._pathEnd;
+            _queryStart = builder._queryStart;
+            _queryEnd = builder._queryEnd;
+            _plainPath = builder._plainPath;
             _uri = builder._uri;
             _decodedPath = builder._decodedPath;
         }
@@ -185,6 +200,12 @@ public interface HttpURI
             _param = null;
             _query = null;
             _fragment = null;
+            _source = null;
+            _pathStart = -1;
+            _pathEnd = -1;
+            _queryStart = -1;
+            _queryEnd = -1;
+            _plainPath = false;
             _uri = uri;
             _decodedPath = null;
         }
@@ -216,11 +237,13 @@ public interface HttpURI
                 if (_port > 0)
                     out.append(':').append(_port);
 
-                if (_path != null)
-                    out.append(_path);
+                String path = getPath();
+                if (path != null)
+                    out.append(path);
 
-                if (_query != null)
-                    out.append('?').append(_query);
+                String query = getQuery();
+                if (query != null)
+                    out.append('?').append(query);
 
                 if (_fragment != null)
                     out.append('#').append(_fragment);
@@ -254,8 +277,12 @@ public interface HttpURI
         @Override
         public String getDecodedPath()
         {
-            if (_decodedPath == null && _path != null)
-                _decodedPath = URIUtil.canonicalPath(URIUtil.decodePath(_path));
+            if (_decodedPath == null)
+            {
+                String path = getPath();
+                if (path != null)
+                    _decodedPath = _plainPath ? path : URIUtil.canonicalPath(URIUtil.decodePath(path));
+            }
             return _decodedPath;
         }
 
@@ -283,15 +310,20 @@ public interface HttpURI
         @Override
         public String getPath()
         {
+            if (_path == null && _pathStart >= 0)
+                _path = _source.substring(_pathStart, _pathEnd);
             return _path;
         }
 
         @Override
         public String getPathQuery()
         {
-            if (_query == null)
-                return _path;
-            return _path + "?" + _query;
+            if (_pathStart >= 0 && _queryStart == _pathEnd + 1)
+                return _source.substring(_pathStart, _queryEnd);
+            String query = getQuery();
+            if (query == null)
+                return getPath();
+            return getPath() + "?" + query;
         }
 
         @Override
@@ -303,6 +335,8 @@ public interface HttpURI
         @Override
         public String getQuery()
         {
+            if (_query == null && _queryStart >= 0)
+                _query = _source.substring(_queryStart, _queryEnd);
             return _query;
         }
 
@@ -347,7 +381,8 @@ public interface HttpURI
         {
             try
             {
-                return new URI(_scheme, null, _host, _port, _path, _query == null ? null : UrlEncoded.decodeString(_query), _fragment);
+                String query = getQuery();
+                return new URI(_scheme, null, _host, _port, getPath(), query == null ? null : UrlEncoded.decodeString(query), _fragment);
             }
             catch (URISyntaxException x)
             {
@@ -383,6 +418,12 @@ public interface HttpURI
         private String _fragment;
         private String _uri;
         private String _decodedPath;
+        private String _source;
+        private int _pathStart = -1;
+        private int _pathEnd = -1;
+        private int _queryStart = -1;
+        private int _queryEnd = -1;
+        private boolean _plainPath;
 
         private Mutable()
         {
@@ -512,6 +553,10 @@ public interface HttpURI
             _fragment = null;
             _uri = null;
             _decodedPath = null;
+            _source = null;
+            _pathStart = -1;
+            _queryStart = -1;
+            _plainPath = false;
 
             return this;
         }
@@ -519,7 +564,7 @@ public interface HttpURI
         public Mutable decodedPath(String path)
         {
             _uri = null;
-            _path = URIUtil.encodePath(path);
+            setPath(URIUtil.encodePath(path));
             _decodedPath = path;
             return this;
         }
@@ -551,8 +596,12 @@ public interface HttpURI
         @Override
         public String getDecodedPath()
         {
-            if (_decodedPath == null && _path != null)
-                _decodedPath = URIUtil.canonicalPath(URIUtil.decodePath(_path));
+            if (_decodedPath == null)
+            {
+                String path = getPath();
+                if (path != null)
+                    _decodedPath = _plainPath ? path : URIUtil.canonicalPath(URIUtil.decodePath(path));
+            }
             return _decodedPath;
         }
 
@@ -577,15 +626,20 @@ public interface HttpURI
         @Override
         public String getPath()
         {
+            if (_path == null && _pathStart >= 0)
+                _path = _source.substring(_pathStart, _pathEnd);
             return _path;
         }
 
         @Override
         public String getPathQuery()
         {
-            if (_query == null)
-                return _path;
-            return _path + "?" + _query;
+            if (_pathStart >= 0 && _queryStart == _pathEnd + 1)
+                return _source.substring(_pathStart, _queryEnd);
+            String query = getQuery();
+            if (query == null)
+                return getPath();
+            return getPath() + "?" + query;
         }
 
         @Override
@@ -597,6 +651,8 @@ public interface HttpURI
         @Override
         public String getQuery()
         {
+            if (_query == null && _queryStart >= 0)
+                _query = _source.substring(_queryStart, _queryEnd);
             return _query;
         }
 
@@ -649,9 +705,12 @@ public interface HttpURI
         public Mutable param(String param)
         {
             _param = param;
-            if (_path != null && _param != null && !_path.contains(_param))
+            String path = getPath();
+            if (path != null && _param != null && !path.contains(_param))
             {
-                _path += ";" + _param;
+                // Retain the decoded path, which excludes the parameter.
+                getDecodedPath();
+                setPath(path + ";" + _param);
             }
             _uri = null;
             return this;
@@ -664,7 +723,7 @@ public interface HttpURI
         public Mutable path(String path)
         {
             _uri = null;
-            _path = path;
+            setPath(path);
             _decodedPath = null;
             return this;
         }
@@ -672,7 +731,7 @@ public interface HttpURI
         public Mutable pathQuery(String pathQuery)
         {
             _uri = null;
-            _path = null;
+            setPath(null);
             _decodedPath = null;
             _param = null;
             if (pathQuery != null)
@@ -689,7 +748,7 @@ public interface HttpURI
 
         public Mutable query(String query)
         {
-            _query = query;
+            setQuery(query);
             _uri = null;
             return this;
         }
@@ -716,7 +775,8 @@ public interface HttpURI
         {
             try
             {
-                return new URI(_scheme, null, _host, _port, _path, _query == null ? null : UrlEncoded.decodeString(_query), null);
+                String query = getQuery();
+                return new URI(_scheme, null, _host, _port, getPath(), query == null ? null : UrlEncoded.decodeString(query), null);
             }
             catch (URISyntaxException x)
             {
@@ -730,11 +790,28 @@ public interface HttpURI
             _user = uri.getUser();
             _host = uri.getHost();
             _port = uri.getPort();
-            _path = uri.getPath();
             _param = uri.getParam();
-            _query = uri.getQuery();
             _uri = null;
-            _decodedPath = uri.getDecodedPath();
+            if (uri instanceof Mutable)
+            {
+                // Copy the lazy path and query without extracting or decoding them.
+                Mutable mutable = (Mutable)uri;
+                _path = mutable._path;
+                _query = mutable._query;
+                _source = mutable._source;
+                _pathStart = mutable._pathStart;
+                _pathEnd = mutable._pathEnd;
+                _queryStart = mutable._queryStart;
+                _queryEnd = mutable._queryEnd;
+                _plainPath = mutable._plainPath;
+                _decodedPath = mutable._decodedPath;
+            }
+            else
+            {
+                setPath(uri.getPath());
+                setQuery(uri.getQuery());
+                _decodedPath = uri.getDecodedPath();
+            }
             return this;
         }
 
@@ -807,7 +884,7 @@ public interface HttpURI
                                 break;
                             case '?':
                                 // assume empty path (if seen at start)
-                                _path = "";
+                                setPath("");
                                 mark = i + 1;
                                 state = State.QUERY;
                                 break;
@@ -816,7 +893,7 @@ public interface HttpURI
                                 state = State.FRAGMENT;
                                 break;
                             case '*':
-                                _path = "*";
+                                setPath("*");
                                 state = State.ASTERISK;
                                 break;
 
@@ -865,7 +942,7 @@ public interface HttpURI
 
                             case '?':
                                 // must have been in a path
-                                _path = uri.substring(mark, i);
+                                lazyPath(uri, mark, i);
                                 mark = i + 1;
                                 state = State.QUERY;
                                 break;
@@ -878,7 +955,7 @@ public interface HttpURI
 
                             case '#':
                                 // must have been in a path
-                                _path = uri.substring(mark, i);
+                                lazyPath(uri, mark, i);
                                 state = State.FRAGMENT;
                                 break;
 
@@ -1012,12 +1089,12 @@ public interface HttpURI
                                 state = State.PARAM;
                                 break;
                             case '?':
-                                _path = uri.substring(pathMark, i);
+                                lazyPath(uri, pathMark, i);
                                 mark = i + 1;
                                 state = State.QUERY;
                                 break;
                             case '#':
-                                _path = uri.substring(pathMark, i);
+                                lazyPath(uri, pathMark, i);
                                 mark = i + 1;
                                 state = State.FRAGMENT;
                                 break;
@@ -1039,13 +1116,13 @@ public interface HttpURI
                         switch (c)
                         {
                             case '?':
-                                _path = uri.substring(pathMark, i);
+                                lazyPath(uri, pathMark, i);
                                 _param = uri.substring(mark, i);
                                 mark = i + 1;
                                 state = State.QUERY;
                                 break;
                             case '#':
-                                _path = uri.substring(pathMark, i);
+                                lazyPath(uri, pathMark, i);
                                 _param = uri.substring(mark, i);
                                 mark = i + 1;
                                 state = State.FRAGMENT;
@@ -1069,7 +1146,7 @@ public interface HttpURI
                     {
                         if (c == '#')
                         {
-                            _query = uri.substring(mark, i);
+                            lazyQuery(uri, mark, i);
                             mark = i + 1;
                             state = State.FRAGMENT;
                         }
@@ -1100,11 +1177,11 @@ public interface HttpURI
                     break;
 
                 case SCHEME_OR_PATH:
-                    _path = uri.substring(mark, end);
+                    lazyPath(uri, mark, end);
                     break;
 
                 case HOST_OR_PATH:
-                    _path = uri.substring(mark, end);
+                    lazyPath(uri, mark, end);
                     break;
 
                 case HOST:
@@ -1120,16 +1197,16 @@ public interface HttpURI
                     break;
 
                 case PARAM:
-                    _path = uri.substring(pathMark, end);
+                    lazyPath(uri, pathMark, end);
                     _param = uri.substring(mark, end);
                     break;
 
                 case PATH:
-                    _path = uri.substring(pathMark, end);
+                    lazyPath(uri, pathMark, end);
                     break;
 
                 case QUERY:
-                    _query = uri.substring(mark, end);
+                    lazyQuery(uri, mark, end);
                     break;
 
                 case FRAGMENT:
@@ -1143,10 +1220,46 @@ public interface HttpURI
             if (!encoded)
             {
                 if (_param == null)
-                    _decodedPath = _path;
+                    _plainPath = true;
                 else
-                    _decodedPath = _path.substring(0, _path.length() - _param.length() - 1);
+                {
+                    String path = getPath();
+                    _decodedPath = path.substring(0, path.length() - _param.length() - 1);
+                }
             }
         }
+
+        private void setPath(String path)
+        {
+            _path = path;
+            _pathStart = -1;
+            _plainPath = false;
+        }
+
+        private void setQuery(String query)
+        {
+            _query = query;
+            _queryStart = -1;
+        }
+
+        private void lazyPath(String source, int start, int end)
+        {
+            if (_queryStart >= 0 && _source != source)
+                setQuery(getQuery());
+            _source = source;
+            _path = null;
+            _pathStart = start;
+            _pathEnd = end;
+        }
+
+        private void lazyQuery(String source, int start, int end)
+        {
+            if (_pathStart >= 0 && _source != source)
+                setPath(getPath());
+            _source = source;
+            _query = null;
+            _queryStart = start;
+            _queryEnd = end;
+        }
     }
 }
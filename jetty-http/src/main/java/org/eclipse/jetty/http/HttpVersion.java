@@ -19,8 +19,9 @@
 package org.eclipse.jetty.http;
 
 import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
 
-import org.eclipse.jetty.util.ArrayTrie;
 import org.eclipse.jetty.util.StringUtil;
 import org.eclipse.jetty.util.Trie;
 
@@ -31,14 +32,16 @@ public enum HttpVersion
     HTTP_1_1("HTTP/1.1", 11),
     HTTP_2("HTTP/2.0", 20);
 
-    public static final Trie<HttpVersion> CACHE = new ArrayTrie<HttpVersion>();
+    public static final Trie<HttpVersion> CACHE;
 
     static
     {
+        Map<String, HttpVersion> versions = new HashMap<>();
         for (HttpVersion version : HttpVersion.values())
         {
-            CACHE.put(version.toString(), version);
+            versions.put(version.toString(), version);
         }
+        CACHE = Trie.immutable(true, versions);
     }
 
     /**
@@ -0,0 +1,339 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+
+package org.eclipse.jetty.http;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+
+/**
+ * <p>A bounded cache of {@link HttpField}s that may be shared by many {@link HttpParser}s
+ * and that learns the header lines that are most often repeated.</p>
+ * <p>Unlike the per-connection field cache, this cache survives the connection and is
+ * keyed by the raw bytes of a {@code name: value} header line, so that a hit returns a
+ * previously parsed field without any allocation.
+ * Header lines that miss are counted in a small frequency table, and a field is only
+ * admitted once its line has been seen {@link #getAdmissionThreshold() threshold} times,
+ * so that unique values such as request ids do not churn the cache.
+ * The counters are periodically halved so that the cache follows changes in traffic.</p>
+ * <p>Fields that carry credentials ({@code Authorization}, {@code Proxy-Authorization}
+ * and {@code Cookie}) are never admitted.</p>
+ *
+ * @see HttpParser#setLearnedFieldCache(LearnedHttpFieldCache)
+ */
+@ManagedObject("Learned HTTP field cache")
+public class LearnedHttpFieldCache
+{
+    private final AtomicReferenceArray<Entry> _entries;
+    private final int _mask;
+    private final byte[] _counters;
+    private final int _countersMask;
+    private final int _threshold;
+    private final int _maxFieldLength;
+    private final int _sampleSize;
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    private final LongAdder _admissions = new LongAdder();
+    // Updated without synchronization, as ageing only needs to happen approximately every sample.
+    private int _samples;
+
+    public LearnedHttpFieldCache()
+    {
+        this(1024);
+    }
+
+    public LearnedHttpFieldCache(int capacity)
+    {
+        this(capacity, 4, 512);
+    }
+
+    /**
+     * @param capacity the maximum number of fields, rounded up to a power of 2
+     * @param threshold the number of times a header line must be seen before its field is admitted
+     * @param maxFieldLength the maximum length of the header lines that are cached
+     */
+    public LearnedHttpFieldCache(int capacity, int threshold, int maxFieldLength)
+    {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        if (threshold <= 0 || threshold > Byte.MAX_VALUE)
+            throw new IllegalArgumentException("Invalid threshold " + threshold);
+        int size = 1;
+        while (size < capacity)
+        {
+            size <<= 1;
+        }
+        _entries = new AtomicReferenceArray<>(size);
+        _mask = size - 1;
+        _counters = new byte[size * 4];
+        _countersMask = _counters.length - 1;
+        _threshold = threshold;
+        _maxFieldLength = maxFieldLength;
+        _sampleSize = size * 16;
+    }
+
+    @ManagedAttribute("The maximum number of cached fields")
+    public int getCapacity()
+    {
+        return _entries.length();
+    }
+
+    @ManagedAttribute("The number of times a header line is seen before it is cached")
+    public int getAdmissionThreshold()
+    {
+        return _threshold;
+    }
+
+    @ManagedAttribute("The maximum length of a cached header line")
+    public int getMaxFieldLength()
+    {
+        return _maxFieldLength;
+    }
+
+    @ManagedAttribute("The number of cached fields")
+    public int getSize()
+    {
+        int size = 0;
+        for (int i = 0; i < _entries.length(); i++)
+        {
+            if (_entries.get(i) != null)
+                size++;
+        }
+        return size;
+    }
+
+    @ManagedAttribute("The number of lookups that returned a cached field")
+    public long getHits()
+    {
+        return _hits.sum();
+    }
+
+    @ManagedAttribute("The number of lookups that did not return a cached field")
+    public long getMisses()
+    {
+        return _misses.sum();
+    }
+
+    @ManagedAttribute("The ratio of lookups that returned a cached field")
+    public double getHitRatio()
+    {
+        long hits = getHits();
+        long lookups = hits + getMisses();
+        return lookups == 0 ? 0.0D : (double)hits / lookups;
+    }
+
+    @ManagedAttribute("The number of fields admitted to the cache")
+    public long getAdmissions()
+    {
+        return _admissions.sum();
+    }
+
+    @ManagedOperation(value = "resets the statistics", impact = "ACTION")
+    public void reset()
+    {
+        _hits.reset();
+        _misses.reset();
+        _admissions.reset();
+    }
+
+    @ManagedOperation(value = "clears the cache", impact = "ACTION")
+    public void clear()
+    {
+        for (int i = 0; i < _entries.length(); i++)
+        {
+            _entries.set(i, null);
+        }
+    }
+
+    /**
+     * <p>Looks up the header line starting at the given index of the buffer.</p>
+     * <p>The header line must be terminated by a {@code CR} or {@code LF} within the
+     * buffer limit, otherwise {@code null} is returned and no statistics are recorded.</p>
+     *
+     * @param buffer the buffer containing the header line
+     * @param index the absolute index of the first byte of the header line
+     * @return the cached field, or null if the header line is not cached
+     */
+    public HttpField get(ByteBuffer buffer, int index)
+    {
+        int limit = Math.min(buffer.limit(), index + _maxFieldLength);
+        int hash = 0;
+        int end = -1;
+        if (buffer.hasArray())
+        {
+            byte[] array = buffer.array();
+            int offset = buffer.arrayOffset();
+            for (int i = index; i < limit; i++)
+            {
+                byte b = array[offset + i];
+                if (b == HttpTokens.CARRIAGE_RETURN || b == HttpTokens.LINE_FEED)
+                {
+                    end = i;
+                    break;
+                }
+                hash = 31 * hash + (b & 0xFF);
+            }
+        }
+        else
+        {
+            for (int i = index; i < limit; i++)
+            {
+                byte b = buffer.get(i);
+                if (b == HttpTokens.CARRIAGE_RETURN || b == HttpTokens.LINE_FEED)
+                {
+                    end = i;
+                    break;
+                }
+                hash = 31 * hash + (b & 0xFF);
+            }
+        }
+        if (end < 0)
+            return null;
+
+        hash = spread(hash);
+        Entry entry = _entries.get(hash & _mask);
+        if (entry != null && entry.matches(buffer, index, end - index))
+        {
+            _hits.increment();
+            return entry._field;
+        }
+
+        _misses.increment();
+        int counter = hash & _countersMask;
+        if (_counters[counter] < _threshold)
+            _counters[counter]++;
+        if (++_samples >= _sampleSize)
+            age();
+        return null;
+    }
+
+    /**
+     * <p>Offers a field that was parsed after a {@link #get(ByteBuffer, int) lookup} missed.</p>
+     * <p>The field is admitted if its {@code name: value} header line has been seen often
+     * enough and at least as often as the field it replaces.</p>
+     *
+     * @param field the parsed field
+     * @return whether the field was admitted to the cache
+     */
+    public boolean learn(HttpField field)
+    {
+        HttpHeader header = field.getHeader();
+        if (header == HttpHeader.AUTHORIZATION || header == HttpHeader.PROXY_AUTHORIZATION || header == HttpHeader.COOKIE)
+            return false;
+        String name = field.getName();
+        String value = field.getValue();
+        if (name == null || value == null || name.length() + value.length() + 2 >= _maxFieldLength)
+            return false;
+
+        int hash = hash(name, 0);
+        hash = 31 * (31 * hash + ':') + ' ';
+        hash = spread(hash(value, hash));
+
+        int count = _counters[hash & _countersMask];
+        if (count < _threshold)
+            return false;
+        int slot = hash & _mask;
+        Entry entry = _entries.get(slot);
+        if (entry != null && _counters[entry._hash & _countersMask] > count)
+            return false;
+
+        _entries.set(slot, new Entry(hash, field.toString().getBytes(StandardCharsets.ISO_8859_1), field));
+        _admissions.increment();
+        return true;
+    }
+
+    private void age()
+    {
+        _samples = 0;
+        for (int i = 0; i < _counters.length; i++)
+        {
+            _counters[i] >>= 1;
+        }
+    }
+
+    private static int hash(String string, int hash)
+    {
+        for (int i = 0; i < string.length(); i++)
+        {
+            hash = 31 * hash + (string.charAt(i) & 0xFF);
+        }
+        return hash;
+    }
+
+    private static int spread(int hash)
+    {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{size=%d/%d,hits=%d,misses=%d}",
+            getClass().getSimpleName(),
+            hashCode(),
+            getSize(),
+            getCapacity(),
+            getHits(),
+            getMisses());
+    }
+
+    private static class Entry
+    {
+        private final int _hash;
+        private final byte[] _key;
+        private final HttpField _field;
+
+        private Entry(int hash, byte[] key, HttpField field)
+        {
+            _hash = hash;
+            _key = key;
+            _field = field;
+        }
+
+        private boolean matches(ByteBuffer buffer, int index, int length)
+        {
+            if (_key.length != length)
+                return false;
+            if (buffer.hasArray())
+            {
+                byte[] array = buffer.array();
+                int offset = buffer.arrayOffset() + index;
+                for (int i = 0; i < length; i++)
+                {
+                    if (_key[i] != array[offset + i])
+                        return false;
+                }
+                return true;
+            }
+            for (int i = 0; i < length; i++)
+            {
+                if (_key[i] != buffer.get(index + i))
+                    return false;
+            }
+            return true;
+        }
+    }
+}
@@ -20,6 +20,8 @@ package org.eclipse.jetty.http;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.ServiceLoader;
 
@@ -93,14 +95,21 @@ public class PreEncodedHttpField extends HttpField
     }
 
     private final byte[][] _encodedField = new byte[__encoders.length][];
+    private final Block _block;
 
     public PreEncodedHttpField(HttpHeader header, String name, String value)
+    {
+        this(header, name, value, null);
+    }
+
+    private PreEncodedHttpField(HttpHeader header, String name, String value, Block block)
     {
         super(header, name, value);
         for (int i = 0; i < __encoders.length; i++)
         {
             _encodedField[i] = __encoders[i].getEncodedField(header, name, value);
         }
+        _block = block;
     }
 
     public PreEncodedHttpField(HttpHeader header, String value)
@@ -117,4 +126,138 @@ public class PreEncodedHttpField extends HttpField
     {
         bufferInFillMode.put(_encodedField[index(version)]);
     }
+
+    /**
+     * @return the block this field is the first field of, or null
+     */
+    Block getBlock()
+    {
+        return _block;
+    }
+
+    /**
+     * <p>A block of fields that are usually sent together, such as the headers of
+     * a cached static resource, which is also pre-encoded as a whole for HTTP/1.</p>
+     * <p>The fields of a block are {@link #putTo(HttpFields.Mutable) put} individually
+     * into the {@link HttpFields}, so they remain visible and may be removed or replaced
+     * like any other field.  If the {@link HttpGenerator} finds all the fields of the
+     * block still in sequence, it writes the whole pre-encoded block rather than
+     * each field.  Other versions of HTTP encode the fields individually.</p>
+     * <p>Fields that the generator handles specially, such as {@code Content-Length}
+     * or {@code Connection}, may not be part of a block.</p>
+     */
+    public static class Block
+    {
+        private final HttpField[] _fields;
+        private final byte[] _encoded;
+        private final boolean _contentType;
+
+        public Block(HttpField... fields)
+        {
+            if (fields.length == 0)
+                throw new IllegalArgumentException("No fields");
+
+            _fields = new HttpField[fields.length];
+            boolean contentType = false;
+            int length = 0;
+            for (int i = 0; i < fields.length; i++)
+            {
+                HttpField field = fields[i];
+                HttpHeader header = field.getHeader();
+                if (header != null)
+                {
+                    switch (header)
+                    {
+                        case CONTENT_LENGTH:
+                        case TRANSFER_ENCODING:
+                        case CONNECTION:
+                        case SERVER:
+                            throw new IllegalArgumentException("Field not allowed in block: " + field);
+                        case CONTENT_TYPE:
+                            contentType = true;
+                            break;
+                        default:
+                            break;
+                    }
+                }
+
+                // The first field is unique to this block, so the generator can find the block from it.
+                if (i == 0)
+                    field = new PreEncodedHttpField(header, field.getName(), field.getValue(), this);
+                else if (!(field instanceof PreEncodedHttpField))
+                    field = new PreEncodedHttpField(header, field.getName(), field.getValue());
+                _fields[i] = field;
+                length += ((PreEncodedHttpField)field)._encodedField[0].length;
+            }
+            _contentType = contentType;
+
+            _encoded = new byte[length];
+            int offset = 0;
+            for (HttpField field : _fields)
+            {
+                byte[] encoded = ((PreEncodedHttpField)field)._encodedField[0];
+                System.arraycopy(encoded, 0, _encoded, offset, encoded.length);
+                offset += encoded.length;
+            }
+        }
+
+        public List<HttpField> getFields()
+        {
+            return Collections.unmodifiableList(Arrays.asList(_fields));
+        }
+
+        /**
+         * <p>Puts the fields of this block in sequence at the end of the given fields,
+         * replacing any existing fields with the same names.</p>
+         *
+         * @param fields the fields to put this block into
+         */
+        public void putTo(HttpFields.Mutable fields)
+        {
+            for (HttpField field : _fields)
+            {
+                if (field.getHeader() == null)
+                    fields.remove(field.getName());
+                else
+                    fields.remove(field.getHeader());
+            }
+            for (HttpField field : _fields)
+            {
+                fields.add(field);
+            }
+        }
+
+        boolean hasContentType()
+        {
+            return _contentType;
+        }
+
+        /**
+         * <p>Writes the pre-encoded block if all its fields are in sequence from the given index.</p>
+         *
+         * @param fields the fields being generated
+         * @param index the index of the first field of this block
+         * @param bufferInFillMode the buffer to write the block to
+         * @return the number of fields written, or 0 if the block was not written
+         */
+        int putTo(HttpFields fields, int index, ByteBuffer bufferInFillMode)
+        {
+            int length = _fields.length;
+            if (fields.size() - index < length)
+                return 0;
+            for (int i = 1; i < length; i++)
+            {
+                if (fields.getField(index + i) != _fields[i])
+                    return 0;
+            }
+            bufferInFillMode.put(_encoded);
+            return length;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x%s", getClass().getSimpleName(), hashCode(), Arrays.toString(_fields));
+        }
+    }
 }
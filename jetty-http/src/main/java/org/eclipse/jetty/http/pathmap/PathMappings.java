@@ -20,19 +20,24 @@ package org.eclipse.jetty.http.pathmap;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.function.Predicate;
+import java.util.regex.Pattern;
 
-import org.eclipse.jetty.util.ArrayTernaryTrie;
 import org.eclipse.jetty.util.Trie;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
 import org.eclipse.jetty.util.component.Dumpable;
+import org.eclipse.jetty.util.thread.AutoLock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,6 +45,13 @@ import org.slf4j.LoggerFactory;
  * Path Mappings of PathSpec to Resource.
  * <p>
  * Sorted into search order upon entry into the Set
+ * <p>
+ * For {@link #getMatch(String)}, the mappings are compiled into a {@link Matcher}
+ * that is rebuilt after the mappings are changed.  The mappings are changed and the
+ * matcher is built under a lock, so a matcher is never built from mappings that
+ * have changed since.  The matcher looks up servlet
+ * path specs in tries and only evaluates the regex and uri-template path specs
+ * that could match the path.
  *
  * @param <E> the type of mapping endpoint
  */
@@ -48,10 +60,8 @@ public class PathMappings<E> implements Iterable<MappedResource<E>>, Dumpable
 {
     private static final Logger LOG = LoggerFactory.getLogger(PathMappings.class);
     private final Set<MappedResource<E>> _mappings = new TreeSet<>(Comparator.comparing(MappedResource::getPathSpec));
-
-    private Trie<MappedResource<E>> _exactMap = new ArrayTernaryTrie<>(false);
-    private Trie<MappedResource<E>> _prefixMap = new ArrayTernaryTrie<>(false);
-    private Trie<MappedResource<E>> _suffixMap = new ArrayTernaryTrie<>(false);
+    private final AutoLock _lock = new AutoLock();
+    private volatile Matcher<E> _matcher;
 
     @Override
     public String dump()
@@ -78,14 +88,20 @@ public class PathMappings<E> implements Iterable<MappedResource<E>>, Dumpable
 
     public void reset()
     {
-        _mappings.clear();
-        _prefixMap.clear();
-        _suffixMap.clear();
+        try (AutoLock l = _lock.lock())
+        {
+            _mappings.clear();
+            _matcher = null;
+        }
     }
 
     public void removeIf(Predicate<MappedResource<E>> predicate)
     {
-        _mappings.removeIf(predicate);
+        try (AutoLock l = _lock.lock())
+        {
+            _mappings.removeIf(predicate);
+            _matcher = null;
+        }
     }
 
     /**
@@ -122,73 +138,17 @@ public class PathMappings<E> implements Iterable<MappedResource<E>>, Dumpable
 
     public MappedResource<E> getMatch(String path)
     {
-        PathSpecGroup lastGroup = null;
-
-        // Search all the mappings
-        for (MappedResource<E> mr : _mappings)
+        Matcher<E> matcher = _matcher;
+        if (matcher == null)
         {
-            PathSpecGroup group = mr.getPathSpec().getGroup();
-            if (group != lastGroup)
+            try (AutoLock l = _lock.lock())
             {
-                // New group in list, so let's look for an optimization
-                switch (group)
-                {
-                    case EXACT:
-                    {
-                        int i = path.length();
-                        final Trie<MappedResource<E>> exact_map = _exactMap;
-                        while (i >= 0)
-                        {
-                            MappedResource<E> candidate = exact_map.getBest(path, 0, i);
-                            if (candidate == null)
-                                break;
-                            if (candidate.getPathSpec().matches(path))
-                                return candidate;
-                            i = candidate.getPathSpec().getPrefix().length() - 1;
-                        }
-                        break;
-                    }
-
-                    case PREFIX_GLOB:
-                    {
-                        int i = path.length();
-                        final Trie<MappedResource<E>> prefix_map = _prefixMap;
-                        while (i >= 0)
-                        {
-                            MappedResource<E> candidate = prefix_map.getBest(path, 0, i);
-                            if (candidate == null)
-                                break;
-                            if (candidate.getPathSpec().matches(path))
-                                return candidate;
-                            i = candidate.getPathSpec().getPrefix().length() - 1;
-                        }
-                        break;
-                    }
-
-                    case SUFFIX_GLOB:
-                    {
-                        int i = 0;
-                        final Trie<MappedResource<E>> suffix_map = _suffixMap;
-                        while ((i = path.indexOf('.', i + 1)) > 0)
-                        {
-                            MappedResource<E> candidate = suffix_map.get(path, i + 1, path.length() - i - 1);
-                            if (candidate != null && candidate.getPathSpec().matches(path))
-                                return candidate;
-                        }
-                        break;
-                    }
-
-                    default:
-                }
+                matcher = _matcher;
+                if (matcher == null)
+                    _matcher = matcher = new Matcher<>(_mappings);
             }
-
-            if (mr.getPathSpec().matches(path))
-                return mr;
-
-            lastGroup = group;
         }
-
-        return null;
+        return matcher.match(path);
     }
 
     @Override
@@ -226,80 +186,449 @@ public class PathMappings<E> implements Iterable<MappedResource<E>>, Dumpable
     public boolean put(PathSpec pathSpec, E resource)
     {
         MappedResource<E> entry = new MappedResource<>(pathSpec, resource);
-        switch (pathSpec.getGroup())
+        boolean added;
+        try (AutoLock l = _lock.lock())
         {
-            case EXACT:
-                String exact = pathSpec.getPrefix();
-                while (exact != null && !_exactMap.put(exact, entry))
-                {
-                    _exactMap = new ArrayTernaryTrie<>((ArrayTernaryTrie<MappedResource<E>>)_exactMap, 1.5);
-                }
-                break;
-            case PREFIX_GLOB:
-                String prefix = pathSpec.getPrefix();
-                while (prefix != null && !_prefixMap.put(prefix, entry))
-                {
-                    _prefixMap = new ArrayTernaryTrie<>((ArrayTernaryTrie<MappedResource<E>>)_prefixMap, 1.5);
-                }
-                break;
-            case SUFFIX_GLOB:
-                String suffix = pathSpec.getSuffix();
-                while (suffix != null && !_suffixMap.put(suffix, entry))
-                {
-                    _suffixMap = new ArrayTernaryTrie<>((ArrayTernaryTrie<MappedResource<E>>)_prefixMap, 1.5);
-                }
-                break;
-            default:
+            added = _mappings.add(entry);
+            if (added)
+                _matcher = null;
         }
-
-        boolean added = _mappings.add(entry);
         if (LOG.isDebugEnabled())
             LOG.debug("{} {} to {}", added ? "Added" : "Ignored", entry, this);
         return added;
     }
 
-    @SuppressWarnings("incomplete-switch")
     public boolean remove(PathSpec pathSpec)
     {
-        String prefix = pathSpec.getPrefix();
-        String suffix = pathSpec.getSuffix();
+        boolean removed = false;
+        try (AutoLock l = _lock.lock())
+        {
+            Iterator<MappedResource<E>> iter = _mappings.iterator();
+            while (iter.hasNext())
+            {
+                if (iter.next().getPathSpec().equals(pathSpec))
+                {
+                    removed = true;
+                    iter.remove();
+                    _matcher = null;
+                    break;
+                }
+            }
+        }
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} {} to {}", removed ? "Removed" : "Ignored", pathSpec, this);
+        return removed;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s[size=%d]", this.getClass().getSimpleName(), _mappings.size());
+    }
+
+    /**
+     * @param pathSpec the path spec
+     * @return the key of the path spec in the exact, prefix or suffix trie of its group, or null
+     */
+    private static String getKey(PathSpec pathSpec)
+    {
         switch (pathSpec.getGroup())
         {
             case EXACT:
-                if (prefix != null)
-                    _exactMap.remove(prefix);
-                break;
             case PREFIX_GLOB:
-                if (prefix != null)
-                    _prefixMap.remove(prefix);
-                break;
+                return pathSpec.getPrefix();
             case SUFFIX_GLOB:
-                if (suffix != null)
-                    _suffixMap.remove(suffix);
-                break;
+                return pathSpec.getSuffix();
             default:
+                return null;
+        }
+    }
+
+    /**
+     * Get the literal prefix that all paths matched by a regex or uri-template path spec start with.
+     *
+     * @param pathSpec the path spec
+     * @return the literal prefix, which is empty if it cannot be determined
+     */
+    static String getLiteralPrefix(PathSpec pathSpec)
+    {
+        // Subclasses may match differently to their pattern.
+        Pattern pattern;
+        if (pathSpec.getClass() == RegexPathSpec.class)
+            pattern = ((RegexPathSpec)pathSpec).getPattern();
+        else if (pathSpec.getClass() == UriTemplatePathSpec.class)
+            pattern = ((UriTemplatePathSpec)pathSpec).getPattern();
+        else
+            return "";
+
+        String regex = pattern.pattern();
+        if (pattern.flags() != 0 || regex.indexOf('|') >= 0)
+            return "";
+
+        // The pattern must match the whole path, so the leading '^' is optional.
+        StringBuilder literal = new StringBuilder();
+        int i = regex.startsWith("^") ? 1 : 0;
+        while (i < regex.length())
+        {
+            char c = regex.charAt(i);
+            int next = i + 1;
+            if (c == '\\')
+            {
+                if (next == regex.length() || Character.isLetterOrDigit(regex.charAt(next)))
+                    break;
+                c = regex.charAt(next++);
+            }
+            else if (".[](){}*+?^$".indexOf(c) >= 0)
+            {
                 break;
+            }
+
+            // A character followed by a quantifier may be absent.
+            if (next < regex.length() && "?*{".indexOf(regex.charAt(next)) >= 0)
+                break;
+
+            literal.append(c);
+            i = next;
         }
+        return literal.toString();
+    }
 
-        Iterator<MappedResource<E>> iter = _mappings.iterator();
-        boolean removed = false;
-        while (iter.hasNext())
+    /**
+     * The mappings compiled for {@link #getMatch(String)}.
+     * <p>
+     * The mappings of each {@link PathSpecGroup} are searched in order.  Within a group,
+     * the servlet path specs are looked up in a trie as they have always been, with the
+     * longest exact, prefix or suffix match taking precedence.  The uri-template path specs
+     * are indexed in a decision tree of their segments and the remaining path specs in a trie
+     * of their literal prefix, so only those that could match a path are evaluated, while
+     * preserving their relative order.
+     * </p>
+     * <p>
+     * A Matcher is immutable and may be used concurrently.
+     * </p>
+     *
+     * @param <E> the type of mapping endpoint
+     */
+    private static class Matcher<E>
+    {
+        private final List<Group<E>> _groups = new ArrayList<>();
+
+        private Matcher(Set<MappedResource<E>> mappings)
+        {
+            // The servlet path specs of each group, by their prefix or suffix.
+            Map<PathSpecGroup, Map<String, MappedResource<E>>> servlets = new EnumMap<>(PathSpecGroup.class);
+            for (MappedResource<E> mapping : mappings)
+            {
+                String key = getKey(mapping.getPathSpec());
+                if (key != null)
+                    servlets.computeIfAbsent(mapping.getPathSpec().getGroup(), g -> new HashMap<>()).putIfAbsent(key, mapping);
+            }
+
+            // The mappings are searched in runs of the same group. The sort order does not
+            // guarantee that a group is a single run, but the servlet path specs of a group
+            // are all looked up when its first run is searched.
+            List<MappedResource<E>> run = new ArrayList<>();
+            for (MappedResource<E> mapping : mappings)
+            {
+                if (!run.isEmpty() && run.get(0).getPathSpec().getGroup() != mapping.getPathSpec().getGroup())
+                {
+                    _groups.add(newGroup(run, servlets));
+                    run.clear();
+                }
+                run.add(mapping);
+            }
+            if (!run.isEmpty())
+                _groups.add(newGroup(run, servlets));
+        }
+
+        private Group<E> newGroup(List<MappedResource<E>> run, Map<PathSpecGroup, Map<String, MappedResource<E>>> servlets)
+        {
+            Map<String, MappedResource<E>> keys = servlets.remove(run.get(0).getPathSpec().getGroup());
+            return new Group<>(run, keys == null ? null : Trie.immutable(false, keys));
+        }
+
+        private MappedResource<E> match(String path)
         {
-            if (iter.next().getPathSpec().equals(pathSpec))
+            for (Group<E> group : _groups)
             {
-                removed = true;
-                iter.remove();
+                MappedResource<E> match = group.match(path);
+                if (match != null)
+                    return match;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The compiled mappings of a single {@link PathSpecGroup}.
+     *
+     * @param <E> the type of mapping endpoint
+     */
+    private static class Group<E>
+    {
+        private final PathSpecGroup _group;
+        private final Trie<MappedResource<E>> _servlets;
+        private final List<MappedResource<E>> _others = new ArrayList<>();
+        private final Trie<Candidates> _prefixes;
+        private final Segment _templates;
+
+        private Group(List<MappedResource<E>> mappings, Trie<MappedResource<E>> servlets)
+        {
+            _group = mappings.get(0).getPathSpec().getGroup();
+            _servlets = servlets;
+
+            for (MappedResource<E> mapping : mappings)
+            {
+                // The trie lookup finds every servlet path spec that can match, so
+                // they need not be evaluated again.
+                PathSpec pathSpec = mapping.getPathSpec();
+                if (!(pathSpec instanceof ServletPathSpec) || getKey(pathSpec) == null)
+                    _others.add(mapping);
+            }
+
+            // Index uri-templates by their segments and everything else by literal prefix.
+            Segment templates = null;
+            Map<String, List<Integer>> prefixes = new HashMap<>();
+            for (int i = 0; i < _others.size(); i++)
+            {
+                PathSpec pathSpec = _others.get(i).getPathSpec();
+                String[] segments = getTemplateSegments(pathSpec);
+                if (segments != null)
+                {
+                    if (templates == null)
+                        templates = new Segment();
+                    templates.add(segments, 0, i);
+                }
+                else
+                {
+                    prefixes.computeIfAbsent(getLiteralPrefix(pathSpec), k -> new ArrayList<>()).add(i);
+                }
+            }
+            if (templates != null)
+                templates.compile();
+            _templates = templates;
+
+            // A single prefix does not exclude enough to be worth a lookup.
+            if (prefixes.size() > 1 || templates != null && !prefixes.isEmpty())
+            {
+                Map<String, Candidates> candidates = new HashMap<>();
+                prefixes.forEach((prefix, indexes) -> candidates.put(prefix, new Candidates(prefix, indexes)));
+                _prefixes = Trie.immutable(false, candidates);
+            }
+            else
+            {
+                _prefixes = null;
+            }
+        }
+
+        private MappedResource<E> match(String path)
+        {
+            if (_servlets != null)
+            {
+                switch (_group)
+                {
+                    case EXACT:
+                    case PREFIX_GLOB:
+                    {
+                        int i = path.length();
+                        while (i >= 0)
+                        {
+                            MappedResource<E> candidate = _servlets.getBest(path, 0, i);
+                            if (candidate == null)
+                                break;
+                            if (candidate.getPathSpec().matches(path))
+                                return candidate;
+                            i = candidate.getPathSpec().getPrefix().length() - 1;
+                        }
+                        break;
+                    }
+
+                    case SUFFIX_GLOB:
+                    {
+                        int i = 0;
+                        while ((i = path.indexOf('.', i + 1)) > 0)
+                        {
+                            MappedResource<E> candidate = _servlets.get(path, i + 1, path.length() - i - 1);
+                            if (candidate != null && candidate.getPathSpec().matches(path))
+                                return candidate;
+                        }
+                        break;
+                    }
+
+                    default:
+                        break;
+                }
+            }
+
+            if (_prefixes == null && _templates == null)
+            {
+                for (MappedResource<E> mapping : _others)
+                {
+                    if (mapping.getPathSpec().matches(path))
+                        return mapping;
+                }
+                return null;
+            }
+
+            // Find the first mapping in order that matches, from the candidates
+            // of each literal prefix of the path and of the path segments.
+            int best = _others.size();
+            if (_prefixes != null)
+            {
+                int i = path.length();
+                while (i >= 0)
+                {
+                    Candidates candidates = _prefixes.getBest(path, 0, i);
+                    if (candidates == null)
+                        break;
+                    best = first(_others, path, candidates._indexes, best);
+                    i = candidates._length - 1;
+                }
+            }
+
+            if (_templates != null && path.startsWith("/"))
+            {
+                int query = path.indexOf('?');
+                best = _templates.first(_others, path, 1, query < 0 ? path.length() : query, best);
+            }
+
+            return best < _others.size() ? _others.get(best) : null;
+        }
+    }
+
+    /**
+     * @param mappings the mappings of a group
+     * @param path the path to match
+     * @param indexes the indexes, in increasing order, of the candidate mappings
+     * @param best the index of the first mapping known to match, or the number of mappings
+     * @return the index of the first mapping that matches
+     */
+    private static int first(List<? extends MappedResource<?>> mappings, String path, int[] indexes, int best)
+    {
+        for (int index : indexes)
+        {
+            if (index >= best)
                 break;
+            if (mappings.get(index).getPathSpec().matches(path))
+                return index;
+        }
+        return best;
+    }
+
+    /**
+     * @param pathSpec the path spec
+     * @return the segments of a uri-template path spec, with null for a variable segment,
+     * or null if the path spec is not a uri-template with literal segments
+     */
+    private static String[] getTemplateSegments(PathSpec pathSpec)
+    {
+        if (pathSpec.getClass() != UriTemplatePathSpec.class)
+            return null;
+
+        String declaration = pathSpec.getDeclaration();
+        if ("/".equals(declaration))
+            return new String[]{""};
+
+        String[] segments = declaration.substring(1).split("/");
+        if (declaration.endsWith("/"))
+        {
+            segments = Arrays.copyOf(segments, segments.length + 1);
+            segments[segments.length - 1] = "";
+        }
+        for (int i = 0; i < segments.length; i++)
+        {
+            String segment = segments[i];
+            if (segment.startsWith("{") && segment.endsWith("}"))
+                segments[i] = null;
+            else if (segment.chars().anyMatch(c -> "()*+?^$|{}".indexOf(c) >= 0))
+                return null; // Not escaped in the pattern, so may not match literally.
+        }
+        return segments;
+    }
+
+    /**
+     * A node of a decision tree of uri-template segments.
+     */
+    private static class Segment
+    {
+        private final Map<String, Segment> _children = new HashMap<>();
+        private Trie<Segment> _literals;
+        private Segment _variable;
+        private int[] _indexes = new int[0];
+
+        private void add(String[] segments, int depth, int index)
+        {
+            if (depth == segments.length)
+            {
+                _indexes = Arrays.copyOf(_indexes, _indexes.length + 1);
+                _indexes[_indexes.length - 1] = index;
+                return;
+            }
+
+            String segment = segments[depth];
+            Segment next;
+            if (segment == null)
+            {
+                if (_variable == null)
+                    _variable = new Segment();
+                next = _variable;
+            }
+            else
+            {
+                next = _children.computeIfAbsent(segment, k -> new Segment());
             }
+            next.add(segments, depth + 1, index);
+        }
+
+        private void compile()
+        {
+            _literals = Trie.immutable(false, _children);
+            _children.values().forEach(Segment::compile);
+            if (_variable != null)
+                _variable.compile();
+        }
+
+        /**
+         * @param mappings the mappings of the group
+         * @param path the path to match
+         * @param start the start of the segment to match in the path
+         * @param end the end of the path, excluding any query
+         * @param best the index of the first mapping known to match, or the number of mappings
+         * @return the index of the first mapping that matches
+         */
+        private int first(List<? extends MappedResource<?>> mappings, String path, int start, int end, int best)
+        {
+            int slash = path.indexOf('/', start);
+            int next = slash < 0 || slash > end ? end : slash;
+
+            Segment literal = _literals.get(path, start, next - start);
+            if (literal != null)
+                best = literal.next(mappings, path, next, end, best);
+            if (_variable != null && next > start)
+                best = _variable.next(mappings, path, next, end, best);
+            return best;
+        }
+
+        private int next(List<? extends MappedResource<?>> mappings, String path, int next, int end, int best)
+        {
+            if (next == end)
+                return PathMappings.first(mappings, path, _indexes, best);
+            return first(mappings, path, next + 1, end, best);
         }
-        if (LOG.isDebugEnabled())
-            LOG.debug("{} {} to {}", removed ? "Removed" : "Ignored", pathSpec, this);
-        return removed;
     }
 
-    @Override
-    public String toString()
+    /**
+     * The indexes, in increasing order, of the mappings that share a literal prefix.
+     */
+    private static class Candidates
     {
-        return String.format("%s[size=%d]", this.getClass().getSimpleName(), _mappings.size());
+        private final int _length;
+        private final int[] _indexes;
+
+        private Candidates(String prefix, List<Integer> indexes)
+        {
+            _length = prefix.length();
+            _indexes = indexes.stream().mapToInt(Integer::intValue).toArray();
+        }
     }
 }
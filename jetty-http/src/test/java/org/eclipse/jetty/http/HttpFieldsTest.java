@@ -30,6 +30,7 @@ import java.util.ListIterator;
 import java.util.Locale;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import org.eclipse.jetty.util.BufferUtil;
@@ -1058,4 +1059,67 @@ public class HttpFieldsTest
         fields.ensureField(new HttpField("Test", "three, four"));
         assertThat(fields.stream().map(HttpField::toString).collect(Collectors.toList()), contains("Test: one, two, three, four"));
     }
+
+    @Test
+    public void testIndexed()
+    {
+        HttpFields.Mutable expected = HttpFields.build();
+        HttpFields.Indexed indexed = new HttpFields.Indexed();
+
+        apply(expected, indexed, f -> f.add(HttpHeader.HOST, "localhost"));
+        apply(expected, indexed, f -> f.add("Accept", "text/html"));
+        apply(expected, indexed, f -> f.add("X-Custom", "one"));
+        apply(expected, indexed, f -> f.add("x-custom", "two"));
+        apply(expected, indexed, f -> f.add(HttpHeader.ACCEPT, "text/plain"));
+        apply(expected, indexed, f -> f.add("Cookie", "a=b"));
+        apply(expected, indexed, f -> f.put("X-Other", "value"));
+        apply(expected, indexed, f -> f.put(HttpHeader.ACCEPT, "*/*"));
+        apply(expected, indexed, f -> f.add("X-Custom", "three"));
+        apply(expected, indexed, f -> f.remove("x-custom"));
+        apply(expected, indexed, f -> f.add("X-Custom", "four"));
+        apply(expected, indexed, f -> f.computeField(HttpHeader.COOKIE, (h, l) -> new HttpField(h, "c=d")));
+        apply(expected, indexed, f -> f.computeField("X-Other", (h, l) -> null));
+        apply(expected, indexed, f ->
+        {
+            ListIterator<HttpField> i = f.listIterator();
+            i.next();
+            i.set(new HttpField(HttpHeader.HOST, "example.com"));
+        });
+        apply(expected, indexed, f ->
+        {
+            Iterator<HttpField> i = f.iterator();
+            i.next();
+            i.remove();
+        });
+        // Irregular fields cannot be indexed.
+        apply(expected, indexed, f -> f.add(new HttpField(null, "Host", "irregular")));
+        apply(expected, indexed, f -> f.add(new HttpField(HttpHeader.VIA, "X-Via", "irregular")));
+        apply(expected, indexed, f -> f.clear());
+        apply(expected, indexed, f -> f.add("X-Custom", "five"));
+        apply(expected, indexed, f -> f.add(HttpHeader.HOST, "localhost"));
+    }
+
+    private void apply(HttpFields.Mutable expected, HttpFields.Indexed indexed, Consumer<HttpFields.Mutable> modification)
+    {
+        modification.accept(expected);
+        modification.accept(indexed);
+
+        assertThat(indexed.stream().collect(Collectors.toList()), is(expected.stream().collect(Collectors.toList())));
+        for (HttpHeader header : List.of(HttpHeader.HOST, HttpHeader.ACCEPT, HttpHeader.COOKIE, HttpHeader.VIA, HttpHeader.CONTENT_TYPE))
+        {
+            assertThat(header.asString(), indexed.contains(header), is(expected.contains(header)));
+            assertThat(header.asString(), indexed.get(header), is(expected.get(header)));
+            assertThat(header.asString(), indexed.getField(header), is(expected.getField(header)));
+            assertThat(header.asString(), indexed.getFields(header), is(expected.getFields(header)));
+            assertThat(header.asString(), indexed.getValuesList(header), is(expected.getValuesList(header)));
+        }
+        for (String name : List.of("host", "ACCEPT", "Cookie", "X-Custom", "x-other", "X-Via", "X-Missing"))
+        {
+            assertThat(name, indexed.contains(name), is(expected.contains(name)));
+            assertThat(name, indexed.get(name), is(expected.get(name)));
+            assertThat(name, indexed.getField(name), is(expected.getField(name)));
+            assertThat(name, indexed.getFields(name), is(expected.getFields(name)));
+            assertThat(name, indexed.getValuesList(name), is(expected.getValuesList(name)));
+        }
+    }
 }
\ No newline at end of file
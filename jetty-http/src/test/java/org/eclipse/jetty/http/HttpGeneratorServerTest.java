@@ -26,6 +26,7 @@ import org.junit.jupiter.api.Test;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.startsWith;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -71,6 +72,51 @@ public class HttpGeneratorServerTest
         assertThat(response, containsString("0123456789"));
     }
 
+    @Test
+    public void testPreEncodedBlock() throws Exception
+    {
+        HttpField lastModified = new PreEncodedHttpField(HttpHeader.LAST_MODIFIED, DateGenerator.__01Jan1970);
+        HttpField contentType = new PreEncodedHttpField(HttpHeader.CONTENT_TYPE, "text/css");
+        HttpField etag = new HttpField(HttpHeader.ETAG, "W/\"1234\"");
+        PreEncodedHttpField.Block block = new PreEncodedHttpField.Block(lastModified, contentType, etag);
+
+        HttpFields.Mutable individual = HttpFields.build();
+        individual.add("Date", "Thu, 01 Jan 1970 00:00:00 GMT");
+        individual.add(lastModified).add(contentType).add(etag);
+        individual.add(HttpHeader.ACCEPT_RANGES, "bytes");
+
+        HttpFields.Mutable fields = HttpFields.build();
+        fields.add("Date", "Thu, 01 Jan 1970 00:00:00 GMT");
+        fields.add(HttpHeader.CONTENT_TYPE, "text/plain");
+        block.putTo(fields);
+        fields.add(HttpHeader.ACCEPT_RANGES, "bytes");
+        assertThat(fields.get(HttpHeader.CONTENT_TYPE), is("text/css"));
+        assertThat(fields.get(HttpHeader.ETAG), is("W/\"1234\""));
+
+        String expected = generateHeader(individual);
+        assertThat(expected, containsString("Content-Type: text/css\r\n"));
+        assertThat(generateHeader(fields), is(expected));
+
+        // A modified block is generated field by field.
+        fields.put(HttpHeader.ETAG, "W/\"5678\"");
+        String modified = generateHeader(fields);
+        assertThat(modified, containsString("Content-Type: text/css\r\nETag: W/\"5678\"\r\n"));
+        assertThat(modified, not(containsString("1234")));
+
+        assertThrows(IllegalArgumentException.class, () -> new PreEncodedHttpField.Block(new HttpField(HttpHeader.CONTENT_LENGTH, "10")));
+    }
+
+    private static String generateHeader(HttpFields fields) throws Exception
+    {
+        ByteBuffer header = BufferUtil.allocate(8096);
+        ByteBuffer content = BufferUtil.toBuffer("0123456789");
+        HttpGenerator gen = new HttpGenerator();
+        MetaData.Response info = new MetaData.Response(HttpVersion.HTTP_1_1, 200, null, fields, 10);
+        HttpGenerator.Result result = gen.generateResponse(info, false, header, null, content, true);
+        assertEquals(HttpGenerator.Result.FLUSH, result);
+        return BufferUtil.toString(header);
+    }
+
     @Test
     public void testSimple() throws Exception
     {
@@ -39,11 +39,14 @@ import static org.eclipse.jetty.http.HttpCompliance.Violation.TRANSFER_ENCODING_
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.nullValue;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -776,6 +779,88 @@ public class HttpParserTest
         }
     }
 
+    @Test
+    public void testLongHeaderValues()
+    {
+        String cookie = "a=" + "x".repeat(100) + "; b=\u00e9\u00e8; c=" + "y".repeat(37);
+        String jwt = "Bearer " + "abcdefghijklmnopqrstuvwxyz0123456789-_.".repeat(5);
+        String tabbed = "value with\ttab and spaces in the middle of a long value";
+        byte[] request = (
+            "GET / HTTP/1.1\r\n" +
+                "Host: localhost\r\n" +
+                "Cookie: " + cookie + "\r\n" +
+                "Authorization: " + jwt + "    \r\n" +
+                "X-Tabbed: " + tabbed + "\r\n" +
+                "X-Folded-Line: first line of a long header value\n" +
+                "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+
+        for (boolean direct : new boolean[]{false, true})
+        {
+            for (int split = 0; split < request.length; split += 7)
+            {
+                HttpParser.RequestHandler handler = new Handler();
+                HttpParser parser = new HttpParser(handler);
+                ByteBuffer buffer = direct ? BufferUtil.allocateDirect(request.length) : BufferUtil.allocate(request.length);
+                BufferUtil.append(buffer, request, 0, split);
+                parser.parseNext(buffer);
+                BufferUtil.append(buffer, request, split, request.length - split);
+                while (!parser.isState(State.END) && buffer.hasRemaining())
+                {
+                    parser.parseNext(buffer);
+                }
+
+                String description = "direct=" + direct + " split=" + split;
+                assertThat(description, _bad, nullValue());
+                assertTrue(_messageCompleted, description);
+                assertEquals(4, _headers, description);
+                assertEquals("Cookie", _hdr[1], description);
+                assertEquals(cookie, _val[1], description);
+                assertEquals("Authorization", _hdr[2], description);
+                assertEquals(jwt, _val[2], description);
+                assertEquals(tabbed, _val[3], description);
+                assertEquals("first line of a long header value", _val[4], description);
+            }
+        }
+    }
+
+    @Test
+    public void testLongHeaderValueWithControlCharacters()
+    {
+        for (char c : new char[]{'\u0000', '\u0007', '\u001f', '\u007f'})
+        {
+            ByteBuffer buffer = BufferUtil.toBuffer(
+                "GET / HTTP/1.1\r\n" +
+                    "Host: localhost\r\n" +
+                    "Header: a long value with a control character" + c + "in the middle of the value\r\n" +
+                    "\r\n");
+
+            HttpParser.RequestHandler handler = new Handler();
+            HttpParser parser = new HttpParser(handler);
+            parseAll(parser, buffer);
+            assertThat(Integer.toHexString(c), _bad, containsString("Illegal character"));
+        }
+    }
+
+    @Test
+    public void testLongHeaderValueMaxHeaderBytes()
+    {
+        String request = "GET / HTTP/1.1\r\n" +
+            "Host: localhost\r\n" +
+            "Header: " + "v".repeat(200) + "\r\n" +
+            "\r\n";
+
+        HttpParser.RequestHandler handler = new Handler();
+        HttpParser parser = new HttpParser(handler, 256);
+        parseAll(parser, BufferUtil.toBuffer(request));
+        assertThat(_bad, nullValue());
+        assertEquals("v".repeat(200), _val[1]);
+
+        handler = new Handler();
+        parser = new HttpParser(handler, 128);
+        parseAll(parser, BufferUtil.toBuffer(request));
+        assertThat(_bad, containsString("431"));
+    }
+
     @Test
     public void testHeaderTab()
     {
@@ -2108,6 +2193,48 @@ public class HttpParserTest
         assertSame(field, _fields.get(0));
     }
 
+    @Test
+    public void testLearnedFieldCache()
+    {
+        String request = "GET / HTTP/1.1\r\n" +
+            "Host: www.example.com\r\n" +
+            "User-Agent: Learner/1.0\r\n" +
+            "Authorization: Basic c2VjcmV0\r\n" +
+            "X-Spaced:  value\r\n" +
+            "\r\n";
+        LearnedHttpFieldCache cache = new LearnedHttpFieldCache(64, 2, 128);
+
+        List<List<HttpField>> parsed = new ArrayList<>();
+        for (int i = 0; i < 4; i++)
+        {
+            HttpParser.RequestHandler handler = new Handler();
+            HttpParser parser = new HttpParser(handler);
+            parser.setLearnedFieldCache(cache);
+            parseAll(parser, BufferUtil.toBuffer(request));
+            assertTrue(_headerCompleted);
+            assertEquals(4, _fields.size());
+            parsed.add(new ArrayList<>(_fields));
+            _fields.clear();
+        }
+
+        // Fields are admitted after being seen twice, then returned from the cache.
+        assertNotSame(parsed.get(0).get(1), parsed.get(1).get(1));
+        assertSame(parsed.get(2).get(1), parsed.get(3).get(1));
+        assertSame(parsed.get(2).get(0), parsed.get(3).get(0));
+        assertThat(parsed.get(3).get(0), instanceOf(HostPortHttpField.class));
+        assertEquals("Learner/1.0", parsed.get(3).get(1).getValue());
+
+        // Credentials are never shared and lines not in canonical form are never learned.
+        assertNotSame(parsed.get(2).get(2), parsed.get(3).get(2));
+        assertNotSame(parsed.get(2).get(3), parsed.get(3).get(3));
+        assertEquals("value", parsed.get(3).get(3).getValue());
+
+        assertEquals(2, cache.getSize());
+        assertEquals(2, cache.getAdmissions());
+        assertEquals(4, cache.getHits());
+        assertThat(cache.getHitRatio(), greaterThan(0.0));
+    }
+
     @Test
     public void testParseRequest()
     {
@@ -23,6 +23,7 @@ import org.junit.jupiter.api.Test;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -161,6 +162,39 @@ public class HttpURITest
         assertThat(uri.getPath(), is("/bar"));
     }
 
+    @Test
+    public void testLazyPathQuery()
+    {
+        String target = "/path/info?query=value";
+        HttpURI.Mutable builder = HttpURI.build().uri("GET", target);
+
+        // The path query is the request target and a plain path is its own decoded path.
+        assertThat(builder.getPathQuery(), sameInstance(target));
+        assertThat(builder.getPath(), is("/path/info"));
+        assertThat(builder.getDecodedPath(), sameInstance(builder.getPath()));
+        assertThat(builder.getQuery(), is("query=value"));
+
+        HttpURI uri = HttpURI.build(builder).scheme("http").host("host").port(8080).asImmutable();
+        assertThat(uri.getPathQuery(), sameInstance(target));
+        assertThat(uri.getPath(), is("/path/info"));
+        assertThat(uri.getDecodedPath(), is("/path/info"));
+        assertThat(uri.getQuery(), is("query=value"));
+        assertThat(uri.toString(), is("http://host:8080/path/info?query=value"));
+
+        // Replacing the path retains the query from the previous target.
+        builder.pathQuery("/other");
+        assertThat(builder.getPath(), is("/other"));
+        assertThat(builder.getQuery(), is("query=value"));
+        assertThat(builder.getPathQuery(), is("/other?query=value"));
+
+        builder.uri("GET", "/a/../b%20c?x");
+        assertThat(builder.getPath(), is("/a/../b%20c"));
+        assertThat(builder.getDecodedPath(), is("/b c"));
+        assertThat(builder.getQuery(), is("x"));
+        builder.query("y");
+        assertThat(builder.getPathQuery(), is("/a/../b%20c?y"));
+    }
+
     @Test
     public void testAt() throws Exception
     {
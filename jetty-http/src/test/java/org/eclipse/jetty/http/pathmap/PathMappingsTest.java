@@ -18,6 +18,11 @@
 
 package org.eclipse.jetty.http.pathmap;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
@@ -167,6 +172,43 @@ public class PathMappingsTest
         assertMatch(p, "/b/d", "endpointE");
     }
 
+    /**
+     * Test that the compiled matcher of many mixed regex and URI Template specs
+     * keeps the match order, and is rebuilt when the mappings change.
+     */
+    @Test
+    public void testCompiledMatchOrder()
+    {
+        PathMappings<String> p = new PathMappings<>();
+
+        p.put(new UriTemplatePathSpec("/"), "rootTemplate");
+        p.put(new UriTemplatePathSpec("/a/{var}/"), "slash");
+        p.put(new UriTemplatePathSpec("/a/{var}/c"), "endpointA");
+        p.put(new UriTemplatePathSpec("/{var1}/{var2}/c"), "endpointB");
+        p.put(new UriTemplatePathSpec("/x/{var}/z"), "endpointX");
+        p.put(new RegexPathSpec("^/a/.*/cam$"), "aCam");
+        p.put(new RegexPathSpec("^/b/[0-9]+/c$"), "bNumber");
+        p.put(new RegexPathSpec("^/entrance/cam$"), "entranceCam");
+        p.put(new ServletPathSpec("/"), "default");
+
+        assertMatch(p, "/", "rootTemplate");
+        assertMatch(p, "/a/b/", "slash");
+        assertMatch(p, "/a/b/c", "endpointA");
+        assertMatch(p, "/a/b/c?q=/d", "endpointA");
+        assertMatch(p, "/b/123/c", "bNumber");
+        assertMatch(p, "/b/bb/c", "endpointB");
+        assertMatch(p, "/a/b/cam", "aCam");
+        assertMatch(p, "/a//c", "default");
+        assertMatch(p, "/entrance/cam", "entranceCam");
+        assertMatch(p, "/x/y/z", "endpointX");
+
+        p.remove(new UriTemplatePathSpec("/a/{var}/c"));
+        assertMatch(p, "/a/b/c", "endpointB");
+        p.removeIf(mapping -> mapping.getPathSpec() instanceof UriTemplatePathSpec);
+        assertMatch(p, "/a/b/c", "default");
+        assertMatch(p, "/b/123/c", "bNumber");
+    }
+
     @Test
     public void testPathMap() throws Exception
     {
@@ -461,4 +503,53 @@ public class PathMappingsTest
         assertThat(p.remove(new ServletPathSpec("/a/b/c")), is(true));
         assertThat(p.remove(new ServletPathSpec("/a/b/c")), is(false));
     }
+
+    @Test
+    public void testConcurrentPutAndGetMatch() throws Exception
+    {
+        PathMappings<String> p = new PathMappings<>();
+        p.put(new ServletPathSpec("/"), "default");
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < 4; t++)
+        {
+            Thread reader = new Thread(() ->
+            {
+                while (running.get())
+                {
+                    try
+                    {
+                        p.getMatch("/any/path");
+                    }
+                    catch (Throwable x)
+                    {
+                        failure.compareAndSet(null, x);
+                    }
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+
+        try
+        {
+            // Each mapping is matched as soon as it is put, even if a reader rebuilds the matcher meanwhile.
+            for (int i = 0; i < 2000; i++)
+            {
+                p.put(new ServletPathSpec("/p" + i + "/*"), "resource" + i);
+                assertMatch(p, "/p" + i + "/info", "resource" + i);
+            }
+        }
+        finally
+        {
+            running.set(false);
+            for (Thread reader : readers)
+            {
+                reader.join();
+            }
+        }
+        assertThat(failure.get(), nullValue());
+    }
 }
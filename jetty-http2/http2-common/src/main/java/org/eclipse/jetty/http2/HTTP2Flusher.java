@@ -35,6 +35,7 @@ import org.eclipse.jetty.http2.frames.WindowUpdateFrame;
 import org.eclipse.jetty.http2.hpack.HpackException;
 import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.io.EofException;
+import org.eclipse.jetty.io.RetainableByteBufferLease;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.IteratingCallback;
 import org.eclipse.jetty.util.component.Dumpable;
@@ -53,14 +54,14 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
     private final Queue<Entry> pendingEntries = new ArrayDeque<>();
     private final Collection<Entry> processedEntries = new ArrayList<>();
     private final HTTP2Session session;
-    private final ByteBufferPool.Lease lease;
+    private final RetainableByteBufferLease lease;
     private Throwable terminated;
     private Entry stalledEntry;
 
     public HTTP2Flusher(HTTP2Session session)
     {
         this.session = session;
-        this.lease = new ByteBufferPool.Lease(session.getGenerator().getByteBufferPool());
+        this.lease = new RetainableByteBufferLease(session.getGenerator().getByteBufferPool());
     }
 
     public void window(IStream stream, WindowUpdateFrame frame)
@@ -340,7 +341,7 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
     @Override
     protected void onCompleteFailure(Throwable x)
     {
-        lease.recycle();
+        lease.dispose();
 
         Throwable closed;
         Set<Entry> allEntries;
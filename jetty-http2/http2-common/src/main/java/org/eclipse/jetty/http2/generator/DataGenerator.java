@@ -74,7 +74,8 @@ public class DataGenerator
         if (last)
             flags |= Flags.END_STREAM;
 
-        ByteBuffer header = headerGenerator.generate(lease, FrameType.DATA, Frame.HEADER_LENGTH + length, length, flags, streamId);
+        // The data is not copied, so only the frame header is generated.
+        ByteBuffer header = headerGenerator.generate(lease, FrameType.DATA, Frame.HEADER_LENGTH, length, flags, streamId);
         BufferUtil.flipToFlush(header, 0);
         lease.append(header, true);
         // Skip empty data buffers.
@@ -64,11 +64,26 @@ abstract class AbstractByteBufferPool implements ByteBufferPool
         updateMemory(buffer, true);
     }
 
+    protected void decrementMemory(boolean direct, long bytes)
+    {
+        updateMemory(direct, -bytes);
+    }
+
+    protected void incrementMemory(boolean direct, long bytes)
+    {
+        updateMemory(direct, bytes);
+    }
+
     private void updateMemory(ByteBuffer buffer, boolean addOrSub)
     {
-        AtomicLong memory = buffer.isDirect() ? _directMemory : _heapMemory;
         int capacity = buffer.capacity();
-        memory.addAndGet(addOrSub ? capacity : -capacity);
+        updateMemory(buffer.isDirect(), addOrSub ? capacity : -capacity);
+    }
+
+    private void updateMemory(boolean direct, long delta)
+    {
+        AtomicLong memory = direct ? _directMemory : _heapMemory;
+        memory.addAndGet(delta);
     }
 
     protected void releaseExcessMemory(boolean direct, Consumer<Boolean> clearFn)
@@ -83,6 +98,11 @@ abstract class AbstractByteBufferPool implements ByteBufferPool
         }
     }
 
+    protected long getMaxMemory(boolean direct)
+    {
+        return direct ? _maxDirectMemory : _maxHeapMemory;
+    }
+
     @ManagedAttribute("The bytes retained by direct ByteBuffers")
     public long getDirectMemory()
     {
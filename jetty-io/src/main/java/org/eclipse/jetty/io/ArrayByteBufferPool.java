@@ -20,6 +20,8 @@ package org.eclipse.jetty.io;
 
 import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 import java.util.function.IntFunction;
 
@@ -43,6 +45,7 @@ public class ArrayByteBufferPool extends AbstractByteBufferPool
     private final int _minCapacity;
     private final ByteBufferPool.Bucket[] _direct;
     private final ByteBufferPool.Bucket[] _indirect;
+    private final DirectSlabAllocator _slabs;
 
     /**
      * Creates a new ArrayByteBufferPool with a default configuration.
@@ -88,6 +91,28 @@ public class ArrayByteBufferPool extends AbstractByteBufferPool
      * @param maxDirectMemory the max direct memory in bytes
      */
     public ArrayByteBufferPool(int minCapacity, int factor, int maxCapacity, int maxQueueLength, long maxHeapMemory, long maxDirectMemory)
+    {
+        this(minCapacity, factor, maxCapacity, maxQueueLength, maxHeapMemory, maxDirectMemory, null);
+    }
+
+    /**
+     * <p>Creates a new ArrayByteBufferPool in slab mode.</p>
+     * <p>In slab mode, pooled direct ByteBuffers are sliced out of the slabs of the given
+     * {@link DirectSlabAllocator}, which also bounds the direct memory allocated by this pool.</p>
+     *
+     * @param minCapacity the minimum ByteBuffer capacity
+     * @param factor the capacity factor
+     * @param maxCapacity the maximum ByteBuffer capacity
+     * @param maxQueueLength the maximum heap ByteBuffer queue length
+     * @param maxHeapMemory the max heap memory in bytes
+     * @param slabs the allocator of direct ByteBuffers
+     */
+    public ArrayByteBufferPool(int minCapacity, int factor, int maxCapacity, int maxQueueLength, long maxHeapMemory, DirectSlabAllocator slabs)
+    {
+        this(minCapacity, factor, maxCapacity, maxQueueLength, maxHeapMemory, -1, slabs);
+    }
+
+    private ArrayByteBufferPool(int minCapacity, int factor, int maxCapacity, int maxQueueLength, long maxHeapMemory, long maxDirectMemory, DirectSlabAllocator slabs)
     {
         super(factor, maxQueueLength, maxHeapMemory, maxDirectMemory);
 
@@ -99,6 +124,7 @@ public class ArrayByteBufferPool extends AbstractByteBufferPool
         if ((maxCapacity % factor) != 0 || factor >= maxCapacity)
             throw new IllegalArgumentException("The capacity factor must be a divisor of maxCapacity");
         _minCapacity = minCapacity;
+        _slabs = slabs;
 
         int length = maxCapacity / factor;
         _direct = new ByteBufferPool.Bucket[length];
@@ -109,6 +135,8 @@ public class ArrayByteBufferPool extends AbstractByteBufferPool
     public ByteBuffer acquire(int size, boolean direct)
     {
         int capacity = size < _minCapacity ? size : (bucketFor(size) + 1) * getCapacityFactor();
+        if (direct && isSlabbed(size))
+            return _slabs.acquire(capacity);
         ByteBufferPool.Bucket bucket = bucketFor(size, direct, null);
         if (bucket == null)
             return newByteBuffer(capacity, direct);
@@ -135,6 +163,11 @@ public class ArrayByteBufferPool extends AbstractByteBufferPool
         }
 
         boolean direct = buffer.isDirect();
+        if (direct && isSlabbed(capacity))
+        {
+            _slabs.release(buffer);
+            return;
+        }
         ByteBufferPool.Bucket bucket = bucketFor(capacity, direct, this::newBucket);
         if (bucket != null)
         {
@@ -144,6 +177,11 @@ public class ArrayByteBufferPool extends AbstractByteBufferPool
         }
     }
 
+    private boolean isSlabbed(int capacity)
+    {
+        return _slabs != null && capacity >= _minCapacity && bucketFor(capacity) < _direct.length;
+    }
+
     private Bucket newBucket(int key)
     {
         return new Bucket(key * getCapacityFactor(), getMaxQueueLength());
@@ -227,12 +265,46 @@ public class ArrayByteBufferPool extends AbstractByteBufferPool
 
     private long getByteBufferCount(boolean direct)
     {
+        if (direct && _slabs != null)
+            return _slabs.getFreeByteBufferCount();
         return Arrays.stream(bucketsFor(direct))
             .filter(Objects::nonNull)
             .mapToLong(Bucket::size)
             .sum();
     }
 
+    /**
+     * @return the allocator of direct ByteBuffers in slab mode, or null if this pool is not in slab mode
+     */
+    public DirectSlabAllocator getDirectSlabAllocator()
+    {
+        return _slabs;
+    }
+
+    @ManagedAttribute("Whether direct ByteBuffers are sliced out of slabs")
+    public boolean isSlabMode()
+    {
+        return _slabs != null;
+    }
+
+    @ManagedAttribute("The direct memory in bytes allocated for slabs")
+    public long getSlabMemory()
+    {
+        return _slabs == null ? 0 : _slabs.getMemory();
+    }
+
+    @ManagedAttribute("The number of direct acquisitions that fell back because the slab memory limit was reached")
+    public long getSlabFallbackCount()
+    {
+        return _slabs == null ? 0 : _slabs.getFallbackCount();
+    }
+
+    @ManagedAttribute("The slab occupancy for each direct ByteBuffer capacity")
+    public List<String> getSlabOccupancy()
+    {
+        return _slabs == null ? Collections.emptyList() : _slabs.getSlabOccupancy();
+    }
+
     // Package local for testing
     ByteBufferPool.Bucket[] bucketsFor(boolean direct)
     {
@@ -0,0 +1,368 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+
+package org.eclipse.jetty.io;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.thread.AutoLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Allocates direct ByteBuffers by slicing them out of large direct memory regions (slabs),
+ * with a hard limit on the total direct memory allocated.</p>
+ * <p>Each buffer capacity has its own slabs; buffers sliced out of a slab are never freed,
+ * they are returned to their size class when released and reused by later acquisitions.
+ * This avoids the fragmentation and the {@code Cleaner} pressure of allocating many
+ * small direct buffers individually.</p>
+ * <p>When the direct memory limit is reached and no free buffer is available, the
+ * {@link Fallback} policy decides whether a heap buffer is returned instead, whether
+ * the caller blocks waiting for a buffer to be released, or whether the acquisition fails.</p>
+ *
+ * @see ArrayByteBufferPool#ArrayByteBufferPool(int, int, int, int, long, DirectSlabAllocator)
+ */
+@ManagedObject
+public class DirectSlabAllocator
+{
+    private static final Logger LOG = LoggerFactory.getLogger(DirectSlabAllocator.class);
+
+    /**
+     * <p>The policy applied when the direct memory limit is reached.</p>
+     */
+    public enum Fallback
+    {
+        /**
+         * A heap buffer is returned instead of a direct buffer.
+         */
+        HEAP,
+        /**
+         * The caller blocks until a buffer is released, or the block timeout expires
+         * in which case the acquisition fails.
+         */
+        BLOCK,
+        /**
+         * The acquisition fails with an {@link IllegalStateException}.
+         */
+        FAIL
+    }
+
+    private final ConcurrentMap<Integer, SizeClass> _sizeClasses = new ConcurrentHashMap<>();
+    private final AtomicLong _memory = new AtomicLong();
+    private final LongAdder _fallbacks = new LongAdder();
+    private final int _slabSize;
+    private final long _maxMemory;
+    private final Fallback _fallback;
+    private final long _blockTimeout;
+
+    /**
+     * Creates a new DirectSlabAllocator with the given configuration.
+     *
+     * @param slabSize the size in bytes of each slab
+     * @param maxMemory the max direct memory in bytes allocated for all slabs
+     * @param fallback the policy applied when {@code maxMemory} is reached
+     */
+    public DirectSlabAllocator(int slabSize, long maxMemory, Fallback fallback)
+    {
+        this(slabSize, maxMemory, fallback, 30000);
+    }
+
+    /**
+     * Creates a new DirectSlabAllocator with the given configuration.
+     *
+     * @param slabSize the size in bytes of each slab
+     * @param maxMemory the max direct memory in bytes allocated for all slabs
+     * @param fallback the policy applied when {@code maxMemory} is reached
+     * @param blockTimeout the max time in milliseconds to wait for a buffer with {@link Fallback#BLOCK}
+     */
+    public DirectSlabAllocator(int slabSize, long maxMemory, Fallback fallback, long blockTimeout)
+    {
+        if (slabSize <= 0)
+            throw new IllegalArgumentException("Invalid slab size " + slabSize);
+        if (maxMemory <= 0)
+            throw new IllegalArgumentException("Invalid max memory " + maxMemory);
+        _slabSize = slabSize;
+        _maxMemory = maxMemory;
+        _fallback = fallback == null ? Fallback.HEAP : fallback;
+        _blockTimeout = blockTimeout;
+    }
+
+    @ManagedAttribute("The size in bytes of each slab")
+    public int getSlabSize()
+    {
+        return _slabSize;
+    }
+
+    @ManagedAttribute("The max direct memory in bytes allocated for all slabs")
+    public long getMaxMemory()
+    {
+        return _maxMemory;
+    }
+
+    @ManagedAttribute("The policy applied when the max direct memory is reached")
+    public Fallback getFallback()
+    {
+        return _fallback;
+    }
+
+    @ManagedAttribute("The direct memory in bytes allocated for all slabs")
+    public long getMemory()
+    {
+        return _memory.get();
+    }
+
+    @ManagedAttribute("The number of acquisitions that fell back because the max direct memory was reached")
+    public long getFallbackCount()
+    {
+        return _fallbacks.longValue();
+    }
+
+    @ManagedAttribute("The number of free buffers in all slabs")
+    public long getFreeByteBufferCount()
+    {
+        return _sizeClasses.values().stream().mapToLong(SizeClass::getFree).sum();
+    }
+
+    @ManagedAttribute("The slab occupancy for each buffer capacity")
+    public List<String> getSlabOccupancy()
+    {
+        List<String> result = new ArrayList<>();
+        _sizeClasses.values().stream()
+            .sorted((c1, c2) -> Integer.compare(c1._capacity, c2._capacity))
+            .forEach(sizeClass -> result.add(sizeClass.toString()));
+        return result;
+    }
+
+    /**
+     * <p>Acquires a direct buffer of the given capacity, in flush mode and empty.</p>
+     *
+     * @param capacity the buffer capacity
+     * @return a direct buffer, or a heap buffer if the max direct memory is reached
+     * and the fallback policy is {@link Fallback#HEAP}
+     * @throws IllegalStateException if the max direct memory is reached and the
+     * buffer cannot be acquired according to the fallback policy
+     */
+    public ByteBuffer acquire(int capacity)
+    {
+        SizeClass sizeClass = _sizeClasses.computeIfAbsent(capacity, SizeClass::new);
+        ByteBuffer buffer = sizeClass.poll();
+        if (buffer != null)
+            return buffer;
+
+        buffer = sizeClass.allocate();
+        if (buffer != null)
+            return buffer;
+
+        _fallbacks.increment();
+        switch (_fallback)
+        {
+            case HEAP:
+                return BufferUtil.allocate(capacity);
+            case BLOCK:
+                buffer = sizeClass.await(_blockTimeout);
+                if (buffer != null)
+                    return buffer;
+                throw new IllegalStateException("Timeout waiting for a direct buffer of capacity " + capacity);
+            case FAIL:
+                throw new IllegalStateException("Direct memory exhausted: " + getMemory() + "/" + getMaxMemory());
+            default:
+                throw new IllegalStateException();
+        }
+    }
+
+    /**
+     * <p>Releases a direct buffer previously obtained from {@link #acquire(int)}.</p>
+     *
+     * @param buffer the buffer to release
+     * @return whether the buffer has been recycled
+     */
+    public boolean release(ByteBuffer buffer)
+    {
+        SizeClass sizeClass = _sizeClasses.get(buffer.capacity());
+        if (sizeClass == null)
+            return false;
+        return sizeClass.offer(buffer);
+    }
+
+    private boolean reserve(long bytes)
+    {
+        while (true)
+        {
+            long memory = _memory.get();
+            if (memory + bytes > _maxMemory)
+                return false;
+            if (_memory.compareAndSet(memory, memory + bytes))
+                return true;
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{%d/%d,slab=%d,fallback=%s}", getClass().getSimpleName(), hashCode(), getMemory(), getMaxMemory(), getSlabSize(), getFallback());
+    }
+
+    private class SizeClass
+    {
+        private final AutoLock.WithCondition _lock = new AutoLock.WithCondition();
+        private final Deque<ByteBuffer> _queue = new ConcurrentLinkedDeque<>();
+        private final AtomicInteger _free = new AtomicInteger();
+        private final AtomicInteger _total = new AtomicInteger();
+        private final AtomicInteger _waiters = new AtomicInteger();
+        private final int _capacity;
+        // The slices of the slabs, copied on write as slabs are rarely allocated.
+        private volatile Set<ByteBuffer> _slices = Collections.emptySet();
+
+        private SizeClass(int capacity)
+        {
+            _capacity = capacity;
+        }
+
+        private ByteBuffer poll()
+        {
+            ByteBuffer buffer = _queue.poll();
+            if (buffer != null)
+                _free.decrementAndGet();
+            return buffer;
+        }
+
+        private boolean offer(ByteBuffer buffer)
+        {
+            // Discard buffers that have not been sliced from the slabs.
+            if (!_slices.contains(buffer))
+                return false;
+            // Discard buffers released more times than acquired.
+            if (_free.incrementAndGet() > _total.get())
+            {
+                _free.decrementAndGet();
+                return false;
+            }
+            BufferUtil.clear(buffer);
+            _queue.offerFirst(buffer);
+            if (_waiters.get() > 0)
+            {
+                try (AutoLock.WithCondition l = _lock.lock())
+                {
+                    l.signal();
+                }
+            }
+            return true;
+        }
+
+        private ByteBuffer allocate()
+        {
+            int count = Math.max(1, _slabSize / _capacity);
+            long bytes = (long)count * _capacity;
+            if (!reserve(bytes))
+                return null;
+
+            ByteBuffer slab = ByteBuffer.allocateDirect((int)bytes);
+            if (LOG.isDebugEnabled())
+                LOG.debug("Allocated slab of {} buffers of capacity {} for {}", count, _capacity, DirectSlabAllocator.this);
+            ByteBuffer[] slices = new ByteBuffer[count];
+            try (AutoLock.WithCondition l = _lock.lock())
+            {
+                Set<ByteBuffer> all = Collections.newSetFromMap(new IdentityHashMap<>());
+                all.addAll(_slices);
+                for (int i = 0; i < count; ++i)
+                {
+                    slices[i] = slice(slab, i);
+                    all.add(slices[i]);
+                }
+                _slices = all;
+            }
+            _total.addAndGet(count);
+            // Keep the first buffer for the caller.
+            for (int i = 1; i < count; ++i)
+            {
+                _free.incrementAndGet();
+                _queue.offer(slices[i]);
+            }
+            return slices[0];
+        }
+
+        private ByteBuffer slice(ByteBuffer slab, int index)
+        {
+            ByteBuffer buffer = slab.duplicate();
+            buffer.limit((index + 1) * _capacity);
+            buffer.position(index * _capacity);
+            buffer = buffer.slice();
+            BufferUtil.clear(buffer);
+            return buffer;
+        }
+
+        private ByteBuffer await(long timeout)
+        {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            _waiters.incrementAndGet();
+            try (AutoLock.WithCondition l = _lock.lock())
+            {
+                while (true)
+                {
+                    ByteBuffer buffer = poll();
+                    if (buffer != null)
+                        return buffer;
+                    long wait = deadline - System.nanoTime();
+                    if (wait <= 0)
+                        return null;
+                    l.await(wait, TimeUnit.NANOSECONDS);
+                }
+            }
+            catch (InterruptedException x)
+            {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            finally
+            {
+                _waiters.decrementAndGet();
+            }
+        }
+
+        private long getFree()
+        {
+            return _free.get();
+        }
+
+        @Override
+        public String toString()
+        {
+            int total = _total.get();
+            int free = _free.get();
+            return String.format("capacity=%d,used=%d,free=%d,total=%d", _capacity, total - free, free, total);
+        }
+    }
+}
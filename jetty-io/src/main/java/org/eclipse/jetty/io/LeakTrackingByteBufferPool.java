@@ -18,21 +18,54 @@
 
 package org.eclipse.jetty.io;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
 
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.LeakDetector;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.component.DumpableCollection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * <p>A {@link ByteBufferPool} wrapper that detects ByteBuffers that are acquired but never released,
+ * and profiles the call sites that acquire ByteBuffers.</p>
+ * <p>For each tracked acquisition, the call site is identified by a fingerprint of the top
+ * stack frames of the caller, and the profile records, per call site, the number of
+ * acquisitions, the bytes acquired, a histogram of the times the buffers are held before
+ * being released, and the number of leaks; the profile also records the distribution of the
+ * acquired buffer capacities.
+ * The profile is available via JMX and via {@link #dump()}.</p>
+ * <p>By default every acquisition is tracked; in sampling mode only one acquisition every
+ * {@code sampleRate} (on average) is tracked, which makes this wrapper cheap enough to be
+ * used in production.</p>
+ */
 @ManagedObject
 public class LeakTrackingByteBufferPool extends ContainerLifeCycle implements ByteBufferPool
 {
     private static final Logger LOG = LoggerFactory.getLogger(LeakTrackingByteBufferPool.class);
+    private static final int STACK_DEPTH = 6;
+    private static final int MAX_CALL_SITES = 1024;
+    private static final String OTHER_CALL_SITES = "<other>";
+    private static final long[] HOLD_TIME_BUCKETS = {1, 10, 100, 1000, 10000};
+    private static final StackWalker STACK_WALKER = StackWalker.getInstance();
 
     private final LeakDetector<ByteBuffer> leakDetector = new LeakDetector<ByteBuffer>()
     {
@@ -46,6 +79,9 @@ public class LeakTrackingByteBufferPool extends ContainerLifeCycle implements By
         protected void leaked(LeakInfo leakInfo)
         {
             leaked.incrementAndGet();
+            Sample sample = samples.remove(leakInfo.getResourceId());
+            if (sample != null)
+                sample.callSite.leaks.increment();
             LeakTrackingByteBufferPool.this.leaked(leakInfo);
         }
     };
@@ -54,11 +90,26 @@ public class LeakTrackingByteBufferPool extends ContainerLifeCycle implements By
     private final AtomicLong leakedReleases = new AtomicLong(0);
     private final AtomicLong leakedRemoves = new AtomicLong(0);
     private final AtomicLong leaked = new AtomicLong(0);
+    private final ConcurrentMap<String, Sample> samples = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CallSite> callSites = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, LongAdder> capacities = new ConcurrentHashMap<>();
+    private final LongAdder sampledAcquires = new LongAdder();
     private final ByteBufferPool delegate;
+    private final int sampleRate;
 
     public LeakTrackingByteBufferPool(ByteBufferPool delegate)
+    {
+        this(delegate, 1);
+    }
+
+    /**
+     * @param delegate the pool to delegate to
+     * @param sampleRate track one acquisition every {@code sampleRate}, on average
+     */
+    public LeakTrackingByteBufferPool(ByteBufferPool delegate, int sampleRate)
     {
         this.delegate = delegate;
+        this.sampleRate = Math.max(1, sampleRate);
         addBean(leakDetector);
         addBean(delegate);
     }
@@ -67,6 +118,8 @@ public class LeakTrackingByteBufferPool extends ContainerLifeCycle implements By
     public ByteBuffer acquire(int size, boolean direct)
     {
         ByteBuffer buffer = delegate.acquire(size, direct);
+        if (!isSampled())
+            return buffer;
         boolean acquired = leakDetector.acquired(buffer);
         if (!acquired)
         {
@@ -74,6 +127,10 @@ public class LeakTrackingByteBufferPool extends ContainerLifeCycle implements By
             if (LOG.isDebugEnabled())
                 LOG.debug("ByteBuffer leaked acquire for id {}", leakDetector.id(buffer), new Throwable("acquire"));
         }
+        else
+        {
+            sample(buffer);
+        }
         return buffer;
     }
 
@@ -82,12 +139,15 @@ public class LeakTrackingByteBufferPool extends ContainerLifeCycle implements By
     {
         if (buffer == null)
             return;
-        boolean released = leakDetector.released(buffer);
-        if (!released)
+        if (isTracked(buffer))
         {
-            leakedReleases.incrementAndGet();
-            if (LOG.isDebugEnabled())
-                LOG.debug("ByteBuffer leaked release for id {}", leakDetector.id(buffer), new Throwable("release"));
+            boolean released = leakDetector.released(buffer);
+            if (!released)
+            {
+                leakedReleases.incrementAndGet();
+                if (LOG.isDebugEnabled())
+                    LOG.debug("ByteBuffer leaked release for id {}", leakDetector.id(buffer), new Throwable("release"));
+            }
         }
         delegate.release(buffer);
     }
@@ -97,16 +157,78 @@ public class LeakTrackingByteBufferPool extends ContainerLifeCycle implements By
     {
         if (buffer == null)
             return;
-        boolean released = leakDetector.released(buffer);
-        if (!released)
+        if (isTracked(buffer))
         {
-            leakedRemoves.incrementAndGet();
-            if (LOG.isDebugEnabled())
-                LOG.debug("ByteBuffer leaked remove for id {}", leakDetector.id(buffer), new Throwable("remove"));
+            boolean released = leakDetector.released(buffer);
+            if (!released)
+            {
+                leakedRemoves.incrementAndGet();
+                if (LOG.isDebugEnabled())
+                    LOG.debug("ByteBuffer leaked remove for id {}", leakDetector.id(buffer), new Throwable("remove"));
+            }
         }
         delegate.remove(buffer);
     }
 
+    private boolean isSampled()
+    {
+        return sampleRate == 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0;
+    }
+
+    private void sample(ByteBuffer buffer)
+    {
+        sampledAcquires.increment();
+        int capacity = buffer.capacity();
+        capacities.computeIfAbsent(capacity, k -> new LongAdder()).increment();
+        CallSite callSite = callSiteFor(fingerprint());
+        callSite.acquires.increment();
+        callSite.bytes.add(capacity);
+        samples.put(leakDetector.id(buffer), new Sample(callSite, System.nanoTime()));
+    }
+
+    /**
+     * <p>Returns whether the given buffer was tracked when it was acquired,
+     * and if so records the time it was held.</p>
+     */
+    private boolean isTracked(ByteBuffer buffer)
+    {
+        Sample sample = samples.remove(leakDetector.id(buffer));
+        if (sample != null)
+        {
+            sample.callSite.released(System.nanoTime() - sample.acquireNanos);
+            return true;
+        }
+        // When every acquisition is tracked, untracked buffers are reported as leaks.
+        return sampleRate == 1;
+    }
+
+    private String fingerprint()
+    {
+        return STACK_WALKER.walk(frames -> frames
+            .dropWhile(frame -> isPoolFrame(frame.getClassName()))
+            .limit(STACK_DEPTH)
+            .map(frame -> frame.getClassName() + "." + frame.getMethodName() + ":" + frame.getLineNumber())
+            .collect(Collectors.joining(" <- ")));
+    }
+
+    private static boolean isPoolFrame(String className)
+    {
+        String poolClassName = LeakTrackingByteBufferPool.class.getName();
+        return className.startsWith(poolClassName) &&
+            (className.length() == poolClassName.length() || className.charAt(poolClassName.length()) == '$');
+    }
+
+    private CallSite callSiteFor(String fingerprint)
+    {
+        CallSite callSite = callSites.get(fingerprint);
+        if (callSite != null)
+            return callSite;
+        // Bound the memory used by the profile.
+        if (callSites.size() >= MAX_CALL_SITES)
+            fingerprint = OTHER_CALL_SITES;
+        return callSites.computeIfAbsent(fingerprint, CallSite::new);
+    }
+
     /**
      * Clears the tracking data returned by {@link #getLeakedAcquires()},
      * {@link #getLeakedReleases()}, {@link #getLeakedResources()}.
@@ -118,6 +240,75 @@ public class LeakTrackingByteBufferPool extends ContainerLifeCycle implements By
         leakedReleases.set(0);
     }
 
+    /**
+     * Clears the profiling data returned by {@link #getHotSpots()},
+     * {@link #getLongestHolders()} and {@link #getCapacityDistribution()}.
+     */
+    @ManagedOperation(value = "Clears the profiling data", impact = "ACTION")
+    public void clearProfile()
+    {
+        sampledAcquires.reset();
+        callSites.clear();
+        capacities.clear();
+    }
+
+    /**
+     * @return the number of acquisitions for every tracked acquisition
+     */
+    @ManagedAttribute("The number of acquisitions for every tracked acquisition")
+    public int getSampleRate()
+    {
+        return sampleRate;
+    }
+
+    /**
+     * @return count of ByteBufferPool.acquire() calls that have been tracked
+     */
+    @ManagedAttribute("The number of tracked acquisitions")
+    public long getSampledAcquires()
+    {
+        return sampledAcquires.longValue();
+    }
+
+    /**
+     * @return the call sites that acquired the most bytes, with their profile
+     */
+    @ManagedAttribute("The call sites that acquired the most bytes")
+    public List<String> getHotSpots()
+    {
+        return topCallSites(callSite -> callSite.bytes.longValue());
+    }
+
+    /**
+     * @return the call sites that held the buffers for the longest time, with their profile
+     */
+    @ManagedAttribute("The call sites that held buffers for the longest time")
+    public List<String> getLongestHolders()
+    {
+        return topCallSites(CallSite::getAverageHoldNanos);
+    }
+
+    /**
+     * @return the number of tracked acquisitions for each buffer capacity
+     */
+    @ManagedAttribute("The number of tracked acquisitions for each buffer capacity")
+    public List<String> getCapacityDistribution()
+    {
+        return capacities.entrySet().stream()
+            .sorted(Map.Entry.comparingByKey())
+            .map(entry -> String.format("capacity=%d,acquires=%d", entry.getKey(), entry.getValue().longValue()))
+            .collect(Collectors.toList());
+    }
+
+    private List<String> topCallSites(ToLongFunction<CallSite> metric)
+    {
+        return callSites.values().stream()
+            .sorted(Comparator.comparingLong(metric).reversed())
+            .limit(20)
+            .map(CallSite::toString)
+            .collect(Collectors.toList());
+    }
+
     /**
      * @return count of ByteBufferPool.acquire() calls that detected a leak
      */
@@ -158,4 +349,91 @@ public class LeakTrackingByteBufferPool extends ContainerLifeCycle implements By
     {
         LOG.warn("ByteBuffer {} leaked at: {}", leakInfo.getResourceDescription(), leakInfo.getStackFrames());
     }
+
+    @Override
+    public void dump(Appendable out, String indent) throws IOException
+    {
+        List<String> callSites = new ArrayList<>(this.callSites.size());
+        this.callSites.values().stream()
+            .sorted(Comparator.comparingLong((CallSite callSite) -> callSite.bytes.longValue()).reversed())
+            .forEach(callSite -> callSites.add(callSite.toString()));
+        dumpObjects(out, indent,
+            new DumpableCollection("callSites", callSites),
+            new DumpableCollection("capacities", getCapacityDistribution()));
+    }
+
+    private static class Sample
+    {
+        private final CallSite callSite;
+        private final long acquireNanos;
+
+        private Sample(CallSite callSite, long acquireNanos)
+        {
+            this.callSite = callSite;
+            this.acquireNanos = acquireNanos;
+        }
+    }
+
+    private static class CallSite
+    {
+        private final String fingerprint;
+        private final LongAdder acquires = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder releases = new LongAdder();
+        private final LongAdder leaks = new LongAdder();
+        private final LongAdder holdNanos = new LongAdder();
+        private final AtomicLong maxHoldNanos = new AtomicLong();
+        private final AtomicLongArray holdTimes = new AtomicLongArray(HOLD_TIME_BUCKETS.length + 1);
+
+        private CallSite(String fingerprint)
+        {
+            this.fingerprint = fingerprint;
+        }
+
+        private void released(long nanos)
+        {
+            releases.increment();
+            holdNanos.add(nanos);
+            maxHoldNanos.accumulateAndGet(nanos, Math::max);
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            int bucket = 0;
+            while (bucket < HOLD_TIME_BUCKETS.length && millis >= HOLD_TIME_BUCKETS[bucket])
+            {
+                ++bucket;
+            }
+            holdTimes.incrementAndGet(bucket);
+        }
+
+        private long getAverageHoldNanos()
+        {
+            long count = releases.longValue();
+            return count == 0 ? 0 : holdNanos.longValue() / count;
+        }
+
+        private String getHoldTimeHistogram()
+        {
+            StringBuilder builder = new StringBuilder("[");
+            for (int i = 0; i < holdTimes.length(); ++i)
+            {
+                if (i > 0)
+                    builder.append(",");
+                builder.append(i < HOLD_TIME_BUCKETS.length ? "<" + HOLD_TIME_BUCKETS[i] : ">=" + HOLD_TIME_BUCKETS[i - 1]);
+                builder.append("ms=").append(holdTimes.get(i));
+            }
+            return builder.append("]").toString();
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s{acquires=%d,bytes=%d,leaks=%d,avgHold=%dus,maxHold=%dus,holds=%s}",
+                fingerprint,
+                acquires.longValue(),
+                bytes.longValue(),
+                leaks.longValue(),
+                TimeUnit.NANOSECONDS.toMicros(getAverageHoldNanos()),
+                TimeUnit.NANOSECONDS.toMicros(maxHoldNanos.get()),
+                getHoldTimeHistogram());
+        }
+    }
 }
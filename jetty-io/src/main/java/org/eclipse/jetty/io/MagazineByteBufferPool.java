@@ -0,0 +1,453 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+
+package org.eclipse.jetty.io;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A ByteBuffer pool where each thread caches ByteBuffers in small per-thread magazines,
+ * backed by a shared lock-free depot of magazines per size class.</p>
+ * <p>Size classes are computed as in {@link ArrayByteBufferPool}: given a capacity {@code factor}
+ * of 1024, the first size class holds ByteBuffers each of capacity 1024, the second size class
+ * holds ByteBuffers each of capacity 2048, and so on.</p>
+ * <p>Acquiring and releasing a ByteBuffer normally only touches the calling thread's magazine,
+ * without any atomic operation; only when a magazine is empty (or full) a whole magazine of
+ * ByteBuffers is exchanged with the depot, with a single compare-and-set.</p>
+ * <p>The max heap and direct memory limits apply to the ByteBuffers held in the depot; when they
+ * are exceeded, magazines are evicted from the depot one at a time, visiting the size classes in
+ * round-robin order rather than scanning for the oldest one.
+ * ByteBuffers cached in the per-thread magazines are bounded by the magazine capacity.</p>
+ */
+@ManagedObject
+public class MagazineByteBufferPool extends AbstractByteBufferPool
+{
+    private static final Logger LOG = LoggerFactory.getLogger(MagazineByteBufferPool.class);
+
+    private final int _minCapacity;
+    private final int _magazineCapacity;
+    private final Depot[] _direct;
+    private final Depot[] _indirect;
+    private final AtomicInteger _evictCursor = new AtomicInteger();
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    private final LongAdder _evictions = new LongAdder();
+    private volatile ThreadLocal<Magazine[]> _magazines;
+
+    /**
+     * Creates a new MagazineByteBufferPool with a default configuration.
+     */
+    public MagazineByteBufferPool()
+    {
+        this(-1, -1, -1);
+    }
+
+    /**
+     * Creates a new MagazineByteBufferPool with the given configuration.
+     *
+     * @param minCapacity the minimum ByteBuffer capacity
+     * @param factor the capacity factor
+     * @param maxCapacity the maximum ByteBuffer capacity
+     */
+    public MagazineByteBufferPool(int minCapacity, int factor, int maxCapacity)
+    {
+        this(minCapacity, factor, maxCapacity, -1, -1, -1);
+    }
+
+    /**
+     * Creates a new MagazineByteBufferPool with the given configuration.
+     *
+     * @param minCapacity the minimum ByteBuffer capacity
+     * @param factor the capacity factor
+     * @param maxCapacity the maximum ByteBuffer capacity
+     * @param maxQueueLength the maximum number of ByteBuffers in the depot of each size class
+     * @param maxHeapMemory the max heap memory in bytes
+     * @param maxDirectMemory the max direct memory in bytes
+     */
+    public MagazineByteBufferPool(int minCapacity, int factor, int maxCapacity, int maxQueueLength, long maxHeapMemory, long maxDirectMemory)
+    {
+        this(minCapacity, factor, maxCapacity, maxQueueLength, maxHeapMemory, maxDirectMemory, -1);
+    }
+
+    /**
+     * Creates a new MagazineByteBufferPool with the given configuration.
+     *
+     * @param minCapacity the minimum ByteBuffer capacity
+     * @param factor the capacity factor
+     * @param maxCapacity the maximum ByteBuffer capacity
+     * @param maxQueueLength the maximum number of ByteBuffers in the depot of each size class
+     * @param maxHeapMemory the max heap memory in bytes
+     * @param maxDirectMemory the max direct memory in bytes
+     * @param magazineCapacity the number of ByteBuffers cached per thread for each size class
+     */
+    public MagazineByteBufferPool(int minCapacity, int factor, int maxCapacity, int maxQueueLength, long maxHeapMemory, long maxDirectMemory, int magazineCapacity)
+    {
+        super(factor, maxQueueLength, maxHeapMemory, maxDirectMemory);
+
+        factor = getCapacityFactor();
+        if (minCapacity <= 0)
+            minCapacity = 0;
+        if (maxCapacity <= 0)
+            maxCapacity = 64 * 1024;
+        if ((maxCapacity % factor) != 0 || factor >= maxCapacity)
+            throw new IllegalArgumentException("The capacity factor must be a divisor of maxCapacity");
+        if (magazineCapacity <= 0)
+            magazineCapacity = 16;
+        if (maxQueueLength > 0)
+            magazineCapacity = Math.min(magazineCapacity, maxQueueLength);
+        _minCapacity = minCapacity;
+        _magazineCapacity = magazineCapacity;
+
+        int maxMagazines = maxQueueLength > 0 ? (maxQueueLength + magazineCapacity - 1) / magazineCapacity : -1;
+        int length = maxCapacity / factor;
+        _direct = new Depot[length];
+        _indirect = new Depot[length];
+        for (int i = 0; i < length; ++i)
+        {
+            _direct[i] = new Depot(maxMagazines);
+            _indirect[i] = new Depot(maxMagazines);
+        }
+        _magazines = newMagazines();
+    }
+
+    private ThreadLocal<Magazine[]> newMagazines()
+    {
+        return ThreadLocal.withInitial(() -> new Magazine[2 * _direct.length]);
+    }
+
+    @Override
+    public ByteBuffer acquire(int size, boolean direct)
+    {
+        int b = bucketFor(size);
+        int capacity = size < _minCapacity ? size : (b + 1) * getCapacityFactor();
+        if (size < _minCapacity || b >= _direct.length)
+            return newByteBuffer(capacity, direct);
+
+        Magazine magazine = magazineFor(b, direct);
+        ByteBuffer buffer = magazine.pop();
+        if (buffer == null)
+        {
+            Node node = depotsFor(direct)[b].pop();
+            if (node != null)
+            {
+                decrementMemory(direct, (long)node.size * capacity);
+                magazine.load(node);
+                buffer = magazine.pop();
+            }
+        }
+
+        if (buffer == null)
+        {
+            _misses.increment();
+            return newByteBuffer(capacity, direct);
+        }
+        _hits.increment();
+        return buffer;
+    }
+
+    @Override
+    public void release(ByteBuffer buffer)
+    {
+        if (buffer == null)
+            return;
+
+        int capacity = buffer.capacity();
+        // Validate that this buffer is from this pool.
+        if (capacity == 0 || (capacity % getCapacityFactor()) != 0)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("ByteBuffer {} does not belong to this pool, discarding it", BufferUtil.toDetailString(buffer));
+            return;
+        }
+
+        int b = bucketFor(capacity);
+        if (capacity < _minCapacity || b >= _direct.length)
+            return;
+
+        boolean direct = buffer.isDirect();
+        BufferUtil.clear(buffer);
+        Magazine magazine = magazineFor(b, direct);
+        if (magazine.isFull())
+            flush(magazine, b, direct);
+        magazine.push(buffer);
+    }
+
+    private void flush(Magazine magazine, int b, boolean direct)
+    {
+        Node node = magazine.unload();
+        if (depotsFor(direct)[b].push(node))
+        {
+            incrementMemory(direct, (long)node.size * (b + 1) * getCapacityFactor());
+            evictExcessMemory(direct);
+        }
+        else
+        {
+            _evictions.add(node.size);
+        }
+    }
+
+    private void evictExcessMemory(boolean direct)
+    {
+        long maxMemory = getMaxMemory(direct);
+        if (maxMemory <= 0)
+            return;
+        while (getMemory(direct) > maxMemory)
+        {
+            if (!evictMagazine(direct))
+                break;
+        }
+    }
+
+    private boolean evictMagazine(boolean direct)
+    {
+        Depot[] depots = depotsFor(direct);
+        for (int i = 0; i < depots.length; ++i)
+        {
+            int index = Math.floorMod(_evictCursor.getAndIncrement(), depots.length);
+            Node node = depots[index].pop();
+            if (node != null)
+            {
+                decrementMemory(direct, (long)node.size * (index + 1) * getCapacityFactor());
+                _evictions.add(node.size);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void clear()
+    {
+        super.clear();
+        for (int i = 0; i < _direct.length; ++i)
+        {
+            _direct[i].clear();
+            _indirect[i].clear();
+        }
+        // Threads cannot clear each other's magazines,
+        // so they are discarded by replacing the ThreadLocal.
+        _magazines = newMagazines();
+    }
+
+    private int bucketFor(int capacity)
+    {
+        return (capacity - 1) / getCapacityFactor();
+    }
+
+    private Magazine magazineFor(int b, boolean direct)
+    {
+        Magazine[] magazines = _magazines.get();
+        int index = direct ? _direct.length + b : b;
+        Magazine magazine = magazines[index];
+        if (magazine == null)
+            magazines[index] = magazine = new Magazine(_magazineCapacity);
+        return magazine;
+    }
+
+    private Depot[] depotsFor(boolean direct)
+    {
+        return direct ? _direct : _indirect;
+    }
+
+    @ManagedAttribute("The number of ByteBuffers cached per thread for each size class")
+    public int getMagazineCapacity()
+    {
+        return _magazineCapacity;
+    }
+
+    @ManagedAttribute("The number of direct ByteBuffers pooled in the depot")
+    public long getDirectByteBufferCount()
+    {
+        return getByteBufferCount(true);
+    }
+
+    @ManagedAttribute("The number of heap ByteBuffers pooled in the depot")
+    public long getHeapByteBufferCount()
+    {
+        return getByteBufferCount(false);
+    }
+
+    private long getByteBufferCount(boolean direct)
+    {
+        long count = 0;
+        for (Depot depot : depotsFor(direct))
+        {
+            count += depot.getCount();
+        }
+        return count;
+    }
+
+    @ManagedAttribute("The number of acquisitions served by a pooled ByteBuffer")
+    public long getHitCount()
+    {
+        return _hits.longValue();
+    }
+
+    @ManagedAttribute("The number of acquisitions that allocated a new ByteBuffer")
+    public long getMissCount()
+    {
+        return _misses.longValue();
+    }
+
+    @ManagedAttribute("The number of ByteBuffers discarded to honor the pool limits")
+    public long getEvictionCount()
+    {
+        return _evictions.longValue();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{magazineCapacity=%d,hits=%d,misses=%d,evictions=%d}",
+            getClass().getSimpleName(),
+            hashCode(),
+            getMagazineCapacity(),
+            getHitCount(),
+            getMissCount(),
+            getEvictionCount());
+    }
+
+    /**
+     * <p>A per-thread stack of ByteBuffers of the same capacity.</p>
+     */
+    private static class Magazine
+    {
+        private ByteBuffer[] _buffers;
+        private int _size;
+
+        private Magazine(int capacity)
+        {
+            _buffers = new ByteBuffer[capacity];
+        }
+
+        private ByteBuffer pop()
+        {
+            if (_size == 0)
+                return null;
+            ByteBuffer buffer = _buffers[--_size];
+            _buffers[_size] = null;
+            return buffer;
+        }
+
+        private void push(ByteBuffer buffer)
+        {
+            _buffers[_size++] = buffer;
+        }
+
+        private boolean isFull()
+        {
+            return _size == _buffers.length;
+        }
+
+        private void load(Node node)
+        {
+            _buffers = node.buffers;
+            _size = node.size;
+        }
+
+        private Node unload()
+        {
+            Node node = new Node(_buffers, _size);
+            _buffers = new ByteBuffer[_buffers.length];
+            _size = 0;
+            return node;
+        }
+    }
+
+    /**
+     * <p>An immutable set of ByteBuffers, linked in the depot stack.</p>
+     * <p>Nodes are never pushed twice, so the depot stack is not subject to the ABA problem.</p>
+     */
+    private static class Node
+    {
+        private final ByteBuffer[] buffers;
+        private final int size;
+        private Node next;
+        private int depth;
+        private long count;
+
+        private Node(ByteBuffer[] buffers, int size)
+        {
+            this.buffers = buffers;
+            this.size = size;
+        }
+    }
+
+    /**
+     * <p>A lock-free (Treiber) stack of full magazines of ByteBuffers of the same capacity.</p>
+     */
+    private static class Depot
+    {
+        private final AtomicReference<Node> _head = new AtomicReference<>();
+        private final int _maxMagazines;
+
+        private Depot(int maxMagazines)
+        {
+            _maxMagazines = maxMagazines;
+        }
+
+        private boolean push(Node node)
+        {
+            while (true)
+            {
+                Node head = _head.get();
+                int depth = head == null ? 1 : head.depth + 1;
+                if (_maxMagazines > 0 && depth > _maxMagazines)
+                    return false;
+                node.next = head;
+                node.depth = depth;
+                node.count = head == null ? node.size : head.count + node.size;
+                if (_head.compareAndSet(head, node))
+                    return true;
+            }
+        }
+
+        private Node pop()
+        {
+            while (true)
+            {
+                Node head = _head.get();
+                if (head == null)
+                    return null;
+                if (_head.compareAndSet(head, head.next))
+                    return head;
+            }
+        }
+
+        private void clear()
+        {
+            _head.set(null);
+        }
+
+        private long getCount()
+        {
+            Node head = _head.get();
+            return head == null ? 0 : head.count;
+        }
+    }
+}
@@ -85,6 +85,7 @@ public class ManagedSelector extends ContainerLifeCycle implements Dumpable
     private boolean _selecting;
     private final SelectorManager _selectorManager;
     private final int _id;
+    private final SelectorGroup _group;
     private final ExecutionStrategy _strategy;
     private Selector _selector;
     private Deque<SelectorUpdate> _updates = new ArrayDeque<>();
@@ -94,12 +95,21 @@ public class ManagedSelector extends ContainerLifeCycle implements Dumpable
     {
         _selectorManager = selectorManager;
         _id = id;
+        _group = selectorManager.getSelectorGroup(id);
         SelectorProducer producer = new SelectorProducer();
-        Executor executor = selectorManager.getExecutor();
+        Executor executor = _group == null ? selectorManager.getExecutor() : _group.getExecutor();
         _strategy = new EatWhatYouKill(producer, executor);
         addBean(_strategy, true);
     }
 
+    /**
+     * @return the group of this selector, or null if selectors are not grouped
+     */
+    public SelectorGroup getSelectorGroup()
+    {
+        return _group;
+    }
+
     public Selector getSelector()
     {
         return _selector;
@@ -117,7 +127,10 @@ public class ManagedSelector extends ContainerLifeCycle implements Dumpable
 
         // The normal strategy obtains the produced task, schedules
         // a new thread to produce more, runs the task and then exits.
-        _selectorManager.execute(_strategy::produce);
+        if (_group == null)
+            _selectorManager.execute(_strategy::produce);
+        else
+            _group.execute(_strategy::produce);
 
         // Set started only if we really are started
         Start start = new Start();
@@ -297,7 +310,10 @@ public class ManagedSelector extends ContainerLifeCycle implements Dumpable
     {
         try
         {
-            _selectorManager.execute(task);
+            if (_group == null)
+                _selectorManager.execute(task);
+            else
+                _group.execute(task);
         }
         catch (RejectedExecutionException x)
         {
@@ -340,11 +356,15 @@ public class ManagedSelector extends ContainerLifeCycle implements Dumpable
 
     protected void endPointOpened(EndPoint endPoint)
     {
+        if (_group != null)
+            _group.onEndPointOpened();
         _selectorManager.endPointOpened(endPoint);
     }
 
     protected void endPointClosed(EndPoint endPoint)
     {
+        if (_group != null)
+            _group.onEndPointClosed();
         _selectorManager.endPointClosed(endPoint);
     }
 
@@ -758,7 +778,17 @@ public class ManagedSelector extends ContainerLifeCycle implements Dumpable
         {
             try
             {
-                _key = _channel.register(selector, SelectionKey.OP_ACCEPT, this);
+                try
+                {
+                    _key = _channel.register(selector, SelectionKey.OP_ACCEPT, this);
+                }
+                catch (CancelledKeyException x)
+                {
+                    // A previous acceptor for this channel has been cancelled, but its key
+                    // is only deregistered by a select operation, see AbstractConnector.setAccepting(boolean).
+                    selector.selectNow();
+                    _key = _channel.register(selector, SelectionKey.OP_ACCEPT, this);
+                }
                 if (LOG.isDebugEnabled())
                     LOG.debug("{} acceptor={}", this, _channel);
             }
@@ -780,7 +810,7 @@ public class ManagedSelector extends ContainerLifeCycle implements Dumpable
                     channel = _selectorManager.doAccept(_channel);
                     if (channel == null)
                         break;
-                    _selectorManager.accepted(channel);
+                    _selectorManager.accepted(_channel, channel);
                 }
             }
             catch (Throwable x)
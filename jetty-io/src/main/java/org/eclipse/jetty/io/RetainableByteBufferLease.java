@@ -0,0 +1,149 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+
+package org.eclipse.jetty.io;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <p>A {@link ByteBufferPool.Lease} that slices small buffers out of larger
+ * pooled {@link RetainableByteBuffer}s, called slabs.</p>
+ * <p>Flushers typically generate many small buffers (for example frame headers)
+ * that are written together with a single gather write; with this lease all those
+ * buffers are backed by one pooled slab, rather than each buffer being acquired
+ * from and released to the {@link ByteBufferPool}.</p>
+ * <p>The slab references held by this lease are released when the lease is
+ * {@link #recycle() recycled}, except for the current slabs that are reused by
+ * the next cycle; {@link #dispose()} releases all the slabs.</p>
+ * <p>Like its parent class, this class is not thread-safe.</p>
+ */
+public class RetainableByteBufferLease extends ByteBufferPool.Lease
+{
+    private final ByteBufferPool byteBufferPool;
+    private final int slabSize;
+    private final int maxSliceSize;
+    private final List<RetainableByteBuffer> slabs = new ArrayList<>();
+    private final Set<ByteBuffer> slices = Collections.newSetFromMap(new IdentityHashMap<>());
+    private RetainableByteBuffer directSlab;
+    private RetainableByteBuffer heapSlab;
+
+    public RetainableByteBufferLease(ByteBufferPool byteBufferPool)
+    {
+        this(byteBufferPool, 4096, 512);
+    }
+
+    /**
+     * @param byteBufferPool the pool to acquire slabs and large buffers from
+     * @param slabSize the size of the slabs
+     * @param maxSliceSize the max buffer capacity that is sliced out of a slab
+     */
+    public RetainableByteBufferLease(ByteBufferPool byteBufferPool, int slabSize, int maxSliceSize)
+    {
+        super(byteBufferPool);
+        if (maxSliceSize > slabSize)
+            throw new IllegalArgumentException("maxSliceSize must not be greater than slabSize");
+        this.byteBufferPool = byteBufferPool;
+        this.slabSize = slabSize;
+        this.maxSliceSize = maxSliceSize;
+    }
+
+    @Override
+    public ByteBuffer acquire(int capacity, boolean direct)
+    {
+        if (capacity > maxSliceSize)
+            return super.acquire(capacity, direct);
+
+        RetainableByteBuffer slab = direct ? directSlab : heapSlab;
+        if (slab == null || slab.getBuffer().capacity() - slab.getBuffer().limit() < capacity)
+        {
+            slab = new RetainableByteBuffer(byteBufferPool, slabSize, direct);
+            slab.clear();
+            slabs.add(slab);
+            if (direct)
+                directSlab = slab;
+            else
+                heapSlab = slab;
+        }
+
+        // The slab limit is used as the allocation pointer.
+        ByteBuffer buffer = slab.getBuffer();
+        int offset = buffer.limit();
+        buffer.limit(offset + capacity);
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(offset);
+        slice = slice.slice();
+        slices.add(slice);
+        return slice;
+    }
+
+    @Override
+    public void release(ByteBuffer buffer)
+    {
+        // Slices are released with their slab.
+        if (!slices.remove(buffer))
+            super.release(buffer);
+    }
+
+    @Override
+    public void recycle()
+    {
+        super.recycle();
+        slices.clear();
+        for (RetainableByteBuffer slab : slabs)
+        {
+            if (slab != directSlab && slab != heapSlab)
+                slab.release();
+        }
+        slabs.clear();
+        directSlab = reuse(directSlab);
+        heapSlab = reuse(heapSlab);
+    }
+
+    private RetainableByteBuffer reuse(RetainableByteBuffer slab)
+    {
+        if (slab == null)
+            return null;
+        slab.clear();
+        slabs.add(slab);
+        return slab;
+    }
+
+    /**
+     * <p>Recycles this lease and releases all the slabs.</p>
+     */
+    public void dispose()
+    {
+        recycle();
+        slabs.forEach(RetainableByteBuffer::release);
+        slabs.clear();
+        directSlab = null;
+        heapSlab = null;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{slabs=%d,slices=%d}", getClass().getSimpleName(), hashCode(), slabs.size(), slices.size());
+    }
+}
@@ -0,0 +1,188 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+
+package org.eclipse.jetty.io;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPoolBudget;
+
+/**
+ * <p>A group of {@link ManagedSelector}s with a dedicated thread pool.</p>
+ * <p>The selectors of a group produce their tasks with the threads of the group,
+ * so that the selection, parsing and handling of a connection stay within the group.
+ * On multi-socket machines, this keeps the memory touched by a connection
+ * local to the threads that the OS scheduler keeps on the same cores.</p>
+ *
+ * @see SelectorManager#setSelectorGroups(int)
+ */
+@ManagedObject("A group of selectors with dedicated threads")
+public class SelectorGroup extends ContainerLifeCycle
+{
+    private static final ThreadLocal<SelectorGroup> CURRENT = new ThreadLocal<>();
+
+    private final AtomicInteger _connections = new AtomicInteger();
+    private final AtomicInteger _maxConnections = new AtomicInteger();
+    private final int _id;
+    private final int _selectors;
+    private final QueuedThreadPool _threadPool;
+    private ThreadPoolBudget.Lease _lease;
+
+    /**
+     * @param name the name of the group, used to name its threads
+     * @param id the id of the group
+     * @param selectors the number of selectors in the group
+     * @param threads the maximum number of threads of the group
+     */
+    public SelectorGroup(String name, int id, int selectors, int threads)
+    {
+        _id = id;
+        _selectors = selectors;
+        _threadPool = new QueuedThreadPool(threads, Math.min(threads, selectors + 1), 60000, -1, null, null, this::newThread);
+        _threadPool.setName(name + "-group-" + id);
+        addBean(_threadPool);
+    }
+
+    /**
+     * @return the group of the current thread, or null if the current thread does not belong to a group
+     */
+    public static SelectorGroup getCurrentSelectorGroup()
+    {
+        return CURRENT.get();
+    }
+
+    private Thread newThread(Runnable runnable)
+    {
+        return _threadPool.newThread(() ->
+        {
+            CURRENT.set(this);
+            runnable.run();
+        });
+    }
+
+    @ManagedAttribute("The id of the group")
+    public int getId()
+    {
+        return _id;
+    }
+
+    @ManagedAttribute("The number of selectors in the group")
+    public int getSelectorCount()
+    {
+        return _selectors;
+    }
+
+    /**
+     * @return the executor of the tasks produced by the selectors of the group
+     */
+    public Executor getExecutor()
+    {
+        return _threadPool;
+    }
+
+    @ManagedAttribute("The number of open connections in the group")
+    public int getConnectionCount()
+    {
+        return _connections.get();
+    }
+
+    @ManagedAttribute("The maximum number of concurrently open connections in the group")
+    public int getMaxConnectionCount()
+    {
+        return _maxConnections.get();
+    }
+
+    @ManagedAttribute("The number of busy threads of the group")
+    public int getBusyThreads()
+    {
+        return _threadPool.getBusyThreads();
+    }
+
+    @ManagedAttribute("The number of jobs queued in the group")
+    public int getQueueSize()
+    {
+        return _threadPool.getQueueSize();
+    }
+
+    @ManagedAttribute("The load of the group, as the percentage of busy threads over the maximum number of threads")
+    public int getLoad()
+    {
+        return 100 * _threadPool.getBusyThreads() / Math.max(1, _threadPool.getMaxThreads());
+    }
+
+    /**
+     * Executes the given task with the threads of the group.
+     *
+     * @param task the task to execute
+     */
+    public void execute(Runnable task)
+    {
+        _threadPool.execute(task);
+    }
+
+    void onEndPointOpened()
+    {
+        int connections = _connections.incrementAndGet();
+        _maxConnections.accumulateAndGet(connections, Math::max);
+    }
+
+    void onEndPointClosed()
+    {
+        _connections.decrementAndGet();
+    }
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        _lease = ThreadPoolBudget.leaseFrom(_threadPool, this, _selectors);
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        try
+        {
+            super.doStop();
+        }
+        finally
+        {
+            if (_lease != null)
+                _lease.close();
+            _lease = null;
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[id=%d,selectors=%d,connections=%d,load=%d%%]",
+            getClass().getSimpleName(),
+            hashCode(),
+            getId(),
+            getSelectorCount(),
+            getConnectionCount(),
+            getLoad());
+    }
+}
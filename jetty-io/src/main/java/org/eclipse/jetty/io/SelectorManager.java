@@ -68,6 +68,9 @@ public abstract class SelectorManager extends ContainerLifeCycle implements Dump
     private final List<AcceptListener> _acceptListeners = new ArrayList<>();
     private long _connectTimeout = DEFAULT_CONNECT_TIMEOUT;
     private ThreadPoolBudget.Lease _lease;
+    private int _selectorGroupCount;
+    private int _selectorGroupThreads = -1;
+    private SelectorGroup[] _selectorGroups;
 
     private static int defaultSelectors(Executor executor)
     {
@@ -153,6 +156,64 @@ public abstract class SelectorManager extends ContainerLifeCycle implements Dump
         return _selectors.length;
     }
 
+    /**
+     * @return the number of selector groups, or 0 if selectors are not grouped
+     * @see #setSelectorGroups(int)
+     */
+    @ManagedAttribute("The number of selector groups, or 0 if selectors are not grouped")
+    public int getSelectorGroups()
+    {
+        return _selectorGroupCount;
+    }
+
+    /**
+     * <p>Partitions the selectors into the given number of {@link SelectorGroup}s,
+     * each with its own dedicated thread pool.</p>
+     * <p>The number of groups is capped to the number of selectors.</p>
+     *
+     * @param groups the number of selector groups, or 0 to not group selectors
+     */
+    public void setSelectorGroups(int groups)
+    {
+        if (isStarted())
+            throw new IllegalStateException(getState());
+        _selectorGroupCount = Math.max(0, Math.min(groups, _selectors.length));
+    }
+
+    /**
+     * @return the maximum number of threads of each selector group, or -1 for a default
+     * derived from the size of the executor
+     */
+    @ManagedAttribute("The maximum number of threads of each selector group")
+    public int getSelectorGroupThreads()
+    {
+        return _selectorGroupThreads;
+    }
+
+    /**
+     * @param threads the maximum number of threads of each selector group, or -1 for a
+     * default derived from the size of the executor
+     */
+    public void setSelectorGroupThreads(int threads)
+    {
+        if (isStarted())
+            throw new IllegalStateException(getState());
+        _selectorGroupThreads = threads;
+    }
+
+    /**
+     * @param selectorId the id of a selector
+     * @return the group of the given selector, or null if selectors are not grouped
+     */
+    public SelectorGroup getSelectorGroup(int selectorId)
+    {
+        SelectorGroup[] groups = _selectorGroups;
+        if (groups == null)
+            return null;
+        // Consecutive selectors belong to the same group.
+        return groups[selectorId * groups.length / _selectors.length];
+    }
+
     private ManagedSelector chooseSelector()
     {
         return _selectors[_selectorIndex.updateAndGet(_selectorIndexUpdate)];
@@ -199,6 +260,21 @@ public abstract class SelectorManager extends ContainerLifeCycle implements Dump
         selector.submit(selector.new Accept(channel, attachment));
     }
 
+    /**
+     * <p>Registers a channel to perform non-blocking read/write operations
+     * with the selector of the given id.</p>
+     *
+     * @param channel the channel to register
+     * @param attachment the attachment object
+     * @param selectorId the id of the selector, between 0 and {@link #getSelectorCount()} (excluded)
+     * @see #accept(SelectableChannel, Object)
+     */
+    public void accept(SelectableChannel channel, Object attachment, int selectorId)
+    {
+        ManagedSelector selector = _selectors[selectorId];
+        selector.submit(selector.new Accept(channel, attachment));
+    }
+
     /**
      * <p>Registers a server channel for accept operations.
      * When a {@link SocketChannel} is accepted from the given {@link ServerSocketChannel}
@@ -230,10 +306,54 @@ public abstract class SelectorManager extends ContainerLifeCycle implements Dump
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * <p>Registers a server channel for accept operations with the selector of the given id.</p>
+     *
+     * @param server the server channel to register
+     * @param selectorId the id of the selector, between 0 and {@link #getSelectorCount()} (excluded)
+     * @return A Closable that allows the acceptor to be cancelled
+     * @see #acceptor(SelectableChannel)
+     */
+    public Closeable acceptor(SelectableChannel server, int selectorId)
+    {
+        ManagedSelector selector = _selectors[selectorId];
+        ManagedSelector.Acceptor acceptor = selector.new Acceptor(server);
+        selector.submit(acceptor);
+        return acceptor;
+    }
+
+    /**
+     * <p>Callback method when a channel is accepted from the given {@link ServerSocketChannel}.</p>
+     * <p>The default implementation calls {@link #accepted(SelectableChannel)}, and may be
+     * overridden by subclasses that register several server channels.</p>
+     *
+     * @param server the server channel that accepted the channel
+     * @param channel the accepted channel
+     * @throws IOException if unable to accept channel
+     */
+    protected void accepted(SelectableChannel server, SelectableChannel channel) throws IOException
+    {
+        accepted(channel);
+    }
+
     @Override
     protected void doStart() throws Exception
     {
-        _lease = ThreadPoolBudget.leaseFrom(getExecutor(), this, _selectors.length);
+        if (_selectorGroupCount > 0)
+        {
+            _selectorGroups = new SelectorGroup[_selectorGroupCount];
+            for (int i = 0; i < _selectorGroups.length; i++)
+            {
+                int selectors = (i + 1) * _selectors.length / _selectorGroups.length - i * _selectors.length / _selectorGroups.length;
+                SelectorGroup group = newSelectorGroup(i, selectors);
+                _selectorGroups[i] = group;
+                addBean(group);
+            }
+        }
+        else
+        {
+            _lease = ThreadPoolBudget.leaseFrom(getExecutor(), this, _selectors.length);
+        }
         for (int i = 0; i < _selectors.length; i++)
         {
             ManagedSelector selector = newSelector(i);
@@ -254,6 +374,26 @@ public abstract class SelectorManager extends ContainerLifeCycle implements Dump
         return new ManagedSelector(this, id);
     }
 
+    /**
+     * <p>Factory method for {@link SelectorGroup}.</p>
+     *
+     * @param id the id of the group
+     * @param selectors the number of selectors in the group
+     * @return a new {@link SelectorGroup}
+     */
+    protected SelectorGroup newSelectorGroup(int id, int selectors)
+    {
+        int threads = getSelectorGroupThreads();
+        if (threads <= 0)
+        {
+            int maxThreads = executor instanceof ThreadPool.SizedThreadPool ? ((ThreadPool.SizedThreadPool)executor).getMaxThreads() : 200;
+            threads = maxThreads / _selectorGroupCount;
+        }
+        // Each group needs threads for its selectors and to run tasks.
+        threads = Math.max(threads, selectors + 4);
+        return new SelectorGroup(getClass().getSimpleName() + "@" + Integer.toHexString(hashCode()), id, selectors, threads);
+    }
+
     protected Selector newSelector() throws IOException
     {
         return Selector.open();
@@ -275,8 +415,18 @@ public abstract class SelectorManager extends ContainerLifeCycle implements Dump
                     removeBean(selector);
             }
             Arrays.fill(_selectors, null);
+            SelectorGroup[] groups = _selectorGroups;
+            _selectorGroups = null;
+            if (groups != null)
+            {
+                for (SelectorGroup group : groups)
+                {
+                    removeBean(group);
+                }
+            }
             if (_lease != null)
                 _lease.close();
+            _lease = null;
         }
     }
 
@@ -0,0 +1,162 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+
+package org.eclipse.jetty.io;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.io.DirectSlabAllocator.Fallback;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DirectSlabAllocatorTest
+{
+    @Test
+    public void testBuffersSlicedFromSlab()
+    {
+        DirectSlabAllocator slabs = new DirectSlabAllocator(8192, 65536, Fallback.FAIL);
+        ArrayByteBufferPool bufferPool = new ArrayByteBufferPool(0, 1024, 8192, -1, -1, slabs);
+
+        ByteBuffer buffer = bufferPool.acquire(1000, true);
+        assertTrue(buffer.isDirect());
+        assertEquals(1024, buffer.capacity());
+        assertEquals(0, buffer.remaining());
+        assertEquals(8192, slabs.getMemory());
+        assertEquals(7, bufferPool.getDirectByteBufferCount());
+
+        bufferPool.release(buffer);
+        assertEquals(8, bufferPool.getDirectByteBufferCount());
+        assertSame(buffer, bufferPool.acquire(1000, true));
+        assertEquals(8192, bufferPool.getSlabMemory());
+    }
+
+    @Test
+    public void testHeapBuffersNotSlabbed()
+    {
+        DirectSlabAllocator slabs = new DirectSlabAllocator(8192, 65536, Fallback.FAIL);
+        ArrayByteBufferPool bufferPool = new ArrayByteBufferPool(0, 1024, 8192, -1, -1, slabs);
+
+        ByteBuffer buffer = bufferPool.acquire(1000, false);
+        assertFalse(buffer.isDirect());
+        bufferPool.release(buffer);
+        assertEquals(0, slabs.getMemory());
+        assertEquals(1, bufferPool.getHeapByteBufferCount());
+    }
+
+    @Test
+    public void testForeignBufferDiscarded()
+    {
+        DirectSlabAllocator slabs = new DirectSlabAllocator(8192, 65536, Fallback.FAIL);
+        ArrayByteBufferPool bufferPool = new ArrayByteBufferPool(0, 1024, 8192, -1, -1, slabs);
+
+        bufferPool.release(bufferPool.acquire(1024, true));
+        long free = bufferPool.getDirectByteBufferCount();
+        bufferPool.release(ByteBuffer.allocateDirect(1024));
+        assertEquals(free, bufferPool.getDirectByteBufferCount());
+    }
+
+    @Test
+    public void testForeignBufferDiscardedWhileSliceOutstanding()
+    {
+        DirectSlabAllocator slabs = new DirectSlabAllocator(2048, 2048, Fallback.FAIL);
+
+        ByteBuffer slice1 = slabs.acquire(1024);
+        ByteBuffer slice2 = slabs.acquire(1024);
+        assertEquals(0, slabs.getFreeByteBufferCount());
+
+        // A foreign buffer of the same capacity does not take the place of a slice.
+        assertFalse(slabs.release(ByteBuffer.allocateDirect(1024)));
+        assertEquals(0, slabs.getFreeByteBufferCount());
+
+        assertTrue(slabs.release(slice2));
+        assertTrue(slabs.release(slice1));
+        assertEquals(2, slabs.getFreeByteBufferCount());
+        assertSame(slice1, slabs.acquire(1024));
+        assertSame(slice2, slabs.acquire(1024));
+    }
+
+    @Test
+    public void testFallbackHeap()
+    {
+        DirectSlabAllocator slabs = new DirectSlabAllocator(2048, 2048, Fallback.HEAP);
+        ArrayByteBufferPool bufferPool = new ArrayByteBufferPool(0, 1024, 8192, -1, -1, slabs);
+
+        assertTrue(bufferPool.acquire(1024, true).isDirect());
+        assertTrue(bufferPool.acquire(1024, true).isDirect());
+        ByteBuffer buffer = bufferPool.acquire(1024, true);
+        assertFalse(buffer.isDirect());
+        assertEquals(1024, buffer.capacity());
+        assertEquals(1, slabs.getFallbackCount());
+        assertEquals(2048, slabs.getMemory());
+    }
+
+    @Test
+    public void testFallbackFail()
+    {
+        DirectSlabAllocator slabs = new DirectSlabAllocator(2048, 2048, Fallback.FAIL);
+        ArrayByteBufferPool bufferPool = new ArrayByteBufferPool(0, 1024, 8192, -1, -1, slabs);
+
+        bufferPool.acquire(2048, true);
+        assertThrows(IllegalStateException.class, () -> bufferPool.acquire(2048, true));
+        // Other capacities cannot exceed the limit either.
+        assertThrows(IllegalStateException.class, () -> bufferPool.acquire(1024, true));
+    }
+
+    @Test
+    public void testFallbackBlock() throws Exception
+    {
+        DirectSlabAllocator slabs = new DirectSlabAllocator(2048, 2048, Fallback.BLOCK, 5000);
+        ArrayByteBufferPool bufferPool = new ArrayByteBufferPool(0, 1024, 8192, -1, -1, slabs);
+
+        List<ByteBuffer> buffers = new ArrayList<>();
+        buffers.add(bufferPool.acquire(1024, true));
+        buffers.add(bufferPool.acquire(1024, true));
+
+        CompletableFuture<ByteBuffer> blocked = CompletableFuture.supplyAsync(() -> bufferPool.acquire(1024, true));
+        Thread.sleep(500);
+        assertFalse(blocked.isDone());
+
+        bufferPool.release(buffers.get(1));
+        assertSame(buffers.get(1), blocked.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSlabOccupancy()
+    {
+        DirectSlabAllocator slabs = new DirectSlabAllocator(4096, 65536, Fallback.FAIL);
+        ArrayByteBufferPool bufferPool = new ArrayByteBufferPool(0, 1024, 8192, -1, -1, slabs);
+
+        bufferPool.acquire(1024, true);
+        bufferPool.acquire(2048, true);
+
+        List<String> occupancy = bufferPool.getSlabOccupancy();
+        assertEquals(2, occupancy.size());
+        assertEquals("capacity=1024,used=1,free=3,total=4", occupancy.get(0));
+        assertEquals("capacity=2048,used=1,free=1,total=2", occupancy.get(1));
+    }
+}
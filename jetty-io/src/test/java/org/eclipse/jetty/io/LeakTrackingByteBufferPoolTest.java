@@ -0,0 +1,101 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+
+package org.eclipse.jetty.io;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class LeakTrackingByteBufferPoolTest
+{
+    @Test
+    public void testProfileCallSites()
+    {
+        LeakTrackingByteBufferPool bufferPool = new LeakTrackingByteBufferPool(new ArrayByteBufferPool());
+
+        for (int i = 0; i < 10; ++i)
+        {
+            acquireSmall(bufferPool);
+        }
+        acquireLarge(bufferPool);
+
+        assertEquals(11, bufferPool.getSampledAcquires());
+        assertEquals(0, bufferPool.getLeakedReleases());
+
+        List<String> hotSpots = bufferPool.getHotSpots();
+        assertEquals(2, hotSpots.size());
+        assertThat(hotSpots.get(0), containsString("acquireLarge"));
+        assertThat(hotSpots.get(0), containsString("acquires=1,bytes=65536"));
+        assertThat(hotSpots.get(1), containsString("acquireSmall"));
+        assertThat(hotSpots.get(1), containsString("acquires=10,bytes=10240"));
+
+        List<String> capacities = bufferPool.getCapacityDistribution();
+        assertEquals(List.of("capacity=1024,acquires=10", "capacity=65536,acquires=1"), capacities);
+
+        assertThat(bufferPool.dump(), containsString("acquireSmall"));
+
+        bufferPool.clearProfile();
+        assertEquals(0, bufferPool.getHotSpots().size());
+    }
+
+    @Test
+    public void testSampling()
+    {
+        int sampleRate = 10;
+        LeakTrackingByteBufferPool bufferPool = new LeakTrackingByteBufferPool(new ArrayByteBufferPool(), sampleRate);
+
+        int count = 10000;
+        for (int i = 0; i < count; ++i)
+        {
+            acquireSmall(bufferPool);
+        }
+
+        long sampled = bufferPool.getSampledAcquires();
+        assertThat(sampled, greaterThan(0L));
+        assertThat(sampled, lessThan((long)count / 2));
+        // Untracked buffers are not reported as leaks.
+        assertEquals(0, bufferPool.getLeakedReleases());
+    }
+
+    @Test
+    public void testLeakedReleaseWhenTrackingAll()
+    {
+        LeakTrackingByteBufferPool bufferPool = new LeakTrackingByteBufferPool(new ArrayByteBufferPool());
+        bufferPool.release(ByteBuffer.allocate(1024));
+        assertEquals(1, bufferPool.getLeakedReleases());
+    }
+
+    private void acquireSmall(ByteBufferPool bufferPool)
+    {
+        bufferPool.release(bufferPool.acquire(1000, false));
+    }
+
+    private void acquireLarge(ByteBufferPool bufferPool)
+    {
+        bufferPool.release(bufferPool.acquire(65536, false));
+    }
+}
@@ -0,0 +1,162 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+
+package org.eclipse.jetty.io;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MagazineByteBufferPoolTest
+{
+    @Test
+    public void testMinimumRelease()
+    {
+        MagazineByteBufferPool bufferPool = new MagazineByteBufferPool(10, 100, 1000);
+
+        for (int size = 1; size <= 9; size++)
+        {
+            ByteBuffer buffer = bufferPool.acquire(size, true);
+            assertTrue(buffer.isDirect());
+            assertEquals(size, buffer.capacity());
+            bufferPool.release(buffer);
+            assertNotSame(buffer, bufferPool.acquire(size, true));
+        }
+        assertEquals(0, bufferPool.getHitCount());
+    }
+
+    @Test
+    public void testMaxRelease()
+    {
+        MagazineByteBufferPool bufferPool = new MagazineByteBufferPool(10, 100, 1000);
+
+        for (int size = 999; size <= 1001; size++)
+        {
+            bufferPool.clear();
+            ByteBuffer buffer = bufferPool.acquire(size, true);
+            assertTrue(buffer.isDirect());
+            assertThat(buffer.capacity(), greaterThanOrEqualTo(size));
+            bufferPool.release(buffer);
+            assertEquals(size <= 1000, buffer == bufferPool.acquire(size, true));
+        }
+    }
+
+    @Test
+    public void testAcquireReleaseAcquire()
+    {
+        MagazineByteBufferPool bufferPool = new MagazineByteBufferPool(10, 100, 1000);
+
+        for (int size = 390; size <= 510; size++)
+        {
+            bufferPool.clear();
+            ByteBuffer buffer1 = bufferPool.acquire(size, true);
+            bufferPool.release(buffer1);
+            ByteBuffer buffer2 = bufferPool.acquire(size, true);
+            assertSame(buffer1, buffer2);
+            bufferPool.release(buffer2);
+            ByteBuffer buffer3 = bufferPool.acquire(size, false);
+            assertNotSame(buffer2, buffer3);
+            bufferPool.release(buffer3);
+        }
+    }
+
+    @Test
+    public void testMagazineFlushedToDepot() throws Exception
+    {
+        int magazineCapacity = 4;
+        MagazineByteBufferPool bufferPool = new MagazineByteBufferPool(0, 1024, 8192, -1, -1, -1, magazineCapacity);
+
+        List<ByteBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < 3 * magazineCapacity; ++i)
+        {
+            buffers.add(bufferPool.acquire(1024, true));
+        }
+        assertEquals(3 * magazineCapacity, bufferPool.getMissCount());
+
+        buffers.forEach(bufferPool::release);
+        // The last magazine is still cached by this thread.
+        assertEquals(2 * magazineCapacity, bufferPool.getDirectByteBufferCount());
+        assertEquals(2L * magazineCapacity * 1024, bufferPool.getDirectMemory());
+
+        // Another thread can only acquire from the depot.
+        CountDownLatch latch = new CountDownLatch(1);
+        new Thread(() ->
+        {
+            for (int i = 0; i < 2 * magazineCapacity; ++i)
+            {
+                assertTrue(buffers.contains(bufferPool.acquire(1024, true)));
+            }
+            latch.countDown();
+        }).start();
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(0, bufferPool.getDirectByteBufferCount());
+        assertEquals(0, bufferPool.getDirectMemory());
+        assertEquals(2 * magazineCapacity, bufferPool.getHitCount());
+    }
+
+    @Test
+    public void testMaxQueueLength()
+    {
+        int magazineCapacity = 2;
+        MagazineByteBufferPool bufferPool = new MagazineByteBufferPool(0, 1024, 8192, 4, -1, -1, magazineCapacity);
+
+        List<ByteBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < 10; ++i)
+        {
+            buffers.add(bufferPool.acquire(1024, false));
+        }
+        buffers.forEach(bufferPool::release);
+
+        assertEquals(4, bufferPool.getHeapByteBufferCount());
+        assertThat(bufferPool.getEvictionCount(), greaterThan(0L));
+    }
+
+    @Test
+    public void testMaxMemory()
+    {
+        int factor = 1024;
+        int maxMemory = 11 * factor;
+        MagazineByteBufferPool bufferPool = new MagazineByteBufferPool(0, factor, 8 * factor, -1, -1, maxMemory, 2);
+
+        for (int size = 1; size <= 8; ++size)
+        {
+            List<ByteBuffer> buffers = new ArrayList<>();
+            for (int i = 0; i < 4; ++i)
+            {
+                buffers.add(bufferPool.acquire(size * factor, true));
+            }
+            buffers.forEach(bufferPool::release);
+            assertThat(bufferPool.getDirectMemory(), lessThanOrEqualTo((long)maxMemory));
+        }
+        assertThat(bufferPool.getEvictionCount(), greaterThan(0L));
+    }
+}
@@ -0,0 +1,98 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+
+package org.eclipse.jetty.io;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RetainableByteBufferLeaseTest
+{
+    @Test
+    public void testSmallBuffersShareOneSlab()
+    {
+        ArrayByteBufferPool bufferPool = new ArrayByteBufferPool(0, 1024, 8192);
+        RetainableByteBufferLease lease = new RetainableByteBufferLease(bufferPool, 1024, 128);
+
+        for (int i = 0; i < 8; ++i)
+        {
+            ByteBuffer header = lease.acquire(9, true);
+            assertTrue(header.isDirect());
+            assertEquals(0, header.position());
+            assertEquals(9, header.limit());
+            assertEquals(9, header.capacity());
+            header.put((byte)i);
+            header.flip();
+            lease.append(header, true);
+        }
+        assertEquals(8, lease.getSize());
+        for (int i = 0; i < 8; ++i)
+        {
+            assertEquals(i, lease.getByteBuffers().get(i).get(0));
+        }
+
+        lease.recycle();
+        // The current slab is kept for the next cycle.
+        assertEquals(0, bufferPool.getDirectByteBufferCount());
+
+        lease.dispose();
+        assertEquals(1, bufferPool.getDirectByteBufferCount());
+    }
+
+    @Test
+    public void testLargeBuffersFromPool()
+    {
+        ArrayByteBufferPool bufferPool = new ArrayByteBufferPool(0, 1024, 8192);
+        RetainableByteBufferLease lease = new RetainableByteBufferLease(bufferPool, 1024, 128);
+
+        ByteBuffer buffer = lease.acquire(2048, false);
+        assertFalse(buffer.isDirect());
+        assertEquals(2048, buffer.capacity());
+        lease.append(buffer, true);
+
+        lease.recycle();
+        assertEquals(1, bufferPool.getHeapByteBufferCount());
+        assertSame(buffer, bufferPool.acquire(2048, false));
+    }
+
+    @Test
+    public void testFullSlabIsReleased()
+    {
+        ArrayByteBufferPool bufferPool = new ArrayByteBufferPool(0, 1024, 8192);
+        RetainableByteBufferLease lease = new RetainableByteBufferLease(bufferPool, 1024, 512);
+
+        lease.append(lease.acquire(512, false), true);
+        lease.append(lease.acquire(512, false), true);
+        // Does not fit in the first slab.
+        lease.append(lease.acquire(1, false), true);
+
+        lease.recycle();
+        assertEquals(1, bufferPool.getHeapByteBufferCount());
+
+        // The current slab is reused.
+        lease.acquire(1, false);
+        assertEquals(1, bufferPool.getHeapByteBufferCount());
+    }
+}
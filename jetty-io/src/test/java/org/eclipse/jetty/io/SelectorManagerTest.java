@@ -25,11 +25,16 @@ import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.IO;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.eclipse.jetty.util.thread.TimerScheduler;
 import org.junit.jupiter.api.AfterEach;
@@ -37,7 +42,15 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.condition.DisabledIfSystemProperty;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class SelectorManagerTest
@@ -163,4 +176,83 @@ public class SelectorManagerTest
             selectorManager.stop();
         }
     }
+
+    @Test
+    public void testSelectorGroups() throws Exception
+    {
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress("localhost", 0));
+        SocketAddress address = server.getLocalAddress();
+
+        int connections = 8;
+        CountDownLatch latch = new CountDownLatch(connections);
+        Queue<String> failures = new ConcurrentLinkedQueue<>();
+        SelectorManager selectorManager = new SelectorManager(executor, scheduler, 4)
+        {
+            @Override
+            protected EndPoint newEndPoint(SelectableChannel channel, ManagedSelector selector, SelectionKey key)
+            {
+                // The endPoint is created by a thread of the group of its selector.
+                if (SelectorGroup.getCurrentSelectorGroup() != selector.getSelectorGroup())
+                    failures.add("wrong group " + SelectorGroup.getCurrentSelectorGroup() + " for " + selector);
+                return new SocketChannelEndPoint((SocketChannel)channel, selector, key, getScheduler());
+            }
+
+            @Override
+            public Connection newConnection(SelectableChannel channel, EndPoint endpoint, Object attachment)
+            {
+                return new AbstractConnection(endpoint, executor)
+                {
+                    @Override
+                    public void onFillable()
+                    {
+                    }
+                };
+            }
+
+            @Override
+            protected void endPointOpened(EndPoint endpoint)
+            {
+                latch.countDown();
+            }
+        };
+        selectorManager.setSelectorGroups(2);
+        selectorManager.start();
+
+        List<SocketChannel> clients = new ArrayList<>();
+        try
+        {
+            assertEquals(2, selectorManager.getSelectorGroups());
+            SelectorGroup group0 = selectorManager.getSelectorGroup(0);
+            SelectorGroup group1 = selectorManager.getSelectorGroup(3);
+            assertNotNull(group0);
+            assertNotNull(group1);
+            assertSame(group0, selectorManager.getSelectorGroup(1));
+            assertSame(group1, selectorManager.getSelectorGroup(2));
+            assertNotSame(group0, group1);
+            assertEquals(2, group0.getSelectorCount());
+
+            for (int i = 0; i < connections; i++)
+            {
+                clients.add(SocketChannel.open(address));
+                SocketChannel channel = server.accept();
+                channel.configureBlocking(false);
+                selectorManager.accept(channel);
+            }
+
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertThat(failures, empty());
+            assertEquals(connections, group0.getConnectionCount() + group1.getConnectionCount());
+            assertThat(group0.getConnectionCount(), greaterThan(0));
+            assertThat(group1.getConnectionCount(), greaterThan(0));
+        }
+        finally
+        {
+            clients.forEach(IO::close);
+            selectorManager.stop();
+            server.close();
+        }
+
+        assertNull(selectorManager.getSelectorGroup(0));
+    }
 }
@@ -0,0 +1,186 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.http;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Parses a request with many headers, as added by proxies, into
+ * {@link HttpFields.Mutable} or {@link HttpFields.Indexed}, and then
+ * looks up headers like a server and a web application would.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HttpFieldsBenchmark
+{
+    private static final String[] NAMES = {
+        "Host", "Content-Type", "Accept-Encoding", "X-Forwarded-For", "X-Request-Id", "Authorization", "X-Missing"
+    };
+    private static final HttpHeader[] HEADERS = {
+        HttpHeader.HOST, HttpHeader.CONTENT_TYPE, HttpHeader.CONTENT_LENGTH, HttpHeader.TRANSFER_ENCODING,
+        HttpHeader.EXPECT, HttpHeader.CONNECTION, HttpHeader.FORWARDED
+    };
+
+    @Param({"Mutable", "Indexed"})
+    public static String FIELDS_TYPE;
+
+    @Param({"10", "40"})
+    public static int HEADER_COUNT;
+
+    @Param({"1", "4"})
+    public static int LOOKUPS;
+
+    private ByteBuffer request;
+    private HttpFields.Mutable fields;
+    private HttpParser parser;
+
+    @Setup
+    public void setUp()
+    {
+        StringBuilder builder = new StringBuilder();
+        builder.append("GET /path HTTP/1.1\r\n");
+        builder.append("Host: localhost\r\n");
+        builder.append("Accept-Encoding: gzip, deflate, br\r\n");
+        builder.append("X-Forwarded-For: 10.0.0.1, 10.0.0.2\r\n");
+        builder.append("X-Request-Id: 0123456789abcdef\r\n");
+        for (int i = 4; i < HEADER_COUNT; i++)
+        {
+            builder.append("X-Proxy-Header-").append(i).append(": value-").append(i).append("\r\n");
+        }
+        builder.append("\r\n");
+        request = ByteBuffer.wrap(builder.toString().getBytes(StandardCharsets.ISO_8859_1));
+
+        switch (FIELDS_TYPE)
+        {
+            case "Mutable":
+                fields = HttpFields.build();
+                break;
+            case "Indexed":
+                fields = new HttpFields.Indexed();
+                break;
+            default:
+                throw new IllegalStateException();
+        }
+        parser = new HttpParser(new FieldsHandler(fields));
+    }
+
+    @Benchmark
+    public void testParseThenLookup(Blackhole blackhole)
+    {
+        fields.clear();
+        parser.reset();
+        ByteBuffer buffer = request.slice();
+        if (!parser.parseNext(buffer))
+            throw new IllegalStateException();
+
+        for (int l = 0; l < LOOKUPS; l++)
+        {
+            // Server lookups by header.
+            for (HttpHeader header : HEADERS)
+            {
+                blackhole.consume(fields.get(header));
+            }
+            // Application lookups by name.
+            for (String name : NAMES)
+            {
+                blackhole.consume(fields.get(name));
+            }
+        }
+    }
+
+    private static class FieldsHandler implements HttpParser.RequestHandler
+    {
+        private final HttpFields.Mutable fields;
+
+        private FieldsHandler(HttpFields.Mutable fields)
+        {
+            this.fields = fields;
+        }
+
+        @Override
+        public void startRequest(String method, String uri, HttpVersion version)
+        {
+        }
+
+        @Override
+        public void parsedHeader(HttpField field)
+        {
+            fields.add(field);
+        }
+
+        @Override
+        public boolean headerComplete()
+        {
+            return false;
+        }
+
+        @Override
+        public boolean content(ByteBuffer item)
+        {
+            return false;
+        }
+
+        @Override
+        public boolean contentComplete()
+        {
+            return false;
+        }
+
+        @Override
+        public boolean messageComplete()
+        {
+            return true;
+        }
+
+        @Override
+        public void earlyEOF()
+        {
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(HttpFieldsBenchmark.class.getSimpleName())
+            .warmupIterations(3)
+            .measurementIterations(5)
+            .forks(1)
+            .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,96 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.http;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.BufferUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Generates the response header of a cached static resource, with its
+ * fields either put individually or as a {@link PreEncodedHttpField.Block}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HttpGeneratorBenchmark
+{
+    @Param({"false", "true"})
+    public static boolean BLOCK;
+
+    private final ByteBuffer header = BufferUtil.allocateDirect(4096);
+    private final HttpFields.Mutable fields = HttpFields.build();
+    private MetaData.Response response;
+
+    @Setup
+    public void setUp()
+    {
+        HttpField lastModified = new PreEncodedHttpField(HttpHeader.LAST_MODIFIED, "Wed, 21 Oct 2015 07:28:00 GMT");
+        HttpField contentType = new PreEncodedHttpField(HttpHeader.CONTENT_TYPE, "text/css;charset=utf-8");
+        HttpField etag = new PreEncodedHttpField(HttpHeader.ETAG, "W/\"a1b2c3d4e5f6\"");
+        HttpField vary = new PreEncodedHttpField(HttpHeader.VARY, "Accept-Encoding");
+        HttpField cacheControl = new PreEncodedHttpField(HttpHeader.CACHE_CONTROL, "public, max-age=31536000, immutable");
+
+        fields.add(new PreEncodedHttpField(HttpHeader.DATE, "Sat, 17 Oct 2026 10:00:00 GMT"));
+        fields.add(new PreEncodedHttpField(HttpHeader.CONTENT_LENGTH, "24576"));
+        if (BLOCK)
+            new PreEncodedHttpField.Block(lastModified, contentType, etag, vary, cacheControl).putTo(fields);
+        else
+            fields.add(lastModified).add(contentType).add(etag).add(vary).add(cacheControl);
+        fields.add(new PreEncodedHttpField(HttpHeader.ACCEPT_RANGES, "bytes"));
+
+        response = new MetaData.Response(HttpVersion.HTTP_1_1, 200, null, fields, 24576);
+    }
+
+    @Benchmark
+    public void testGenerateHeader(Blackhole blackhole) throws Exception
+    {
+        HttpGenerator generator = new HttpGenerator();
+        BufferUtil.clearToFill(header);
+        blackhole.consume(generator.generateResponse(response, false, header, null, null, false));
+        BufferUtil.flipToFlush(header, 0);
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(HttpGeneratorBenchmark.class.getSimpleName())
+            .warmupIterations(3)
+            .measurementIterations(5)
+            .forks(1)
+            .build();
+
+        new Runner(opt).run();
+    }
+}
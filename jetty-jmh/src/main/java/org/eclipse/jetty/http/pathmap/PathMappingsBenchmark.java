@@ -0,0 +1,104 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.http.pathmap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Matches paths against a mix of servlet, regex and uri-template mappings,
+ * as used for REST routing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PathMappingsBenchmark
+{
+    @Param({"50", "500"})
+    public static int MAPPINGS;
+
+    private final PathMappings<String> mappings = new PathMappings<>();
+    private final List<String> paths = new ArrayList<>();
+
+    @Setup
+    public void setUp()
+    {
+        // Each resource adds 10 mappings and some paths to match.
+        for (int r = 0; mappings.size() < MAPPINGS; r++)
+        {
+            String resource = "/api/v" + (r % 3) + "/resource" + r;
+            mappings.put(new UriTemplatePathSpec(resource), "list" + r);
+            mappings.put(new UriTemplatePathSpec(resource + "/{id}"), "get" + r);
+            mappings.put(new UriTemplatePathSpec(resource + "/{id}/items"), "items" + r);
+            mappings.put(new UriTemplatePathSpec(resource + "/{id}/items/{item}"), "item" + r);
+            mappings.put(new UriTemplatePathSpec("/{tenant}" + resource + "/{id}"), "tenant" + r);
+            mappings.put(new RegexPathSpec("^/legacy/resource" + r + "/.*\\.do$"), "legacy" + r);
+            mappings.put(new RegexPathSpec("^/download/resource" + r + "/[^/]*\\.zip$"), "download" + r);
+            mappings.put(new ServletPathSpec("/static/resource" + r + "/*"), "static" + r);
+            mappings.put(new ServletPathSpec("/status/resource" + r), "status" + r);
+            mappings.put(new ServletPathSpec("*.ext" + r), "ext" + r);
+
+            paths.add(resource);
+            paths.add(resource + "/1234");
+            paths.add(resource + "/1234/items/5678");
+            paths.add("/acme" + resource + "/1234");
+            paths.add("/legacy/resource" + r + "/some/action.do");
+            paths.add("/download/resource" + r + "/file.zip");
+            paths.add("/static/resource" + r + "/css/main.css");
+            paths.add("/status/resource" + r);
+            paths.add("/unmapped/resource" + r);
+        }
+        mappings.put(new ServletPathSpec("/"), "default");
+    }
+
+    @Benchmark
+    public MappedResource<String> testGetMatch()
+    {
+        String path = paths.get(ThreadLocalRandom.current().nextInt(paths.size()));
+        return mappings.getMatch(path);
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(PathMappingsBenchmark.class.getSimpleName())
+            .warmupIterations(3)
+            .measurementIterations(5)
+            .forks(1)
+            .build();
+
+        new Runner(opt).run();
+    }
+}
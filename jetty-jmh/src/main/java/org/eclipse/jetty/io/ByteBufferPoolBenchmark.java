@@ -0,0 +1,123 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.io;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+@State(Scope.Benchmark)
+public class ByteBufferPoolBenchmark
+{
+    private ByteBufferPool pool;
+
+    @Param({
+        "ArrayByteBufferPool",
+        "MappedByteBufferPool",
+        "MagazineByteBufferPool",
+    })
+    public static String POOL_TYPE;
+
+    @Param({
+        "false",
+        "true",
+    })
+    public static boolean DIRECT;
+
+    @Param({
+        "-1",
+        "1048576",
+    })
+    public static long MAX_MEMORY;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        switch (POOL_TYPE)
+        {
+            case "ArrayByteBufferPool":
+                pool = new ArrayByteBufferPool(0, 1024, 65536, -1, MAX_MEMORY, MAX_MEMORY);
+                break;
+            case "MappedByteBufferPool":
+                pool = new MappedByteBufferPool(1024, -1, null, MAX_MEMORY, MAX_MEMORY);
+                break;
+            case "MagazineByteBufferPool":
+                pool = new MagazineByteBufferPool(0, 1024, 65536, -1, MAX_MEMORY, MAX_MEMORY);
+                break;
+            default:
+                throw new IllegalStateException();
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        System.err.printf("%n%s%n", pool);
+        pool = null;
+    }
+
+    @Benchmark
+    public void testAcquireRelease(Blackhole blackhole)
+    {
+        int size = 1 + ThreadLocalRandom.current().nextInt(32 * 1024);
+        ByteBuffer buffer = pool.acquire(size, DIRECT);
+        blackhole.consume(buffer);
+        pool.release(buffer);
+    }
+
+    @Benchmark
+    public void testAcquireAcquireReleaseRelease(Blackhole blackhole)
+    {
+        // Simulates a read buffer and a write buffer held at the same time.
+        ByteBuffer input = pool.acquire(16 * 1024, DIRECT);
+        ByteBuffer output = pool.acquire(32 * 1024, DIRECT);
+        blackhole.consume(input);
+        blackhole.consume(output);
+        pool.release(input);
+        pool.release(output);
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(ByteBufferPoolBenchmark.class.getSimpleName())
+            .warmupIterations(3)
+            .measurementIterations(3)
+            .forks(1)
+            .threads(32)
+            .resultFormat(ResultFormatType.JSON)
+            .result("/tmp/byteBufferPool-" + System.currentTimeMillis() + ".json")
+            .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,188 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.MultipartConfigElement;
+import javax.servlet.http.Part;
+
+import org.eclipse.jetty.io.ArrayByteBufferPool;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.IO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the parsing of a multipart upload of a single large file, either
+ * with {@link MultiPartFormInputStream} reading the whole request, or with
+ * {@link MultiPartFormParser} fed the content as it arrives.
+ * The content is generated as it is read, so the memory used is only that
+ * of the parser, as reported by the GC profiler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class MultiPartBenchmark
+{
+    private static final String BOUNDARY = "JettyBenchmarkBoundary";
+    private static final int CHUNK = 16 * 1024;
+
+    @Param({"16777216", "1073741824"})
+    public static long SIZE;
+
+    @Param({"InputStream", "Parser"})
+    public static String PARSER;
+
+    private final byte[] head = ("--" + BOUNDARY + "\r\n" +
+        "Content-Disposition: form-data; name=\"upload\"; filename=\"upload.bin\"\r\n" +
+        "Content-Type: application/octet-stream\r\n" +
+        "\r\n").getBytes(StandardCharsets.US_ASCII);
+    private final byte[] tail = ("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+    private final byte[] chunk = new byte[CHUNK];
+    private final ByteBufferPool bufferPool = new ArrayByteBufferPool();
+    private final MultipartConfigElement config = new MultipartConfigElement("", -1, -1, 16 * 1024);
+    private Path tmpDir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        for (int i = 0; i < chunk.length; i++)
+        {
+            chunk[i] = (byte)('a' + i % 26);
+        }
+        tmpDir = Files.createTempDirectory("multipart");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        IO.delete(tmpDir.toFile());
+    }
+
+    @Benchmark
+    public void testUpload(Blackhole blackhole) throws IOException
+    {
+        Part part = "Parser".equals(PARSER) ? parse() : read();
+        blackhole.consume(part.getSize());
+        part.delete();
+    }
+
+    private Part read() throws IOException
+    {
+        MultiPartFormInputStream input = new MultiPartFormInputStream(new UploadInputStream(),
+            "multipart/form-data; boundary=" + BOUNDARY, config, tmpDir.toFile());
+        input.setWriteFilesWithFilenames(true);
+        return input.getPart("upload");
+    }
+
+    private Part parse() throws IOException
+    {
+        Part[] parts = new Part[1];
+        MultiPartFormParser parser = new MultiPartFormParser("multipart/form-data; boundary=" + BOUNDARY,
+            config, tmpDir, bufferPool, part -> parts[0] = part);
+        parser.parse(ByteBuffer.wrap(head), false);
+        for (long size = SIZE; size > 0; size -= CHUNK)
+        {
+            parser.parse(ByteBuffer.wrap(chunk, 0, (int)Math.min(CHUNK, size)), false);
+        }
+        parser.parse(ByteBuffer.wrap(tail), false);
+        parser.parse(BufferUtil.EMPTY_BUFFER, true);
+        return parts[0];
+    }
+
+    /**
+     * Generates the same upload as fed to the parser, as it is read.
+     */
+    private class UploadInputStream extends InputStream
+    {
+        private long position;
+        private final long length = head.length + SIZE + tail.length;
+
+        @Override
+        public int read() throws IOException
+        {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len)
+        {
+            if (position >= length)
+                return -1;
+
+            int read;
+            if (position < head.length)
+            {
+                read = Math.min(len, head.length - (int)position);
+                System.arraycopy(head, (int)position, b, off, read);
+            }
+            else if (position < head.length + SIZE)
+            {
+                long offset = position - head.length;
+                read = (int)Math.min(Math.min(len, CHUNK - offset % CHUNK), SIZE - offset);
+                System.arraycopy(chunk, (int)(offset % CHUNK), b, off, read);
+            }
+            else
+            {
+                int offset = (int)(position - head.length - SIZE);
+                read = Math.min(len, tail.length - offset);
+                System.arraycopy(tail, offset, b, off, read);
+            }
+            position += read;
+            return read;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(MultiPartBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .forks(1)
+            .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,100 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.server;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.http.HostPortHttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpURI;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.MetaData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the handling of the request target, from the parsed string to
+ * {@link Request#setMetaData(MetaData.Request)}.
+ * With {@code PATH} access only the components needed by the request are
+ * extracted from the target, while {@code ALL} access extracts every component,
+ * as was done before the components were lazily extracted.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RequestURIBenchmark
+{
+    @Param({"/index.html", "/api/v1/items?id=42&sort=desc", "/static/../css/site%20main.css?v=3"})
+    public static String TARGET;
+
+    @Param({"PATH", "ALL"})
+    public static String ACCESS;
+
+    private final HttpURI.Mutable uri = HttpURI.build();
+    private final HttpFields.Mutable fields = HttpFields.build();
+    private Request request;
+    private boolean all;
+
+    @Setup
+    public void setUp()
+    {
+        fields.put(new HostPortHttpField("www.example.com:8080"));
+        request = new Request(null, null);
+        all = "ALL".equals(ACCESS);
+    }
+
+    @Benchmark
+    public void testSetMetaData(Blackhole blackhole)
+    {
+        uri.uri("GET", TARGET);
+        request.setMetaData(new MetaData.Request("GET", uri, HttpVersion.HTTP_1_1, fields));
+        HttpURI requestURI = request.getHttpURI();
+        blackhole.consume(requestURI.getPath());
+        if (all)
+        {
+            blackhole.consume(requestURI.getQuery());
+            blackhole.consume(requestURI.getPathQuery());
+            blackhole.consume(requestURI.getDecodedPath());
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(RequestURIBenchmark.class.getSimpleName())
+            .warmupIterations(3)
+            .measurementIterations(5)
+            .forks(1)
+            .build();
+
+        new Runner(opt).run();
+    }
+}
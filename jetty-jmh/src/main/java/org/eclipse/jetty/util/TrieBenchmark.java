@@ -0,0 +1,143 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the {@link Trie} implementations for exact and best match lookups of
+ * a case insensitive set of header names, as done when parsing request headers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TrieBenchmark
+{
+    private static final String[] KEYS = {
+        "Accept", "Accept-Charset", "Accept-Encoding", "Accept-Language", "Accept-Ranges",
+        "Authorization", "Cache-Control", "Connection", "Content-Encoding", "Content-Length",
+        "Content-Type", "Cookie", "Date", "ETag", "Expect", "Host", "If-Match",
+        "If-Modified-Since", "If-None-Match", "If-Range", "If-Unmodified-Since",
+        "Last-Modified", "Origin", "Pragma", "Range", "Referer", "Sec-Fetch-Dest",
+        "Sec-Fetch-Mode", "Sec-Fetch-Site", "Server", "Set-Cookie", "TE", "Transfer-Encoding",
+        "Upgrade", "Upgrade-Insecure-Requests", "User-Agent", "Vary", "Via",
+        "X-Forwarded-For", "X-Forwarded-Host", "X-Forwarded-Proto", "X-Requested-With"
+    };
+
+    @Param({
+        "ArrayTrie",
+        "ArrayTernaryTrie",
+        "TreeTrie",
+        "CompactTrie"
+    })
+    public static String TRIE;
+
+    private Trie<String> trie;
+    private String[] keys;
+    private ByteBuffer[] lines;
+    private ByteBuffer[] directLines;
+
+    @Setup
+    public void setUp()
+    {
+        switch (TRIE)
+        {
+            case "ArrayTrie":
+                trie = new ArrayTrie<>(1024);
+                break;
+            case "ArrayTernaryTrie":
+                trie = new ArrayTernaryTrie<>(true, 1024);
+                break;
+            case "TreeTrie":
+                trie = new TreeTrie<>();
+                break;
+            case "CompactTrie":
+                trie = new TreeTrie<>();
+                break;
+            default:
+                throw new IllegalStateException(TRIE);
+        }
+
+        for (String key : KEYS)
+        {
+            trie.put(key, key);
+        }
+        if ("CompactTrie".equals(TRIE))
+            trie = Trie.immutable(trie);
+
+        keys = new String[KEYS.length];
+        lines = new ByteBuffer[KEYS.length];
+        directLines = new ByteBuffer[KEYS.length];
+        for (int i = 0; i < KEYS.length; i++)
+        {
+            keys[i] = i % 2 == 0 ? KEYS[i] : StringUtil.asciiToLowerCase(KEYS[i]);
+            lines[i] = BufferUtil.toBuffer(keys[i] + ": some value\r\n");
+            directLines[i] = BufferUtil.toDirectBuffer(keys[i] + ": some value\r\n");
+        }
+    }
+
+    @Benchmark
+    public String testGet()
+    {
+        String key = keys[ThreadLocalRandom.current().nextInt(keys.length)];
+        return trie.get(key);
+    }
+
+    @Benchmark
+    public String testGetBestBuffer()
+    {
+        ByteBuffer line = lines[ThreadLocalRandom.current().nextInt(lines.length)];
+        return trie.getBest(line, 0, line.remaining());
+    }
+
+    @Benchmark
+    public String testGetBestDirectBuffer()
+    {
+        ByteBuffer line = directLines[ThreadLocalRandom.current().nextInt(directLines.length)];
+        return trie.getBest(line, 0, line.remaining());
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(TrieBenchmark.class.getSimpleName())
+            .warmupIterations(3)
+            .measurementIterations(5)
+            .forks(1)
+            .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,137 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the decoding of a large url-encoded form, either from a String, from an
+ * InputStream, or with a {@link UrlEncoded.Decoder} fed direct buffers as a connector would.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+public class UrlEncodedBenchmark
+{
+    private static final int CHUNK = 16 * 1024;
+
+    @Param({"10", "1000"})
+    public static int FIELDS;
+
+    @Param({"16", "1024"})
+    public static int VALUE_SIZE;
+
+    @Param({"false", "true"})
+    public static boolean ENCODED;
+
+    private String form;
+    private byte[] bytes;
+    private ByteBuffer[] chunks;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        StringBuilder builder = new StringBuilder();
+        for (int f = 0; f < FIELDS; f++)
+        {
+            if (f > 0)
+                builder.append('&');
+            builder.append("field").append(f).append('=');
+            for (int i = 0; i < VALUE_SIZE; i++)
+            {
+                if (ENCODED && i % 8 == 0)
+                    builder.append("%C3%A4+");
+                else
+                    builder.append((char)('a' + i % 26));
+            }
+        }
+        form = builder.toString();
+        bytes = form.getBytes(StandardCharsets.US_ASCII);
+        chunks = new ByteBuffer[(bytes.length + CHUNK - 1) / CHUNK];
+        for (int i = 0; i < chunks.length; i++)
+        {
+            int offset = i * CHUNK;
+            int length = Math.min(CHUNK, bytes.length - offset);
+            chunks[i] = ByteBuffer.allocateDirect(length);
+            chunks[i].put(bytes, offset, length).flip();
+        }
+    }
+
+    @Benchmark
+    public MultiMap<String> testString()
+    {
+        MultiMap<String> map = new MultiMap<>();
+        UrlEncoded.decodeUtf8To(form, map);
+        return map;
+    }
+
+    @Benchmark
+    public MultiMap<String> testInputStream() throws IOException
+    {
+        MultiMap<String> map = new MultiMap<>();
+        UrlEncoded.decodeUtf8To(new ByteArrayInputStream(bytes), map, -1, -1);
+        return map;
+    }
+
+    @Benchmark
+    public UrlEncoded.Decoder testDecoder()
+    {
+        UrlEncoded.Decoder decoder = new UrlEncoded.Decoder(StandardCharsets.UTF_8, -1, -1);
+        for (ByteBuffer chunk : chunks)
+        {
+            decoder.decode(chunk.slice());
+        }
+        decoder.complete();
+        return decoder;
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(UrlEncodedBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .forks(1)
+            .build();
+
+        new Runner(opt).run();
+    }
+}
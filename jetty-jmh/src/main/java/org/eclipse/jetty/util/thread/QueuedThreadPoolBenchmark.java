@@ -0,0 +1,111 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.util.thread;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.BlockingArrayQueue;
+import org.eclipse.jetty.util.LockFreeBlockingQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the latency from {@link QueuedThreadPool#execute(Runnable)} to the
+ * run of the job, with different job queues, pool sizes and producer threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QueuedThreadPoolBenchmark
+{
+    @Param({"BlockingArrayQueue", "LockFreeBlockingQueue"})
+    public static String QUEUE_TYPE;
+
+    @Param({"8", "64", "200"})
+    public static int THREADS;
+
+    private QueuedThreadPool pool;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        int capacity = Math.max(THREADS, 8) * 1024;
+        BlockingQueue<Runnable> queue;
+        switch (QUEUE_TYPE)
+        {
+            case "BlockingArrayQueue":
+                queue = new BlockingArrayQueue<>(capacity, capacity);
+                break;
+            case "LockFreeBlockingQueue":
+                queue = new LockFreeBlockingQueue<>(capacity);
+                break;
+            default:
+                throw new IllegalStateException();
+        }
+        pool = new QueuedThreadPool(THREADS, THREADS, queue);
+        pool.setReservedThreads(0);
+        pool.start();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        pool.stop();
+        pool = null;
+    }
+
+    @Benchmark
+    public void testExecuteToRun() throws Exception
+    {
+        CountDownLatch latch = new CountDownLatch(1);
+        pool.execute(latch::countDown);
+        if (!latch.await(5, TimeUnit.SECONDS))
+            throw new IllegalStateException();
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        for (int producers : new int[]{1, 4, 16})
+        {
+            Options opt = new OptionsBuilder()
+                .include(QueuedThreadPoolBenchmark.class.getSimpleName())
+                .warmupIterations(3)
+                .measurementIterations(3)
+                .forks(1)
+                .threads(producers)
+                .build();
+
+            new Runner(opt).run();
+        }
+    }
+}
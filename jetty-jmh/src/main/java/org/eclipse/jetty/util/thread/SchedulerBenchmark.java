@@ -0,0 +1,129 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.util.thread;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the cost of scheduling and cancelling a timer, as done by
+ * idle timeouts, while a large number of other timers are pending.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SchedulerBenchmark
+{
+    @Param({"SES", "WHEEL"})
+    public static String SCHEDULER_TYPE;
+
+    @Param({"1000000"})
+    public static int PENDING;
+
+    private Scheduler scheduler;
+    private Scheduler.Task[] tasks;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        switch (SCHEDULER_TYPE)
+        {
+            case "SES":
+                scheduler = new ScheduledExecutorScheduler();
+                break;
+            case "WHEEL":
+                scheduler = new HashedWheelScheduler();
+                break;
+            default:
+                throw new IllegalStateException();
+        }
+        scheduler.start();
+
+        // Pending timers that do not expire during the benchmark.
+        tasks = new Scheduler.Task[PENDING];
+        for (int i = 0; i < PENDING; ++i)
+        {
+            tasks[i] = scheduler.schedule(this::expired, 1 + ThreadLocalRandom.current().nextInt(60), TimeUnit.MINUTES);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception
+    {
+        for (Scheduler.Task task : tasks)
+        {
+            task.cancel();
+        }
+        tasks = null;
+        scheduler.stop();
+        scheduler = null;
+    }
+
+    @Benchmark
+    public boolean testScheduleCancel()
+    {
+        Scheduler.Task task = scheduler.schedule(this::expired, 30, TimeUnit.SECONDS);
+        return task.cancel();
+    }
+
+    @Benchmark
+    public boolean testReschedule()
+    {
+        // Reschedule one of the pending timers, like an idle timeout does on activity.
+        int index = ThreadLocalRandom.current().nextInt(PENDING);
+        Scheduler.Task task = tasks[index];
+        boolean cancelled = task.cancel();
+        tasks[index] = scheduler.schedule(this::expired, 1 + ThreadLocalRandom.current().nextInt(60), TimeUnit.MINUTES);
+        return cancelled;
+    }
+
+    private void expired()
+    {
+        throw new IllegalStateException();
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(SchedulerBenchmark.class.getSimpleName())
+            .warmupIterations(3)
+            .measurementIterations(5)
+            .threads(4)
+            .forks(1)
+            .build();
+
+        new Runner(opt).run();
+    }
+}
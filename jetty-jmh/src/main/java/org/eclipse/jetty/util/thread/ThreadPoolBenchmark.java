@@ -0,0 +1,140 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.util.thread;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.component.LifeCycle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs a burst of slow blocking tasks, simulating requests blocked on a
+ * slow backend, on a bounded QueuedThreadPool and on a VirtualThreadPool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ThreadPoolBenchmark
+{
+    @Param({"QTP", "VTP"})
+    public static String POOL_TYPE;
+
+    @Param({"10000"})
+    public static int TASKS;
+
+    @Param({"10"})
+    public static int SLEEP;
+
+    private ThreadPool pool;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        switch (POOL_TYPE)
+        {
+            case "QTP":
+                pool = new QueuedThreadPool(200);
+                break;
+            case "VTP":
+                pool = new VirtualThreadPool(new QueuedThreadPool(200));
+                break;
+            default:
+                throw new IllegalStateException();
+        }
+        ((LifeCycle)pool).start();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        ((LifeCycle)pool).stop();
+        pool = null;
+    }
+
+    @Benchmark
+    public void testBlockingTasks() throws Exception
+    {
+        CountDownLatch latch = new CountDownLatch(TASKS);
+        for (int i = 0; i < TASKS; i++)
+        {
+            pool.execute(new BlockingTask(latch));
+        }
+        if (!latch.await(5, TimeUnit.MINUTES))
+            throw new IllegalStateException();
+    }
+
+    private static class BlockingTask implements Runnable, Invocable
+    {
+        private final CountDownLatch latch;
+
+        private BlockingTask(CountDownLatch latch)
+        {
+            this.latch = latch;
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                Thread.sleep(SLEEP);
+            }
+            catch (InterruptedException x)
+            {
+                Thread.currentThread().interrupt();
+            }
+            finally
+            {
+                latch.countDown();
+            }
+        }
+
+        @Override
+        public InvocationType getInvocationType()
+        {
+            return InvocationType.BLOCKING;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(ThreadPoolBenchmark.class.getSimpleName())
+            .warmupIterations(3)
+            .measurementIterations(5)
+            .forks(1)
+            .build();
+
+        new Runner(opt).run();
+    }
+}
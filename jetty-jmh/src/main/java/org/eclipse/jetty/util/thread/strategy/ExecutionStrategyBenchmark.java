@@ -0,0 +1,183 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.util.thread.strategy;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.util.component.LifeCycle;
+import org.eclipse.jetty.util.thread.ExecutionStrategy;
+import org.eclipse.jetty.util.thread.Invocable;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Produces batches of tasks with a mix of blocking and non blocking
+ * invocation types, and consumes them with the existing execution
+ * strategies and with the {@link AdaptiveExecutionStrategy}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ExecutionStrategyBenchmark
+{
+    @Param({"PC", "PEC", "EPC", "EWYK", "ADAPTIVE"})
+    public static String STRATEGY;
+
+    @Param({"0", "50", "100"})
+    public static int BLOCKING_PERCENT;
+
+    @Param({"0", "8"})
+    public static int RESERVED_THREADS;
+
+    @Param({"1000"})
+    public static int TASKS;
+
+    @Param({"1000"})
+    public static int WORK;
+
+    private QueuedThreadPool pool;
+    private TaskProducer producer;
+    private ExecutionStrategy strategy;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        pool = new QueuedThreadPool(200);
+        pool.setReservedThreads(RESERVED_THREADS);
+        pool.start();
+
+        producer = new TaskProducer();
+        switch (STRATEGY)
+        {
+            case "PC":
+                strategy = new ProduceConsume(producer, pool);
+                break;
+            case "PEC":
+                strategy = new ProduceExecuteConsume(producer, pool);
+                break;
+            case "EPC":
+                strategy = new ExecuteProduceConsume(producer, pool);
+                break;
+            case "EWYK":
+                strategy = new EatWhatYouKill(producer, pool);
+                break;
+            case "ADAPTIVE":
+                strategy = new AdaptiveExecutionStrategy(producer, pool);
+                break;
+            default:
+                throw new IllegalStateException();
+        }
+        LifeCycle.start(strategy);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception
+    {
+        LifeCycle.stop(strategy);
+        pool.stop();
+        pool = null;
+    }
+
+    @Benchmark
+    public void testStrategy() throws Exception
+    {
+        CountDownLatch latch = producer.reset();
+        strategy.produce();
+        if (!latch.await(1, TimeUnit.MINUTES))
+            throw new IllegalStateException();
+    }
+
+    private static class TaskProducer implements ExecutionStrategy.Producer
+    {
+        private final AtomicInteger tasks = new AtomicInteger();
+        private volatile CountDownLatch latch;
+
+        private CountDownLatch reset()
+        {
+            CountDownLatch latch = new CountDownLatch(TASKS);
+            this.latch = latch;
+            tasks.set(TASKS);
+            return latch;
+        }
+
+        @Override
+        public Runnable produce()
+        {
+            if (tasks.getAndDecrement() <= 0)
+                return null;
+            boolean blocking = ThreadLocalRandom.current().nextInt(100) < BLOCKING_PERCENT;
+            return new Task(latch, blocking ? Invocable.InvocationType.BLOCKING : Invocable.InvocationType.NON_BLOCKING);
+        }
+    }
+
+    private static class Task implements Runnable, Invocable
+    {
+        private final CountDownLatch latch;
+        private final InvocationType type;
+
+        private Task(CountDownLatch latch, InvocationType type)
+        {
+            this.latch = latch;
+            this.type = type;
+        }
+
+        @Override
+        public void run()
+        {
+            Blackhole.consumeCPU(WORK);
+            latch.countDown();
+        }
+
+        @Override
+        public InvocationType getInvocationType()
+        {
+            return type;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(ExecutionStrategyBenchmark.class.getSimpleName())
+            .warmupIterations(3)
+            .measurementIterations(5)
+            .forks(1)
+            .build();
+
+        new Runner(opt).run();
+    }
+}
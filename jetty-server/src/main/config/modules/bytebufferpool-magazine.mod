@@ -0,0 +1,36 @@
+# DO NOT EDIT - See: https://www.eclipse.org/jetty/documentation/current/startup-modules.html
+
+[description]
+Configures a ByteBufferPool with per-thread magazines used by ServerConnectors.
+
+[provides]
+bytebufferpool
+
+[depends]
+logging
+
+[xml]
+etc/jetty-bytebufferpool-magazine.xml
+
+[ini-template]
+### Server ByteBufferPool Configuration
+## Minimum capacity to pool ByteBuffers
+#jetty.byteBufferPool.minCapacity=0
+
+## Maximum capacity to pool ByteBuffers
+#jetty.byteBufferPool.maxCapacity=65536
+
+## Capacity factor
+#jetty.byteBufferPool.factor=1024
+
+## Maximum number of ByteBuffers shared by all threads for each capacity (-1 for unbounded)
+#jetty.byteBufferPool.maxQueueLength=-1
+
+## Maximum heap memory retainable by the shared pool (-1 for unlimited)
+#jetty.byteBufferPool.maxHeapMemory=-1
+
+## Maximum direct memory retainable by the shared pool (-1 for unlimited)
+#jetty.byteBufferPool.maxDirectMemory=-1
+
+## Number of ByteBuffers cached by each thread for each capacity
+#jetty.byteBufferPool.magazineCapacity=16
@@ -0,0 +1,43 @@
+# DO NOT EDIT - See: https://www.eclipse.org/jetty/documentation/current/startup-modules.html
+
+[description]
+Configures a ByteBufferPool used by ServerConnectors that slices
+direct ByteBuffers out of large, bounded, direct memory slabs.
+
+[provides]
+bytebufferpool
+
+[depends]
+logging
+
+[xml]
+etc/jetty-bytebufferpool-slab.xml
+
+[ini-template]
+### Server ByteBufferPool Configuration
+## Minimum capacity to pool ByteBuffers
+#jetty.byteBufferPool.minCapacity=0
+
+## Maximum capacity to pool ByteBuffers
+#jetty.byteBufferPool.maxCapacity=65536
+
+## Capacity factor
+#jetty.byteBufferPool.factor=1024
+
+## Maximum queue length for each heap bucket (-1 for unbounded)
+#jetty.byteBufferPool.maxQueueLength=-1
+
+## Maximum heap memory retainable by the pool (-1 for unlimited)
+#jetty.byteBufferPool.maxHeapMemory=-1
+
+## Size in bytes of each direct memory slab
+#jetty.byteBufferPool.slabSize=1048576
+
+## Maximum direct memory allocated for all slabs
+#jetty.byteBufferPool.maxDirectMemory=268435456
+
+## Policy when the maximum direct memory is reached (HEAP, BLOCK or FAIL)
+#jetty.byteBufferPool.slabFallback=HEAP
+
+## Maximum time in milliseconds to wait for a direct buffer with the BLOCK policy
+#jetty.byteBufferPool.slabBlockTimeout=30000
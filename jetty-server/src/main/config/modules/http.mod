@@ -33,6 +33,12 @@ etc/jetty-http.xml
 ## Number of selectors (-1 picks default based on number of cores)
 # jetty.http.selectors=-1
 
+## Number of selector groups, each with dedicated threads (0 disables grouping)
+# jetty.http.selectorGroups=0
+
+## Max number of threads of each selector group (-1 picks default based on the thread pool size)
+# jetty.http.selectorGroupThreads=-1
+
 ## ServerSocketChannel backlog (0 picks platform default)
 # jetty.http.acceptQueueSize=0
 
@@ -45,6 +51,9 @@ etc/jetty-http.xml
 ## Enable/disable the SO_REUSEADDR socket option.
 # jetty.http.reuseAddress=true
 
+## Number of listening channels bound to the same port with SO_REUSEPORT (1 disables SO_REUSEPORT).
+# jetty.http.reusePortListeners=1
+
 ## Enable/disable TCP_NODELAY on accepted sockets.
 # jetty.http.acceptedTcpNoDelay=true
 
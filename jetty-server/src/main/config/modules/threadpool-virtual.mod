@@ -0,0 +1,34 @@
+# DO NOT EDIT - See: https://www.eclipse.org/jetty/documentation/current/startup-modules.html
+
+[description]
+Enables and configures a Server thread pool that runs blocking tasks on virtual threads.
+
+[provides]
+threadpool
+
+[depends]
+logging
+
+[xml]
+etc/jetty-threadpool-virtual.xml
+
+[ini-template]
+
+### Server Virtual Thread Pool Configuration
+## Whether to run blocking tasks on virtual threads, if supported by the JVM
+#jetty.threadPool.useVirtualThreads=true
+
+## Minimum Number of Platform Threads
+#jetty.threadPool.minThreads=10
+
+## Maximum Number of Platform Threads
+#jetty.threadPool.maxThreads=200
+
+## Number of reserved platform threads (-1 for heuristic)
+#jetty.threadPool.reservedThreads=-1
+
+## Platform Thread Idle Timeout (in milliseconds)
+#jetty.threadPool.idleTimeout=60000
+
+## Whether to Output a Detailed Dump
+#jetty.threadPool.detailedDump=false
@@ -22,16 +22,20 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.SortedSet;
-import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.eclipse.jetty.http.CompressedContentFormat;
 import org.eclipse.jetty.http.DateGenerator;
@@ -43,16 +47,40 @@ import org.eclipse.jetty.http.MimeTypes.Type;
 import org.eclipse.jetty.http.PreEncodedHttpField;
 import org.eclipse.jetty.http.PrecompressedHttpContent;
 import org.eclipse.jetty.http.ResourceHttpContent;
+import org.eclipse.jetty.server.handler.gzip.CompressionCodec;
 import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.ByteArrayOutputStream2;
+import org.eclipse.jetty.util.FrequencySketch;
+import org.eclipse.jetty.util.IncludeExclude;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.resource.Resource;
 import org.eclipse.jetty.util.resource.ResourceFactory;
+import org.eclipse.jetty.util.thread.AutoLock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * <p>A cache of the content of static resources.</p>
+ * <p>The cache is bounded by the number of cached files and the total size of their buffers.
+ * The content evicted to respect these bounds is chosen by a W-TinyLFU policy: new content
+ * enters a small LRU window, and content leaving the window is admitted to the main space only
+ * if it is used more frequently than all the content it would evict, as estimated by a
+ * {@link FrequencySketch} of the recent requests.  Both the window and the main space are
+ * bounded in files and in bytes, by the length of the content.  The main space is a segmented
+ * LRU, in which content requested again is protected from eviction by content requested only once.
+ * So a scan of many resources, each requested once, does not flush the frequently
+ * requested content from the cache.  Each eviction takes constant time, and the admission of
+ * new content takes time proportional to the number of content it would evict.</p>
+ */
+@ManagedObject("Cache of static content")
 public class CachedContentFactory implements HttpContent.ContentFactory
 {
     private static final Logger LOG = LoggerFactory.getLogger(CachedContentFactory.class);
     private static final Map<CompressedContentFormat, CachedPrecompressedHttpContent> NO_PRECOMPRESSED = Collections.unmodifiableMap(Collections.emptyMap());
+    private static final Map<CompressedContentFormat, CachedHttpContent> NO_PRECOMPRESSED_RESOURCES = Collections.emptyMap();
+    private static final Map<CompressedContentFormat, HttpContent> NO_GENERATED = Collections.emptyMap();
 
     private final ConcurrentMap<String, CachedHttpContent> _cache;
     private final AtomicInteger _cachedSize;
@@ -67,6 +95,21 @@ public class CachedContentFactory implements HttpContent.ContentFactory
     private int _maxCachedFileSize = 128 * 1024 * 1024;
     private int _maxCachedFiles = 2048;
     private int _maxCacheSize = 256 * 1024 * 1024;
+    private CompressionCodec[] _precompressCodecs = new CompressionCodec[0];
+    private Executor _precompressExecutor;
+    private int _precompressHits = 10;
+    private final IncludeExclude<String> _precompressMimeTypes = new IncludeExclude<>();
+
+    // The eviction policy, guarded by the lock.
+    private final AutoLock _lock = new AutoLock();
+    private final FrequencySketch _sketch;
+    private final Segment _window = new Segment();
+    private final Segment _probation = new Segment();
+    private final Segment _protected = new Segment();
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    private final LongAdder _evictions = new LongAdder();
+    private final LongAdder _rejections = new LongAdder();
 
     /**
      * Constructor.
@@ -89,18 +132,37 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         _useFileMappedBuffer = useFileMappedBuffer;
         _etags = etags;
         _precompressedFormats = precompressedFormats;
+        _sketch = new FrequencySketch(_maxCachedFiles);
+
+        // Do not precompress content that is already compressed, as GzipHandler does.
+        for (String type : MimeTypes.getKnownMimeTypes())
+        {
+            if (!"image/svg+xml".equals(type) &&
+                (type.startsWith("image/") || type.startsWith("audio/") || type.startsWith("video/")))
+                _precompressMimeTypes.exclude(type);
+        }
+        _precompressMimeTypes.exclude("application/compress");
+        _precompressMimeTypes.exclude("application/zip");
+        _precompressMimeTypes.exclude("application/gzip");
+        _precompressMimeTypes.exclude("application/bzip2");
+        _precompressMimeTypes.exclude("application/brotli");
+        _precompressMimeTypes.exclude("application/x-xz");
+        _precompressMimeTypes.exclude("application/x-rar-compressed");
     }
 
+    @ManagedAttribute("The total size in bytes of the cached buffers")
     public int getCachedSize()
     {
         return _cachedSize.get();
     }
 
+    @ManagedAttribute("The number of cached files")
     public int getCachedFiles()
     {
         return _cachedFiles.get();
     }
 
+    @ManagedAttribute("The maximum size in bytes of a cached file")
     public int getMaxCachedFileSize()
     {
         return _maxCachedFileSize;
@@ -112,6 +174,7 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         shrinkCache();
     }
 
+    @ManagedAttribute("The maximum total size in bytes of the cached buffers")
     public int getMaxCacheSize()
     {
         return _maxCacheSize;
@@ -126,6 +189,7 @@ public class CachedContentFactory implements HttpContent.ContentFactory
     /**
      * @return the max number of cached files.
      */
+    @ManagedAttribute("The maximum number of cached files")
     public int getMaxCachedFiles()
     {
         return _maxCachedFiles;
@@ -137,6 +201,10 @@ public class CachedContentFactory implements HttpContent.ContentFactory
     public void setMaxCachedFiles(int maxCachedFiles)
     {
         _maxCachedFiles = maxCachedFiles;
+        try (AutoLock l = _lock.lock())
+        {
+            _sketch.ensureCapacity(maxCachedFiles);
+        }
         shrinkCache();
     }
 
@@ -145,6 +213,89 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         return _useFileMappedBuffer;
     }
 
+    /**
+     * @return the codecs used to generate precompressed variants of cached content
+     */
+    public CompressionCodec[] getPrecompressCodecs()
+    {
+        return _precompressCodecs.clone();
+    }
+
+    /**
+     * <p>Set the codecs used to generate precompressed variants of cached content,
+     * for the formats that have no precompressed resource.</p>
+     * <p>Once cached content has been requested {@link #setPrecompressHits(int) a number of times},
+     * it is compressed by each codec in the background, with the {@link #setPrecompressExecutor(Executor)
+     * executor}.  A compressed variant smaller than the content is cached in memory with the content,
+     * and counts towards the {@link #setMaxCacheSize(int) maximum cache size}.  It is served, like a
+     * precompressed resource, to requests that accept its encoding, if its format is one of the
+     * precompressed formats of the {@link ResourceService}.  Content of an
+     * {@link #setPrecompressExcludedMimeTypes(String...) excluded mime type} is not compressed.</p>
+     *
+     * @param codecs the codecs used to generate precompressed variants, or none to not generate them
+     */
+    public void setPrecompressCodecs(CompressionCodec... codecs)
+    {
+        _precompressCodecs = codecs.clone();
+    }
+
+    /**
+     * @return the executor that generates precompressed variants of cached content
+     */
+    public Executor getPrecompressExecutor()
+    {
+        return _precompressExecutor;
+    }
+
+    /**
+     * @param executor the executor that generates precompressed variants of cached content,
+     * or null to not generate them
+     * @see #setPrecompressCodecs(CompressionCodec...)
+     */
+    public void setPrecompressExecutor(Executor executor)
+    {
+        _precompressExecutor = executor;
+    }
+
+    /**
+     * @return the number of requests for cached content after which its precompressed variants are generated
+     */
+    public int getPrecompressHits()
+    {
+        return _precompressHits;
+    }
+
+    /**
+     * @param hits the number of requests for cached content after which its precompressed
+     * variants are generated (default 10)
+     * @see #setPrecompressCodecs(CompressionCodec...)
+     */
+    public void setPrecompressHits(int hits)
+    {
+        _precompressHits = Math.max(1, hits);
+    }
+
+    /**
+     * @return the mime types of content that is not precompressed
+     */
+    public String[] getPrecompressExcludedMimeTypes()
+    {
+        return _precompressMimeTypes.getExcluded().toArray(new String[0]);
+    }
+
+    /**
+     * <p>Set the mime types of content that is not precompressed (replacing any previously set).</p>
+     * <p>By default, image (except SVG), audio, video and archive types are excluded.</p>
+     *
+     * @param types the mime types to exclude (without charset or other parameters)
+     * @see #setPrecompressCodecs(CompressionCodec...)
+     */
+    public void setPrecompressExcludedMimeTypes(String... types)
+    {
+        _precompressMimeTypes.getExcluded().clear();
+        _precompressMimeTypes.exclude(types);
+    }
+
     public void flushCache()
     {
         while (_cache.size() > 0)
@@ -176,7 +327,13 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         // Is the content in this cache?
         CachedHttpContent content = _cache.get(pathInContext);
         if (content != null && (content).isValid())
+        {
+            _hits.increment();
+            access(content);
+            content.hit();
             return content;
+        }
+        _misses.increment();
 
         // try loading the content from our factory.
         Resource resource = _factory.getResource(pathInContext);
@@ -245,6 +402,10 @@ public class CachedContentFactory implements HttpContent.ContentFactory
                                 compressedContent.invalidate();
                                 compressedContent = added;
                             }
+                            else
+                            {
+                                admit(compressedContent);
+                            }
                         }
                     }
                     if (compressedContent != null)
@@ -253,7 +414,7 @@ public class CachedContentFactory implements HttpContent.ContentFactory
                 content = new CachedHttpContent(pathInContext, resource, precompresssedContents);
             }
             else
-                content = new CachedHttpContent(pathInContext, resource, null);
+                content = new CachedHttpContent(pathInContext, resource, NO_PRECOMPRESSED_RESOURCES);
 
             // Add it to the cache.
             CachedHttpContent added = _cache.putIfAbsent(pathInContext, content);
@@ -262,7 +423,12 @@ public class CachedContentFactory implements HttpContent.ContentFactory
                 content.invalidate();
                 content = added;
             }
+            else
+            {
+                admit(content);
+            }
 
+            content.hit();
             return content;
         }
 
@@ -293,38 +459,185 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         return new ResourceHttpContent(resource, mt, maxBufferSize);
     }
 
-    private void shrinkCache()
+    private int getWindowCapacity()
     {
-        // While we need to shrink
-        while (_cache.size() > 0 && (_cachedFiles.get() > _maxCachedFiles || _cachedSize.get() > _maxCacheSize))
+        return Math.max(1, _maxCachedFiles / 100);
+    }
+
+    private long getWindowWeight()
+    {
+        return Math.max(1, _maxCacheSize / 100);
+    }
+
+    /**
+     * Record a request for cached content, promoting it in the eviction order.
+     */
+    private void access(CachedHttpContent content)
+    {
+        try (AutoLock l = _lock.tryLock())
         {
-            // Scan the entire cache and generate an ordered list by last accessed time.
-            SortedSet<CachedHttpContent> sorted = new TreeSet<>((c1, c2) ->
+            // The policy is best effort, so the request is not recorded rather than waiting.
+            if (l == null)
+                return;
+            _sketch.increment(content._key);
+            Segment segment = content._segment;
+            if (segment == _probation)
+            {
+                // Content requested again is protected.
+                _probation.remove(content);
+                _protected.add(content);
+                long protectedCapacity = ((long)_maxCachedFiles - getWindowCapacity()) * 4 / 5;
+                long protectedWeight = ((long)_maxCacheSize - getWindowWeight()) * 4 / 5;
+                while ((_protected._size > protectedCapacity || _protected._weight > protectedWeight) && _protected._head != null)
+                {
+                    _probation.add(_protected.remove(_protected._head));
+                }
+            }
+            else if (segment != null)
             {
-                if (c1._lastAccessed < c2._lastAccessed)
-                    return -1;
+                segment.remove(content);
+                segment.add(content);
+            }
+        }
+    }
 
-                if (c1._lastAccessed > c2._lastAccessed)
-                    return 1;
+    /**
+     * Add new content to the window, and admit the content leaving the window
+     * to the main space if it is more frequently used than the content it evicts.
+     */
+    private void admit(CachedHttpContent content)
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            // Misses are counted here, so that content is admitted once it is requested frequently.
+            _sketch.increment(content._key);
+            _window.add(content);
+            int windowCapacity = getWindowCapacity();
+            long windowWeight = getWindowWeight();
+            while ((_window._size > windowCapacity || _window._weight > windowWeight) && _window._head != null)
+            {
+                CachedHttpContent candidate = _window.remove(_window._head);
+                if (!admitToMain(candidate, (long)_maxCachedFiles - windowCapacity, (long)_maxCacheSize - windowWeight))
+                {
+                    _rejections.increment();
+                    evict(candidate);
+                }
+            }
+            evictOverflow();
+        }
+    }
+
+    /**
+     * Admit a candidate to the main space, evicting the least recently used content to make room
+     * for it, only if all the evicted content is less frequently used than the candidate.
+     */
+    private boolean admitToMain(CachedHttpContent candidate, long maxFiles, long maxWeight)
+    {
+        long files = _probation._size + _protected._size + 1 - maxFiles;
+        long weight = _probation._weight + _protected._weight + candidate._weight - maxWeight;
+        int frequency = _sketch.frequency(candidate._key);
+        int victims = 0;
+        CachedHttpContent victim = _probation._head != null ? _probation._head : _protected._head;
+        while (files > 0 || weight > 0)
+        {
+            if (victim == null || _sketch.frequency(victim._key) >= frequency)
+                return false;
+            files--;
+            weight -= victim._weight;
+            victims++;
+            victim = victim._next != null ? victim._next : victim._segment == _probation ? _protected._head : null;
+        }
 
-                if (c1._contentLengthValue < c2._contentLengthValue)
-                    return -1;
+        for (int i = 0; i < victims; i++)
+        {
+            evict(_probation._head != null ? _probation._head : _protected._head);
+        }
+        _probation.add(candidate);
+        return true;
+    }
 
-                return c1._key.compareTo(c2._key);
-            });
-            sorted.addAll(_cache.values());
+    private void shrinkCache()
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            evictOverflow();
+        }
+    }
 
-            // Invalidate least recently used first
-            for (CachedHttpContent content : sorted)
-            {
-                if (_cachedFiles.get() <= _maxCachedFiles && _cachedSize.get() <= _maxCacheSize)
-                    break;
-                if (content == _cache.remove(content.getKey()))
-                    content.invalidate();
-            }
+    private void evictOverflow()
+    {
+        // The buffers may exceed the length of the content, for example with generated variants.
+        // Evict the least recently used content, first from the window that was not yet admitted,
+        // then from probation, then from protected.
+        while (_cachedFiles.get() > _maxCachedFiles || _cachedSize.get() > _maxCacheSize)
+        {
+            CachedHttpContent victim = _window._head;
+            if (victim == null)
+                victim = _probation._head;
+            if (victim == null)
+                victim = _protected._head;
+            if (victim == null)
+                break;
+            evict(victim);
         }
     }
 
+    private void evict(CachedHttpContent content)
+    {
+        if (content._segment != null)
+            content._segment.remove(content);
+        if (_cache.remove(content.getKey(), content))
+        {
+            _evictions.increment();
+            content.invalidate();
+        }
+    }
+
+    /**
+     * @return the number of requests for cached content
+     */
+    @ManagedAttribute("The number of requests for cached content")
+    public long getHits()
+    {
+        return _hits.sum();
+    }
+
+    /**
+     * @return the number of requests for content that was not cached
+     */
+    @ManagedAttribute("The number of requests for content that was not cached")
+    public long getMisses()
+    {
+        return _misses.sum();
+    }
+
+    /**
+     * @return the number of cached contents evicted to respect the bounds of the cache
+     */
+    @ManagedAttribute("The number of cached contents evicted to respect the bounds of the cache")
+    public long getEvictions()
+    {
+        return _evictions.sum();
+    }
+
+    /**
+     * @return the number of new contents evicted because they were less frequently used than the cached contents
+     */
+    @ManagedAttribute("The number of new contents not admitted, as less frequently used than the cached contents")
+    public long getRejections()
+    {
+        return _rejections.sum();
+    }
+
+    @ManagedOperation(value = "Reset the cache statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        _hits.reset();
+        _misses.reset();
+        _evictions.reset();
+        _rejections.reset();
+    }
+
     protected ByteBuffer getIndirectBuffer(Resource resource)
     {
         try
@@ -391,11 +704,19 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         private final HttpField _lastModified;
         private final long _lastModifiedValue;
         private final HttpField _etag;
+        private final PreEncodedHttpField.Block _headers;
+        private final PreEncodedHttpField.Block _headersWithETag;
         private final Map<CompressedContentFormat, CachedPrecompressedHttpContent> _precompressed;
         private final AtomicReference<ByteBuffer> _indirectBuffer = new AtomicReference<>();
         private final AtomicReference<ByteBuffer> _directBuffer = new AtomicReference<>();
         private final AtomicReference<ByteBuffer> _mappedBuffer = new AtomicReference<>();
-        private volatile long _lastAccessed;
+        private final long _weight;
+        private final AtomicInteger _hits;
+        private volatile Map<CompressedContentFormat, HttpContent> _generated = NO_GENERATED;
+        // The links of the eviction policy, guarded by its lock.
+        private Segment _segment;
+        private CachedHttpContent _prev;
+        private CachedHttpContent _next;
 
         CachedHttpContent(String pathInContext, Resource resource, Map<CompressedContentFormat, CachedHttpContent> precompressedResources)
         {
@@ -414,15 +735,21 @@ public class CachedContentFactory implements HttpContent.ContentFactory
 
             _contentLengthValue = exists ? resource.length() : 0;
             _contentLength = new PreEncodedHttpField(HttpHeader.CONTENT_LENGTH, Long.toString(_contentLengthValue));
+            // Content too large to be buffered is only file mapped, so it does not weigh on the cache size.
+            _weight = _contentLengthValue > _maxCachedFileSize ? 0 : _contentLengthValue;
 
-            if (_cachedFiles.incrementAndGet() > _maxCachedFiles)
-                shrinkCache();
-
-            _lastAccessed = System.currentTimeMillis();
+            _cachedFiles.incrementAndGet();
 
             _etag = CachedContentFactory.this._etags ? new PreEncodedHttpField(HttpHeader.ETAG, resource.getWeakETag()) : null;
 
-            if (precompressedResources != null)
+            _headers = newHeaderBlock(_lastModified, _contentType);
+            _headersWithETag = _etag == null ? _headers : newHeaderBlock(_lastModified, _contentType, _etag);
+
+            // Only generate precompressed variants of content that is not itself precompressed,
+            // nor of a mime type that does not compress.
+            boolean compressible = contentType == null || _precompressMimeTypes.test(MimeTypes.getContentTypeWithoutCharset(contentType));
+            _hits = precompressedResources == null || !compressible ? null : new AtomicInteger();
+            if (precompressedResources != null && !precompressedResources.isEmpty())
             {
                 _precompressed = new HashMap<>(precompressedResources.size());
                 for (Map.Entry<CompressedContentFormat, CachedHttpContent> entry : precompressedResources.entrySet())
@@ -436,16 +763,146 @@ public class CachedContentFactory implements HttpContent.ContentFactory
             }
         }
 
+        private PreEncodedHttpField.Block newHeaderBlock(HttpField... fields)
+        {
+            List<HttpField> present = new ArrayList<>(fields.length);
+            for (HttpField field : fields)
+            {
+                if (field != null)
+                    present.add(field);
+            }
+            return present.size() < 2 ? null : new PreEncodedHttpField.Block(present.toArray(new HttpField[0]));
+        }
+
         public String getKey()
         {
             return _key;
         }
 
+        /**
+         * @param etag whether the ETag is included in the block
+         * @return the Last-Modified, Content-Type and optionally ETag fields as a pre-encoded block,
+         * or null if there are too few of them to benefit from a block
+         */
+        public PreEncodedHttpField.Block getHeaderBlock(boolean etag)
+        {
+            return etag ? _headersWithETag : _headers;
+        }
+
         public boolean isCached()
         {
             return _key != null;
         }
 
+        private void hit()
+        {
+            if (_hits == null || _precompressCodecs.length == 0)
+                return;
+            Executor executor = _precompressExecutor;
+            if (executor != null && _hits.incrementAndGet() == _precompressHits)
+            {
+                try
+                {
+                    executor.execute(this::precompress);
+                }
+                catch (RejectedExecutionException x)
+                {
+                    // Count again, so that a later hit retries.
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Precompress rejected {}", this, x);
+                    _hits.set(0);
+                }
+            }
+        }
+
+        private void precompress()
+        {
+            for (CompressionCodec codec : _precompressCodecs)
+            {
+                CompressedContentFormat format = codec.getContentFormat();
+                // Do not compress content invalidated before or between the codecs, as its resource is closed.
+                Map<CompressedContentFormat, HttpContent> current = _generated;
+                if (current == null || _cache.get(_key) != this)
+                    return;
+                if (_precompressed.containsKey(format) || current.containsKey(format))
+                    continue;
+                try
+                {
+                    ByteBuffer compressed = compress(codec);
+                    if (compressed == null)
+                    {
+                        if (LOG.isDebugEnabled())
+                            LOG.debug("Not precompressed {} as {}", this, format);
+                        continue;
+                    }
+                    synchronized (this)
+                    {
+                        // Do not add the variant if the content was invalidated meanwhile.
+                        if (_generated == null || _cache.get(_key) != this)
+                            return;
+                        Map<CompressedContentFormat, HttpContent> generated = new HashMap<>(_generated);
+                        generated.put(format, new PrecompressedHttpContent(this, new GeneratedHttpContent(this, compressed), format));
+                        _generated = generated;
+                    }
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Precompressed {} as {} {}/{}", this, format, compressed.remaining(), _contentLengthValue);
+                    if (_cachedSize.addAndGet(compressed.remaining()) > _maxCacheSize)
+                        shrinkCache();
+                }
+                catch (Throwable x)
+                {
+                    // The content may be invalidated while it is compressed.
+                    if (_generated == null)
+                    {
+                        if (LOG.isDebugEnabled())
+                            LOG.debug("Invalidated while precompressing {} as {}", this, format, x);
+                        return;
+                    }
+                    LOG.warn("Unable to precompress {} as {}", this, format, x);
+                }
+            }
+        }
+
+        /**
+         * @param codec the codec to compress the content with
+         * @return the compressed content, or null if it is not smaller than the content
+         * @throws IOException if the content cannot be read
+         */
+        private ByteBuffer compress(CompressionCodec codec) throws IOException
+        {
+            CompressionCodec.Encoder encoder = codec.newEncoder();
+            try (InputStream in = _resource.getInputStream())
+            {
+                ByteArrayOutputStream2 out = new ByteArrayOutputStream2((int)Math.min(_contentLengthValue, 64 * 1024));
+                byte[] input = new byte[8192];
+                ByteBuffer output = BufferUtil.allocate(8192);
+                while (true)
+                {
+                    int read = in.read(input);
+                    if (read < 0)
+                        encoder.finish();
+                    else
+                        encoder.setInput(ByteBuffer.wrap(input, 0, read));
+
+                    while (read < 0 ? !encoder.finished() : !encoder.needsInput())
+                    {
+                        BufferUtil.clear(output);
+                        encoder.encode(output, false);
+                        out.write(output.array(), output.arrayOffset() + output.position(), output.remaining());
+                        if (out.size() >= _contentLengthValue)
+                            return null;
+                    }
+
+                    if (read < 0)
+                        return BufferUtil.toBuffer(out.toByteArray());
+                }
+            }
+            finally
+            {
+                encoder.end();
+            }
+        }
+
         @Override
         public Resource getResource()
         {
@@ -467,18 +924,40 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         boolean isValid()
         {
             if (_lastModifiedValue == _resource.lastModified() && _contentLengthValue == _resource.length())
-            {
-                _lastAccessed = System.currentTimeMillis();
                 return true;
-            }
 
             if (this == _cache.remove(_key))
                 invalidate();
             return false;
         }
 
+        /**
+         * Count a buffer just loaded in the cached size, unless this content was evicted meanwhile,
+         * in which case the buffer is only used by the current request.
+         */
+        private void cacheBuffer(AtomicReference<ByteBuffer> reference, ByteBuffer buffer)
+        {
+            int length = BufferUtil.length(buffer);
+            _cachedSize.addAndGet(length);
+            if (_cache.get(_key) != this)
+            {
+                if (reference.compareAndSet(buffer, null))
+                    _cachedSize.addAndGet(-length);
+            }
+            else if (_cachedSize.get() > _maxCacheSize)
+            {
+                shrinkCache();
+            }
+        }
+
         protected void invalidate()
         {
+            try (AutoLock l = _lock.lock())
+            {
+                if (_segment != null)
+                    _segment.remove(this);
+            }
+
             ByteBuffer indirect = _indirectBuffer.getAndSet(null);
             if (indirect != null)
                 _cachedSize.addAndGet(-BufferUtil.length(indirect));
@@ -489,6 +968,20 @@ public class CachedContentFactory implements HttpContent.ContentFactory
 
             _mappedBuffer.getAndSet(null);
 
+            Map<CompressedContentFormat, HttpContent> generated;
+            synchronized (this)
+            {
+                generated = _generated;
+                _generated = null;
+            }
+            if (generated != null)
+            {
+                for (HttpContent content : generated.values())
+                {
+                    _cachedSize.addAndGet(-(int)content.getContentLengthValue());
+                }
+            }
+
             _cachedFiles.decrementAndGet();
             _resource.close();
         }
@@ -568,8 +1061,7 @@ public class CachedContentFactory implements HttpContent.ContentFactory
                 if (_indirectBuffer.compareAndSet(null, buffer2))
                 {
                     buffer = buffer2;
-                    if (_cachedSize.addAndGet(BufferUtil.length(buffer)) > _maxCacheSize)
-                        shrinkCache();
+                    cacheBuffer(_indirectBuffer, buffer);
                 }
                 else
                 {
@@ -604,8 +1096,7 @@ public class CachedContentFactory implements HttpContent.ContentFactory
                         if (_directBuffer.compareAndSet(null, direct))
                         {
                             buffer = direct;
-                            if (_cachedSize.addAndGet(BufferUtil.length(buffer)) > _maxCacheSize)
-                                shrinkCache();
+                            cacheBuffer(_directBuffer, buffer);
                         }
                         else
                         {
@@ -659,9 +1150,15 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         @Override
         public Map<CompressedContentFormat, ? extends HttpContent> getPrecompressedContents()
         {
+            Map<CompressedContentFormat, HttpContent> generated = _generated;
             if (_precompressed.size() == 0)
+            {
+                // Precompressed variants may be generated, so the response may vary.
+                if (_hits != null && _precompressCodecs.length > 0 && _precompressExecutor != null)
+                    return generated == null ? NO_GENERATED : generated;
                 return null;
-            Map<CompressedContentFormat, CachedPrecompressedHttpContent> ret = _precompressed;
+            }
+            Map<CompressedContentFormat, ? extends HttpContent> ret = _precompressed;
             for (Map.Entry<CompressedContentFormat, CachedPrecompressedHttpContent> entry : _precompressed.entrySet())
             {
                 if (!entry.getValue().isValid())
@@ -671,10 +1168,123 @@ public class CachedContentFactory implements HttpContent.ContentFactory
                     ret.remove(entry.getKey());
                 }
             }
+            if (generated != null && !generated.isEmpty())
+            {
+                Map<CompressedContentFormat, HttpContent> all = new HashMap<>(generated);
+                all.putAll(ret);
+                return all;
+            }
             return ret;
         }
     }
 
+    /**
+     * A segment of the eviction policy, as a list of content from the least to the most recently used.
+     */
+    private static class Segment
+    {
+        private CachedHttpContent _head;
+        private CachedHttpContent _tail;
+        private int _size;
+        private long _weight;
+
+        private void add(CachedHttpContent content)
+        {
+            content._segment = this;
+            content._prev = _tail;
+            content._next = null;
+            if (_tail == null)
+                _head = content;
+            else
+                _tail._next = content;
+            _tail = content;
+            _size++;
+            _weight += content._weight;
+        }
+
+        private CachedHttpContent remove(CachedHttpContent content)
+        {
+            if (content._prev == null)
+                _head = content._next;
+            else
+                content._prev._next = content._next;
+            if (content._next == null)
+                _tail = content._prev;
+            else
+                content._next._prev = content._prev;
+            content._segment = null;
+            content._prev = null;
+            content._next = null;
+            _size--;
+            _weight -= content._weight;
+            return content;
+        }
+    }
+
+    /**
+     * The compressed content of a precompressed variant generated in memory.
+     */
+    private static class GeneratedHttpContent extends ResourceHttpContent
+    {
+        private final ByteBuffer _buffer;
+        private final HttpField _contentLength;
+
+        private GeneratedHttpContent(CachedHttpContent content, ByteBuffer buffer)
+        {
+            super(content.getResource(), content.getContentTypeValue());
+            _buffer = buffer;
+            _contentLength = new PreEncodedHttpField(HttpHeader.CONTENT_LENGTH, Long.toString(buffer.remaining()));
+        }
+
+        @Override
+        public HttpField getContentLength()
+        {
+            return _contentLength;
+        }
+
+        @Override
+        public long getContentLengthValue()
+        {
+            return _buffer.remaining();
+        }
+
+        @Override
+        public ByteBuffer getIndirectBuffer()
+        {
+            return _buffer.asReadOnlyBuffer();
+        }
+
+        @Override
+        public ByteBuffer getDirectBuffer()
+        {
+            return null;
+        }
+
+        @Override
+        public InputStream getInputStream()
+        {
+            return new ByteArrayInputStream(_buffer.array(), _buffer.arrayOffset() + _buffer.position(), _buffer.remaining());
+        }
+
+        @Override
+        public ReadableByteChannel getReadableByteChannel()
+        {
+            return Channels.newChannel(getInputStream());
+        }
+
+        @Override
+        public void release()
+        {
+            // The resource is shared with the cached content.
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("GeneratedHttpContent@%x{r=%s,l=%d}", hashCode(), getResource(), _buffer.remaining());
+        }
+    }
+
     public class CachedPrecompressedHttpContent extends PrecompressedHttpContent
     {
         private final CachedHttpContent _content;
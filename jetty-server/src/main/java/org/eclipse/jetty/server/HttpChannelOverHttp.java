@@ -543,7 +543,7 @@ public class HttpChannelOverHttp extends HttpChannel implements HttpParser.Reque
 
     private static class RequestBuilder
     {
-        private final HttpFields.Mutable _fieldsBuilder = HttpFields.build();
+        private final HttpFields.Mutable _fieldsBuilder = new HttpFields.Indexed();
         private final HttpURI.Mutable _uriBuilder = HttpURI.build();
         private String _method;
         private HttpVersion _version;
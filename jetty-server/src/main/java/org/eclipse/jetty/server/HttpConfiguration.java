@@ -27,6 +27,7 @@ import org.eclipse.jetty.http.CookieCompliance;
 import org.eclipse.jetty.http.HttpCompliance;
 import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.HttpScheme;
+import org.eclipse.jetty.http.LearnedHttpFieldCache;
 import org.eclipse.jetty.util.Jetty;
 import org.eclipse.jetty.util.TreeTrie;
 import org.eclipse.jetty.util.Trie;
@@ -58,6 +59,7 @@ public class HttpConfiguration implements Dumpable
     private int _responseHeaderSize = 8 * 1024;
     private int _headerCacheSize = 1024;
     private boolean _headerCacheCaseSensitive = false;
+    private LearnedHttpFieldCache _learnedFieldCache;
     private int _securePort;
     private long _idleTimeout = -1;
     private String _secureScheme = HttpScheme.HTTPS.asString();
@@ -127,6 +129,7 @@ public class HttpConfiguration implements Dumpable
         _responseHeaderSize = config._responseHeaderSize;
         _headerCacheSize = config._headerCacheSize;
         _headerCacheCaseSensitive = config._headerCacheCaseSensitive;
+        _learnedFieldCache = config._learnedFieldCache;
         _secureScheme = config._secureScheme;
         _securePort = config._securePort;
         _idleTimeout = config._idleTimeout;
@@ -211,6 +214,12 @@ public class HttpConfiguration implements Dumpable
         return _headerCacheCaseSensitive;
     }
 
+    @ManagedAttribute("The header field cache shared by the connections and learned from their requests")
+    public LearnedHttpFieldCache getLearnedFieldCache()
+    {
+        return _learnedFieldCache;
+    }
+
     @ManagedAttribute("The port to which Integral or Confidential security constraints are redirected")
     public int getSecurePort()
     {
@@ -435,6 +444,19 @@ public class HttpConfiguration implements Dumpable
         this._headerCacheCaseSensitive = headerCacheCaseSensitive;
     }
 
+    /**
+     * <p>Sets a header field cache that is shared by all the connections using this
+     * configuration, so that header lines repeated across connections, for example
+     * from the same load balancer or client, are parsed without allocation.</p>
+     *
+     * @param learnedFieldCache the shared header field cache, or null for no shared cache
+     * @see org.eclipse.jetty.http.HttpParser#setLearnedFieldCache(LearnedHttpFieldCache)
+     */
+    public void setLearnedFieldCache(LearnedHttpFieldCache learnedFieldCache)
+    {
+        _learnedFieldCache = learnedFieldCache;
+    }
+
     /**
      * <p>Sets the TCP/IP port used for CONFIDENTIAL and INTEGRAL redirections.</p>
      *
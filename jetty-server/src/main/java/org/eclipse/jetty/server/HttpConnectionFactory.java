@@ -21,6 +21,7 @@ package org.eclipse.jetty.server;
 import java.util.Objects;
 
 import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.LearnedHttpFieldCache;
 import org.eclipse.jetty.io.Connection;
 import org.eclipse.jetty.io.EndPoint;
 import org.eclipse.jetty.util.annotation.Name;
@@ -88,6 +89,16 @@ public class HttpConnectionFactory extends AbstractConnectionFactory implements
         _useOutputDirectByteBuffers = useOutputDirectByteBuffers;
     }
 
+    @Override
+    protected void doStart() throws Exception
+    {
+        // The shared field cache may have been set on the configuration after construction.
+        LearnedHttpFieldCache learnedFieldCache = _config.getLearnedFieldCache();
+        if (learnedFieldCache != null)
+            addBean(learnedFieldCache);
+        super.doStart();
+    }
+
     @Override
     public Connection newConnection(Connector connector, EndPoint endPoint)
     {
@@ -553,16 +553,7 @@ public class MultiPartFormInputStream
             if (!Files.exists(_tmpDir))
                 Files.createDirectories(_tmpDir);
 
-            String contentTypeBoundary = "";
-            int bstart = _contentType.indexOf("boundary=");
-            if (bstart >= 0)
-            {
-                int bend = _contentType.indexOf(";", bstart);
-                bend = (bend < 0 ? _contentType.length() : bend);
-                contentTypeBoundary = QuotedStringTokenizer.unquote(value(_contentType.substring(bstart, bend)).trim());
-            }
-
-            parser = new MultiPartParser(new Handler(), contentTypeBoundary);
+            parser = new MultiPartParser(new Handler(), getBoundary(_contentType));
             byte[] data = new byte[_bufferSize];
             int len;
             long total = 0;
@@ -842,14 +833,27 @@ public class MultiPartFormInputStream
         return _deleteOnExit;
     }
 
-    private static String value(String nameEqualsValue)
+    static String getBoundary(String contentType)
+    {
+        String contentTypeBoundary = "";
+        int bstart = contentType.indexOf("boundary=");
+        if (bstart >= 0)
+        {
+            int bend = contentType.indexOf(";", bstart);
+            bend = (bend < 0 ? contentType.length() : bend);
+            contentTypeBoundary = QuotedStringTokenizer.unquote(value(contentType.substring(bstart, bend)).trim());
+        }
+        return contentTypeBoundary;
+    }
+
+    static String value(String nameEqualsValue)
     {
         int idx = nameEqualsValue.indexOf('=');
         String value = nameEqualsValue.substring(idx + 1).trim();
         return QuotedStringTokenizer.unquoteOnly(value);
     }
 
-    private static String filenameValue(String nameEqualsValue)
+    static String filenameValue(String nameEqualsValue)
     {
         int idx = nameEqualsValue.indexOf('=');
         String value = nameEqualsValue.substring(idx + 1).trim();
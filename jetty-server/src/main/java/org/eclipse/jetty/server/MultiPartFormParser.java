@@ -0,0 +1,646 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import javax.servlet.MultipartConfigElement;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.Part;
+
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.ByteArrayOutputStream2;
+import org.eclipse.jetty.util.MultiMap;
+import org.eclipse.jetty.util.QuotedStringTokenizer;
+import org.eclipse.jetty.util.StringUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A non-blocking parser of {@code multipart/form-data} content, built on {@link MultiPartParser},
+ * that delivers each part to a {@link Listener} as soon as it has been parsed.</p>
+ * <p>Unlike {@link MultiPartFormInputStream}, which reads the whole request when the parts are first
+ * asked for, content is pushed to this parser with {@link #parse(ByteBuffer, boolean)} as it arrives,
+ * for example from the {@link ReadListener} returned by {@link #newReadListener(ServletInputStream)}.</p>
+ * <p>A part is kept in memory until it grows larger than the memory window, and a part with a
+ * filename is always written to a file.  Files are written with a {@link FileChannel} through a
+ * single direct buffer acquired from the {@link ByteBufferPool}, so that the memory used by the
+ * parser is bounded by the memory window and the buffer size, whatever the size of the upload.</p>
+ * <p>Parts passed to {@link Listener#onPart(Part)} belong to the application, which must
+ * {@link Part#delete() delete} them when they are no longer needed.</p>
+ */
+public class MultiPartFormParser
+{
+    private static final Logger LOG = LoggerFactory.getLogger(MultiPartFormParser.class);
+
+    private final MultiPartParser _parser;
+    private final MultipartConfigElement _config;
+    private final Path _tmpDir;
+    private final ByteBufferPool _bufferPool;
+    private final Listener _listener;
+    private int _memoryWindow;
+    private int _bufferSize = 64 * 1024;
+    private boolean _deleteOnExit;
+    private ByteBuffer _buffer;
+    private FormPart _part;
+    private long _total;
+    private Throwable _failure;
+    private boolean _failed;
+
+    /**
+     * @param contentType the Content-Type header, with the boundary parameter
+     * @param config the limits of the parts, with the location of the files relative to the tmpDir
+     * @param tmpDir the directory in which to write the files of the parts
+     * @param bufferPool the pool from which to acquire the buffer with which to write the files
+     * @param listener the listener notified of the parts
+     */
+    public MultiPartFormParser(String contentType, MultipartConfigElement config, Path tmpDir, ByteBufferPool bufferPool, Listener listener)
+    {
+        if (contentType == null || !contentType.startsWith("multipart/form-data"))
+            throw new IllegalArgumentException("content type is not multipart/form-data");
+
+        _config = config;
+        _tmpDir = StringUtil.isBlank(config.getLocation()) ? tmpDir : tmpDir.resolve(config.getLocation());
+        _bufferPool = bufferPool;
+        _listener = listener;
+        _memoryWindow = config.getFileSizeThreshold() > 0 ? config.getFileSizeThreshold() : 16 * 1024;
+        _parser = new MultiPartParser(new Handler(), MultiPartFormInputStream.getBoundary(contentType));
+    }
+
+    /**
+     * @return the maximum size of a part kept in memory, above which it is written to a file
+     */
+    public int getMemoryWindow()
+    {
+        return _memoryWindow;
+    }
+
+    /**
+     * @param memoryWindow the maximum size of a part kept in memory, above which it is written to a file
+     */
+    public void setMemoryWindow(int memoryWindow)
+    {
+        _memoryWindow = memoryWindow;
+    }
+
+    /**
+     * @return the size of the buffer with which the files of the parts are written
+     */
+    public int getBufferSize()
+    {
+        return _bufferSize;
+    }
+
+    /**
+     * @param bufferSize the size of the buffer with which the files of the parts are written
+     */
+    public void setBufferSize(int bufferSize)
+    {
+        _bufferSize = bufferSize;
+    }
+
+    public boolean isDeleteOnExit()
+    {
+        return _deleteOnExit;
+    }
+
+    public void setDeleteOnExit(boolean deleteOnExit)
+    {
+        _deleteOnExit = deleteOnExit;
+    }
+
+    /**
+     * <p>Parse some of the content, notifying the listener of each part completed.</p>
+     * <p>The buffer must have an array and is entirely consumed.</p>
+     *
+     * @param buffer the content to parse
+     * @param last whether this is the last content
+     * @throws IOException if the content is invalid, exceeds the configured limits or cannot be written,
+     * in which case the listener has been notified of the failure
+     */
+    public void parse(ByteBuffer buffer, boolean last) throws IOException
+    {
+        if (_failed)
+            throw new IOException("Failed", _failure);
+
+        try
+        {
+            _total += buffer.remaining();
+            if (_config.getMaxRequestSize() > 0 && _total > _config.getMaxRequestSize())
+                throw new IllegalStateException("Request exceeds maxRequestSize (" + _config.getMaxRequestSize() + ")");
+
+            while (true)
+            {
+                boolean handle = _parser.parse(buffer, last);
+                if (_failure != null)
+                    throw _failure;
+                if (!handle || !buffer.hasRemaining())
+                    break;
+                if (_parser.getState() == MultiPartParser.State.END)
+                {
+                    // Ignore content after the close delimiter.
+                    BufferUtil.clear(buffer);
+                    break;
+                }
+            }
+
+            if (last)
+            {
+                switch (_parser.getState())
+                {
+                    case END:
+                        release();
+                        _listener.onComplete();
+                        break;
+                    case PREAMBLE:
+                        throw new IOException("Missing initial multi part boundary");
+                    default:
+                        throw new IOException("Incomplete Multipart");
+                }
+            }
+        }
+        catch (Throwable x)
+        {
+            fail(x);
+            if (x instanceof IOException)
+                throw (IOException)x;
+            throw new IOException(x);
+        }
+    }
+
+    /**
+     * <p>Fail the parsing, deleting the part being parsed and notifying the listener.</p>
+     *
+     * @param failure the reason of the failure
+     */
+    public void fail(Throwable failure)
+    {
+        if (_failed)
+            return;
+        if (LOG.isDebugEnabled())
+            LOG.debug("Failed {}", this, failure);
+        _failed = true;
+        _failure = failure;
+
+        FormPart part = _part;
+        _part = null;
+        if (part != null)
+        {
+            try
+            {
+                part.close();
+                part.delete();
+            }
+            catch (IOException x)
+            {
+                LOG.trace("IGNORED", x);
+            }
+        }
+        release();
+        _listener.onFailure(failure);
+    }
+
+    /**
+     * <p>Get a {@link ReadListener} that parses the content of a request as it becomes available.</p>
+     * <p>The returned listener should be passed to {@link ServletInputStream#setReadListener(ReadListener)}
+     * from an asynchronous request.</p>
+     *
+     * @param input the input stream of the request
+     * @return a read listener that parses the content
+     */
+    public ReadListener newReadListener(ServletInputStream input)
+    {
+        return new ReadListener()
+        {
+            private final byte[] _data = new byte[getBufferSize()];
+
+            @Override
+            public void onDataAvailable() throws IOException
+            {
+                while (input.isReady())
+                {
+                    int read = input.read(_data);
+                    if (read < 0)
+                        break;
+                    parse(ByteBuffer.wrap(_data, 0, read), false);
+                }
+            }
+
+            @Override
+            public void onAllDataRead() throws IOException
+            {
+                parse(BufferUtil.EMPTY_BUFFER, true);
+            }
+
+            @Override
+            public void onError(Throwable failure)
+            {
+                fail(failure);
+            }
+        };
+    }
+
+    private ByteBuffer acquire()
+    {
+        if (_buffer == null)
+            _buffer = _bufferPool.acquire(_bufferSize, true);
+        return _buffer;
+    }
+
+    private void release()
+    {
+        ByteBuffer buffer = _buffer;
+        _buffer = null;
+        if (buffer != null)
+            _bufferPool.release(buffer);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{%s,total=%d,part=%s}", getClass().getSimpleName(), hashCode(), _parser.getState(), _total, _part);
+    }
+
+    /**
+     * A listener of the parts parsed.
+     */
+    public interface Listener
+    {
+        /**
+         * @param part a part, whose content has been entirely parsed
+         */
+        void onPart(Part part);
+
+        /**
+         * Called when all the parts have been parsed.
+         */
+        default void onComplete()
+        {
+        }
+
+        /**
+         * @param failure the reason the parsing failed
+         */
+        default void onFailure(Throwable failure)
+        {
+        }
+    }
+
+    /**
+     * A part of the form, with its content either in memory or in a file.
+     */
+    public class FormPart implements Part
+    {
+        private final String _name;
+        private final String _filename;
+        private final String _contentType;
+        private final MultiMap<String> _headers;
+        private ByteArrayOutputStream2 _bout;
+        private Path _path;
+        private FileChannel _channel;
+        private long _size;
+        private boolean _temporary = true;
+
+        private FormPart(String name, String filename, String contentType, MultiMap<String> headers)
+        {
+            _name = name;
+            _filename = filename;
+            _contentType = contentType;
+            _headers = headers;
+        }
+
+        private void open() throws IOException
+        {
+            if (_filename != null && !_filename.trim().isEmpty())
+                createFile();
+            else
+                _bout = new ByteArrayOutputStream2();
+        }
+
+        private void createFile() throws IOException
+        {
+            Files.createDirectories(_tmpDir);
+            _path = Files.createTempFile(_tmpDir, "MultiPart", "");
+            if (isDeleteOnExit())
+                _path.toFile().deleteOnExit();
+            _channel = FileChannel.open(_path, StandardOpenOption.WRITE);
+
+            if (_bout != null)
+            {
+                // Move the content written so far from memory to the file.
+                ByteBuffer content = ByteBuffer.wrap(_bout.getBuf(), 0, _bout.size());
+                while (content.hasRemaining())
+                {
+                    _channel.write(content);
+                }
+                _bout = null;
+            }
+        }
+
+        private void write(ByteBuffer content) throws IOException
+        {
+            int length = content.remaining();
+            if (_config.getMaxFileSize() > 0 && _size + length > _config.getMaxFileSize())
+                throw new IllegalStateException("Multipart Mime part " + _name + " exceeds max filesize");
+
+            if (_channel == null && _size + length > getMemoryWindow())
+                createFile();
+
+            if (_channel == null)
+            {
+                BufferUtil.writeTo(content, _bout);
+            }
+            else
+            {
+                // Copy to a pooled direct buffer, as writing a heap buffer to a channel
+                // would copy it to a temporary direct buffer as large as the content.
+                ByteBuffer buffer = acquire();
+                while (content.hasRemaining())
+                {
+                    BufferUtil.append(buffer, content);
+                    if (BufferUtil.space(buffer) == 0)
+                        flush(buffer);
+                }
+            }
+            _size += length;
+        }
+
+        private void flush(ByteBuffer buffer) throws IOException
+        {
+            while (buffer.hasRemaining())
+            {
+                _channel.write(buffer);
+            }
+            BufferUtil.clear(buffer);
+        }
+
+        private void close() throws IOException
+        {
+            if (_channel != null)
+            {
+                try
+                {
+                    if (_buffer != null)
+                        flush(_buffer);
+                }
+                finally
+                {
+                    _channel.close();
+                    _channel = null;
+                }
+            }
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException
+        {
+            if (_path != null)
+                return Files.newInputStream(_path);
+            return new ByteArrayInputStream(_bout.getBuf(), 0, _bout.size());
+        }
+
+        @Override
+        public String getContentType()
+        {
+            return _contentType;
+        }
+
+        @Override
+        public String getName()
+        {
+            return _name;
+        }
+
+        @Override
+        public String getSubmittedFileName()
+        {
+            return _filename;
+        }
+
+        @Override
+        public long getSize()
+        {
+            return _size;
+        }
+
+        /**
+         * @return the file to which the content has been written, or null if the content is in memory
+         */
+        public Path getPath()
+        {
+            return _path;
+        }
+
+        /**
+         * @return the content, or null if it has been written to a file
+         */
+        public byte[] getBytes()
+        {
+            return _bout == null ? null : _bout.toByteArray();
+        }
+
+        @Override
+        public void write(String fileName) throws IOException
+        {
+            Path path = Path.of(fileName);
+            if (!path.isAbsolute())
+                path = _tmpDir.resolve(path);
+
+            if (_path == null)
+            {
+                try (OutputStream out = Files.newOutputStream(path))
+                {
+                    _bout.writeTo(out);
+                }
+                _bout = null;
+            }
+            else
+            {
+                Files.move(_path, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+            _path = path;
+            _temporary = false;
+        }
+
+        /**
+         * Remove the file, whether or not {@link #write(String)} was called on it.
+         */
+        @Override
+        public void delete() throws IOException
+        {
+            if (_path != null)
+                Files.deleteIfExists(_path);
+        }
+
+        /**
+         * Remove the file only if it is temporary.
+         *
+         * @throws IOException if unable to delete the file
+         */
+        public void cleanUp() throws IOException
+        {
+            if (_temporary)
+                delete();
+        }
+
+        @Override
+        public String getHeader(String name)
+        {
+            if (name == null)
+                return null;
+            return _headers.getValue(StringUtil.asciiToLowerCase(name), 0);
+        }
+
+        @Override
+        public Collection<String> getHeaders(String name)
+        {
+            Collection<String> headers = _headers.getValues(StringUtil.asciiToLowerCase(name));
+            return headers == null ? Collections.emptyList() : headers;
+        }
+
+        @Override
+        public Collection<String> getHeaderNames()
+        {
+            return _headers.keySet();
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("Part{n=%s,fn=%s,ct=%s,s=%d,tmp=%b,path=%s}", _name, _filename, _contentType, _size, _temporary, _path);
+        }
+    }
+
+    private class Handler implements MultiPartParser.Handler
+    {
+        private String _contentDisposition;
+        private String _contentType;
+        private MultiMap<String> _headers = new MultiMap<>();
+
+        @Override
+        public void startPart()
+        {
+            _contentDisposition = null;
+            _contentType = null;
+            _headers = new MultiMap<>();
+        }
+
+        @Override
+        public void parsedField(String name, String value)
+        {
+            _headers.put(StringUtil.asciiToLowerCase(name), value);
+            if (name.equalsIgnoreCase("content-disposition"))
+                _contentDisposition = value;
+            else if (name.equalsIgnoreCase("content-type"))
+                _contentType = value;
+        }
+
+        @Override
+        public boolean headerComplete()
+        {
+            try
+            {
+                if (_contentDisposition == null)
+                    throw new IOException("Missing content-disposition");
+
+                boolean formData = false;
+                String name = null;
+                String filename = null;
+                QuotedStringTokenizer tok = new QuotedStringTokenizer(_contentDisposition, ";", false, true);
+                while (tok.hasMoreTokens())
+                {
+                    String t = tok.nextToken().trim();
+                    String tl = StringUtil.asciiToLowerCase(t);
+                    if (tl.startsWith("form-data"))
+                        formData = true;
+                    else if (tl.startsWith("name="))
+                        name = MultiPartFormInputStream.value(t);
+                    else if (tl.startsWith("filename="))
+                        filename = MultiPartFormInputStream.filenameValue(t);
+                }
+
+                if (!formData)
+                    throw new IOException("Part not form-data");
+                if (name == null)
+                    throw new IOException("No name in part");
+
+                _part = new FormPart(name, filename, _contentType, _headers);
+                _part.open();
+                return false;
+            }
+            catch (Throwable x)
+            {
+                _failure = x;
+                return true;
+            }
+        }
+
+        @Override
+        public boolean content(ByteBuffer buffer, boolean last)
+        {
+            FormPart part = _part;
+            if (part == null)
+                return false;
+
+            try
+            {
+                if (buffer.hasRemaining())
+                    part.write(buffer);
+
+                if (last)
+                {
+                    part.close();
+                    _part = null;
+                    _listener.onPart(part);
+                }
+                return false;
+            }
+            catch (Throwable x)
+            {
+                _failure = x;
+                return true;
+            }
+        }
+
+        @Override
+        public boolean messageComplete()
+        {
+            return true;
+        }
+
+        @Override
+        public void earlyEOF()
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Early EOF {}", MultiPartFormParser.this);
+        }
+    }
+}
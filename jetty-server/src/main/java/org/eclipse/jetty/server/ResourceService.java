@@ -271,9 +271,10 @@ public class ResourceService
 
             // Precompressed variant available?
             Map<CompressedContentFormat, ? extends HttpContent> precompressedContents = checkPrecompressedVariants ? content.getPrecompressedContents() : null;
-            if (precompressedContents != null && precompressedContents.size() > 0)
+            if (precompressedContents != null)
             {
-                // Tell caches that response may vary by accept-encoding
+                // Tell caches that response may vary by accept-encoding,
+                // even if the precompressed variants are yet to be generated.
                 response.addHeader(HttpHeader.VARY.asString(), HttpHeader.ACCEPT_ENCODING.asString());
 
                 List<String> preferredEncodings = getPreferredEncodingOrder(request);
@@ -1337,8 +1337,20 @@ public class Response implements HttpServletResponse
 
     public void putHeaders(HttpContent content, long contentLength, boolean etag)
     {
+        HttpField ct = content.getContentType();
+        boolean explicitCharset = ct != null &&
+            _characterEncoding != null &&
+            content.getCharacterEncoding() == null &&
+            content.getContentTypeValue() != null &&
+            __explicitCharset.contains(_encodingFrom);
+
+        // Cached content provides its Last-Modified, Content-Type and ETag as a pre-encoded block.
+        PreEncodedHttpField.Block block = null;
+        if (!explicitCharset && content instanceof CachedContentFactory.CachedHttpContent)
+            block = ((CachedContentFactory.CachedHttpContent)content).getHeaderBlock(etag);
+
         HttpField lm = content.getLastModified();
-        if (lm != null)
+        if (lm != null && block == null)
             _fields.put(lm);
 
         if (contentLength == USE_KNOWN_CONTENT_LENGTH)
@@ -1352,19 +1364,16 @@ public class Response implements HttpServletResponse
             _contentLength = contentLength;
         }
 
-        HttpField ct = content.getContentType();
         if (ct != null)
         {
-            if (_characterEncoding != null &&
-                content.getCharacterEncoding() == null &&
-                content.getContentTypeValue() != null &&
-                __explicitCharset.contains(_encodingFrom))
+            if (explicitCharset)
             {
                 setContentType(MimeTypes.getContentTypeWithoutCharset(content.getContentTypeValue()));
             }
             else
             {
-                _fields.put(ct);
+                if (block == null)
+                    _fields.put(ct);
                 _contentType = ct.getValue();
                 _characterEncoding = content.getCharacterEncoding();
                 _mimeType = content.getMimeType();
@@ -1375,7 +1384,11 @@ public class Response implements HttpServletResponse
         if (ce != null)
             _fields.put(ce);
 
-        if (etag)
+        if (block != null)
+        {
+            block.putTo(_fields);
+        }
+        else if (etag)
         {
             HttpField et = content.getETag();
             if (et != null)
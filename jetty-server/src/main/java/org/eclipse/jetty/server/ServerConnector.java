@@ -25,21 +25,27 @@ import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.net.StandardSocketOptions;
 import java.nio.channels.Channel;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
 import java.util.EventListener;
+import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.io.Connection;
 import org.eclipse.jetty.io.EndPoint;
 import org.eclipse.jetty.io.ManagedSelector;
+import org.eclipse.jetty.io.SelectorGroup;
 import org.eclipse.jetty.io.SelectorManager;
 import org.eclipse.jetty.io.SocketChannelEndPoint;
+import org.eclipse.jetty.util.IO;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
 import org.eclipse.jetty.util.annotation.Name;
@@ -71,6 +77,15 @@ import org.eclipse.jetty.util.thread.Scheduler;
  * which should allow optimal performance even if all the connections used are performing
  * significant non-blocking work in the callback tasks.
  * </p>
+ * <h2>SO_REUSEPORT Listeners</h2>
+ * <p>
+ * If {@link #setReusePortListeners(int)} is greater than 1, the connector opens that number of
+ * listening channels bound to the same port with the {@code SO_REUSEPORT} socket option, so that
+ * the kernel (for example Linux) load-balances new connections across them.
+ * Each listening channel is accepted by its own acceptor thread, or by a selector if there are
+ * fewer acceptors than listening channels, and registers its connections with its own subset of
+ * the selectors.
+ * </p>
  */
 @ManagedObject("HTTP connector using NIO ByteChannels and Selectors")
 public class ServerConnector extends AbstractNetworkConnector
@@ -85,6 +100,9 @@ public class ServerConnector extends AbstractNetworkConnector
     private volatile boolean _acceptedTcpNoDelay = true;
     private volatile int _acceptedReceiveBufferSize = -1;
     private volatile int _acceptedSendBufferSize = -1;
+    private volatile int _reusePortListeners = 1;
+    private volatile ServerSocketChannel[] _acceptChannels;
+    private volatile AtomicInteger[] _listenerSelectors;
 
     /**
      * <p>Construct a ServerConnector with a private instance of {@link HttpConnectionFactory} as the only factory.</p>
@@ -230,11 +248,56 @@ public class ServerConnector extends AbstractNetworkConnector
 
         super.doStart();
 
-        if (getAcceptors() == 0)
+        Closeable acceptor = newSelectorAcceptor();
+        if (acceptor != null)
+            _acceptor.set(acceptor);
+    }
+
+    /**
+     * @return a Closeable that cancels the selector acceptors of the listening channels
+     * that are not accepted by acceptor threads, or null if there are none
+     */
+    private Closeable newSelectorAcceptor() throws IOException
+    {
+        ServerSocketChannel[] channels = _acceptChannels;
+        if (channels == null)
         {
+            if (getAcceptors() > 0)
+                return null;
             _acceptChannel.configureBlocking(false);
-            _acceptor.set(_manager.acceptor(_acceptChannel));
+            return _manager.acceptor(_acceptChannel);
+        }
+
+        List<Closeable> acceptors = new ArrayList<>();
+        for (int i = getAcceptors(); i < channels.length; i++)
+        {
+            channels[i].configureBlocking(false);
+            acceptors.add(_manager.acceptor(channels[i], nextSelector(i)));
         }
+        if (acceptors.isEmpty())
+            return null;
+        return () -> acceptors.forEach(IO::close);
+    }
+
+    private boolean hasSelectorAcceptor()
+    {
+        ServerSocketChannel[] channels = _acceptChannels;
+        return getAcceptors() < (channels == null ? 1 : channels.length);
+    }
+
+    /**
+     * @param listener the index of a listening channel
+     * @return the id of the next selector, in round robin, of the subset of selectors of the given listening channel
+     */
+    private int nextSelector(int listener)
+    {
+        int selectors = _manager.getSelectorCount();
+        int listeners = _listenerSelectors.length;
+        if (selectors <= listeners)
+            return listener % selectors;
+        // Listener i uses the selectors with id i, i + listeners, i + 2 * listeners, etc.
+        int subset = (selectors - listener + listeners - 1) / listeners;
+        return listener + listeners * Math.floorMod(_listenerSelectors[listener].getAndIncrement(), subset);
     }
 
     @Override
@@ -247,6 +310,32 @@ public class ServerConnector extends AbstractNetworkConnector
         }
     }
 
+    /**
+     * @return the number of listening channels bound to the same port with SO_REUSEPORT
+     * @see #setReusePortListeners(int)
+     */
+    @ManagedAttribute("The number of listening channels bound to the same port with SO_REUSEPORT")
+    public int getReusePortListeners()
+    {
+        return _reusePortListeners;
+    }
+
+    /**
+     * <p>Sets the number of listening channels bound to the same port with the
+     * {@code SO_REUSEPORT} socket option, so that the kernel load-balances new
+     * connections across them.</p>
+     * <p>If the platform does not support {@code SO_REUSEPORT}, or if the channel
+     * is {@link #setInheritChannel(boolean) inherited}, a single listening channel is used.</p>
+     *
+     * @param listeners the number of listening channels, 1 to disable SO_REUSEPORT
+     */
+    public void setReusePortListeners(int listeners)
+    {
+        if (isStarted())
+            throw new IllegalStateException(getState());
+        _reusePortListeners = Math.max(1, listeners);
+    }
+
     @Override
     public boolean isOpen()
     {
@@ -310,7 +399,65 @@ public class ServerConnector extends AbstractNetworkConnector
             if (_localPort <= 0)
                 throw new IOException("Server channel not bound");
             addBean(_acceptChannel);
+            if (getReusePortListeners() > 1)
+                openReusePortChannels();
+        }
+    }
+
+    private void openReusePortChannels() throws IOException
+    {
+        if (!isReusePort(_acceptChannel))
+        {
+            LOG.warn("SO_REUSEPORT not available, using a single listening channel for {}", this);
+            return;
+        }
+
+        ServerSocketChannel[] channels = new ServerSocketChannel[getReusePortListeners()];
+        channels[0] = _acceptChannel;
+        InetSocketAddress bindAddress = getHost() == null ? new InetSocketAddress(_localPort) : new InetSocketAddress(getHost(), _localPort);
+        try
+        {
+            for (int i = 1; i < channels.length; i++)
+            {
+                ServerSocketChannel channel = ServerSocketChannel.open();
+                channels[i] = channel;
+                channel.socket().setReuseAddress(getReuseAddress());
+                channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                try
+                {
+                    channel.socket().bind(bindAddress, getAcceptQueueSize());
+                }
+                catch (BindException e)
+                {
+                    throw new IOException("Failed to bind to " + bindAddress, e);
+                }
+                channel.configureBlocking(true);
+            }
         }
+        catch (Throwable x)
+        {
+            for (int i = 1; i < channels.length; i++)
+            {
+                IO.close(channels[i]);
+            }
+            throw x;
+        }
+
+        AtomicInteger[] listenerSelectors = new AtomicInteger[channels.length];
+        for (int i = 0; i < channels.length; i++)
+        {
+            listenerSelectors[i] = new AtomicInteger();
+            if (i > 0)
+                addBean(channels[i]);
+        }
+        _listenerSelectors = listenerSelectors;
+        _acceptChannels = channels;
+    }
+
+    private boolean isReusePort(ServerSocketChannel channel) throws IOException
+    {
+        return channel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT) &&
+            Boolean.TRUE.equals(channel.getOption(StandardSocketOptions.SO_REUSEPORT));
     }
 
     /**
@@ -337,6 +484,8 @@ public class ServerConnector extends AbstractNetworkConnector
 
             InetSocketAddress bindAddress = getHost() == null ? new InetSocketAddress(getPort()) : new InetSocketAddress(getHost(), getPort());
             serverChannel.socket().setReuseAddress(getReuseAddress());
+            if (getReusePortListeners() > 1 && serverChannel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT))
+                serverChannel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
             try
             {
                 serverChannel.socket().bind(bindAddress, getAcceptQueueSize());
@@ -355,6 +504,18 @@ public class ServerConnector extends AbstractNetworkConnector
     {
         super.close();
 
+        ServerSocketChannel[] channels = _acceptChannels;
+        _acceptChannels = null;
+        _listenerSelectors = null;
+        if (channels != null)
+        {
+            for (int i = 1; i < channels.length; i++)
+            {
+                removeBean(channels[i]);
+                IO.close(channels[i]);
+            }
+        }
+
         ServerSocketChannel serverChannel = _acceptChannel;
         _acceptChannel = null;
         if (serverChannel != null)
@@ -379,20 +540,39 @@ public class ServerConnector extends AbstractNetworkConnector
     @Override
     public void accept(int acceptorID) throws IOException
     {
-        ServerSocketChannel serverChannel = _acceptChannel;
+        ServerSocketChannel[] channels = _acceptChannels;
+        int listener = channels == null ? 0 : acceptorID % channels.length;
+        ServerSocketChannel serverChannel = channels == null ? _acceptChannel : channels[listener];
         if (serverChannel != null && serverChannel.isOpen())
         {
             SocketChannel channel = serverChannel.accept();
-            accepted(channel);
+            accepted(channel, listener);
         }
     }
 
-    private void accepted(SocketChannel channel) throws IOException
+    private void accepted(SocketChannel channel, int listener) throws IOException
     {
         channel.configureBlocking(false);
         Socket socket = channel.socket();
         configure(socket);
-        _manager.accept(channel);
+        if (_acceptChannels == null)
+            _manager.accept(channel);
+        else
+            _manager.accept(channel, null, nextSelector(listener));
+    }
+
+    private int listenerOf(SelectableChannel server)
+    {
+        ServerSocketChannel[] channels = _acceptChannels;
+        if (channels != null)
+        {
+            for (int i = 0; i < channels.length; i++)
+            {
+                if (channels[i] == server)
+                    return i;
+            }
+        }
+        return 0;
     }
 
     protected void configure(Socket socket)
@@ -417,6 +597,47 @@ public class ServerConnector extends AbstractNetworkConnector
         return _manager;
     }
 
+    /**
+     * @return the number of selector groups, or 0 if selectors are not grouped
+     * @see #setSelectorGroups(int)
+     */
+    @ManagedAttribute("The number of selector groups, or 0 if selectors are not grouped")
+    public int getSelectorGroups()
+    {
+        return _manager.getSelectorGroups();
+    }
+
+    /**
+     * <p>Partitions the selectors of this connector into the given number of
+     * {@link SelectorGroup}s, each with its own dedicated thread pool, so that
+     * the selection, parsing and handling of a connection stay within one group.</p>
+     *
+     * @param groups the number of selector groups, or 0 to not group selectors
+     */
+    public void setSelectorGroups(int groups)
+    {
+        _manager.setSelectorGroups(groups);
+    }
+
+    /**
+     * @return the maximum number of threads of each selector group, or -1 for a default
+     * derived from the size of the executor
+     */
+    @ManagedAttribute("The maximum number of threads of each selector group")
+    public int getSelectorGroupThreads()
+    {
+        return _manager.getSelectorGroupThreads();
+    }
+
+    /**
+     * @param threads the maximum number of threads of each selector group, or -1 for a
+     * default derived from the size of the executor
+     */
+    public void setSelectorGroupThreads(int threads)
+    {
+        _manager.setSelectorGroupThreads(threads);
+    }
+
     @Override
     public Object getTransport()
     {
@@ -538,7 +759,7 @@ public class ServerConnector extends AbstractNetworkConnector
     public void setAccepting(boolean accepting)
     {
         super.setAccepting(accepting);
-        if (getAcceptors() > 0)
+        if (!hasSelectorAcceptor())
             return;
 
         try
@@ -547,8 +768,8 @@ public class ServerConnector extends AbstractNetworkConnector
             {
                 if (_acceptor.get() == null)
                 {
-                    Closeable acceptor = _manager.acceptor(_acceptChannel);
-                    if (!_acceptor.compareAndSet(null, acceptor))
+                    Closeable acceptor = newSelectorAcceptor();
+                    if (acceptor != null && !_acceptor.compareAndSet(null, acceptor))
                         acceptor.close();
                 }
             }
@@ -575,7 +796,13 @@ public class ServerConnector extends AbstractNetworkConnector
         @Override
         protected void accepted(SelectableChannel channel) throws IOException
         {
-            ServerConnector.this.accepted((SocketChannel)channel);
+            ServerConnector.this.accepted((SocketChannel)channel, 0);
+        }
+
+        @Override
+        protected void accepted(SelectableChannel server, SelectableChannel channel) throws IOException
+        {
+            ServerConnector.this.accepted((SocketChannel)channel, listenerOf(server));
         }
 
         @Override
@@ -0,0 +1,379 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.zip.Deflater;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Adapts the compression level of the responses of a {@link GzipHandler} to the load.</p>
+ * <p>The load is the greater of the CPU load of the process and the ratio of busy threads
+ * of the {@link ThreadPool}, or 1 if the thread pool is low on threads.  It is sampled at most
+ * once per {@link #setSamplePeriod(long) sample period}, by the requests themselves.</p>
+ * <ul>
+ * <li>Below the {@link #setLowLoad(double) low load}, responses are compressed with the
+ * {@link #setMaxLevel(int) maximum level}.</li>
+ * <li>Above the {@link #setHighLoad(double) high load}, responses are compressed with the
+ * {@link #setMinLevel(int) minimum level}, and responses smaller than the
+ * {@link #setMinSizeUnderLoad(int) minimum size under load} are not compressed.</li>
+ * <li>In between, the level decreases and the minimum size increases linearly with the load.</li>
+ * </ul>
+ * <p>Responses larger than the {@link #setLargeContentSize(long) large content size}, whose
+ * compression costs the most, are compressed with at most the level halfway between the
+ * minimum and maximum levels.</p>
+ * <p>The number of responses compressed with each level, and of responses not compressed
+ * because of the load, are counted.</p>
+ *
+ * @see GzipHandler#setAdaptiveCompressionLevel(AdaptiveCompressionLevel)
+ */
+@ManagedObject("Adapts the compression level to the load")
+public class AdaptiveCompressionLevel
+{
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptiveCompressionLevel.class);
+
+    private final LongAdder[] _levels = new LongAdder[Deflater.BEST_COMPRESSION + 1];
+    private final LongAdder _skipped = new LongAdder();
+    private final AtomicLong _sampled = new AtomicLong(System.nanoTime() - Long.MAX_VALUE / 2);
+    private ThreadPool _threadPool;
+    private DoubleSupplier _cpuLoad = processCpuLoad();
+    private int _minLevel = Deflater.BEST_SPEED;
+    private int _maxLevel = Deflater.BEST_COMPRESSION;
+    private double _lowLoad = 0.5;
+    private double _highLoad = 0.9;
+    private int _minSizeUnderLoad = 8 * 1024;
+    private long _largeContentSize = 1024 * 1024;
+    private long _samplePeriod = 500;
+    private volatile double _load;
+
+    public AdaptiveCompressionLevel()
+    {
+        for (int i = 0; i < _levels.length; i++)
+        {
+            _levels[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @return the thread pool whose saturation is part of the load, or null
+     */
+    public ThreadPool getThreadPool()
+    {
+        return _threadPool;
+    }
+
+    /**
+     * @param threadPool the thread pool whose saturation is part of the load, by default
+     * the thread pool of the server of the {@link GzipHandler}
+     */
+    public void setThreadPool(ThreadPool threadPool)
+    {
+        _threadPool = threadPool;
+    }
+
+    /**
+     * @param cpuLoad the supplier of the CPU load, from 0 to 1 or negative if not available,
+     * by default the CPU load of the process if the platform provides it
+     */
+    public void setCpuLoad(DoubleSupplier cpuLoad)
+    {
+        _cpuLoad = cpuLoad;
+    }
+
+    @ManagedAttribute("The compression level under high load")
+    public int getMinLevel()
+    {
+        return _minLevel;
+    }
+
+    /**
+     * @param level the compression level under high load, from 1 to 9 (default 1)
+     */
+    public void setMinLevel(int level)
+    {
+        _minLevel = checkLevel(level);
+    }
+
+    @ManagedAttribute("The compression level under low load")
+    public int getMaxLevel()
+    {
+        return _maxLevel;
+    }
+
+    /**
+     * @param level the compression level under low load, from 1 to 9 (default 9)
+     */
+    public void setMaxLevel(int level)
+    {
+        _maxLevel = checkLevel(level);
+    }
+
+    private static int checkLevel(int level)
+    {
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION)
+            throw new IllegalArgumentException("Invalid level " + level);
+        return level;
+    }
+
+    @ManagedAttribute("The load below which responses are compressed with the maximum level")
+    public double getLowLoad()
+    {
+        return _lowLoad;
+    }
+
+    /**
+     * @param load the load, from 0 to 1, below which responses are compressed with the maximum level (default 0.5)
+     */
+    public void setLowLoad(double load)
+    {
+        _lowLoad = load;
+    }
+
+    @ManagedAttribute("The load above which responses are compressed with the minimum level")
+    public double getHighLoad()
+    {
+        return _highLoad;
+    }
+
+    /**
+     * @param load the load, from 0 to 1, above which responses are compressed with the minimum level (default 0.9)
+     */
+    public void setHighLoad(double load)
+    {
+        _highLoad = load;
+    }
+
+    @ManagedAttribute("The size below which responses are not compressed under high load")
+    public int getMinSizeUnderLoad()
+    {
+        return _minSizeUnderLoad;
+    }
+
+    /**
+     * @param size the size in bytes below which responses are not compressed under high load (default 8 KiB)
+     */
+    public void setMinSizeUnderLoad(int size)
+    {
+        _minSizeUnderLoad = Math.max(0, size);
+    }
+
+    @ManagedAttribute("The size above which responses are compressed with at most the middle level")
+    public long getLargeContentSize()
+    {
+        return _largeContentSize;
+    }
+
+    /**
+     * @param size the size in bytes above which responses are compressed with at most the
+     * level halfway between the minimum and maximum levels, or -1 for no limit (default 1 MiB)
+     */
+    public void setLargeContentSize(long size)
+    {
+        _largeContentSize = size;
+    }
+
+    @ManagedAttribute("The minimum period in ms between samples of the load")
+    public long getSamplePeriod()
+    {
+        return _samplePeriod;
+    }
+
+    /**
+     * @param period the minimum period in ms between samples of the load (default 500)
+     */
+    public void setSamplePeriod(long period)
+    {
+        _samplePeriod = Math.max(0, period);
+    }
+
+    /**
+     * @return the load, from 0 to 1, sampled if the last sample is older than the sample period
+     */
+    @ManagedAttribute("The load, from 0 to 1")
+    public double getLoad()
+    {
+        long now = System.nanoTime();
+        long sampled = _sampled.get();
+        if (now - sampled >= TimeUnit.MILLISECONDS.toNanos(_samplePeriod) && _sampled.compareAndSet(sampled, now))
+            _load = sample();
+        return _load;
+    }
+
+    private double sample()
+    {
+        double load = 0;
+        ThreadPool threadPool = _threadPool;
+        if (threadPool != null)
+        {
+            if (threadPool.isLowOnThreads())
+            {
+                load = 1;
+            }
+            else if (threadPool instanceof ThreadPool.SizedThreadPool)
+            {
+                int maxThreads = ((ThreadPool.SizedThreadPool)threadPool).getMaxThreads();
+                int busyThreads = threadPool instanceof QueuedThreadPool
+                    ? ((QueuedThreadPool)threadPool).getBusyThreads()
+                    : threadPool.getThreads() - threadPool.getIdleThreads();
+                if (maxThreads > 0)
+                    load = Math.max(0, Math.min(1, busyThreads / (double)maxThreads));
+            }
+        }
+        double cpuLoad = _cpuLoad.getAsDouble();
+        if (cpuLoad > load)
+            load = Math.min(1, cpuLoad);
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} sampled load {} cpu {}", this, load, cpuLoad);
+        return load;
+    }
+
+    /**
+     * @return the ratio, from 0 to 1, of the load between the low and the high loads
+     */
+    private double pressure()
+    {
+        double load = getLoad();
+        if (load <= _lowLoad)
+            return 0;
+        if (load >= _highLoad)
+            return 1;
+        return (load - _lowLoad) / (_highLoad - _lowLoad);
+    }
+
+    /**
+     * <p>Decide whether a response should be compressed under the current load.</p>
+     *
+     * @param contentLength the length of the response content, or -1 if unknown
+     * @return whether the response should be compressed
+     */
+    public boolean isCompressible(long contentLength)
+    {
+        if (contentLength < 0 || contentLength >= _minSizeUnderLoad)
+            return true;
+        if (contentLength >= Math.round(pressure() * _minSizeUnderLoad))
+            return true;
+        _skipped.increment();
+        return false;
+    }
+
+    /**
+     * @param contentLength the length of the response content, or -1 if unknown
+     * @return the compression level of the response under the current load
+     */
+    public int getLevel(long contentLength)
+    {
+        int minLevel = _minLevel;
+        int maxLevel = Math.max(minLevel, _maxLevel);
+        int level = maxLevel - (int)Math.round(pressure() * (maxLevel - minLevel));
+        if (_largeContentSize >= 0 && contentLength > _largeContentSize)
+            level = Math.min(level, (minLevel + maxLevel) / 2);
+        _levels[level].increment();
+        return level;
+    }
+
+    /**
+     * @return the number of responses compressed with each level
+     */
+    @ManagedAttribute("The number of responses compressed with each level")
+    public List<String> getLevelDistribution()
+    {
+        List<String> distribution = new ArrayList<>();
+        for (int level = Deflater.BEST_SPEED; level < _levels.length; level++)
+        {
+            distribution.add(String.format("level=%d,responses=%d", level, _levels[level].sum()));
+        }
+        return distribution;
+    }
+
+    /**
+     * @param level the compression level
+     * @return the number of responses compressed with the level
+     */
+    public long getResponses(int level)
+    {
+        return _levels[checkLevel(level)].sum();
+    }
+
+    @ManagedAttribute("The number of responses not compressed because of the load")
+    public long getSkippedResponses()
+    {
+        return _skipped.sum();
+    }
+
+    @ManagedOperation(value = "Reset the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        for (LongAdder level : _levels)
+        {
+            level.reset();
+        }
+        _skipped.reset();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{levels=%d-%d,load=%.2f-%.2f}", getClass().getSimpleName(), hashCode(), _minLevel, _maxLevel, _lowLoad, _highLoad);
+    }
+
+    private static DoubleSupplier processCpuLoad()
+    {
+        // Use reflection as the java.management module may not be available.
+        try
+        {
+            Class<?> factory = Class.forName("java.lang.management.ManagementFactory");
+            Object mxBean = factory.getMethod("getOperatingSystemMXBean").invoke(null);
+            Class<?> mxBeanClass = Class.forName("com.sun.management.OperatingSystemMXBean");
+            if (mxBeanClass.isInstance(mxBean))
+            {
+                Method method = mxBeanClass.getMethod("getProcessCpuLoad");
+                return () ->
+                {
+                    try
+                    {
+                        return (Double)method.invoke(mxBean);
+                    }
+                    catch (Throwable x)
+                    {
+                        return -1;
+                    }
+                };
+            }
+        }
+        catch (Throwable x)
+        {
+            LOG.trace("IGNORED", x);
+        }
+        LOG.debug("Process CPU load not available");
+        return () -> -1;
+    }
+}
@@ -0,0 +1,136 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import java.nio.ByteBuffer;
+
+import org.eclipse.jetty.http.CompressedContentFormat;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.util.component.Destroyable;
+
+/**
+ * <p>A compression codec for an HTTP content coding, such as {@code gzip} or {@code deflate}.</p>
+ * <p>The {@link GzipHandler} negotiates the codec of a response from the codecs it is
+ * configured with, and the {@code Accept-Encoding} header of the request.  It encodes the
+ * response content with an {@link Encoder} from a pool, and decodes request content with a
+ * {@link Decoder} if the request has a {@code Content-Encoding} of the codec.</p>
+ * <p>Codecs for other content codings, such as {@code br} or {@code zstd}, may be provided
+ * by implementing this interface, for example with a native compression library.</p>
+ */
+public interface CompressionCodec
+{
+    /**
+     * @return the content coding of this codec, such as {@code gzip}
+     */
+    String getEncoding();
+
+    /**
+     * @return the format of content encoded by this codec
+     */
+    CompressedContentFormat getContentFormat();
+
+    /**
+     * @return a new Encoder, which may be pooled and reused after {@link Encoder#reset()}
+     */
+    Encoder newEncoder();
+
+    /**
+     * @param pool the pool of buffers for decoded content, or null
+     * @param bufferSize the size of the buffers of decoded content
+     * @return a new Decoder
+     */
+    Decoder newDecoder(ByteBufferPool pool, int bufferSize);
+
+    /**
+     * <p>A streaming encoder, used in the same way as a {@link java.util.zip.Deflater}.</p>
+     * <p>Input is given with {@link #setInput(ByteBuffer)} whenever {@link #needsInput()},
+     * then encoded with {@link #encode(ByteBuffer, boolean)} until more input is needed,
+     * or after {@link #finish()}, until the encoder has {@link #finished()}.</p>
+     */
+    interface Encoder
+    {
+        /**
+         * @param input the content to encode, whose position is advanced as it is encoded
+         */
+        void setInput(ByteBuffer input);
+
+        /**
+         * @return whether all the input has been encoded
+         */
+        boolean needsInput();
+
+        /**
+         * Indicate that there is no more input after the current input.
+         */
+        void finish();
+
+        /**
+         * @return whether all the encoded content, including any trailer, has been produced
+         */
+        boolean finished();
+
+        /**
+         * Encode input into the space of a buffer in flush mode, after its limit.
+         *
+         * @param output the buffer to encode into
+         * @param flush whether to flush all the encoded content of the input so far
+         */
+        void encode(ByteBuffer output, boolean flush);
+
+        /**
+         * <p>Set the compression level of the content to encode, before any input is given.</p>
+         * <p>The level is on the scale of {@link java.util.zip.Deflater}, from 1 for the fastest
+         * to 9 for the best compression, which codecs with another scale map to their own.
+         * Codecs without levels ignore it.  The level of the codec is restored by {@link #reset()}.</p>
+         *
+         * @param level the compression level
+         */
+        default void setLevel(int level)
+        {
+        }
+
+        /**
+         * Reset the encoder to encode new content.
+         */
+        void reset();
+
+        /**
+         * Release the resources of the encoder, which may not be used again.
+         */
+        void end();
+    }
+
+    /**
+     * A streaming decoder that produces decoded content one chunk at a time.
+     */
+    interface Decoder extends Destroyable
+    {
+        /**
+         * @param compressed the encoded content, whose position is advanced as it is decoded
+         * @return the next chunk of decoded content, which must be released, or null if
+         * all the encoded content has been consumed without producing any
+         */
+        ByteBuffer decode(ByteBuffer compressed);
+
+        /**
+         * @param chunk a chunk of decoded content returned from {@link #decode(ByteBuffer)}
+         */
+        void release(ByteBuffer chunk);
+    }
+}
@@ -0,0 +1,224 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import org.eclipse.jetty.http.CompressedContentFormat;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
+
+/**
+ * The {@code deflate} content coding, which is the zlib format, implemented with {@link Deflater} and {@link Inflater}.
+ */
+public class DeflateCodec implements CompressionCodec
+{
+    public static final CompressedContentFormat DEFLATE = new CompressedContentFormat("deflate", ".zz");
+
+    private final int _level;
+
+    public DeflateCodec()
+    {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param level the compression level, from 0 to 9 or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public DeflateCodec(int level)
+    {
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION))
+            throw new IllegalArgumentException("Invalid level " + level);
+        _level = level;
+    }
+
+    /**
+     * @return the compression level
+     */
+    public int getLevel()
+    {
+        return _level;
+    }
+
+    @Override
+    public String getEncoding()
+    {
+        return DEFLATE._encoding;
+    }
+
+    @Override
+    public CompressedContentFormat getContentFormat()
+    {
+        return DEFLATE;
+    }
+
+    @Override
+    public Encoder newEncoder()
+    {
+        return new DeflateEncoder(_level);
+    }
+
+    @Override
+    public Decoder newDecoder(ByteBufferPool pool, int bufferSize)
+    {
+        return new InflateDecoder(pool, bufferSize);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{level=%d}", getClass().getSimpleName(), hashCode(), _level);
+    }
+
+    private static class DeflateEncoder implements Encoder
+    {
+        private final Deflater _deflater;
+        private final int _level;
+
+        private DeflateEncoder(int level)
+        {
+            _deflater = new Deflater(level);
+            _level = level;
+        }
+
+        @Override
+        public void setInput(ByteBuffer input)
+        {
+            _deflater.setInput(input);
+        }
+
+        @Override
+        public boolean needsInput()
+        {
+            return _deflater.needsInput();
+        }
+
+        @Override
+        public void finish()
+        {
+            _deflater.finish();
+        }
+
+        @Override
+        public boolean finished()
+        {
+            return _deflater.finished();
+        }
+
+        @Override
+        public void encode(ByteBuffer output, boolean flush)
+        {
+            int position = BufferUtil.flipToFill(output);
+            _deflater.deflate(output, flush ? Deflater.SYNC_FLUSH : Deflater.NO_FLUSH);
+            BufferUtil.flipToFlush(output, position);
+        }
+
+        @Override
+        public void setLevel(int level)
+        {
+            _deflater.setLevel(level);
+        }
+
+        @Override
+        public void reset()
+        {
+            _deflater.reset();
+            _deflater.setLevel(_level);
+        }
+
+        @Override
+        public void end()
+        {
+            _deflater.end();
+        }
+    }
+
+    private static class InflateDecoder implements Decoder
+    {
+        private final Inflater _inflater = new Inflater();
+        private final ByteBufferPool _pool;
+        private final int _bufferSize;
+
+        private InflateDecoder(ByteBufferPool pool, int bufferSize)
+        {
+            _pool = pool;
+            _bufferSize = bufferSize;
+        }
+
+        @Override
+        public ByteBuffer decode(ByteBuffer compressed)
+        {
+            try
+            {
+                while (true)
+                {
+                    if (_inflater.finished())
+                    {
+                        // Ignore any content after the end of the stream.
+                        compressed.position(compressed.limit());
+                        return null;
+                    }
+
+                    if (_inflater.needsInput())
+                    {
+                        if (!compressed.hasRemaining())
+                            return null;
+                        _inflater.setInput(compressed);
+                    }
+
+                    ByteBuffer chunk = _pool == null ? BufferUtil.allocate(_bufferSize) : _pool.acquire(_bufferSize, false);
+                    int position = BufferUtil.flipToFill(chunk);
+                    int inflated = _inflater.inflate(chunk);
+                    BufferUtil.flipToFlush(chunk, position);
+                    if (inflated > 0)
+                        return chunk;
+                    release(chunk);
+
+                    if (_inflater.needsDictionary())
+                        throw new ZipException("Preset dictionary not supported");
+                }
+            }
+            catch (ZipException x)
+            {
+                throw new RuntimeException(x);
+            }
+            catch (DataFormatException x)
+            {
+                throw new RuntimeException(new ZipException(x.getMessage()));
+            }
+        }
+
+        @Override
+        public void release(ByteBuffer chunk)
+        {
+            if (_pool != null)
+                _pool.release(chunk);
+        }
+
+        @Override
+        public void destroy()
+        {
+            _inflater.end();
+        }
+    }
+}
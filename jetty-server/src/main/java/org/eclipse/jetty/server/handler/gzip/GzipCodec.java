@@ -0,0 +1,229 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.eclipse.jetty.http.CompressedContentFormat;
+import org.eclipse.jetty.http.GZIPContentDecoder;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
+
+/**
+ * The {@code gzip} content coding, implemented with {@link Deflater} and {@link GZIPContentDecoder}.
+ */
+public class GzipCodec implements CompressionCodec
+{
+    private static final byte[] GZIP_HEADER = new byte[]{(byte)0x1f, (byte)0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+    private final int _level;
+
+    public GzipCodec()
+    {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param level the compression level, from 0 to 9 or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public GzipCodec(int level)
+    {
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION))
+            throw new IllegalArgumentException("Invalid level " + level);
+        _level = level;
+    }
+
+    /**
+     * @return the compression level
+     */
+    public int getLevel()
+    {
+        return _level;
+    }
+
+    @Override
+    public String getEncoding()
+    {
+        return CompressedContentFormat.GZIP._encoding;
+    }
+
+    @Override
+    public CompressedContentFormat getContentFormat()
+    {
+        return CompressedContentFormat.GZIP;
+    }
+
+    @Override
+    public Encoder newEncoder()
+    {
+        return new GzipEncoder(_level);
+    }
+
+    @Override
+    public Decoder newDecoder(ByteBufferPool pool, int bufferSize)
+    {
+        ChunkDecoder decoder = new ChunkDecoder(pool, bufferSize);
+        return new Decoder()
+        {
+            @Override
+            public ByteBuffer decode(ByteBuffer compressed)
+            {
+                return decoder.decodeChunk(compressed);
+            }
+
+            @Override
+            public void release(ByteBuffer chunk)
+            {
+                decoder.release(chunk);
+            }
+
+            @Override
+            public void destroy()
+            {
+                decoder.destroy();
+            }
+        };
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{level=%d}", getClass().getSimpleName(), hashCode(), _level);
+    }
+
+    private static class GzipEncoder implements Encoder
+    {
+        private final CRC32 _crc = new CRC32();
+        private final Deflater _deflater;
+        private final int _level;
+        private boolean _header;
+        private boolean _trailer;
+
+        private GzipEncoder(int level)
+        {
+            _deflater = new Deflater(level, true);
+            _level = level;
+        }
+
+        @Override
+        public void setInput(ByteBuffer input)
+        {
+            _crc.update(input.slice());
+            _deflater.setInput(input);
+        }
+
+        @Override
+        public boolean needsInput()
+        {
+            return _deflater.needsInput();
+        }
+
+        @Override
+        public void finish()
+        {
+            _deflater.finish();
+        }
+
+        @Override
+        public boolean finished()
+        {
+            return _trailer;
+        }
+
+        @Override
+        public void encode(ByteBuffer output, boolean flush)
+        {
+            if (!_header)
+            {
+                if (BufferUtil.space(output) < GZIP_HEADER.length)
+                    return;
+                BufferUtil.fill(output, GZIP_HEADER, 0, GZIP_HEADER.length);
+                _header = true;
+            }
+
+            if (!_deflater.finished())
+            {
+                int position = BufferUtil.flipToFill(output);
+                _deflater.deflate(output, flush ? Deflater.SYNC_FLUSH : Deflater.NO_FLUSH);
+                BufferUtil.flipToFlush(output, position);
+            }
+
+            if (_deflater.finished() && !_trailer && BufferUtil.space(output) >= 8)
+            {
+                BufferUtil.putIntLittleEndian(output, (int)_crc.getValue());
+                BufferUtil.putIntLittleEndian(output, (int)_deflater.getBytesRead());
+                _trailer = true;
+            }
+        }
+
+        @Override
+        public void setLevel(int level)
+        {
+            _deflater.setLevel(level);
+        }
+
+        @Override
+        public void reset()
+        {
+            _deflater.reset();
+            _deflater.setLevel(_level);
+            _crc.reset();
+            _header = false;
+            _trailer = false;
+        }
+
+        @Override
+        public void end()
+        {
+            _deflater.end();
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x{%s%s}", getClass().getSimpleName(), hashCode(), _deflater, _trailer ? "(finished)" : "");
+        }
+    }
+
+    private static class ChunkDecoder extends GZIPContentDecoder
+    {
+        private ByteBuffer _chunk;
+
+        private ChunkDecoder(ByteBufferPool pool, int bufferSize)
+        {
+            super(pool, bufferSize);
+        }
+
+        private ByteBuffer decodeChunk(ByteBuffer compressed)
+        {
+            _chunk = null;
+            decodeChunks(compressed);
+            return _chunk;
+        }
+
+        @Override
+        protected boolean decodedChunk(ByteBuffer chunk)
+        {
+            _chunk = chunk;
+            return true;
+        }
+    }
+}
@@ -18,15 +18,61 @@
 
 package org.eclipse.jetty.server.handler.gzip;
 
-import java.util.zip.Deflater;
+import java.nio.ByteBuffer;
 
 import org.eclipse.jetty.server.Request;
 
 public interface GzipFactory
 {
-    Deflater getDeflater(Request request, long contentLength);
+    /**
+     * @param request the request
+     * @param contentLength the length of the response content, or -1 if unknown
+     * @return the codec negotiated to encode the response, or null if the response should not be encoded
+     */
+    CompressionCodec getCodec(Request request, long contentLength);
+
+    /**
+     * @param codec the codec
+     * @param contentLength the length of the response content, or -1 if unknown
+     * @return an encoder of the codec, possibly from a pool, with the compression level of the response
+     */
+    CompressionCodec.Encoder getEncoder(CompressionCodec codec, long contentLength);
+
+    /**
+     * @param codec the codec
+     * @param encoder an encoder of the codec obtained from {@link #getEncoder(CompressionCodec, long)}
+     */
+    void recycle(CompressionCodec codec, CompressionCodec.Encoder encoder);
 
     boolean isMimeTypeGzipable(String mimetype);
 
-    void recycle(Deflater deflater);
+    /**
+     * @param request the request
+     * @param encoding the content coding of the response
+     * @param validator the ETag value of the uncompressed response
+     * @return a buffer of the compressed content cached for the request and validator, or null if there is none
+     */
+    default ByteBuffer getCachedContent(Request request, String encoding, String validator)
+    {
+        return null;
+    }
+
+    /**
+     * @param request the request
+     * @return the maximum size of compressed content that may be cached for the response, or 0 if it may not be cached
+     */
+    default int getMaxCachedContentSize(Request request)
+    {
+        return 0;
+    }
+
+    /**
+     * @param request the request
+     * @param encoding the content coding of the response
+     * @param validator the ETag value of the uncompressed response
+     * @param content the compressed content of the response
+     */
+    default void cacheContent(Request request, String encoding, String validator, ByteBuffer content)
+    {
+    }
 }
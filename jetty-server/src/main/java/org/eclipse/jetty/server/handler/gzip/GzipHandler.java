@@ -19,10 +19,12 @@
 package org.eclipse.jetty.server.handler.gzip;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Set;
-import java.util.regex.Pattern;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.zip.Deflater;
 import javax.servlet.DispatcherType;
 import javax.servlet.ServletContext;
@@ -36,15 +38,19 @@ import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpHeaderValue;
 import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.http.MimeTypes;
 import org.eclipse.jetty.http.PreEncodedHttpField;
 import org.eclipse.jetty.http.pathmap.PathSpecSet;
 import org.eclipse.jetty.server.HttpOutput;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.HandlerWrapper;
+import org.eclipse.jetty.util.BoundedCache;
 import org.eclipse.jetty.util.IncludeExclude;
 import org.eclipse.jetty.util.StringUtil;
-import org.eclipse.jetty.util.compression.DeflaterPool;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.compression.CompressionPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -140,6 +146,28 @@ import org.slf4j.LoggerFactory;
  * </li>
  * </ul>
  * <p>
+ * Responses are compressed, and requests decompressed, with {@link CompressionCodec}s,
+ * by default a {@link GzipCodec}.  Other codecs, such as a {@link DeflateCodec} or a codec
+ * for {@code br}, may be configured with {@link #setCodecs(CompressionCodec...)}, in which
+ * case the codec of a response is negotiated from the {@code Accept-Encoding} header.
+ * The compression level may be adapted to the load of the server, see
+ * {@link #setAdaptiveCompressionLevel(AdaptiveCompressionLevel)}.
+ * </p>
+ * <p>
+ * Compressed responses may optionally be cached, see {@link #setCacheCapacity(long)}.
+ * The compressed content of a {@code GET} response with an {@code ETag} header is
+ * cached by request URI, so that the next response for the same URI with the same
+ * {@code ETag} value is served from the cache rather than compressed again.
+ * Responses without an {@code ETag} are not cached, as their {@code Last-Modified}
+ * value, with a granularity of one second, may not change when the content does.  The content generated by the wrapped
+ * handler is discarded.  A cached response with a different value is invalidated.
+ * Only responses with status 200 are cached.  Requests with {@code Range}, {@code If-Range}
+ * or {@code Authorization} headers are never served from or stored in the cache, and
+ * responses that set cookies, that have a {@code Cache-Control} of {@code private} or
+ * {@code no-store}, or that vary on headers other than {@code Accept-Encoding} are
+ * never cached.
+ * </p>
+ * <p>
  * Historically the compression of responses were accomplished via
  * Servlet Filters (eg: {@code GzipFilter}) and usage of {@link javax.servlet.http.HttpServletResponseWrapper}.
  * Since the introduction of Async I/O in Servlet 3.1, this older form of Gzip support
@@ -154,14 +182,14 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
     public static final int DEFAULT_MIN_GZIP_SIZE = 32;
     public static final int BREAK_EVEN_GZIP_SIZE = 23;
     private static final Logger LOG = LoggerFactory.getLogger(GzipHandler.class);
-    private static final HttpField X_CE_GZIP = new PreEncodedHttpField("X-Content-Encoding", "gzip");
     private static final HttpField TE_CHUNKED = new PreEncodedHttpField(HttpHeader.TRANSFER_ENCODING, HttpHeaderValue.CHUNKED.asString());
-    private static final Pattern COMMA_GZIP = Pattern.compile(".*, *gzip");
 
     private int poolCapacity = -1;
-    private DeflaterPool _deflaterPool = null;
+    private CompressionCodec[] _codecs = {new GzipCodec()};
+    private EncoderPool[] _encoderPools;
 
     private int _minGzipSize = DEFAULT_MIN_GZIP_SIZE;
+    private AdaptiveCompressionLevel _adaptiveLevel;
     private boolean _syncFlush = false;
     private int _inflateBufferSize = -1;
     private EnumSet<DispatcherType> _dispatchers = EnumSet.of(DispatcherType.REQUEST);
@@ -170,6 +198,10 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
     private final IncludeExclude<String> _paths = new IncludeExclude<>(PathSpecSet.class);
     private final IncludeExclude<String> _mimeTypes = new IncludeExclude<>();
     private HttpField _vary = GzipHttpOutputInterceptor.VARY_ACCEPT_ENCODING;
+    private long _cacheCapacity;
+    private int _maxCachedContentSize = 1024 * 1024;
+    private BoundedCache<String, CachedContent> _cache;
+    private final LongAdder _cacheInvalidations = new LongAdder();
 
     /**
      * Instantiates a new GzipHandler.
@@ -410,27 +442,176 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
     @Override
     protected void doStart() throws Exception
     {
-        _deflaterPool = newDeflaterPool(poolCapacity);
+        _encoderPools = new EncoderPool[_codecs.length];
+        for (int i = 0; i < _codecs.length; i++)
+        {
+            _encoderPools[i] = new EncoderPool(_codecs[i], poolCapacity);
+            addBean(_encoderPools[i]);
+        }
+        if (_adaptiveLevel != null && _adaptiveLevel.getThreadPool() == null && getServer() != null)
+            _adaptiveLevel.setThreadPool(getServer().getThreadPool());
+        if (_cacheCapacity > 0)
+        {
+            // Use as many stripes as leaves room for several of the largest entries in each.
+            long stripes = Math.max(1, Math.min(16, _cacheCapacity / (4L * Math.max(1, _maxCachedContentSize))));
+            _cache = new BoundedCache<>(_cacheCapacity, (int)stripes, CachedContent::getSize);
+        }
         super.doStart();
     }
 
     @Override
-    public Deflater getDeflater(Request request, long contentLength)
+    protected void doStop() throws Exception
+    {
+        super.doStop();
+        for (EncoderPool pool : _encoderPools)
+        {
+            removeBean(pool);
+        }
+        _encoderPools = null;
+        _cache = null;
+    }
+
+    /**
+     * @return the codecs used to encode responses, in order of preference
+     */
+    public CompressionCodec[] getCodecs()
+    {
+        return _codecs.clone();
+    }
+
+    /**
+     * <p>Set the codecs used to encode responses, and to decode requests if
+     * {@link #setInflateBufferSize(int) inflation} is enabled.</p>
+     * <p>The codec of a response is the one of highest quality in the {@code Accept-Encoding}
+     * header of the request.  Codecs of equal quality are preferred in the order given.
+     * If there is a single codec, then it is used if the {@code Accept-Encoding} header
+     * contains its encoding.</p>
+     *
+     * @param codecs the codecs, in order of preference (default: a {@link GzipCodec})
+     */
+    public void setCodecs(CompressionCodec... codecs)
+    {
+        if (isStarted())
+            throw new IllegalStateException(getState());
+        if (codecs.length == 0)
+            throw new IllegalArgumentException("No codecs");
+        _codecs = codecs.clone();
+    }
+
+    @Override
+    public CompressionCodec getCodec(Request request, long contentLength)
     {
         if (contentLength >= 0 && contentLength < _minGzipSize)
         {
             LOG.debug("{} excluded minGzipSize {}", this, request);
             return null;
         }
+        AdaptiveCompressionLevel adaptiveLevel = _adaptiveLevel;
+        if (adaptiveLevel != null && !adaptiveLevel.isCompressible(contentLength))
+        {
+            LOG.debug("{} excluded by load {}", this, request);
+            return null;
+        }
 
         // check the accept encoding header
-        if (!request.getHttpFields().contains(HttpHeader.ACCEPT_ENCODING, "gzip"))
+        CompressionCodec codec = negotiate(request.getHttpFields());
+        if (codec == null)
+            LOG.debug("{} excluded not accepted encoding {}", this, request);
+        return codec;
+    }
+
+    private CompressionCodec negotiate(HttpFields fields)
+    {
+        CompressionCodec[] codecs = _codecs;
+        if (codecs.length == 1)
+            return fields.contains(HttpHeader.ACCEPT_ENCODING, codecs[0].getEncoding()) ? codecs[0] : null;
+
+        List<String> accepted = fields.getQualityCSV(HttpHeader.ACCEPT_ENCODING, encoding ->
         {
-            LOG.debug("{} excluded not gzip accept {}", this, request);
-            return null;
+            for (int i = 0; i < codecs.length; i++)
+            {
+                if (codecs[i].getEncoding().equalsIgnoreCase(encoding))
+                    return codecs.length - i;
+            }
+            return 0;
+        });
+        for (String encoding : accepted)
+        {
+            if ("*".equals(encoding))
+            {
+                // Any codec not explicitly listed, which may be with a quality of zero.
+                List<String> listed = fields.getCSV(HttpHeader.ACCEPT_ENCODING, false);
+                for (CompressionCodec codec : codecs)
+                {
+                    if (listed.stream().noneMatch(value -> isCoding(value, codec.getEncoding())))
+                        return codec;
+                }
+                return null;
+            }
+
+            CompressionCodec codec = getCodec(encoding);
+            if (codec != null)
+                return codec;
         }
+        return null;
+    }
 
-        return _deflaterPool.acquire();
+    private static boolean isCoding(String value, String encoding)
+    {
+        int semi = value.indexOf(';');
+        return (semi < 0 ? value : value.substring(0, semi)).trim().equalsIgnoreCase(encoding);
+    }
+
+    private CompressionCodec getCodec(String encoding)
+    {
+        for (CompressionCodec codec : _codecs)
+        {
+            if (codec.getEncoding().equalsIgnoreCase(encoding))
+                return codec;
+        }
+        return null;
+    }
+
+    @Override
+    public CompressionCodec.Encoder getEncoder(CompressionCodec codec, long contentLength)
+    {
+        CompressionCodec.Encoder encoder = getEncoderPool(codec).acquire();
+        AdaptiveCompressionLevel adaptiveLevel = _adaptiveLevel;
+        if (adaptiveLevel != null)
+            encoder.setLevel(adaptiveLevel.getLevel(contentLength));
+        return encoder;
+    }
+
+    @Override
+    public void recycle(CompressionCodec codec, CompressionCodec.Encoder encoder)
+    {
+        getEncoderPool(codec).release(encoder);
+    }
+
+    private EncoderPool getEncoderPool(CompressionCodec codec)
+    {
+        for (EncoderPool pool : _encoderPools)
+        {
+            if (pool._codec == codec)
+                return pool;
+        }
+        throw new IllegalArgumentException("Unknown codec " + codec);
+    }
+
+    private String stripEtagSuffixes(String etag)
+    {
+        String stripped = etag;
+        for (CompressionCodec codec : _codecs)
+        {
+            CompressedContentFormat format = codec.getContentFormat();
+            int i = stripped.indexOf(format._etagQuote);
+            while (i > 0)
+            {
+                stripped = stripped.substring(0, i) + stripped.substring(i + format._etag.length());
+                i = stripped.indexOf(format._etagQuote, i);
+            }
+        }
+        return stripped;
     }
 
     /**
@@ -559,12 +740,20 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
 
         // Handle request inflation
         HttpFields httpFields = baseRequest.getHttpFields();
-        boolean inflated = _inflateBufferSize > 0 && httpFields.contains(HttpHeader.CONTENT_ENCODING, "gzip");
+        CompressionCodec inflateCodec = null;
+        if (_inflateBufferSize > 0)
+        {
+            // Only the last content coding applied can be decoded.
+            String ce = httpFields.get(HttpHeader.CONTENT_ENCODING);
+            if (ce != null)
+                inflateCodec = getCodec(ce.substring(ce.lastIndexOf(',') + 1).trim());
+        }
+        boolean inflated = inflateCodec != null;
         if (inflated)
         {
             if (LOG.isDebugEnabled())
-                LOG.debug("{} inflate {}", this, request);
-            baseRequest.getHttpInput().addInterceptor(new GzipHttpInputInterceptor(baseRequest.getHttpChannel().getByteBufferPool(), _inflateBufferSize));
+                LOG.debug("{} inflate {} {}", this, inflateCodec.getEncoding(), request);
+            baseRequest.getHttpInput().addInterceptor(new GzipHttpInputInterceptor(inflateCodec, baseRequest.getHttpChannel().getByteBufferPool(), _inflateBufferSize));
         }
 
         // Are we already being gzipped?
@@ -599,18 +788,13 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
                     case IF_NONE_MATCH:
                     {
                         String etag = field.getValue();
-                        int i = etag.indexOf(CompressedContentFormat.GZIP._etagQuote);
-                        if (i <= 0 || alreadyGzipped)
+                        String stripped = alreadyGzipped ? etag : stripEtagSuffixes(etag);
+                        if (stripped.equals(etag))
                             newFields.add(field);
                         else
                         {
                             baseRequest.setAttribute("o.e.j.s.h.gzip.GzipHandler.etag", etag);
-                            while (i >= 0)
-                            {
-                                etag = etag.substring(0, i) + etag.substring(i + CompressedContentFormat.GZIP._etag.length());
-                                i = etag.indexOf(CompressedContentFormat.GZIP._etagQuote, i);
-                            }
-                            newFields.add(new HttpField(field.getHeader(), etag));
+                            newFields.add(new HttpField(field.getHeader(), stripped));
                         }
                         break;
                     }
@@ -622,15 +806,11 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
                     case CONTENT_ENCODING:
                         if (inflated)
                         {
-                            if (field.getValue().equalsIgnoreCase("gzip"))
-                                newFields.add(X_CE_GZIP);
-                            else if (COMMA_GZIP.matcher(field.getValue()).matches())
-                            {
-                                String v = field.getValue();
-                                v = v.substring(0, v.lastIndexOf(','));
-                                newFields.add(X_CE_GZIP);
-                                newFields.add(new HttpField(HttpHeader.CONTENT_ENCODING, v));
-                            }
+                            String v = field.getValue();
+                            int comma = v.lastIndexOf(',');
+                            newFields.add(new HttpField("X-Content-Encoding", inflateCodec.getEncoding()));
+                            if (comma > 0)
+                                newFields.add(new HttpField(HttpHeader.CONTENT_ENCODING, v.substring(0, comma)));
                         }
                         else
                         {
@@ -727,12 +907,6 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
         return _paths.test(requestURI);
     }
 
-    @Override
-    public void recycle(Deflater deflater)
-    {
-        _deflaterPool.release(deflater);
-    }
-
     /**
      * Set the excluded filter list of HTTP methods (replacing any previously set)
      *
@@ -825,6 +999,28 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
         _minGzipSize = Math.max(0, minGzipSize);
     }
 
+    /**
+     * @return the policy adapting the compression level to the load, or null if the level of the codecs is used
+     */
+    @ManagedAttribute("The policy adapting the compression level to the load")
+    public AdaptiveCompressionLevel getAdaptiveCompressionLevel()
+    {
+        return _adaptiveLevel;
+    }
+
+    /**
+     * <p>Set a policy to adapt the compression level, and the minimum size of compressed
+     * responses, to the CPU load and the saturation of the thread pool.</p>
+     * <p>If the policy has no thread pool, the thread pool of the server is used.</p>
+     *
+     * @param adaptiveLevel the policy, or null to use the level of the codecs (default null)
+     */
+    public void setAdaptiveCompressionLevel(AdaptiveCompressionLevel adaptiveLevel)
+    {
+        updateBean(_adaptiveLevel, adaptiveLevel);
+        _adaptiveLevel = adaptiveLevel;
+    }
+
     /**
      * Set the included filter list of HTTP Methods (replacing any previously set)
      *
@@ -870,9 +1066,9 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
     }
 
     /**
-     * Gets the maximum number of Deflaters that the DeflaterPool can hold.
+     * Gets the maximum number of encoders that the pool of each codec can hold.
      *
-     * @return the Deflater pool capacity
+     * @return the encoder pool capacity
      */
     public int getDeflaterPoolCapacity()
     {
@@ -880,7 +1076,7 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
     }
 
     /**
-     * Sets the maximum number of Deflaters that the DeflaterPool can hold.
+     * Sets the maximum number of encoders that the pool of each codec can hold.
      */
     public void setDeflaterPoolCapacity(int capacity)
     {
@@ -890,9 +1086,169 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
         poolCapacity = capacity;
     }
 
-    protected DeflaterPool newDeflaterPool(int capacity)
+    /**
+     * @return the maximum total size in bytes of the cached compressed content, or 0 if there is no cache
+     * @see #setCacheCapacity(long)
+     */
+    @ManagedAttribute("The maximum total size in bytes of the cached compressed content")
+    public long getCacheCapacity()
     {
-        return new DeflaterPool(capacity, Deflater.DEFAULT_COMPRESSION, true);
+        return _cacheCapacity;
+    }
+
+    /**
+     * <p>Set the maximum total size in bytes of the cached compressed content.</p>
+     * <p>The compressed content is cached in direct buffers, outside of the heap.
+     * When the cache is full, the least recently used content is evicted.</p>
+     *
+     * @param capacity the maximum total size in bytes, or 0 for no cache (the default)
+     */
+    public void setCacheCapacity(long capacity)
+    {
+        if (isStarted())
+            throw new IllegalStateException(getState());
+        _cacheCapacity = Math.max(0, capacity);
+    }
+
+    /**
+     * @return the maximum size in bytes of the compressed content of a response that is cached
+     */
+    @ManagedAttribute("The maximum size in bytes of the compressed content of a response that is cached")
+    public int getMaxCachedContentSize()
+    {
+        return _maxCachedContentSize;
+    }
+
+    /**
+     * @param size the maximum size in bytes of the compressed content of a response that is cached
+     */
+    public void setMaxCachedContentSize(int size)
+    {
+        if (isStarted())
+            throw new IllegalStateException(getState());
+        _maxCachedContentSize = size;
+    }
+
+    @ManagedAttribute("The number of responses served from the cache")
+    public long getCacheHits()
+    {
+        BoundedCache<String, CachedContent> cache = _cache;
+        return cache == null ? 0 : cache.getHits();
+    }
+
+    @ManagedAttribute("The number of cacheable responses not found in the cache")
+    public long getCacheMisses()
+    {
+        BoundedCache<String, CachedContent> cache = _cache;
+        return cache == null ? 0 : cache.getMisses();
+    }
+
+    @ManagedAttribute("The number of responses evicted from the cache")
+    public long getCacheEvictions()
+    {
+        BoundedCache<String, CachedContent> cache = _cache;
+        return cache == null ? 0 : cache.getEvictions();
+    }
+
+    @ManagedAttribute("The number of cached responses invalidated by a changed ETag")
+    public long getCacheInvalidations()
+    {
+        return _cacheInvalidations.sum();
+    }
+
+    @ManagedAttribute("The number of responses in the cache")
+    public int getCachedResponses()
+    {
+        BoundedCache<String, CachedContent> cache = _cache;
+        return cache == null ? 0 : cache.size();
+    }
+
+    @ManagedAttribute("The total size in bytes of the cached compressed content")
+    public long getCachedBytes()
+    {
+        BoundedCache<String, CachedContent> cache = _cache;
+        return cache == null ? 0 : cache.getWeight();
+    }
+
+    @ManagedOperation(value = "Reset the cache statistics", impact = "ACTION")
+    public void resetCacheStatistics()
+    {
+        BoundedCache<String, CachedContent> cache = _cache;
+        if (cache != null)
+            cache.resetStatistics();
+        _cacheInvalidations.reset();
+    }
+
+    @ManagedOperation(value = "Remove all the responses from the cache", impact = "ACTION")
+    public void clearCache()
+    {
+        BoundedCache<String, CachedContent> cache = _cache;
+        if (cache != null)
+            cache.clear();
+    }
+
+    @Override
+    public ByteBuffer getCachedContent(Request request, String encoding, String validator)
+    {
+        BoundedCache<String, CachedContent> cache = _cache;
+        String key = cacheKey(cache, request, encoding);
+        if (key == null)
+            return null;
+
+        CachedContent cached = cache.get(key, c ->
+        {
+            if (c._validator.equals(validator))
+                return true;
+            _cacheInvalidations.increment();
+            return false;
+        });
+        return cached == null ? null : cached._content.slice();
+    }
+
+    @Override
+    public int getMaxCachedContentSize(Request request)
+    {
+        return cacheKey(_cache, request, "") == null ? 0 : _maxCachedContentSize;
+    }
+
+    @Override
+    public void cacheContent(Request request, String encoding, String validator, ByteBuffer content)
+    {
+        BoundedCache<String, CachedContent> cache = _cache;
+        String key = cacheKey(cache, request, encoding);
+        if (key == null)
+            return;
+        // Replace any content cached concurrently, as it may be for another validator.
+        cache.remove(key);
+        cache.putIfAbsent(key, new CachedContent(validator, content));
+    }
+
+    private String cacheKey(BoundedCache<String, CachedContent> cache, Request request, String encoding)
+    {
+        if (cache == null || !HttpMethod.GET.is(request.getMethod()))
+            return null;
+
+        // Partial and authorized responses must not be served to other requests.
+        HttpFields requestFields = request.getHttpFields();
+        if (requestFields.contains(HttpHeader.RANGE) ||
+            requestFields.contains(HttpHeader.IF_RANGE) ||
+            requestFields.contains(HttpHeader.AUTHORIZATION))
+            return null;
+        if (request.getResponse().getStatus() != HttpStatus.OK_200)
+            return null;
+
+        HttpFields fields = request.getResponse().getHttpFields();
+        if (fields.contains(HttpHeader.SET_COOKIE) ||
+            fields.contains(HttpHeader.CACHE_CONTROL, "private") ||
+            fields.contains(HttpHeader.CACHE_CONTROL, "no-store"))
+            return null;
+        for (String vary : fields.getCSV(HttpHeader.VARY, false))
+        {
+            if (!HttpHeader.ACCEPT_ENCODING.is(vary))
+                return null;
+        }
+
+        return encoding + ' ' + request.getServerName() + request.getHttpURI().getPathQuery();
     }
 
     @Override
@@ -900,4 +1256,50 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
     {
         return String.format("%s@%x{%s,min=%s,inflate=%s}", getClass().getSimpleName(), hashCode(), getState(), _minGzipSize, _inflateBufferSize);
     }
+
+    private static class EncoderPool extends CompressionPool<CompressionCodec.Encoder>
+    {
+        private final CompressionCodec _codec;
+
+        private EncoderPool(CompressionCodec codec, int capacity)
+        {
+            super(capacity);
+            _codec = codec;
+        }
+
+        @Override
+        protected CompressionCodec.Encoder newObject()
+        {
+            return _codec.newEncoder();
+        }
+
+        @Override
+        protected void end(CompressionCodec.Encoder encoder)
+        {
+            encoder.end();
+        }
+
+        @Override
+        protected void reset(CompressionCodec.Encoder encoder)
+        {
+            encoder.reset();
+        }
+    }
+
+    private static class CachedContent
+    {
+        private final String _validator;
+        private final ByteBuffer _content;
+
+        private CachedContent(String validator, ByteBuffer content)
+        {
+            _validator = validator;
+            _content = content;
+        }
+
+        private int getSize()
+        {
+            return _content.remaining();
+        }
+    }
 }
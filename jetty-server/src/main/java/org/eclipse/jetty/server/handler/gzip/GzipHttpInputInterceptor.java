@@ -20,30 +20,33 @@ package org.eclipse.jetty.server.handler.gzip;
 
 import java.nio.ByteBuffer;
 
-import org.eclipse.jetty.http.GZIPContentDecoder;
 import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.server.HttpInput;
 import org.eclipse.jetty.server.HttpInput.Content;
 import org.eclipse.jetty.util.component.Destroyable;
 
 /**
- * An HttpInput Interceptor that inflates GZIP encoded request content.
+ * An HttpInput Interceptor that decodes request content encoded with a {@link CompressionCodec},
+ * by default GZIP.
  */
 public class GzipHttpInputInterceptor implements HttpInput.Interceptor, Destroyable
 {
-    private final Decoder _decoder;
-    private ByteBuffer _chunk;
+    private final CompressionCodec.Decoder _decoder;
 
     public GzipHttpInputInterceptor(ByteBufferPool pool, int bufferSize)
     {
-        _decoder = new Decoder(pool, bufferSize);
+        this(new GzipCodec(), pool, bufferSize);
+    }
+
+    public GzipHttpInputInterceptor(CompressionCodec codec, ByteBufferPool pool, int bufferSize)
+    {
+        _decoder = codec.newDecoder(pool, bufferSize);
     }
 
     @Override
     public Content readFrom(Content content)
     {
-        _decoder.decodeChunks(content.getByteBuffer());
-        final ByteBuffer chunk = _chunk;
+        final ByteBuffer chunk = _decoder.decode(content.getByteBuffer());
 
         if (chunk == null)
             return null;
@@ -63,26 +66,4 @@ public class GzipHttpInputInterceptor implements HttpInput.Interceptor, Destroya
     {
         _decoder.destroy();
     }
-
-    private class Decoder extends GZIPContentDecoder
-    {
-        private Decoder(ByteBufferPool pool, int bufferSize)
-        {
-            super(pool, bufferSize);
-        }
-
-        @Override
-        protected boolean decodedChunk(final ByteBuffer chunk)
-        {
-            _chunk = chunk;
-            return true;
-        }
-
-        @Override
-        public void decodeChunks(ByteBuffer compressed)
-        {
-            _chunk = null;
-            super.decodeChunks(compressed);
-        }
-    }
 }
@@ -21,9 +21,8 @@ package org.eclipse.jetty.server.handler.gzip;
 import java.nio.ByteBuffer;
 import java.nio.channels.WritePendingException;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.zip.CRC32;
-import java.util.zip.Deflater;
 
+import org.eclipse.jetty.http.CompressedContentFormat;
 import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.HttpHeader;
@@ -31,30 +30,28 @@ import org.eclipse.jetty.http.MimeTypes;
 import org.eclipse.jetty.http.PreEncodedHttpField;
 import org.eclipse.jetty.server.HttpChannel;
 import org.eclipse.jetty.server.HttpOutput;
+import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.Response;
 import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.ByteArrayOutputStream2;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.IteratingNestedCallback;
 import org.eclipse.jetty.util.StringUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import static org.eclipse.jetty.http.CompressedContentFormat.GZIP;
-
 public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
 {
     public static Logger LOG = LoggerFactory.getLogger(GzipHttpOutputInterceptor.class);
-    private static final byte[] GZIP_HEADER = new byte[]{(byte)0x1f, (byte)0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
 
     public static final HttpField VARY_ACCEPT_ENCODING = new PreEncodedHttpField(HttpHeader.VARY, HttpHeader.ACCEPT_ENCODING.asString());
 
     private enum GZState
     {
-        MIGHT_COMPRESS, NOT_COMPRESSING, COMMITTING, COMPRESSING, FINISHED
+        MIGHT_COMPRESS, NOT_COMPRESSING, COMMITTING, COMPRESSING, CACHED, FINISHED
     }
 
     private final AtomicReference<GZState> _state = new AtomicReference<>(GZState.MIGHT_COMPRESS);
-    private final CRC32 _crc = new CRC32();
 
     private final GzipFactory _factory;
     private final HttpOutput.Interceptor _interceptor;
@@ -63,8 +60,13 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
     private final int _bufferSize;
     private final boolean _syncFlush;
 
-    private Deflater _deflater;
+    private CompressionCodec _codec;
+    private CompressionCodec.Encoder _encoder;
     private ByteBuffer _buffer;
+    private ByteBuffer _cached;
+    private String _validator;
+    private ByteArrayOutputStream2 _recording;
+    private int _maxRecording;
 
     public GzipHttpOutputInterceptor(GzipFactory factory, HttpChannel channel, HttpOutput.Interceptor next, boolean syncFlush)
     {
@@ -113,18 +115,16 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
                 gzip(content, complete, callback);
                 break;
 
+            case CACHED:
+                cached(complete, callback);
+                break;
+
             default:
                 callback.failed(new IllegalStateException("state=" + _state.get()));
                 break;
         }
     }
 
-    private void addTrailer()
-    {
-        BufferUtil.putIntLittleEndian(_buffer, (int)_crc.getValue());
-        BufferUtil.putIntLittleEndian(_buffer, _deflater.getTotalIn());
-    }
-
     private void gzip(ByteBuffer content, boolean complete, final Callback callback)
     {
         if (content.hasRemaining() || complete)
@@ -133,6 +133,15 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
             callback.succeeded();
     }
 
+    private void cached(boolean complete, Callback callback)
+    {
+        // The content written is discarded, as the cached compressed content is written in its place.
+        if (complete)
+            _interceptor.write(_cached, true, callback);
+        else
+            callback.succeeded();
+    }
+
     protected void commit(ByteBuffer content, boolean complete, Callback callback)
     {
         // Are we excluding because of status?
@@ -147,11 +156,12 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
             {
                 String requestEtags = (String)_channel.getRequest().getAttribute("o.e.j.s.h.gzip.GzipHandler.etag");
                 String responseEtag = response.getHttpFields().get(HttpHeader.ETAG);
-                if (requestEtags != null && responseEtag != null)
+                CompressionCodec codec = requestEtags == null || responseEtag == null ? null : _factory.getCodec(_channel.getRequest(), -1);
+                if (codec != null)
                 {
-                    String responseEtagGzip = etagGzip(responseEtag);
-                    if (requestEtags.contains(responseEtagGzip))
-                        response.getHttpFields().put(HttpHeader.ETAG, responseEtagGzip);
+                    String responseEtagCompressed = etag(responseEtag, codec.getContentFormat());
+                    if (requestEtags.contains(responseEtagCompressed))
+                        response.getHttpFields().put(HttpHeader.ETAG, responseEtagCompressed);
                 }
             }
 
@@ -191,30 +201,62 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
             if (_vary != null)
                 fields.ensureField(_vary);
 
+            Request request = _channel.getRequest();
             long contentLength = response.getContentLength();
             if (contentLength < 0 && complete)
                 contentLength = content.remaining();
 
-            _deflater = _factory.getDeflater(_channel.getRequest(), contentLength);
-
-            if (_deflater == null)
+            _codec = _factory.getCodec(request, contentLength);
+            if (_codec == null)
             {
-                LOG.debug("{} exclude no deflater", this);
+                LOG.debug("{} exclude no codec", this);
                 _state.set(GZState.NOT_COMPRESSING);
                 _interceptor.write(content, complete, callback);
                 return;
             }
+            CompressedContentFormat format = _codec.getContentFormat();
+
+            // Is the compressed content cached for this version of the response?
+            // Only the ETag identifies a version, as Last-Modified has a granularity of one second.
+            String validator = fields.get(HttpHeader.ETAG);
+            if (validator != null)
+            {
+                _cached = _factory.getCachedContent(request, format._encoding, validator);
+                if (_cached != null)
+                {
+                    LOG.debug("{} cached {}", this, _cached);
+                    fields.put(format._contentEncoding);
+                    response.setContentLength(-1);
+                    String etag = fields.get(HttpHeader.ETAG);
+                    if (etag != null)
+                        fields.put(HttpHeader.ETAG, etag(etag, format));
+                    _state.set(GZState.CACHED);
+                    cached(complete, callback);
+                    return;
+                }
+            }
+
+            _encoder = _factory.getEncoder(_codec, contentLength);
+            fields.put(format._contentEncoding);
 
-            fields.put(GZIP._contentEncoding);
-            _crc.reset();
+            // Record the compressed content to cache it, if it is cacheable.
+            if (validator != null)
+            {
+                _maxRecording = _factory.getMaxCachedContentSize(request);
+                if (_maxRecording > 0)
+                {
+                    _validator = validator;
+                    _recording = new ByteArrayOutputStream2(Math.min(_maxRecording, _bufferSize));
+                }
+            }
 
             // Adjust headers
             response.setContentLength(-1);
             String etag = fields.get(HttpHeader.ETAG);
             if (etag != null)
-                fields.put(HttpHeader.ETAG, etagGzip(etag));
+                fields.put(HttpHeader.ETAG, etag(etag, format));
 
-            LOG.debug("{} compressing {}", this, _deflater);
+            LOG.debug("{} compressing {}", this, _encoder);
             _state.set(GZState.COMPRESSING);
 
             if (BufferUtil.isEmpty(content))
@@ -231,10 +273,10 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
             callback.failed(new WritePendingException());
     }
 
-    private String etagGzip(String etag)
+    private static String etag(String etag, CompressedContentFormat format)
     {
         int end = etag.length() - 1;
-        return (etag.charAt(end) == '"') ? etag.substring(0, end) + GZIP._etag + '"' : etag + GZIP._etag;
+        return (etag.charAt(end) == '"') ? etag.substring(0, end) + format._etag + '"' : etag + format._etag;
     }
 
     public void noCompression()
@@ -257,6 +299,31 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
         }
     }
 
+    private void record(ByteBuffer buffer, boolean last)
+    {
+        if (_recording == null)
+            return;
+
+        int length = buffer.remaining();
+        if (_recording.getCount() + length > _maxRecording)
+        {
+            LOG.debug("{} too large to cache", this);
+            _recording = null;
+            return;
+        }
+        _recording.write(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+
+        if (last)
+        {
+            ByteBuffer content = BufferUtil.allocateDirect(_recording.getCount());
+            BufferUtil.flipToFill(content);
+            content.put(_recording.getBuf(), 0, _recording.getCount());
+            BufferUtil.flipToFlush(content, 0);
+            _recording = null;
+            _factory.cacheContent(_channel.getRequest(), _codec.getEncoding(), _validator, content);
+        }
+    }
+
     public boolean mightCompress()
     {
         return _state.get() == GZState.MIGHT_COMPRESS;
@@ -264,7 +331,6 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
 
     private class GzipBufferCB extends IteratingNestedCallback
     {
-        private ByteBuffer _copy;
         private final ByteBuffer _content;
         private final boolean _last;
 
@@ -278,16 +344,17 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
         @Override
         protected void onCompleteFailure(Throwable x)
         {
-            _factory.recycle(_deflater);
-            _deflater = null;
+            if (_encoder != null)
+                _factory.recycle(_codec, _encoder);
+            _encoder = null;
             super.onCompleteFailure(x);
         }
 
         @Override
         protected Action process() throws Exception
         {
-            // If we have no deflator
-            if (_deflater == null)
+            // If we have no encoder
+            if (_encoder == null)
             {
                 // then the trailer has been generated and written below.
                 // we have finished compressing the entire content, so
@@ -297,20 +364,14 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
                     _channel.getByteBufferPool().release(_buffer);
                     _buffer = null;
                 }
-                if (_copy != null)
-                {
-                    _channel.getByteBufferPool().release(_copy);
-                    _copy = null;
-                }
                 return Action.SUCCEEDED;
             }
 
             // If we have no buffer
             if (_buffer == null)
             {
-                // allocate a buffer and add the gzip header
+                // allocate a buffer, into which the encoder writes any header
                 _buffer = _channel.getByteBufferPool().acquire(_bufferSize, false);
-                BufferUtil.fill(_buffer, GZIP_HEADER, 0, GZIP_HEADER.length);
             }
             else
             {
@@ -318,83 +379,56 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
                 BufferUtil.clear(_buffer);
             }
 
-            // If the deflator is not finished, then compress more data
-            if (!_deflater.finished())
+            // If the encoder is not finished, then compress more data
+            if (!_encoder.finished())
             {
-                if (_deflater.needsInput())
+                if (_encoder.needsInput())
                 {
                     // if there is no more content available to compress
                     // then we are either finished all content or just the current write.
                     if (BufferUtil.isEmpty(_content))
                     {
                         if (_last)
-                            _deflater.finish();
+                            _encoder.finish();
                         else
                             return Action.SUCCEEDED;
                     }
                     else
                     {
-                        // If there is more content available to compress, we have to make sure
-                        // it is available in an array for the current deflator API, maybe slicing
-                        // of content.
-                        ByteBuffer slice;
-                        if (_content.hasArray())
-                            slice = _content;
-                        else
-                        {
-                            if (_copy == null)
-                                _copy = _channel.getByteBufferPool().acquire(_bufferSize, false);
-                            else
-                                BufferUtil.clear(_copy);
-                            slice = _copy;
-                            BufferUtil.append(_copy, _content);
-                        }
-
-                        // transfer the data from the slice to the the deflator
-                        byte[] array = slice.array();
-                        int off = slice.arrayOffset() + slice.position();
-                        int len = slice.remaining();
-                        _crc.update(array, off, len);
-                        _deflater.setInput(array, off, len);  // TODO use ByteBuffer API in Jetty-10
-                        slice.position(slice.position() + len);
-                        if (_last && BufferUtil.isEmpty(_content))
-                            _deflater.finish();
+                        // The encoder consumes the content, direct or not, as it compresses it.
+                        _encoder.setInput(_content);
+                        if (_last)
+                            _encoder.finish();
                     }
                 }
 
-                // deflate the content into the available space in the buffer
-                int off = _buffer.arrayOffset() + _buffer.limit();
-                int len = BufferUtil.space(_buffer);
-                int produced = _deflater.deflate(_buffer.array(), off, len, _syncFlush ? Deflater.SYNC_FLUSH : Deflater.NO_FLUSH);
-                _buffer.limit(_buffer.limit() + produced);
+                // encode the content into the available space in the buffer
+                _encoder.encode(_buffer, _syncFlush);
             }
 
-            // If we have finished deflation and there is room for the trailer.
-            if (_deflater.finished() && BufferUtil.space(_buffer) >= 8)
+            // If we have finished encoding, including any trailer, recycle the encoder
+            // to flag that we will have had completeSuccess when the write below completes.
+            if (_encoder.finished())
             {
-                // add the trailer and recycle the deflator to flag that we will have had completeSuccess when
-                // the write below completes.
-                addTrailer();
-                _factory.recycle(_deflater);
-                _deflater = null;
+                _factory.recycle(_codec, _encoder);
+                _encoder = null;
             }
 
             // write the compressed buffer.
-            _interceptor.write(_buffer, _deflater == null, this);
+            record(_buffer, _encoder == null);
+            _interceptor.write(_buffer, _encoder == null, this);
             return Action.SCHEDULED;
         }
 
         @Override
         public String toString()
         {
-            return String.format("%s[content=%s last=%b copy=%s buffer=%s deflate=%s %s]",
+            return String.format("%s[content=%s last=%b buffer=%s encoder=%s]",
                 super.toString(),
                 BufferUtil.toDetailString(_content),
                 _last,
-                BufferUtil.toDetailString(_copy),
                 BufferUtil.toDetailString(_buffer),
-                _deflater,
-                _deflater != null && _deflater.finished() ? "(finished)" : "");
+                _encoder);
         }
     }
 }
@@ -0,0 +1,222 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+import javax.servlet.MultipartConfigElement;
+import javax.servlet.http.Part;
+
+import org.eclipse.jetty.io.ArrayByteBufferPool;
+import org.eclipse.jetty.toolchain.test.MavenTestingUtils;
+import org.eclipse.jetty.util.IO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MultiPartFormParserTest
+{
+    private static final String BOUNDARY = "AaB03x";
+    private static final String CONTENT_TYPE = "multipart/form-data; boundary=" + BOUNDARY;
+
+    private final List<Part> _parts = new ArrayList<>();
+    private final AtomicReference<Throwable> _failure = new AtomicReference<>();
+    private final ArrayByteBufferPool _bufferPool = new ArrayByteBufferPool();
+    private boolean _complete;
+    private Path _tmpDir;
+
+    @BeforeEach
+    public void prepare() throws IOException
+    {
+        _tmpDir = MavenTestingUtils.getTargetTestingPath(MultiPartFormParserTest.class.getSimpleName());
+        IO.delete(_tmpDir.toFile());
+        Files.createDirectories(_tmpDir);
+    }
+
+    private MultiPartFormParser newParser(MultipartConfigElement config)
+    {
+        return new MultiPartFormParser(CONTENT_TYPE, config, _tmpDir, _bufferPool, new MultiPartFormParser.Listener()
+        {
+            @Override
+            public void onPart(Part part)
+            {
+                _parts.add(part);
+            }
+
+            @Override
+            public void onComplete()
+            {
+                _complete = true;
+            }
+
+            @Override
+            public void onFailure(Throwable failure)
+            {
+                _failure.set(failure);
+            }
+        });
+    }
+
+    private static byte[] part(String name, String filename, byte[] content)
+    {
+        String header = "--" + BOUNDARY + "\r\n" +
+            "Content-Disposition: form-data; name=\"" + name + "\"" + (filename == null ? "" : "; filename=\"" + filename + "\"") + "\r\n" +
+            "Content-Type: application/octet-stream\r\n" +
+            "\r\n";
+        byte[] head = header.getBytes(StandardCharsets.US_ASCII);
+        byte[] bytes = Arrays.copyOf(head, head.length + content.length + 2);
+        System.arraycopy(content, 0, bytes, head.length, content.length);
+        bytes[bytes.length - 2] = '\r';
+        bytes[bytes.length - 1] = '\n';
+        return bytes;
+    }
+
+    private static byte[] close()
+    {
+        return ("--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] content(int size)
+    {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++)
+        {
+            content[i] = (byte)('a' + i % 26);
+        }
+        return content;
+    }
+
+    private static void parse(MultiPartFormParser parser, byte[] bytes, int chunk) throws IOException
+    {
+        for (int i = 0; i < bytes.length; i += chunk)
+        {
+            parser.parse(ByteBuffer.wrap(bytes, i, Math.min(chunk, bytes.length - i)), false);
+        }
+    }
+
+    private static byte[] bytes(Part part) throws IOException
+    {
+        try (InputStream in = part.getInputStream())
+        {
+            return IO.readBytes(in);
+        }
+    }
+
+    @Test
+    public void testPartsDeliveredIncrementally() throws Exception
+    {
+        MultiPartFormParser parser = newParser(new MultipartConfigElement(""));
+
+        parse(parser, part("field", null, "value".getBytes(StandardCharsets.UTF_8)), 7);
+        assertThat(_parts.size(), is(0));
+
+        byte[] file = content(100_000);
+        parse(parser, part("file", "file.txt", file), 7);
+        assertThat(_parts.size(), is(1));
+        assertThat(_parts.get(0).getName(), is("field"));
+        assertThat(((MultiPartFormParser.FormPart)_parts.get(0)).getPath(), nullValue());
+        assertThat(new String(bytes(_parts.get(0)), StandardCharsets.UTF_8), is("value"));
+
+        parse(parser, close(), 7);
+        parser.parse(ByteBuffer.allocate(0), true);
+        assertTrue(_complete);
+        assertThat(_parts.size(), is(2));
+
+        MultiPartFormParser.FormPart part = (MultiPartFormParser.FormPart)_parts.get(1);
+        assertThat(part.getSubmittedFileName(), is("file.txt"));
+        assertThat(part.getHeader("Content-Type"), is("application/octet-stream"));
+        assertThat(part.getSize(), is((long)file.length));
+        assertThat(part.getPath(), notNullValue());
+        assertArrayEquals(file, bytes(part));
+
+        part.delete();
+        assertFalse(Files.exists(part.getPath()));
+        assertThat(_bufferPool.getDirectByteBufferCount(), is(1L));
+    }
+
+    @Test
+    public void testLargePartSpooledToFile() throws Exception
+    {
+        MultiPartFormParser parser = newParser(new MultipartConfigElement(""));
+        parser.setMemoryWindow(1024);
+        parser.setBufferSize(4096);
+
+        byte[] small = content(1000);
+        byte[] large = content(1_000_000);
+        parse(parser, part("small", null, small), 8192);
+        parse(parser, part("large", null, large), 8192);
+        parse(parser, close(), 8192);
+        parser.parse(ByteBuffer.allocate(0), true);
+
+        assertTrue(_complete);
+        assertThat(_parts.size(), is(2));
+        assertThat(((MultiPartFormParser.FormPart)_parts.get(0)).getPath(), nullValue());
+        assertArrayEquals(small, bytes(_parts.get(0)));
+        MultiPartFormParser.FormPart part = (MultiPartFormParser.FormPart)_parts.get(1);
+        assertThat(part.getPath(), notNullValue());
+        assertArrayEquals(large, bytes(part));
+        part.delete();
+    }
+
+    @Test
+    public void testMaxFileSize() throws Exception
+    {
+        MultiPartFormParser parser = newParser(new MultipartConfigElement("", 1000, -1, 100));
+
+        byte[] bytes = part("file", "file.txt", content(2000));
+        assertThrows(IOException.class, () -> parse(parser, bytes, 512));
+        assertThat(_failure.get().getMessage(), containsString("exceeds max filesize"));
+        assertThat(_parts.size(), is(0));
+        try (Stream<Path> files = Files.list(_tmpDir))
+        {
+            assertThat(files.count(), is(0L));
+        }
+        assertThat(_bufferPool.getDirectByteBufferCount(), is(1L));
+    }
+
+    @Test
+    public void testIncomplete() throws Exception
+    {
+        MultiPartFormParser parser = newParser(new MultipartConfigElement(""));
+
+        parse(parser, part("field", null, "value".getBytes(StandardCharsets.UTF_8)), 1024);
+        IOException x = assertThrows(IOException.class, () -> parser.parse(ByteBuffer.allocate(0), true));
+        assertThat(x.getMessage(), containsString("Incomplete"));
+        assertFalse(_complete);
+        assertThat(_failure.get(), is(x));
+    }
+}
@@ -22,19 +22,30 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
 
 import org.eclipse.jetty.http.CompressedContentFormat;
 import org.eclipse.jetty.http.HttpContent;
 import org.eclipse.jetty.http.MimeTypes;
 import org.eclipse.jetty.http.ResourceHttpContent;
+import org.eclipse.jetty.server.handler.gzip.DeflateCodec;
+import org.eclipse.jetty.server.handler.gzip.GzipCodec;
 import org.eclipse.jetty.toolchain.test.FS;
 import org.eclipse.jetty.toolchain.test.jupiter.WorkDir;
 import org.eclipse.jetty.toolchain.test.jupiter.WorkDirExtension;
 import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.IO;
 import org.eclipse.jetty.util.resource.PathResource;
 import org.eclipse.jetty.util.resource.Resource;
 import org.eclipse.jetty.util.resource.ResourceCollection;
@@ -46,6 +57,9 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -258,6 +272,16 @@ public class ResourceCacheTest
 
         Thread.sleep(200);
 
+        // names[2] is not requested more often than the content it would evict, so it is rejected.
+        content = cache.getContent(names[2], 4096);
+        content.getIndirectBuffer();
+        assertEquals(90, cache.getCachedSize());
+        assertEquals(2, cache.getCachedFiles());
+        assertEquals(1, cache.getRejections());
+
+        Thread.sleep(200);
+
+        // Once requested more often, content is admitted and the least recently used content is evicted to make room.
         content = cache.getContent(names[2], 4096);
         content.getIndirectBuffer();
         assertEquals(30, cache.getCachedSize());
@@ -272,21 +296,21 @@ public class ResourceCacheTest
 
         Thread.sleep(200);
 
-        content = cache.getContent(names[4], 4096);
+        content = getContent(cache, names[4], 2);
         content.getIndirectBuffer();
         assertEquals(90, cache.getCachedSize());
         assertEquals(3, cache.getCachedFiles());
 
         Thread.sleep(200);
 
-        content = cache.getContent(names[5], 4096);
+        content = getContent(cache, names[5], 3);
         content.getIndirectBuffer();
         assertEquals(90, cache.getCachedSize());
         assertEquals(2, cache.getCachedFiles());
 
         Thread.sleep(200);
 
-        content = cache.getContent(names[6], 4096);
+        content = getContent(cache, names[6], 4);
         content.getIndirectBuffer();
         assertEquals(60, cache.getCachedSize());
         assertEquals(1, cache.getCachedFiles());
@@ -297,7 +321,7 @@ public class ResourceCacheTest
         {
             out.write(' ');
         }
-        content = cache.getContent(names[7], 4096);
+        content = getContent(cache, names[7], 5);
         content.getIndirectBuffer();
         assertEquals(70, cache.getCachedSize());
         assertEquals(1, cache.getCachedFiles());
@@ -318,24 +342,40 @@ public class ResourceCacheTest
 
         Thread.sleep(200);
 
+        // The main space is full of files, and names[1] is requested less often than names[7].
+        cache.resetStatistics();
         content = cache.getContent(names[1], 4096);
         content.getIndirectBuffer();
-        assertEquals(82, cache.getCachedSize());
-        assertEquals(4, cache.getCachedFiles());
+        assertEquals(72, cache.getCachedSize());
+        assertEquals(3, cache.getCachedFiles());
+        assertEquals(1, cache.getRejections());
 
         Thread.sleep(200);
 
-        content = cache.getContent(names[2], 4096);
+        // Requested more often than names[7], names[2] evicts it.
+        content = getContent(cache, names[2], 4);
         content.getIndirectBuffer();
-        assertEquals(32, cache.getCachedSize());
-        assertEquals(4, cache.getCachedFiles());
+        assertEquals(22, cache.getCachedSize());
+        assertEquals(3, cache.getCachedFiles());
+        assertEquals(4, cache.getRejections());
 
         Thread.sleep(200);
 
-        content = cache.getContent(names[3], 4096);
+        // Requested more often than names[6], names[3] evicts it.
+        content = getContent(cache, names[3], 5);
+        content.getIndirectBuffer();
+        assertEquals(51, cache.getCachedSize());
+        assertEquals(3, cache.getCachedFiles());
+        assertEquals(8, cache.getRejections());
+
+        Thread.sleep(200);
+
+        // Requested more often than all the cached content, names[8] evicts as much as its size needs.
+        content = getContent(cache, names[8], 6);
         content.getIndirectBuffer();
-        assertEquals(61, cache.getCachedSize());
-        assertEquals(4, cache.getCachedFiles());
+        assertEquals(80, cache.getCachedSize());
+        assertEquals(1, cache.getCachedFiles());
+        assertEquals(13, cache.getRejections());
 
         Thread.sleep(200);
 
@@ -346,6 +386,92 @@ public class ResourceCacheTest
         cache.flushCache();
     }
 
+    @Test
+    public void testScanDoesNotEvictFrequentContent() throws Exception
+    {
+        Path basePath = workDir.getEmptyPathDir();
+        for (int i = 0; i < 40; i++)
+        {
+            makeFile(basePath.resolve("R-" + i + ".txt"), "content " + i);
+        }
+
+        Resource directory = new PathResource(basePath);
+        CachedContentFactory cache = new CachedContentFactory(null, directory, new MimeTypes(), false, false, CompressedContentFormat.NONE);
+        cache.setMaxCachedFiles(10);
+
+        // Request some content frequently.
+        for (int n = 0; n < 4; n++)
+        {
+            for (int i = 0; i < 5; i++)
+            {
+                cache.getContent("R-" + i + ".txt", 4096);
+            }
+        }
+
+        // Scan a lot of other content once.
+        for (int i = 5; i < 40; i++)
+        {
+            cache.getContent("R-" + i + ".txt", 4096);
+        }
+        assertThat(cache.getCachedFiles(), is(10));
+        assertThat(cache.getRejections(), is(not(0L)));
+
+        // The frequently requested content is still cached.
+        cache.resetStatistics();
+        for (int i = 0; i < 5; i++)
+        {
+            assertThat(cache.getContent("R-" + i + ".txt", 4096), is(not(nullValue())));
+        }
+        assertThat(cache.getHits(), is(5L));
+        assertThat(cache.getMisses(), is(0L));
+    }
+
+    @Test
+    public void testLargeScanDoesNotEvictFrequentContent() throws Exception
+    {
+        Path basePath = workDir.getEmptyPathDir();
+        for (int i = 0; i < 25; i++)
+        {
+            StringBuilder text = new StringBuilder();
+            while (text.length() < (i < 5 ? 100 : 400))
+            {
+                text.append(i).append(' ');
+            }
+            makeFile(basePath.resolve("R-" + i + ".txt"), text.toString());
+        }
+
+        Resource directory = new PathResource(basePath);
+        CachedContentFactory cache = new CachedContentFactory(null, directory, new MimeTypes(), false, false, CompressedContentFormat.NONE);
+        cache.setMaxCachedFiles(100);
+        cache.setMaxCacheSize(1000);
+
+        // Request some small content frequently.
+        for (int n = 0; n < 4; n++)
+        {
+            for (int i = 0; i < 5; i++)
+            {
+                cache.getContent("R-" + i + ".txt", 4096).getIndirectBuffer();
+            }
+        }
+
+        // Scan a lot of larger content once, that would not fit in the cache with the small content.
+        for (int i = 5; i < 25; i++)
+        {
+            cache.getContent("R-" + i + ".txt", 4096).getIndirectBuffer();
+        }
+        assertThat(cache.getCachedSize(), lessThanOrEqualTo(1000));
+        assertThat(cache.getRejections(), is(not(0L)));
+
+        // The frequently requested content is still cached.
+        cache.resetStatistics();
+        for (int i = 0; i < 5; i++)
+        {
+            assertThat(cache.getContent("R-" + i + ".txt", 4096), is(not(nullValue())));
+        }
+        assertThat(cache.getHits(), is(5L));
+        assertThat(cache.getMisses(), is(0L));
+    }
+
     @Test
     public void testNoextension() throws Exception
     {
@@ -360,6 +486,131 @@ public class ResourceCacheTest
         assertEquals(getContent(cache, "four"), "4 - four (no extension)");
     }
 
+    @Test
+    public void testGeneratedPrecompressed() throws Exception
+    {
+        Path basePath = workDir.getEmptyPathDir();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++)
+        {
+            text.append("line ").append(i % 10).append('\n');
+        }
+        makeFile(basePath.resolve("big.txt"), text.toString());
+        makeFile(basePath.resolve("tiny.txt"), "x");
+
+        CachedContentFactory cache = new CachedContentFactory(null, new PathResource(basePath), new MimeTypes(), false, true, new CompressedContentFormat[]{CompressedContentFormat.GZIP});
+        cache.setPrecompressCodecs(new GzipCodec());
+        cache.setPrecompressExecutor(Runnable::run);
+        cache.setPrecompressHits(2);
+
+        // Not yet hot, but the variants may be generated.
+        HttpContent content = cache.getContent("big.txt", 4096);
+        assertThat(content.getPrecompressedContents().size(), is(0));
+        assertEquals(0, cache.getCachedSize());
+
+        content = cache.getContent("big.txt", 4096);
+        Map<CompressedContentFormat, ? extends HttpContent> precompressed = content.getPrecompressedContents();
+        HttpContent gzip = precompressed.get(CompressedContentFormat.GZIP);
+        assertThat(gzip, is(not(nullValue())));
+        assertThat(gzip.getContentEncodingValue(), is("gzip"));
+        assertThat(gzip.getETagValue(), endsWith("--gzip\""));
+        ByteBuffer buffer = gzip.getIndirectBuffer();
+        assertEquals(gzip.getContentLengthValue(), buffer.remaining());
+        assertTrue(buffer.remaining() < content.getContentLengthValue());
+        assertEquals(buffer.remaining(), cache.getCachedSize());
+        try (InputStream in = new GZIPInputStream(gzip.getInputStream()))
+        {
+            assertArrayEquals(text.toString().getBytes(UTF_8), IO.readBytes(in));
+        }
+
+        // Content that does not compress has no variant.
+        cache.getContent("tiny.txt", 4096);
+        content = cache.getContent("tiny.txt", 4096);
+        assertThat(content.getPrecompressedContents().size(), is(0));
+
+        cache.flushCache();
+        assertEquals(0, cache.getCachedSize());
+    }
+
+    @Test
+    public void testGeneratedPrecompressedAfterFlush() throws Exception
+    {
+        Path basePath = workDir.getEmptyPathDir();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++)
+        {
+            text.append("line ").append(i % 10).append('\n');
+        }
+        makeFile(basePath.resolve("big.txt"), text.toString());
+
+        List<Runnable> tasks = new ArrayList<>();
+        DeflateCodec deflate = new DeflateCodec();
+        CachedContentFactory cache = new CachedContentFactory(null, new PathResource(basePath), new MimeTypes(), false, true, new CompressedContentFormat[]{CompressedContentFormat.GZIP, deflate.getContentFormat()});
+        cache.setPrecompressCodecs(new GzipCodec(), deflate);
+        cache.setPrecompressExecutor(tasks::add);
+        cache.setPrecompressHits(2);
+
+        HttpContent content = getContent(cache, "big.txt", 2);
+        assertEquals(1, tasks.size());
+
+        // The content is invalidated before the task runs, so nothing is compressed.
+        cache.flushCache();
+        tasks.get(0).run();
+        assertThat(content.getPrecompressedContents().size(), is(0));
+        assertEquals(0, cache.getCachedSize());
+        assertEquals(0, cache.getCachedFiles());
+    }
+
+    @Test
+    public void testGeneratedPrecompressedSkipsImagesAndRetriesRejected() throws Exception
+    {
+        Path basePath = workDir.getEmptyPathDir();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++)
+        {
+            text.append("line ").append(i % 10).append('\n');
+        }
+        makeFile(basePath.resolve("big.txt"), text.toString());
+        makeFile(basePath.resolve("big.png"), text.toString());
+
+        AtomicInteger rejections = new AtomicInteger(1);
+        CachedContentFactory cache = new CachedContentFactory(null, new PathResource(basePath), new MimeTypes(), false, true, new CompressedContentFormat[]{CompressedContentFormat.GZIP});
+        cache.setPrecompressCodecs(new GzipCodec());
+        cache.setPrecompressExecutor(task ->
+        {
+            if (rejections.getAndDecrement() > 0)
+                throw new RejectedExecutionException();
+            task.run();
+        });
+        cache.setPrecompressHits(2);
+
+        // The rejected precompression does not fail the request, and is retried.
+        for (int i = 0; i < 3; i++)
+        {
+            HttpContent content = cache.getContent("big.txt", 4096);
+            assertThat(content.getPrecompressedContents().size(), is(0));
+        }
+        HttpContent content = cache.getContent("big.txt", 4096);
+        assertThat(content.getPrecompressedContents().get(CompressedContentFormat.GZIP), is(not(nullValue())));
+
+        // Images are not precompressed.
+        for (int i = 0; i < 4; i++)
+        {
+            content = cache.getContent("big.png", 4096);
+            assertThat(content.getPrecompressedContents(), is(nullValue()));
+        }
+    }
+
+    static HttpContent getContent(CachedContentFactory rc, String path, int requests) throws Exception
+    {
+        HttpContent content = null;
+        for (int i = 0; i < requests; i++)
+        {
+            content = rc.getContent(path, 4096);
+        }
+        return content;
+    }
+
     static String getContent(CachedContentFactory rc, String path) throws Exception
     {
         HttpContent content = rc.getContent(path, rc.getMaxCachedFileSize());
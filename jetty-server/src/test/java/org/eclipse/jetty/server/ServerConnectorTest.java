@@ -46,6 +46,7 @@ import org.eclipse.jetty.server.handler.HandlerList;
 import org.eclipse.jetty.util.IO;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.anyOf;
@@ -58,6 +59,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.condition.OS.LINUX;
 
 public class ServerConnectorTest
 {
@@ -307,4 +309,70 @@ public class ServerConnectorTest
             assertThat(x.getMessage(), containsString("0.0.0.0:" + port));
         }
     }
+
+    @Test
+    @EnabledOnOs(LINUX)
+    public void testReusePortListeners() throws Exception
+    {
+        Server server = new Server();
+        // One acceptor thread, the other listeners are accepted by selectors.
+        ServerConnector connector = new ServerConnector(server, 1, 4);
+        connector.setPort(0);
+        connector.setReusePortListeners(4);
+        server.addConnector(connector);
+        server.addBean(new ConnectionLimit(64, connector));
+        server.setHandler(new HandlerList(new DefaultHandler()));
+
+        try
+        {
+            server.start();
+
+            assertThat(connector.getReusePortListeners(), is(4));
+            assertThat(connector.getLocalPort(), greaterThan(0));
+
+            URI uri = toServerURI(connector);
+            for (int i = 0; i < 32; i++)
+            {
+                getResponse(uri);
+            }
+
+            // The connector stops and resumes accepting on all the listeners.
+            connector.setAccepting(false);
+            connector.setAccepting(true);
+            getResponse(uri);
+        }
+        finally
+        {
+            server.stop();
+        }
+
+        assertThat(connector.getTransport(), Matchers.nullValue());
+    }
+
+    @Test
+    @EnabledOnOs(LINUX)
+    public void testReusePortListenersWithSelectorAcceptors() throws Exception
+    {
+        Server server = new Server();
+        ServerConnector connector = new ServerConnector(server, 0, 2);
+        connector.setPort(0);
+        connector.setReusePortListeners(3);
+        server.addConnector(connector);
+        server.setHandler(new HandlerList(new DefaultHandler()));
+
+        try
+        {
+            server.start();
+
+            URI uri = toServerURI(connector);
+            for (int i = 0; i < 32; i++)
+            {
+                getResponse(uri);
+            }
+        }
+        finally
+        {
+            server.stop();
+        }
+    }
 }
@@ -0,0 +1,145 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AdaptiveCompressionLevelTest
+{
+    private AdaptiveCompressionLevel _adaptiveLevel;
+    private double _cpuLoad;
+
+    @BeforeEach
+    public void prepare()
+    {
+        _adaptiveLevel = new AdaptiveCompressionLevel();
+        _adaptiveLevel.setCpuLoad(() -> _cpuLoad);
+        _adaptiveLevel.setSamplePeriod(0);
+    }
+
+    @Test
+    public void testLevelFollowsLoad()
+    {
+        _cpuLoad = 0.1;
+        assertThat(_adaptiveLevel.getLevel(-1), is(9));
+        _cpuLoad = 0.5;
+        assertThat(_adaptiveLevel.getLevel(10_000), is(9));
+        _cpuLoad = 0.7;
+        assertThat(_adaptiveLevel.getLevel(10_000), is(5));
+        _cpuLoad = 0.9;
+        assertThat(_adaptiveLevel.getLevel(10_000), is(1));
+        _cpuLoad = 1.0;
+        assertThat(_adaptiveLevel.getLevel(10_000), is(1));
+
+        // Large content is compressed with at most the middle level.
+        _cpuLoad = 0;
+        assertThat(_adaptiveLevel.getLevel(2 * 1024 * 1024), is(5));
+
+        assertThat(_adaptiveLevel.getResponses(9), is(2L));
+        assertThat(_adaptiveLevel.getResponses(5), is(2L));
+        assertThat(_adaptiveLevel.getResponses(1), is(2L));
+        assertThat(_adaptiveLevel.getLevelDistribution(), hasItem("level=9,responses=2"));
+
+        _adaptiveLevel.resetStatistics();
+        assertThat(_adaptiveLevel.getResponses(9), is(0L));
+    }
+
+    @Test
+    public void testSmallContentSkippedUnderLoad()
+    {
+        _adaptiveLevel.setMinSizeUnderLoad(1000);
+
+        _cpuLoad = 0.2;
+        assertTrue(_adaptiveLevel.isCompressible(100));
+        _cpuLoad = 0.7;
+        assertFalse(_adaptiveLevel.isCompressible(100));
+        assertTrue(_adaptiveLevel.isCompressible(500));
+        _cpuLoad = 0.95;
+        assertFalse(_adaptiveLevel.isCompressible(999));
+        assertTrue(_adaptiveLevel.isCompressible(1000));
+        assertTrue(_adaptiveLevel.isCompressible(-1));
+
+        assertThat(_adaptiveLevel.getSkippedResponses(), is(2L));
+    }
+
+    @Test
+    public void testLoadSampledPeriodically()
+    {
+        _adaptiveLevel.setSamplePeriod(60_000);
+        _cpuLoad = 0.25;
+        assertThat(_adaptiveLevel.getLoad(), closeTo(0.25, 0.001));
+        _cpuLoad = 1;
+        assertThat(_adaptiveLevel.getLoad(), closeTo(0.25, 0.001));
+    }
+
+    @Test
+    public void testThreadPoolSaturation() throws Exception
+    {
+        _cpuLoad = -1;
+        QueuedThreadPool threadPool = new QueuedThreadPool(8, 8);
+        threadPool.setReservedThreads(0);
+        threadPool.start();
+        _adaptiveLevel.setThreadPool(threadPool);
+        try
+        {
+            assertThat(_adaptiveLevel.getLevel(-1), is(9));
+
+            CountDownLatch latch = new CountDownLatch(1);
+            for (int i = 0; i < 8; i++)
+            {
+                threadPool.execute(() ->
+                {
+                    try
+                    {
+                        latch.await();
+                    }
+                    catch (InterruptedException x)
+                    {
+                        // Ignored.
+                    }
+                });
+            }
+            assertThat(_adaptiveLevel.getLevel(-1), is(1));
+            latch.countDown();
+        }
+        finally
+        {
+            threadPool.stop();
+        }
+    }
+
+    @Test
+    public void testInvalidLevel()
+    {
+        assertThrows(IllegalArgumentException.class, () -> _adaptiveLevel.setMinLevel(0));
+        assertThrows(IllegalArgumentException.class, () -> _adaptiveLevel.setMaxLevel(10));
+    }
+}
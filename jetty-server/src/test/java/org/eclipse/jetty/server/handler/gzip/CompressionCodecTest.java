@@ -0,0 +1,177 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.eclipse.jetty.io.ArrayByteBufferPool;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.IO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CompressionCodecTest
+{
+    public static Stream<Arguments> codecs()
+    {
+        return Stream.of(
+            Arguments.of(new GzipCodec(), false),
+            Arguments.of(new GzipCodec(Deflater.BEST_SPEED), true),
+            Arguments.of(new DeflateCodec(), false),
+            Arguments.of(new DeflateCodec(Deflater.BEST_COMPRESSION), true)
+        );
+    }
+
+    private static byte[] content(int size)
+    {
+        // Compressible content, with some randomness.
+        Random random = new Random(size);
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++)
+        {
+            content[i] = (byte)('a' + random.nextInt(8));
+        }
+        return content;
+    }
+
+    private static byte[] encode(CompressionCodec.Encoder encoder, byte[] content, int chunk, boolean direct, int outputSize)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer output = BufferUtil.allocate(outputSize);
+        for (int i = 0; i < content.length || !encoder.finished(); i += chunk)
+        {
+            int length = Math.max(0, Math.min(chunk, content.length - i));
+            ByteBuffer input = direct ? BufferUtil.allocateDirect(length) : BufferUtil.allocate(length);
+            BufferUtil.append(input, content, Math.min(i, content.length), length);
+            boolean last = i + chunk >= content.length;
+            encoder.setInput(input);
+            if (last)
+                encoder.finish();
+            while (!encoder.finished() && (last || !encoder.needsInput()))
+            {
+                BufferUtil.clear(output);
+                encoder.encode(output, false);
+                out.write(output.array(), output.arrayOffset() + output.position(), output.remaining());
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] decode(CompressionCodec codec, byte[] encoded, int chunk)
+    {
+        ByteBufferPool pool = new ArrayByteBufferPool();
+        CompressionCodec.Decoder decoder = codec.newDecoder(pool, 1024);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < encoded.length; i += chunk)
+        {
+            ByteBuffer input = ByteBuffer.wrap(encoded, i, Math.min(chunk, encoded.length - i));
+            ByteBuffer decoded;
+            while ((decoded = decoder.decode(input)) != null)
+            {
+                out.write(decoded.array(), decoded.arrayOffset() + decoded.position(), decoded.remaining());
+                decoder.release(decoded);
+            }
+        }
+        decoder.destroy();
+        return out.toByteArray();
+    }
+
+    @ParameterizedTest
+    @MethodSource("codecs")
+    public void testRoundTrip(CompressionCodec codec, boolean direct) throws Exception
+    {
+        byte[] content = content(100_000);
+        CompressionCodec.Encoder encoder = codec.newEncoder();
+        for (int chunk : new int[]{1000, 4096, 100_000})
+        {
+            byte[] encoded = encode(encoder, content, chunk, direct, 512);
+            encoder.reset();
+
+            assertArrayEquals(content, decode(codec, encoded, 777));
+
+            // The encoded content is readable by the JDK streams.
+            try (InputStream in = codec instanceof GzipCodec
+                ? new GZIPInputStream(new ByteArrayInputStream(encoded))
+                : new InflaterInputStream(new ByteArrayInputStream(encoded)))
+            {
+                assertArrayEquals(content, IO.readBytes(in));
+            }
+        }
+        encoder.end();
+    }
+
+    @ParameterizedTest
+    @MethodSource("codecs")
+    public void testEmptyContent(CompressionCodec codec, boolean direct)
+    {
+        CompressionCodec.Encoder encoder = codec.newEncoder();
+        byte[] encoded = encode(encoder, new byte[0], 1024, direct, 32);
+        assertArrayEquals(new byte[0], decode(codec, encoded, 1));
+        encoder.end();
+    }
+
+    @ParameterizedTest
+    @MethodSource("codecs")
+    public void testInvalidContent(CompressionCodec codec, boolean direct)
+    {
+        byte[] garbage = "this is not compressed content".getBytes();
+        assertThrows(RuntimeException.class, () -> decode(codec, garbage, 1024));
+    }
+
+    @ParameterizedTest
+    @MethodSource("codecs")
+    public void testEncoderLevel(CompressionCodec codec, boolean direct)
+    {
+        byte[] content = content(100_000);
+        CompressionCodec.Encoder encoder = codec.newEncoder();
+        encoder.setLevel(Deflater.BEST_SPEED);
+        byte[] fast = encode(encoder, content, 4096, direct, 512);
+        encoder.reset();
+        encoder.setLevel(Deflater.BEST_COMPRESSION);
+        byte[] best = encode(encoder, content, 4096, direct, 512);
+        encoder.end();
+
+        assertThat(best.length, lessThan(fast.length));
+        assertArrayEquals(content, decode(codec, fast, 1024));
+        assertArrayEquals(content, decode(codec, best, 1024));
+    }
+
+    @Test
+    public void testInvalidLevel()
+    {
+        assertThrows(IllegalArgumentException.class, () -> new GzipCodec(10));
+        assertThrows(IllegalArgumentException.class, () -> new DeflateCodec(-2));
+    }
+}
@@ -21,8 +21,10 @@ package org.eclipse.jetty.servlet;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.StringTokenizer;
+import java.util.zip.Deflater;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.UnavailableException;
@@ -40,6 +42,9 @@ import org.eclipse.jetty.server.ResourceContentFactory;
 import org.eclipse.jetty.server.ResourceService;
 import org.eclipse.jetty.server.ResourceService.WelcomeFactory;
 import org.eclipse.jetty.server.handler.ContextHandler;
+import org.eclipse.jetty.server.handler.gzip.CompressionCodec;
+import org.eclipse.jetty.server.handler.gzip.DeflateCodec;
+import org.eclipse.jetty.server.handler.gzip.GzipCodec;
 import org.eclipse.jetty.util.URIUtil;
 import org.eclipse.jetty.util.resource.Resource;
 import org.eclipse.jetty.util.resource.ResourceFactory;
@@ -86,6 +91,18 @@ import org.slf4j.LoggerFactory;
  *                    If set to a boolean True, then a default set of compressed formats
  *                    will be used, otherwise no precompressed formats.
  *
+ *  generatePrecompressed
+ *                    If set to a comma separated list of encoding types among
+ *                    "gzip" and "deflate", or to true for "gzip", then cached static
+ *                    content without a precompressed resource is compressed once in
+ *                    the background after it has been requested precompressHits times,
+ *                    and the compressed variant is cached in memory and served like a
+ *                    precompressed resource. Image, audio, video and archive content is
+ *                    not compressed. Requires the cache (see maxCacheSize). Default false.
+ *
+ *  precompressHits   The number of requests for cached content after which
+ *                    its compressed variants are generated. Default 10.
+ *
  *  resourceBase      Set to replace the context resource base
  *
  *  resourceCache     If set, this is a context attribute name, which the servlet
@@ -177,6 +194,18 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory, Welc
         _resourceService.setDirAllowed(getInitBoolean("dirAllowed", _resourceService.isDirAllowed()));
         _resourceService.setRedirectWelcome(getInitBoolean("redirectWelcome", _resourceService.isRedirectWelcome()));
         _resourceService.setPrecompressedFormats(parsePrecompressedFormats(getInitParameter("precompressed"), getInitBoolean("gzip", false)));
+        CompressionCodec[] precompressCodecs = parsePrecompressCodecs(getInitParameter("generatePrecompressed"));
+        if (precompressCodecs.length > 0)
+        {
+            // Generated variants are served like precompressed resources.
+            List<CompressedContentFormat> formats = new ArrayList<>(Arrays.asList(_resourceService.getPrecompressedFormats()));
+            for (CompressionCodec codec : precompressCodecs)
+            {
+                if (!formats.contains(codec.getContentFormat()))
+                    formats.add(codec.getContentFormat());
+            }
+            _resourceService.setPrecompressedFormats(formats.toArray(new CompressedContentFormat[0]));
+        }
         _resourceService.setPathInfoOnly(getInitBoolean("pathInfoOnly", _resourceService.isPathInfoOnly()));
         _resourceService.setEtags(getInitBoolean("etags", _resourceService.isEtags()));
 
@@ -265,7 +294,14 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory, Welc
                     _cache.setMaxCachedFileSize(maxCachedFileSize);
                 if (maxCachedFiles >= -1)
                     _cache.setMaxCachedFiles(maxCachedFiles);
+                if (precompressCodecs.length > 0)
+                {
+                    _cache.setPrecompressCodecs(precompressCodecs);
+                    _cache.setPrecompressExecutor(_contextHandler.getServer().getThreadPool());
+                    _cache.setPrecompressHits(getInitInt("precompressHits", _cache.getPrecompressHits()));
+                }
                 _servletContext.setAttribute(resourceCache == null ? "resourceCache" : resourceCache, _cache);
+                _contextHandler.addBean(_cache);
             }
         }
         catch (Exception e)
@@ -274,6 +310,9 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory, Welc
             throw new UnavailableException(e.toString());
         }
 
+        if (_cache == null && precompressCodecs.length > 0)
+            LOG.warn("generatePrecompressed ignored without a resource cache");
+
         HttpContent.ContentFactory contentFactory = _cache;
         if (contentFactory == null)
         {
@@ -345,6 +384,33 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory, Welc
         return ret.toArray(new CompressedContentFormat[ret.size()]);
     }
 
+    private CompressionCodec[] parsePrecompressCodecs(String generate)
+    {
+        List<CompressionCodec> ret = new ArrayList<>();
+        if (generate == null || Boolean.FALSE.toString().equalsIgnoreCase(generate))
+            return new CompressionCodec[0];
+
+        // Compress with the best compression, as the variant is generated only once.
+        if (Boolean.parseBoolean(generate))
+        {
+            ret.add(new GzipCodec(Deflater.BEST_COMPRESSION));
+        }
+        else
+        {
+            for (String encoding : generate.split(","))
+            {
+                encoding = encoding.trim();
+                if (CompressedContentFormat.GZIP._encoding.equals(encoding))
+                    ret.add(new GzipCodec(Deflater.BEST_COMPRESSION));
+                else if (DeflateCodec.DEFLATE._encoding.equals(encoding))
+                    ret.add(new DeflateCodec(Deflater.BEST_COMPRESSION));
+                else
+                    LOG.warn("Cannot generate precompressed {} content", encoding);
+            }
+        }
+        return ret.toArray(new CompressionCodec[0]);
+    }
+
     /**
      * Compute the field _contextHandler.<br>
      * In the case where the DefaultServlet is deployed on the HttpService it is likely that
@@ -488,7 +554,10 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory, Welc
     public void destroy()
     {
         if (_cache != null)
+        {
             _cache.flushCache();
+            _contextHandler.removeBean(_cache);
+        }
         super.destroy();
     }
 
@@ -27,11 +27,7 @@ import java.util.EventListener;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ConcurrentMap;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
 import javax.servlet.DispatcherType;
@@ -62,11 +58,13 @@ import org.eclipse.jetty.server.UserIdentity;
 import org.eclipse.jetty.server.handler.ContextHandler;
 import org.eclipse.jetty.server.handler.ScopedHandler;
 import org.eclipse.jetty.util.ArrayUtil;
+import org.eclipse.jetty.util.BoundedCache;
 import org.eclipse.jetty.util.LazyList;
 import org.eclipse.jetty.util.MultiException;
 import org.eclipse.jetty.util.MultiMap;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.component.DumpableCollection;
 import org.eclipse.jetty.util.component.LifeCycle;
 import org.eclipse.jetty.util.thread.AutoLock;
@@ -90,6 +88,10 @@ import org.slf4j.LoggerFactory;
 public class ServletHandler extends ScopedHandler
 {
     private static final Logger LOG = LoggerFactory.getLogger(ServletHandler.class);
+    private static final FilterChain NO_FILTERS = (request, response) ->
+    {
+        throw new IllegalStateException();
+    };
 
     private final AutoLock _lock = new AutoLock();
     private ServletContextHandler _contextHandler;
@@ -117,11 +119,8 @@ public class ServletHandler extends ScopedHandler
     private ListenerHolder[] _listeners = new ListenerHolder[0];
     private boolean _initialized = false;
 
-    @SuppressWarnings("unchecked")
-    protected final ConcurrentMap<String, FilterChain>[] _chainCache = new ConcurrentMap[FilterMapping.ALL];
-
-    @SuppressWarnings("unchecked")
-    protected final Queue<String>[] _chainLRU = new Queue[FilterMapping.ALL];
+    private volatile BoundedCache<ChainKey, FilterChain> _chainCache;
+    private volatile BoundedCache<ChainKey, FilterChain> _chainClassCache;
 
     /**
      * Constructor.
@@ -182,17 +181,8 @@ public class ServletHandler extends ScopedHandler
 
             if (isFilterChainsCached())
             {
-                _chainCache[FilterMapping.REQUEST] = new ConcurrentHashMap<>();
-                _chainCache[FilterMapping.FORWARD] = new ConcurrentHashMap<>();
-                _chainCache[FilterMapping.INCLUDE] = new ConcurrentHashMap<>();
-                _chainCache[FilterMapping.ERROR] = new ConcurrentHashMap<>();
-                _chainCache[FilterMapping.ASYNC] = new ConcurrentHashMap<>();
-
-                _chainLRU[FilterMapping.REQUEST] = new ConcurrentLinkedQueue<>();
-                _chainLRU[FilterMapping.FORWARD] = new ConcurrentLinkedQueue<>();
-                _chainLRU[FilterMapping.INCLUDE] = new ConcurrentLinkedQueue<>();
-                _chainLRU[FilterMapping.ERROR] = new ConcurrentLinkedQueue<>();
-                _chainLRU[FilterMapping.ASYNC] = new ConcurrentLinkedQueue<>();
+                _chainCache = new BoundedCache<>(_maxFilterChainsCacheSize);
+                _chainClassCache = new BoundedCache<>(_maxFilterChainsCacheSize);
             }
 
             if (_contextHandler == null)
@@ -566,14 +556,17 @@ public class ServletHandler extends ScopedHandler
 
     private FilterChain getFilterChain(Request baseRequest, String pathInContext, ServletHolder servletHolder)
     {
-        String key = pathInContext == null ? servletHolder.getName() : pathInContext;
         int dispatch = FilterMapping.dispatch(baseRequest.getDispatcherType());
+        BoundedCache<ChainKey, FilterChain> chainCache = _filterChainsCached ? _chainCache : null;
+        BoundedCache<ChainKey, FilterChain> chainClassCache = _chainClassCache;
 
-        if (_filterChainsCached)
+        ChainKey key = null;
+        if (chainCache != null)
         {
-            FilterChain chain = _chainCache[dispatch].get(key);
+            key = new ChainKey(servletHolder, dispatch, pathInContext == null ? servletHolder.getName() : pathInContext);
+            FilterChain chain = chainCache.get(key);
             if (chain != null)
-                return chain;
+                return chain == NO_FILTERS ? null : chain;
         }
 
         // Build list of filters (list of FilterHolder objects)
@@ -610,57 +603,74 @@ public class ServletHandler extends ScopedHandler
             }
         }
 
-        if (filters.isEmpty())
-            return null;
+        if (chainCache == null || chainClassCache == null)
+            return filters.isEmpty() ? null : new Chain(baseRequest, filters, servletHolder);
 
-        FilterChain chain = null;
-        if (_filterChainsCached)
-        {
-            chain = newCachedChain(filters, servletHolder);
+        // The paths to which the same filters apply share a chain, so that a
+        // chain evicted for one path of many need not be built again.
+        FilterChain chain = filters.isEmpty() ? NO_FILTERS : chainClassCache.computeIfAbsent(
+            new ChainKey(servletHolder, dispatch, filters),
+            k -> newCachedChain(new ArrayList<>(filters), servletHolder));
+        chainCache.putIfAbsent(key, chain);
+        return chain == NO_FILTERS ? null : chain;
+    }
 
-            final Map<String, FilterChain> cache = _chainCache[dispatch];
-            final Queue<String> lru = _chainLRU[dispatch];
+    protected void invalidateChainsCache()
+    {
+        BoundedCache<ChainKey, FilterChain> chainCache = _chainCache;
+        if (chainCache != null)
+            chainCache.clear();
+        BoundedCache<ChainKey, FilterChain> chainClassCache = _chainClassCache;
+        if (chainClassCache != null)
+            chainClassCache.clear();
+    }
 
-            // Do we have too many cached chains?
-            while (_maxFilterChainsCacheSize > 0 && cache.size() >= _maxFilterChainsCacheSize)
-            {
-                // The LRU list is not atomic with the cache map, so be prepared to invalidate if
-                // a key is not found to delete.
-                // Delete by LRU (where U==created)
-                String k = lru.poll();
-                if (k == null)
-                {
-                    cache.clear();
-                    break;
-                }
-                cache.remove(k);
-            }
+    /**
+     * @return the number of requests for which a cached filter chain was found
+     */
+    @ManagedAttribute(value = "filter chain cache hits", readonly = true)
+    public long getFilterChainsCacheHits()
+    {
+        BoundedCache<ChainKey, FilterChain> chainCache = _chainCache;
+        return chainCache == null ? 0 : chainCache.getHits();
+    }
 
-            cache.put(key, chain);
-            lru.add(key);
-        }
-        else
-            chain = new Chain(baseRequest, filters, servletHolder);
+    /**
+     * @return the number of requests for which a filter chain was not cached
+     */
+    @ManagedAttribute(value = "filter chain cache misses", readonly = true)
+    public long getFilterChainsCacheMisses()
+    {
+        BoundedCache<ChainKey, FilterChain> chainCache = _chainCache;
+        return chainCache == null ? 0 : chainCache.getMisses();
+    }
 
-        return chain;
+    /**
+     * @return the number of filter chains evicted from the cache to bound its size
+     */
+    @ManagedAttribute(value = "filter chain cache evictions", readonly = true)
+    public long getFilterChainsCacheEvictions()
+    {
+        BoundedCache<ChainKey, FilterChain> chainCache = _chainCache;
+        return chainCache == null ? 0 : chainCache.getEvictions();
     }
 
-    protected void invalidateChainsCache()
+    /**
+     * @return the number of paths and servlet names with a cached filter chain
+     */
+    @ManagedAttribute(value = "filter chain cache size", readonly = true)
+    public int getFilterChainsCacheSize()
     {
-        if (_chainLRU[FilterMapping.REQUEST] != null)
-        {
-            _chainLRU[FilterMapping.REQUEST].clear();
-            _chainLRU[FilterMapping.FORWARD].clear();
-            _chainLRU[FilterMapping.INCLUDE].clear();
-            _chainLRU[FilterMapping.ERROR].clear();
-            _chainLRU[FilterMapping.ASYNC].clear();
-
-            _chainCache[FilterMapping.REQUEST].clear();
-            _chainCache[FilterMapping.FORWARD].clear();
-            _chainCache[FilterMapping.INCLUDE].clear();
-            _chainCache[FilterMapping.ERROR].clear();
-            _chainCache[FilterMapping.ASYNC].clear();
-        }
+        BoundedCache<ChainKey, FilterChain> chainCache = _chainCache;
+        return chainCache == null ? 0 : chainCache.size();
+    }
+
+    @ManagedOperation(value = "reset the filter chain cache statistics", impact = "ACTION")
+    public void resetFilterChainsCacheStatistics()
+    {
+        BoundedCache<ChainKey, FilterChain> chainCache = _chainCache;
+        if (chainCache != null)
+            chainCache.resetStatistics();
     }
 
     /**
@@ -1405,11 +1415,7 @@ public class ServletHandler extends ScopedHandler
             }
 
             // flush filter chain cache
-            for (int i = _chainCache.length; i-- > 0; )
-            {
-                if (_chainCache[i] != null)
-                    _chainCache[i].clear();
-            }
+            invalidateChainsCache();
 
             if (LOG.isDebugEnabled())
             {
@@ -1621,6 +1627,46 @@ public class ServletHandler extends ScopedHandler
         }
     }
 
+    /**
+     * The key of a cached filter chain: the servlet holder and dispatch type, with
+     * either the path in context or servlet name, or the list of filters of the chain.
+     */
+    private static class ChainKey
+    {
+        private final ServletHolder _servletHolder;
+        private final int _dispatch;
+        private final Object _target;
+        private final int _hash;
+
+        private ChainKey(ServletHolder servletHolder, int dispatch, Object target)
+        {
+            _servletHolder = servletHolder;
+            _dispatch = dispatch;
+            _target = target;
+            _hash = 31 * (31 * servletHolder.hashCode() + dispatch) + target.hashCode();
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return _hash;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+            if (!(o instanceof ChainKey))
+                return false;
+            ChainKey that = (ChainKey)o;
+            return _hash == that._hash &&
+                _servletHolder == that._servletHolder &&
+                _dispatch == that._dispatch &&
+                _target.equals(that._target);
+        }
+    }
+
     private class Chain implements FilterChain
     {
         final Request _baseRequest;
@@ -1700,6 +1746,7 @@ public class ServletHandler extends ScopedHandler
     /**
      * @return The maximum entries in a filter chain cache.
      */
+    @ManagedAttribute("maximum entries in the filter chain cache")
     public int getMaxFilterChainsCacheSize()
     {
         return _maxFilterChainsCacheSize;
@@ -1708,7 +1755,8 @@ public class ServletHandler extends ScopedHandler
     /**
      * Set the maximum filter chain cache size.
      * Filter chains are cached if {@link #isFilterChainsCached()} is true. If the max cache size
-     * is greater than zero, then the cache is flushed whenever it grows to be this size.
+     * is greater than zero, then the least recently used chains are evicted when the cache
+     * grows beyond this size.
      *
      * @param maxFilterChainsCacheSize the maximum number of entries in a filter chain cache.
      */
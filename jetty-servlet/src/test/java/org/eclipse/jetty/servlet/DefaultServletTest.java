@@ -52,6 +52,7 @@ import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.http.tools.HttpTester;
 import org.eclipse.jetty.logging.StacklessLogging;
+import org.eclipse.jetty.server.CachedContentFactory;
 import org.eclipse.jetty.server.HttpConfiguration;
 import org.eclipse.jetty.server.LocalConnector;
 import org.eclipse.jetty.server.ResourceContentFactory;
@@ -1997,6 +1998,27 @@ public class DefaultServletTest
         assertThat(response.toString(), response.getStatus(), is(HttpStatus.PRECONDITION_FAILED_412));
     }
 
+    @Test
+    public void testResourceCacheIsContextBean() throws Exception
+    {
+        createFile(docRoot.resolve("file.txt"), "Hello World");
+
+        ServletHolder defholder = context.addServlet(DefaultServlet.class, "/");
+        defholder.setInitParameter("maxCacheSize", "4096");
+
+        String rawResponse = connector.getResponse("GET /context/file.txt HTTP/1.0\r\n\r\n");
+        HttpTester.Response response = HttpTester.parseResponse(rawResponse);
+        assertThat(response.toString(), response.getStatus(), is(HttpStatus.OK_200));
+
+        // The cache statistics are exported with the context.
+        CachedContentFactory cache = context.getBean(CachedContentFactory.class);
+        assertThat(cache, notNullValue());
+        assertThat(cache.getCachedFiles(), is(1));
+
+        context.stop();
+        assertThat(context.getBean(CachedContentFactory.class), nullValue());
+    }
+
     @ParameterizedTest
     @ValueSource(strings = {
         "Hello World",
@@ -28,8 +28,10 @@ import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.Enumeration;
+import java.util.Locale;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
 import javax.servlet.AsyncContext;
 import javax.servlet.DispatcherType;
 import javax.servlet.Filter;
@@ -44,10 +46,15 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.eclipse.jetty.http.CompressedContentFormat;
 import org.eclipse.jetty.http.tools.HttpTester;
+import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.server.HttpOutput;
 import org.eclipse.jetty.server.LocalConnector;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.gzip.CompressionCodec;
+import org.eclipse.jetty.server.handler.gzip.DeflateCodec;
+import org.eclipse.jetty.server.handler.gzip.GzipCodec;
 import org.eclipse.jetty.server.handler.gzip.GzipHandler;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.IO;
@@ -86,6 +93,8 @@ public class GzipHandlerTest
 
     private static final String __micro = __content.substring(0, 10);
 
+    private static final String __partial = __content.substring(0, 100);
+
     private static final String __contentETag = String.format("W/\"%x\"", __content.hashCode());
     private static final String __contentETagGzip = String.format("W/\"%x--gzip\"", __content.hashCode());
     private static final String __icontent = "BEFORE" + __content + "AFTER";
@@ -158,17 +167,27 @@ public class GzipHandlerTest
         {
             if (req.getParameter("vary") != null)
                 response.addHeader("Vary", req.getParameter("vary"));
-            response.setHeader("ETag", __contentETag);
+            if (req.getParameter("lastModified") != null)
+                response.setDateHeader("Last-Modified", Long.parseLong(req.getParameter("lastModified")));
+            else
+                response.setHeader("ETag", __contentETag);
             String ifnm = req.getHeader("If-None-Match");
             if (ifnm != null && ifnm.equals(__contentETag))
             {
                 response.setStatus(304);
                 response.flushBuffer();
             }
+            else if (req.getHeader("Range") != null)
+            {
+                response.setStatus(206);
+                response.setHeader("Content-Range", "bytes 0-" + (__partial.length() - 1) + "/" + __bytes.length);
+                PrintWriter writer = response.getWriter();
+                writer.write(__partial);
+            }
             else
             {
                 PrintWriter writer = response.getWriter();
-                writer.write(__content);
+                writer.write(req.getHeader("Authorization") == null ? __content : __content.toUpperCase(Locale.ENGLISH));
             }
         }
 
@@ -347,6 +366,225 @@ public class GzipHandlerTest
         assertEquals(__content, testOut.toString("UTF8"));
     }
 
+    @Test
+    public void testCachedResponse() throws Exception
+    {
+        GzipHandler gzipHandler = _server.getChildHandlerByClass(GzipHandler.class);
+        _server.stop();
+        gzipHandler.setCacheCapacity(1024 * 1024);
+        _server.start();
+
+        for (int i = 0; i < 3; i++)
+        {
+            HttpTester.Request request = HttpTester.newRequest();
+            request.setMethod("GET");
+            request.setURI("/ctx/content");
+            request.setVersion("HTTP/1.0");
+            request.setHeader("Host", "tester");
+            request.setHeader("accept-encoding", "gzip");
+
+            HttpTester.Response response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+
+            assertThat(response.getStatus(), is(200));
+            assertThat(response.get("Content-Encoding"), equalToIgnoringCase("gzip"));
+            assertThat(response.get("ETag"), is(__contentETagGzip));
+
+            InputStream testIn = new GZIPInputStream(new ByteArrayInputStream(response.getContentBytes()));
+            ByteArrayOutputStream testOut = new ByteArrayOutputStream();
+            IO.copy(testIn, testOut);
+            assertEquals(__content, testOut.toString("UTF8"));
+        }
+
+        assertThat(gzipHandler.getCacheMisses(), is(1L));
+        assertThat(gzipHandler.getCacheHits(), is(2L));
+        assertThat(gzipHandler.getCachedResponses(), is(1));
+
+        // Responses that vary on other headers are not cached.
+        HttpTester.Request request = HttpTester.newRequest();
+        request.setMethod("GET");
+        request.setURI("/ctx/content?vary=Other");
+        request.setVersion("HTTP/1.0");
+        request.setHeader("Host", "tester");
+        request.setHeader("accept-encoding", "gzip");
+        HttpTester.Response response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+        assertThat(response.get("Content-Encoding"), equalToIgnoringCase("gzip"));
+        assertThat(gzipHandler.getCachedResponses(), is(1));
+    }
+
+    @Test
+    public void testCachedResponseRequiresETag() throws Exception
+    {
+        GzipHandler gzipHandler = _server.getChildHandlerByClass(GzipHandler.class);
+        _server.stop();
+        gzipHandler.setCacheCapacity(1024 * 1024);
+        _server.start();
+
+        // Last-Modified alone does not identify the version of the content.
+        for (int i = 0; i < 2; i++)
+        {
+            HttpTester.Request request = HttpTester.newRequest();
+            request.setMethod("GET");
+            request.setURI("/ctx/content?lastModified=1000000000000");
+            request.setVersion("HTTP/1.0");
+            request.setHeader("Host", "tester");
+            request.setHeader("accept-encoding", "gzip");
+
+            HttpTester.Response response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+
+            assertThat(response.getStatus(), is(200));
+            assertThat(response.get("Content-Encoding"), equalToIgnoringCase("gzip"));
+            assertThat(response.get("ETag"), nullValue());
+        }
+
+        assertThat(gzipHandler.getCacheMisses(), is(0L));
+        assertThat(gzipHandler.getCacheHits(), is(0L));
+        assertThat(gzipHandler.getCachedResponses(), is(0));
+    }
+
+    @Test
+    public void testCachedResponseNotUsedForRangeRequests() throws Exception
+    {
+        GzipHandler gzipHandler = _server.getChildHandlerByClass(GzipHandler.class);
+        _server.stop();
+        gzipHandler.setCacheCapacity(1024 * 1024);
+        _server.start();
+
+        // The partial response is neither cached nor served from the cache.
+        for (String range : new String[]{"bytes=0-99", null, "bytes=0-99"})
+        {
+            HttpTester.Request request = HttpTester.newRequest();
+            request.setMethod("GET");
+            request.setURI("/ctx/content");
+            request.setVersion("HTTP/1.0");
+            request.setHeader("Host", "tester");
+            request.setHeader("accept-encoding", "gzip");
+            if (range != null)
+                request.setHeader("Range", range);
+
+            HttpTester.Response response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+
+            assertThat(response.getStatus(), is(range == null ? 200 : 206));
+            assertThat(response.get("Content-Encoding"), equalToIgnoringCase("gzip"));
+
+            InputStream testIn = new GZIPInputStream(new ByteArrayInputStream(response.getContentBytes()));
+            ByteArrayOutputStream testOut = new ByteArrayOutputStream();
+            IO.copy(testIn, testOut);
+            assertEquals(range == null ? __content : __partial, testOut.toString("UTF8"));
+        }
+
+        assertThat(gzipHandler.getCacheMisses(), is(1L));
+        assertThat(gzipHandler.getCacheHits(), is(0L));
+        assertThat(gzipHandler.getCachedResponses(), is(1));
+    }
+
+    @Test
+    public void testCachedResponseNotUsedWithAuthorization() throws Exception
+    {
+        GzipHandler gzipHandler = _server.getChildHandlerByClass(GzipHandler.class);
+        _server.stop();
+        gzipHandler.setCacheCapacity(1024 * 1024);
+        _server.start();
+
+        // Authorized responses are neither cached nor served from the cache.
+        for (String authorization : new String[]{"Basic dXNlcjpwd2Q=", null, "Basic dXNlcjpwd2Q="})
+        {
+            HttpTester.Request request = HttpTester.newRequest();
+            request.setMethod("GET");
+            request.setURI("/ctx/content");
+            request.setVersion("HTTP/1.0");
+            request.setHeader("Host", "tester");
+            request.setHeader("accept-encoding", "gzip");
+            if (authorization != null)
+                request.setHeader("Authorization", authorization);
+
+            HttpTester.Response response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+
+            assertThat(response.getStatus(), is(200));
+            assertThat(response.get("Content-Encoding"), equalToIgnoringCase("gzip"));
+
+            InputStream testIn = new GZIPInputStream(new ByteArrayInputStream(response.getContentBytes()));
+            ByteArrayOutputStream testOut = new ByteArrayOutputStream();
+            IO.copy(testIn, testOut);
+            assertEquals(authorization == null ? __content : __content.toUpperCase(Locale.ENGLISH), testOut.toString("UTF8"));
+        }
+
+        assertThat(gzipHandler.getCacheMisses(), is(1L));
+        assertThat(gzipHandler.getCacheHits(), is(0L));
+        assertThat(gzipHandler.getCachedResponses(), is(1));
+    }
+
+    @Test
+    public void testNegotiatedCodec() throws Exception
+    {
+        GzipHandler gzipHandler = _server.getChildHandlerByClass(GzipHandler.class);
+        _server.stop();
+        gzipHandler.setCodecs(new GzipCodec(), new StandInCodec());
+        _server.start();
+
+        // The codec of highest quality is used.
+        HttpTester.Response response = getContent("gzip;q=0.5, x-stand-in");
+        assertThat(response.get("Content-Encoding"), is("x-stand-in"));
+        assertThat(response.get("ETag"), is(String.format("W/\"%x--x-stand-in\"", __content.hashCode())));
+        InputStream testIn = new InflaterInputStream(new ByteArrayInputStream(response.getContentBytes()));
+        ByteArrayOutputStream testOut = new ByteArrayOutputStream();
+        IO.copy(testIn, testOut);
+        assertEquals(__content, testOut.toString("UTF8"));
+
+        // Codecs of equal quality are preferred in the configured order.
+        response = getContent("x-stand-in, gzip");
+        assertThat(response.get("Content-Encoding"), is("gzip"));
+
+        // A codec with a quality of zero is not used.
+        response = getContent("gzip;q=0, *");
+        assertThat(response.get("Content-Encoding"), is("x-stand-in"));
+    }
+
+    private HttpTester.Response getContent(String acceptEncoding) throws Exception
+    {
+        HttpTester.Request request = HttpTester.newRequest();
+        request.setMethod("GET");
+        request.setURI("/ctx/content");
+        request.setVersion("HTTP/1.0");
+        request.setHeader("Host", "tester");
+        request.setHeader("Accept-Encoding", acceptEncoding);
+        HttpTester.Response response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+        assertThat(response.getStatus(), is(200));
+        return response;
+    }
+
+    /**
+     * A codec for a content coding unknown to the JVM, implemented with the deflate codec.
+     */
+    public static class StandInCodec implements CompressionCodec
+    {
+        private static final CompressedContentFormat FORMAT = new CompressedContentFormat("x-stand-in", ".x");
+        private final CompressionCodec _codec = new DeflateCodec();
+
+        @Override
+        public String getEncoding()
+        {
+            return FORMAT._encoding;
+        }
+
+        @Override
+        public CompressedContentFormat getContentFormat()
+        {
+            return FORMAT;
+        }
+
+        @Override
+        public Encoder newEncoder()
+        {
+            return _codec.newEncoder();
+        }
+
+        @Override
+        public Decoder newDecoder(ByteBufferPool pool, int bufferSize)
+        {
+            return _codec.newDecoder(pool, bufferSize);
+        }
+    }
+
     @Test
     public void testAsyncResponse() throws Exception
     {
@@ -18,18 +18,35 @@
 
 package org.eclipse.jetty.servlet;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSessionEvent;
 import javax.servlet.http.HttpSessionListener;
 
 import org.eclipse.jetty.http.pathmap.MappedResource;
+import org.eclipse.jetty.server.LocalConnector;
+import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.util.component.Container;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -729,4 +746,71 @@ public class ServletHandlerTest
         assertTrue(removeResults.contains(sh1));
         assertTrue(removeResults.contains(lh1));
     }
+
+    @Test
+    public void testFilterChainsCache() throws Exception
+    {
+        Server server = new Server();
+        LocalConnector connector = new LocalConnector(server);
+        server.addConnector(connector);
+        ServletContextHandler context = new ServletContextHandler();
+        server.setHandler(context);
+
+        AtomicInteger filtered = new AtomicInteger();
+        context.addFilter(new FilterHolder(new Filter()
+        {
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException
+            {
+                filtered.incrementAndGet();
+                chain.doFilter(request, response);
+            }
+        }), "/filtered/*", EnumSet.of(DispatcherType.REQUEST));
+        context.addServlet(new ServletHolder(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            {
+                response.setStatus(HttpServletResponse.SC_OK);
+            }
+        }), "/*");
+        ServletHandler handler = context.getServletHandler();
+        handler.setMaxFilterChainsCacheSize(4);
+        server.start();
+        try
+        {
+            // A chain is built for the first request, and cached for the next.
+            assertThat(connector.getResponse("GET /filtered/a HTTP/1.0\r\n\r\n"), containsString(" 200 "));
+            assertThat(connector.getResponse("GET /filtered/a HTTP/1.0\r\n\r\n"), containsString(" 200 "));
+            assertThat(filtered.get(), is(2));
+            assertThat(handler.getFilterChainsCacheMisses(), is(1L));
+            assertThat(handler.getFilterChainsCacheHits(), is(1L));
+
+            // Paths without filters are cached too.
+            assertThat(connector.getResponse("GET /plain HTTP/1.0\r\n\r\n"), containsString(" 200 "));
+            assertThat(connector.getResponse("GET /plain HTTP/1.0\r\n\r\n"), containsString(" 200 "));
+            assertThat(filtered.get(), is(2));
+            assertThat(handler.getFilterChainsCacheMisses(), is(2L));
+            assertThat(handler.getFilterChainsCacheHits(), is(2L));
+            assertThat(handler.getFilterChainsCacheSize(), is(2));
+
+            // The cache is bounded, and the chains of evicted paths still apply the filters.
+            for (int i = 0; i < 10; i++)
+            {
+                assertThat(connector.getResponse("GET /filtered/" + i + " HTTP/1.0\r\n\r\n"), containsString(" 200 "));
+            }
+            assertThat(filtered.get(), is(12));
+            assertThat(handler.getFilterChainsCacheSize(), lessThanOrEqualTo(4));
+            assertThat(handler.getFilterChainsCacheEvictions(), greaterThan(0L));
+
+            handler.resetFilterChainsCacheStatistics();
+            assertThat(handler.getFilterChainsCacheHits(), is(0L));
+            assertThat(handler.getFilterChainsCacheMisses(), is(0L));
+            assertThat(handler.getFilterChainsCacheEvictions(), is(0L));
+        }
+        finally
+        {
+            server.stop();
+        }
+    }
 }
@@ -0,0 +1,322 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+import org.eclipse.jetty.util.thread.AutoLock;
+
+/**
+ * <p>A concurrent cache with a bounded number of entries.</p>
+ * <p>The entries are spread by hash over a number of stripes, each of which is
+ * a map in access order guarded by its own lock.  When a stripe is full, its least
+ * recently used entry is evicted, so the cache as a whole approximates an LRU cache
+ * without contending on a single lock or queue.</p>
+ * <p>The size of the cache is bounded either by its number of entries, or by the total
+ * weight of its entries as given by a weigher function, for example the number of bytes
+ * of cached content.</p>
+ * <p>The number of hits, misses and evictions are counted.</p>
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class BoundedCache<K, V>
+{
+    private final Stripe<K, V>[] _stripes;
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    private final LongAdder _evictions = new LongAdder();
+    private final ToIntFunction<? super V> _weigher;
+
+    /**
+     * @param capacity the maximum number of entries, or zero or less for an unbounded cache
+     */
+    public BoundedCache(int capacity)
+    {
+        this(capacity, capacity <= 0 ? 16 : Math.min(16, Integer.highestOneBit(Math.max(1, capacity / 32))));
+    }
+
+    /**
+     * @param capacity the maximum number of entries, or zero or less for an unbounded cache
+     * @param stripes the number of stripes, which is rounded up to a power of 2
+     */
+    public BoundedCache(int capacity, int stripes)
+    {
+        this(capacity, stripes, v -> 1);
+    }
+
+    /**
+     * <p>A cache bounded by the total weight of its entries.</p>
+     * <p>An entry heavier than the capacity of a stripe, which is the capacity divided
+     * by the number of stripes, is never cached.</p>
+     *
+     * @param capacity the maximum total weight of the entries, or zero or less for an unbounded cache
+     * @param stripes the number of stripes, which is rounded up to a power of 2
+     * @param weigher the function giving the weight of a value, which must not change while it is cached
+     */
+    @SuppressWarnings("unchecked")
+    public BoundedCache(long capacity, int stripes, ToIntFunction<? super V> weigher)
+    {
+        if (stripes <= 0)
+            throw new IllegalArgumentException("stripes must be positive");
+        int size = Integer.highestOneBit(stripes);
+        if (size < stripes)
+            size <<= 1;
+        long stripeCapacity = capacity <= 0 ? Long.MAX_VALUE : Math.max(1, (capacity + size - 1) / size);
+        _weigher = Objects.requireNonNull(weigher);
+        _stripes = (Stripe<K, V>[])new Stripe<?, ?>[size];
+        for (int i = 0; i < size; i++)
+        {
+            _stripes[i] = new Stripe<>(stripeCapacity);
+        }
+    }
+
+    private Stripe<K, V> stripe(Object key)
+    {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return _stripes[hash & (_stripes.length - 1)];
+    }
+
+    /**
+     * @param key the key
+     * @return the cached value, or null if there is none
+     */
+    public V get(K key)
+    {
+        Stripe<K, V> stripe = stripe(key);
+        V value;
+        try (AutoLock l = stripe._lock.lock())
+        {
+            value = stripe.get(key);
+        }
+        if (value == null)
+            _misses.increment();
+        else
+            _hits.increment();
+        return value;
+    }
+
+    /**
+     * <p>Get the cached value of a key if it is still valid.</p>
+     * <p>A cached value that is no longer valid is removed and counted as a miss.</p>
+     *
+     * @param key the key
+     * @param valid the predicate to test whether the cached value is still valid
+     * @return the cached value, or null if there is none or it is no longer valid
+     */
+    public V get(K key, Predicate<? super V> valid)
+    {
+        Stripe<K, V> stripe = stripe(key);
+        V value;
+        try (AutoLock l = stripe._lock.lock())
+        {
+            value = stripe.get(key);
+            if (value != null && !valid.test(value))
+            {
+                stripe.remove(key);
+                stripe._weight -= _weigher.applyAsInt(value);
+                value = null;
+            }
+        }
+        if (value == null)
+            _misses.increment();
+        else
+            _hits.increment();
+        return value;
+    }
+
+    /**
+     * <p>Get the cached value of a key, or compute and cache a new value if there is none.</p>
+     * <p>The function is called without holding a lock, so it may be called concurrently
+     * for the same key, in which case the first value cached is returned.</p>
+     *
+     * @param key the key
+     * @param function the function to compute a value from the key, which may return null
+     * @return the cached or computed value, or null if the function returned null
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> function)
+    {
+        V value = get(key);
+        if (value != null)
+            return value;
+        value = function.apply(key);
+        if (value == null)
+            return null;
+        V previous = putIfAbsent(key, value);
+        return previous == null ? value : previous;
+    }
+
+    /**
+     * @param key the key
+     * @param value the value to cache
+     * @return the value already cached for the key, or null if the value was cached or is too heavy to be cached
+     */
+    public V putIfAbsent(K key, V value)
+    {
+        Objects.requireNonNull(value);
+        int weight = _weigher.applyAsInt(value);
+        Stripe<K, V> stripe = stripe(key);
+        if (weight > stripe._capacity)
+            return null;
+        int evicted = 0;
+        try (AutoLock l = stripe._lock.lock())
+        {
+            V previous = stripe.putIfAbsent(key, value);
+            if (previous != null)
+                return previous;
+            stripe._weight += weight;
+
+            // Evict in access order, which leaves the entry just added until last.
+            Iterator<V> values = stripe.values().iterator();
+            while (stripe._weight > stripe._capacity)
+            {
+                stripe._weight -= _weigher.applyAsInt(values.next());
+                values.remove();
+                evicted++;
+            }
+        }
+        if (evicted > 0)
+            _evictions.add(evicted);
+        return null;
+    }
+
+    /**
+     * @param key the key
+     * @return the value removed, or null if none was cached
+     */
+    public V remove(K key)
+    {
+        Stripe<K, V> stripe = stripe(key);
+        try (AutoLock l = stripe._lock.lock())
+        {
+            V value = stripe.remove(key);
+            if (value != null)
+                stripe._weight -= _weigher.applyAsInt(value);
+            return value;
+        }
+    }
+
+    /**
+     * Remove all the entries from the cache.
+     */
+    public void clear()
+    {
+        for (Stripe<K, V> stripe : _stripes)
+        {
+            try (AutoLock l = stripe._lock.lock())
+            {
+                stripe.clear();
+                stripe._weight = 0;
+            }
+        }
+    }
+
+    /**
+     * @return the number of entries in the cache
+     */
+    public int size()
+    {
+        int size = 0;
+        for (Stripe<K, V> stripe : _stripes)
+        {
+            try (AutoLock l = stripe._lock.lock())
+            {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return the total weight of the entries in the cache
+     */
+    public long getWeight()
+    {
+        long weight = 0;
+        for (Stripe<K, V> stripe : _stripes)
+        {
+            try (AutoLock l = stripe._lock.lock())
+            {
+                weight += stripe._weight;
+            }
+        }
+        return weight;
+    }
+
+    /**
+     * @return the number of lookups that found a cached value
+     */
+    public long getHits()
+    {
+        return _hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that did not find a cached value
+     */
+    public long getMisses()
+    {
+        return _misses.sum();
+    }
+
+    /**
+     * @return the number of entries evicted to bound the size of the cache
+     */
+    public long getEvictions()
+    {
+        return _evictions.sum();
+    }
+
+    /**
+     * Reset the hit, miss and eviction counts.
+     */
+    public void resetStatistics()
+    {
+        _hits.reset();
+        _misses.reset();
+        _evictions.reset();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{size=%d,hits=%d,misses=%d,evictions=%d}",
+            getClass().getSimpleName(), hashCode(), size(), getHits(), getMisses(), getEvictions());
+    }
+
+    private static class Stripe<K, V> extends LinkedHashMap<K, V>
+    {
+        private final AutoLock _lock = new AutoLock();
+        private final long _capacity;
+        private long _weight;
+
+        private Stripe(long capacity)
+        {
+            super(16, 0.75f, true);
+            _capacity = capacity;
+        }
+    }
+}
@@ -0,0 +1,498 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * <p>An immutable Trie String lookup data structure, built once from a known set of keys.</p>
+ * <p>The keys are stored as a packed radix tree: chains of nodes with a single child are
+ * collapsed into a single node whose label is a run of ISO-8859-1 bytes.  The tree is
+ * flattened into a few arrays, with the children of each node stored contiguously and
+ * sorted by their first byte:</p>
+ * <dl>
+ * <dt>byte[] _labels</dt><dd>The concatenated labels of all the nodes.</dd>
+ * <dt>int[] _tree</dt><dd>Semantically a 2 dimensional array flattened into a 1 dimensional array,
+ * where every {@link #ROW_SIZE} sequential elements represent a node: label start; label length;
+ * first child; number of children; value index (or -1); jump table index (or -1).</dd>
+ * <dt>byte[] _first</dt><dd>The first label byte of each node, used to select a child.</dd>
+ * <dt>int[] _jumps</dt><dd>For nodes with many children, a table of 256 entries indexed by byte
+ * that directly maps to the child node (or -1).</dd>
+ * </dl>
+ * <p>The root node has an empty label and the first byte of every other label has already
+ * been matched when the node is selected as a child.  A lookup therefore compares runs of
+ * bytes rather than following a branch for every character of the key, and the Trie uses no more memory than its keys need.  There is no
+ * capacity to configure: {@link #put(String, Object)} always returns false and {@link #isFull()}
+ * always returns true.</p>
+ * <p>This Trie may be instantiated either as case sensitive or insensitive.  Case insensitivity
+ * applies to ASCII characters only.</p>
+ * <p>This Trie is immutable and is safe to be used concurrently by multiple threads.</p>
+ *
+ * @param <V> the entry type
+ * @see Trie#immutable(boolean, Map)
+ */
+public class CompactTrie<V> extends AbstractTrie<V>
+{
+    private static final int LABEL = 0;
+    private static final int LENGTH = 1;
+    private static final int CHILD = 2;
+    private static final int CHILDREN = 3;
+    private static final int VALUE = 4;
+    private static final int JUMP = 5;
+
+    /**
+     * The Size of a Trie row is the label start and length, the first child and
+     * number of children, the value index and the jump table index.
+     */
+    private static final int ROW_SIZE = 6;
+
+    /**
+     * The number of children above which a node has a jump table rather than
+     * having its children searched linearly.
+     */
+    private static final int LINEAR_CHILDREN = 4;
+
+    /**
+     * Maps a byte to the value it is compared as, which is either itself or
+     * for case insensitive tries, its ASCII lower case.
+     */
+    private final int[] _map = new int[256];
+    private final byte[] _labels;
+    private final int[] _tree;
+    private final byte[] _first;
+    private final int[] _jumps;
+    private final String[] _keys;
+    private final Object[] _values;
+
+    /**
+     * @param insensitive true if the keys are case insensitive
+     * @param contents the keys and values of the Trie; entries with a null value are ignored
+     * @throws IllegalArgumentException if a key contains a character that is not ISO-8859-1
+     */
+    public CompactTrie(boolean insensitive, Map<String, ? extends V> contents)
+    {
+        super(insensitive);
+
+        for (int i = 0; i < _map.length; i++)
+        {
+            _map[i] = (insensitive && i < 128) ? StringUtil.lowercases[i] : i;
+        }
+
+        // Sort the normalized keys, so that keys sharing a prefix are adjacent.
+        TreeMap<String, Map.Entry<String, ? extends V>> sorted = new TreeMap<>();
+        for (Map.Entry<String, ? extends V> entry : contents.entrySet())
+        {
+            if (entry.getValue() == null)
+                continue;
+            String key = entry.getKey();
+            for (int i = 0; i < key.length(); i++)
+            {
+                if (key.charAt(i) > 0xFF)
+                    throw new IllegalArgumentException("non ISO-8859-1 character in " + key);
+            }
+            sorted.put(insensitive ? StringUtil.asciiToLowerCase(key) : key, entry);
+        }
+
+        String[] normalized = sorted.keySet().toArray(new String[0]);
+        _keys = new String[normalized.length];
+        _values = new Object[normalized.length];
+        int k = 0;
+        for (Map.Entry<String, ? extends V> entry : sorted.values())
+        {
+            _keys[k] = entry.getKey();
+            _values[k++] = entry.getValue();
+        }
+
+        // Build the radix tree, then flatten it breadth first so that children are contiguous.
+        Node root = new Node(normalized, 0, normalized.length, 0, 0);
+        List<Node> nodes = new ArrayList<>();
+        int labels = 0;
+        int jumps = 0;
+        Queue<Node> queue = new ArrayDeque<>();
+        queue.add(root);
+        while (!queue.isEmpty())
+        {
+            Node node = queue.remove();
+            nodes.add(node);
+            labels += node._label.length();
+            if (node._children.size() > LINEAR_CHILDREN)
+                jumps++;
+            queue.addAll(node._children);
+        }
+
+        _labels = new byte[labels];
+        _tree = new int[nodes.size() * ROW_SIZE];
+        _first = new byte[nodes.size()];
+        _jumps = new int[jumps * 256];
+        Arrays.fill(_jumps, -1);
+        int label = 0;
+        int child = 1;
+        int jump = 0;
+        for (int n = 0; n < nodes.size(); n++)
+        {
+            Node node = nodes.get(n);
+            int row = n * ROW_SIZE;
+            _tree[row + LABEL] = label;
+            _tree[row + LENGTH] = node._label.length();
+            _tree[row + CHILD] = child;
+            _tree[row + CHILDREN] = node._children.size();
+            _tree[row + VALUE] = node._value;
+            _tree[row + JUMP] = -1;
+            if (node._children.size() > LINEAR_CHILDREN)
+            {
+                _tree[row + JUMP] = jump;
+                for (int c = 0; c < node._children.size(); c++)
+                {
+                    _jumps[jump + node._children.get(c)._label.charAt(0)] = child + c;
+                }
+                jump += 256;
+            }
+            for (int i = 0; i < node._label.length(); i++)
+            {
+                _labels[label++] = (byte)node._label.charAt(i);
+            }
+            if (node._label.length() > 0)
+                _first[n] = (byte)node._label.charAt(0);
+            child += node._children.size();
+        }
+    }
+
+    /**
+     * Put is not supported, as the Trie is immutable.
+     *
+     * @return always false, as there is no capacity to add the entry
+     */
+    @Override
+    public boolean put(String s, V v)
+    {
+        return false;
+    }
+
+    @Override
+    public V remove(String s)
+    {
+        throw new UnsupportedOperationException("immutable");
+    }
+
+    @Override
+    public void clear()
+    {
+        throw new UnsupportedOperationException("immutable");
+    }
+
+    @Override
+    public boolean isFull()
+    {
+        return true;
+    }
+
+    @Override
+    public V get(String s, int offset, int len)
+    {
+        int n = 0;
+        int i = 0;
+        while (true)
+        {
+            int row = n * ROW_SIZE;
+            int length = _tree[row + LENGTH];
+            if (length > len - i)
+                return null;
+            int label = _tree[row + LABEL];
+            for (int j = 1; j < length; j++)
+            {
+                if (map(s.charAt(offset + i + j)) != (_labels[label + j] & 0xFF))
+                    return null;
+            }
+            i += length;
+            if (i == len)
+                return value(row);
+            n = child(row, map(s.charAt(offset + i)));
+            if (n < 0)
+                return null;
+        }
+    }
+
+    @Override
+    public V get(ByteBuffer b, int offset, int len)
+    {
+        if (b.hasArray())
+            return get(b.array(), b.arrayOffset() + b.position() + offset, len);
+
+        int pos = b.position() + offset;
+        int n = 0;
+        int i = 0;
+        while (true)
+        {
+            int row = n * ROW_SIZE;
+            int length = _tree[row + LENGTH];
+            if (length > len - i)
+                return null;
+            int label = _tree[row + LABEL];
+            for (int j = 1; j < length; j++)
+            {
+                if (_map[b.get(pos + i + j) & 0xFF] != (_labels[label + j] & 0xFF))
+                    return null;
+            }
+            i += length;
+            if (i == len)
+                return value(row);
+            n = child(row, _map[b.get(pos + i) & 0xFF]);
+            if (n < 0)
+                return null;
+        }
+    }
+
+    private V get(byte[] b, int offset, int len)
+    {
+        int n = 0;
+        int i = 0;
+        while (true)
+        {
+            int row = n * ROW_SIZE;
+            int length = _tree[row + LENGTH];
+            if (length > len - i)
+                return null;
+            int label = _tree[row + LABEL];
+            for (int j = 1; j < length; j++)
+            {
+                if (_map[b[offset + i + j] & 0xFF] != (_labels[label + j] & 0xFF))
+                    return null;
+            }
+            i += length;
+            if (i == len)
+                return value(row);
+            n = child(row, _map[b[offset + i] & 0xFF]);
+            if (n < 0)
+                return null;
+        }
+    }
+
+    @Override
+    public V getBest(String s, int offset, int len)
+    {
+        V best = null;
+        int n = 0;
+        int i = 0;
+        while (true)
+        {
+            int row = n * ROW_SIZE;
+            int length = _tree[row + LENGTH];
+            if (length > len - i)
+                return best;
+            int label = _tree[row + LABEL];
+            for (int j = 1; j < length; j++)
+            {
+                if (map(s.charAt(offset + i + j)) != (_labels[label + j] & 0xFF))
+                    return best;
+            }
+            i += length;
+            V value = value(row);
+            if (value != null)
+                best = value;
+            if (i == len)
+                return best;
+            n = child(row, map(s.charAt(offset + i)));
+            if (n < 0)
+                return best;
+        }
+    }
+
+    @Override
+    public V getBest(byte[] b, int offset, int len)
+    {
+        V best = null;
+        int n = 0;
+        int i = 0;
+        while (true)
+        {
+            int row = n * ROW_SIZE;
+            int length = _tree[row + LENGTH];
+            if (length > len - i)
+                return best;
+            int label = _tree[row + LABEL];
+            for (int j = 1; j < length; j++)
+            {
+                if (_map[b[offset + i + j] & 0xFF] != (_labels[label + j] & 0xFF))
+                    return best;
+            }
+            i += length;
+            V value = value(row);
+            if (value != null)
+                best = value;
+            if (i == len)
+                return best;
+            n = child(row, _map[b[offset + i] & 0xFF]);
+            if (n < 0)
+                return best;
+        }
+    }
+
+    @Override
+    public V getBest(ByteBuffer b, int offset, int len)
+    {
+        if (b.hasArray())
+            return getBest(b.array(), b.arrayOffset() + b.position() + offset, len);
+
+        int pos = b.position() + offset;
+        V best = null;
+        int n = 0;
+        int i = 0;
+        while (true)
+        {
+            int row = n * ROW_SIZE;
+            int length = _tree[row + LENGTH];
+            if (length > len - i)
+                return best;
+            int label = _tree[row + LABEL];
+            for (int j = 1; j < length; j++)
+            {
+                if (_map[b.get(pos + i + j) & 0xFF] != (_labels[label + j] & 0xFF))
+                    return best;
+            }
+            i += length;
+            V value = value(row);
+            if (value != null)
+                best = value;
+            if (i == len)
+                return best;
+            n = child(row, _map[b.get(pos + i) & 0xFF]);
+            if (n < 0)
+                return best;
+        }
+    }
+
+    /**
+     * @param c the character to map
+     * @return the mapped character, or -1 if the character is not ISO-8859-1
+     */
+    private int map(char c)
+    {
+        // Branchless equivalent of c > 0xFF ? -1 : _map[c]
+        return _map[c & 0xFF] | ((0xFF - c) >> 31);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V value(int row)
+    {
+        int index = _tree[row + VALUE];
+        return index < 0 ? null : (V)_values[index];
+    }
+
+    /**
+     * @param row the row of the parent node
+     * @param c the mapped character to select the child with
+     * @return the index of the child node starting with the character, or -1 if there is none
+     */
+    private int child(int row, int c)
+    {
+        int jump = _tree[row + JUMP];
+        if (jump >= 0)
+            return c < 0 ? -1 : _jumps[jump + c];
+
+        for (int n = _tree[row + CHILD], hi = n + _tree[row + CHILDREN]; n < hi; n++)
+        {
+            if ((_first[n] & 0xFF) == c)
+                return n;
+        }
+        return -1;
+    }
+
+    @Override
+    public Set<String> keySet()
+    {
+        return Collections.unmodifiableSet(new HashSet<>(Arrays.asList(_keys)));
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder buf = new StringBuilder();
+        buf.append('{');
+        for (int i = 0; i < _keys.length; i++)
+        {
+            if (i > 0)
+                buf.append(',');
+            buf.append(_keys[i]).append('=').append(_values[i]);
+        }
+        buf.append('}');
+        return buf.toString();
+    }
+
+    /**
+     * A node of the radix tree, only used while building the Trie.
+     */
+    private static class Node
+    {
+        private final String _label;
+        private final int _value;
+        private final List<Node> _children = new ArrayList<>();
+
+        /**
+         * @param keys the sorted normalized keys
+         * @param lo the first key of this node
+         * @param hi the key after the last key of this node
+         * @param start the index of the first character of this node's label
+         * @param end the index after the last character of this node's label,
+         * which is the length of the prefix shared by all the keys of this node
+         */
+        private Node(String[] keys, int lo, int hi, int start, int end)
+        {
+            _label = lo < hi ? keys[lo].substring(start, end) : "";
+            if (lo < hi && keys[lo].length() == end)
+                _value = lo++;
+            else
+                _value = -1;
+
+            while (lo < hi)
+            {
+                // Group the keys by their next character.
+                char c = keys[lo].charAt(end);
+                int group = lo + 1;
+                while (group < hi && keys[group].charAt(end) == c)
+                {
+                    group++;
+                }
+
+                // As the keys are sorted, the prefix shared by the group is
+                // the prefix shared by its first and last keys.
+                String first = keys[lo];
+                String last = keys[group - 1];
+                int shared = end + 1;
+                int limit = Math.min(first.length(), last.length());
+                while (shared < limit && first.charAt(shared) == last.charAt(shared))
+                {
+                    shared++;
+                }
+
+                _children.add(new Node(keys, lo, group, end, shared));
+                lo = group;
+            }
+        }
+    }
+}
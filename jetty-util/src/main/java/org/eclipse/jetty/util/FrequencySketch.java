@@ -0,0 +1,149 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.util;
+
+/**
+ * <p>A probabilistic estimate of how frequently items have been used.</p>
+ * <p>This is a count-min sketch with four 4-bit counters per item, packed in an array of
+ * longs sized to the expected number of items, up to a million longs.  The estimated frequency of an item is the
+ * minimum of its counters, so it may overestimate but never underestimate the recorded
+ * frequency, up to a maximum of 15.  After a number of increments proportional to the
+ * number of items, all counters are halved, so that the frequencies age and the estimate
+ * follows the recent popularity of the items.</p>
+ * <p>Both {@link #increment(Object)} and {@link #frequency(Object)} take constant time.
+ * This class is not thread safe.</p>
+ */
+public class FrequencySketch
+{
+    private static final long[] SEEDS = {0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L, 0x9AE16A3B2F90404FL, 0xCBF29CE484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+    private static final int MAX_FREQUENCY = 15;
+    private static final int MAX_LENGTH = 1 << 20;
+
+    private long[] _table;
+    private int _sampleSize;
+    private int _size;
+
+    /**
+     * @param capacity the expected number of items
+     */
+    public FrequencySketch(int capacity)
+    {
+        ensureCapacity(capacity);
+    }
+
+    /**
+     * <p>Resize the sketch for an expected number of items, which resets all the frequencies
+     * if the size changes.  The sketch is not sized for more than a million items, which
+     * only makes the estimates less accurate beyond that.</p>
+     *
+     * @param capacity the expected number of items
+     */
+    public void ensureCapacity(int capacity)
+    {
+        int target = Math.max(16, Math.min(capacity, MAX_LENGTH));
+        int length = Integer.highestOneBit(target);
+        if (length < target)
+            length <<= 1;
+        if (_table != null && _table.length == length)
+            return;
+        _table = new long[length];
+        _sampleSize = 10 * length;
+        _size = 0;
+    }
+
+    /**
+     * @param item the item
+     * @return the estimated number of times the item was used, from 0 to 15
+     */
+    public int frequency(Object item)
+    {
+        int hash = spread(item.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = MAX_FREQUENCY;
+        for (int i = 0; i < 4; i++)
+        {
+            int index = indexOf(hash, i);
+            int count = (int)((_table[index] >>> ((start + i) << 2)) & 0xF);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * <p>Record a use of an item.</p>
+     *
+     * @param item the item
+     */
+    public void increment(Object item)
+    {
+        int hash = spread(item.hashCode());
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++)
+        {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++_size >= _sampleSize)
+            reset();
+    }
+
+    private boolean incrementAt(int index, int counter)
+    {
+        int offset = counter << 2;
+        long mask = 0xFL << offset;
+        if ((_table[index] & mask) == mask)
+            return false;
+        _table[index] += 1L << offset;
+        return true;
+    }
+
+    private void reset()
+    {
+        // Halve all the counters, accounting for the odd counts lost by the shift.
+        int odd = 0;
+        for (int i = 0; i < _table.length; i++)
+        {
+            odd += Long.bitCount(_table[i] & ONE_MASK);
+            _table[i] = (_table[i] >>> 1) & RESET_MASK;
+        }
+        _size = Math.max(0, (_size - (odd >>> 2)) / 2);
+    }
+
+    private int indexOf(int hash, int i)
+    {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return (int)h & (_table.length - 1);
+    }
+
+    private static int spread(int hash)
+    {
+        hash = ((hash >>> 16) ^ hash) * 0x45D9F3B;
+        hash = ((hash >>> 16) ^ hash) * 0x45D9F3B;
+        return (hash >>> 16) ^ hash;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{length=%d,size=%d/%d}", getClass().getSimpleName(), hashCode(), _table.length, _size, _sampleSize);
+    }
+}
@@ -0,0 +1,129 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.util;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * An immutable view of a Trie, for the keys that a {@link CompactTrie} cannot hold.
+ *
+ * @param <V> the type of object that the Trie holds
+ * @see Trie#immutable(boolean, java.util.Map)
+ */
+class ImmutableTrie<V> extends AbstractTrie<V>
+{
+    private final Trie<V> _trie;
+
+    ImmutableTrie(Trie<V> trie)
+    {
+        super(trie.isCaseInsensitive());
+        _trie = trie;
+    }
+
+    /**
+     * Put is not supported, as the Trie is immutable.
+     *
+     * @return always false, as there is no capacity to add the entry
+     */
+    @Override
+    public boolean put(String s, V v)
+    {
+        return false;
+    }
+
+    @Override
+    public V remove(String s)
+    {
+        throw new UnsupportedOperationException("immutable");
+    }
+
+    @Override
+    public void clear()
+    {
+        throw new UnsupportedOperationException("immutable");
+    }
+
+    @Override
+    public boolean isFull()
+    {
+        return true;
+    }
+
+    @Override
+    public V get(String s)
+    {
+        return _trie.get(s);
+    }
+
+    @Override
+    public V get(String s, int offset, int len)
+    {
+        return _trie.get(s, offset, len);
+    }
+
+    @Override
+    public V get(ByteBuffer b)
+    {
+        return _trie.get(b);
+    }
+
+    @Override
+    public V get(ByteBuffer b, int offset, int len)
+    {
+        return _trie.get(b, offset, len);
+    }
+
+    @Override
+    public V getBest(String s)
+    {
+        return _trie.getBest(s);
+    }
+
+    @Override
+    public V getBest(String s, int offset, int len)
+    {
+        return _trie.getBest(s, offset, len);
+    }
+
+    @Override
+    public V getBest(byte[] b, int offset, int len)
+    {
+        return _trie.getBest(b, offset, len);
+    }
+
+    @Override
+    public V getBest(ByteBuffer b, int offset, int len)
+    {
+        return _trie.getBest(b, offset, len);
+    }
+
+    @Override
+    public Set<String> keySet()
+    {
+        return Collections.unmodifiableSet(_trie.keySet());
+    }
+
+    @Override
+    public String toString()
+    {
+        return _trie.toString();
+    }
+}
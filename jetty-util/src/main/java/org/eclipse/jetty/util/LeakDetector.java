@@ -183,6 +183,14 @@ public class LeakDetector<T> extends AbstractLifeCycle implements Runnable
             this.stackFrames = new Throwable();
         }
 
+        /**
+         * @return the id of the resource, as returned by {@link LeakDetector#id(Object)}.
+         */
+        public String getResourceId()
+        {
+            return id;
+        }
+
         /**
          * @return the resource description as provided by the resource's {@link Object#toString()} method.
          */
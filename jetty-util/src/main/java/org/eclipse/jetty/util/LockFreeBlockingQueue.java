@@ -0,0 +1,505 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+
+package org.eclipse.jetty.util;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>A bounded, lock-free, multi-producer multi-consumer {@link BlockingQueue}
+ * backed by a circular array.</p>
+ * <p>Each slot of the array has a sequence number that producers and consumers
+ * use to claim the slot with a single CAS on the tail or head index, so that
+ * neither {@link #offer(Object)} nor {@link #poll()} ever take a lock.</p>
+ * <p>Consumers that find the queue empty park on a lock-free stack of waiters,
+ * and producers wake the most recently parked consumer after an offer, so that
+ * the threads that stay hot are reused while the others can idle out.
+ * Producers only pay a volatile read to check the stack when no consumer is
+ * parked.</p>
+ * <p>The capacity is rounded up to a power of 2 and the queue does not grow.
+ * Removal of arbitrary elements marks their slot as removed, and the slot is
+ * skipped and freed when it reaches the head of the queue.  Iteration returns
+ * a weakly consistent snapshot of the elements.</p>
+ * <p>This queue is suitable for the jobs of {@link org.eclipse.jetty.util.thread.QueuedThreadPool}
+ * under contention from many producers and many idle threads.</p>
+ *
+ * @param <E> The element type
+ */
+public class LockFreeBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E>
+{
+    /**
+     * The head offset in the {@link #_indexes} array, displaced to avoid false sharing with the array length.
+     */
+    private static final int HEAD_OFFSET = MemoryUtils.getLongsPerCacheLine() - 1;
+    /**
+     * The tail offset in the {@link #_indexes} array, displaced by a cache line from the head to avoid false sharing with it.
+     */
+    private static final int TAIL_OFFSET = HEAD_OFFSET + MemoryUtils.getLongsPerCacheLine();
+    /**
+     * Default capacity, 64 * 1024.
+     */
+    public static final int DEFAULT_CAPACITY = 64 * 1024;
+    /**
+     * The marker of the slots of removed elements.
+     */
+    private static final Object REMOVED = new Object();
+
+    private final AtomicLongArray _indexes = new AtomicLongArray(TAIL_OFFSET + MemoryUtils.getLongsPerCacheLine());
+    private final AtomicReference<Waiter> _waiters = new AtomicReference<>();
+    private final AtomicLongArray _sequences;
+    private final AtomicReferenceArray<Object> _elements;
+    private final AtomicInteger _removed = new AtomicInteger();
+    private final int _mask;
+
+    /**
+     * Creates a {@link LockFreeBlockingQueue} with the {@link #DEFAULT_CAPACITY default capacity}.
+     */
+    public LockFreeBlockingQueue()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a {@link LockFreeBlockingQueue} with the given capacity, rounded up to a power of 2.
+     *
+     * @param capacity the capacity of the queue
+     */
+    public LockFreeBlockingQueue(int capacity)
+    {
+        if (capacity <= 0 || capacity > 1 << 30)
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity)
+            size <<= 1;
+        _mask = size - 1;
+        _sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; ++i)
+        {
+            _sequences.set(i, i);
+        }
+        _elements = new AtomicReferenceArray<>(size);
+    }
+
+    /**
+     * @return the capacity of this queue
+     */
+    public int getCapacity()
+    {
+        return _mask + 1;
+    }
+
+    @Override
+    public boolean offer(E e)
+    {
+        Objects.requireNonNull(e);
+        long tail = _indexes.get(TAIL_OFFSET);
+        while (true)
+        {
+            int index = (int)tail & _mask;
+            long sequence = _sequences.get(index);
+            long delta = sequence - tail;
+            if (delta == 0)
+            {
+                if (_indexes.compareAndSet(TAIL_OFFSET, tail, tail + 1))
+                {
+                    _elements.lazySet(index, e);
+                    // Volatile write to publish the element before checking the waiters.
+                    _sequences.set(index, tail + 1);
+                    if (_waiters.get() != null)
+                        signal();
+                    return true;
+                }
+            }
+            else if (delta < 0)
+            {
+                // The slot still holds the element from the previous lap, the queue is full.
+                return false;
+            }
+            tail = _indexes.get(TAIL_OFFSET);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E poll()
+    {
+        long head = _indexes.get(HEAD_OFFSET);
+        while (true)
+        {
+            int index = (int)head & _mask;
+            long sequence = _sequences.get(index);
+            long delta = sequence - (head + 1);
+            if (delta == 0)
+            {
+                if (_indexes.compareAndSet(HEAD_OFFSET, head, head + 1))
+                {
+                    // Atomically take the element, so that it is either polled or removed.
+                    Object e = _elements.getAndSet(index, null);
+                    _sequences.set(index, head + _mask + 1);
+                    if (e != REMOVED)
+                        return (E)e;
+                    // Skip the slot of a removed element.
+                    _removed.decrementAndGet();
+                }
+            }
+            else if (delta < 0)
+            {
+                // The slot has not been published by a producer, the queue is empty.
+                return null;
+            }
+            head = _indexes.get(HEAD_OFFSET);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E peek()
+    {
+        long head = _indexes.get(HEAD_OFFSET);
+        long tail = _indexes.get(TAIL_OFFSET);
+        for (long i = head; i < tail; ++i)
+        {
+            int index = (int)i & _mask;
+            Object e = _elements.get(index);
+            // Skip the slots already consumed or removed.
+            if (e != null && e != REMOVED && _sequences.get(index) == i + 1)
+                return (E)e;
+        }
+        return null;
+    }
+
+    @Override
+    public E take() throws InterruptedException
+    {
+        return poll(true, 0);
+    }
+
+    @Override
+    public E poll(long time, TimeUnit unit) throws InterruptedException
+    {
+        return poll(false, unit.toNanos(time));
+    }
+
+    private E poll(boolean untimed, long nanos) throws InterruptedException
+    {
+        E e = poll();
+        if (e != null)
+            return e;
+
+        long deadline = System.nanoTime() + nanos;
+        while (true)
+        {
+            // Push the waiter, then check again the queue, so that either
+            // this thread sees the element or the producer sees the waiter.
+            Waiter waiter = new Waiter();
+            push(waiter);
+            e = poll();
+            if (e != null)
+            {
+                cancel(waiter);
+                return e;
+            }
+
+            while (!waiter.isSignalled())
+            {
+                if (Thread.interrupted())
+                {
+                    cancel(waiter);
+                    throw new InterruptedException();
+                }
+                if (untimed)
+                {
+                    LockSupport.park(this);
+                }
+                else
+                {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0)
+                    {
+                        if (waiter.cancel())
+                            return null;
+                        // Signalled concurrently with the timeout.
+                        break;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                }
+            }
+
+            e = poll();
+            if (e != null)
+                return e;
+        }
+    }
+
+    private void push(Waiter waiter)
+    {
+        while (true)
+        {
+            Waiter head = _waiters.get();
+            // Discard the cancelled waiters, so that timeouts do not accumulate waiters.
+            Waiter next = head;
+            while (next != null && next.isCancelled())
+            {
+                next = next._next;
+            }
+            waiter._next = next;
+            if (_waiters.compareAndSet(head, waiter))
+                return;
+        }
+    }
+
+    private void cancel(Waiter waiter)
+    {
+        // If the waiter was concurrently signalled, pass on the signal.
+        if (!waiter.cancel() && !isEmpty())
+            signal();
+    }
+
+    private void signal()
+    {
+        while (true)
+        {
+            Waiter waiter = _waiters.get();
+            if (waiter == null)
+                return;
+            if (_waiters.compareAndSet(waiter, waiter._next) && waiter.signal())
+            {
+                LockSupport.unpark(waiter._thread);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException
+    {
+        while (!offer(e))
+        {
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            LockSupport.parkNanos(this, TimeUnit.MICROSECONDS.toNanos(100));
+        }
+    }
+
+    @Override
+    public boolean offer(E e, long time, TimeUnit unit) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + unit.toNanos(time);
+        while (!offer(e))
+        {
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+                return false;
+            LockSupport.parkNanos(this, Math.min(remaining, TimeUnit.MICROSECONDS.toNanos(100)));
+        }
+        return true;
+    }
+
+    @Override
+    public int remainingCapacity()
+    {
+        return getCapacity() - size();
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c)
+    {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements)
+    {
+        if (c == this)
+            throw new IllegalArgumentException();
+        int count = 0;
+        while (count < maxElements)
+        {
+            E e = poll();
+            if (e == null)
+                break;
+            c.add(e);
+            ++count;
+        }
+        return count;
+    }
+
+    @Override
+    public int size()
+    {
+        while (true)
+        {
+            long head = _indexes.get(HEAD_OFFSET);
+            long tail = _indexes.get(TAIL_OFFSET);
+            int removed = _removed.get();
+            if (_indexes.get(HEAD_OFFSET) == head)
+                return (int)Math.max(0, Math.min(tail - head - removed, getCapacity()));
+        }
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    @Override
+    public void clear()
+    {
+        E e = poll();
+        while (e != null)
+        {
+            e = poll();
+        }
+    }
+
+    @Override
+    public boolean remove(Object o)
+    {
+        if (o == null)
+            return false;
+        long head = _indexes.get(HEAD_OFFSET);
+        long tail = _indexes.get(TAIL_OFFSET);
+        for (long i = head; i < tail; ++i)
+        {
+            Object e = _elements.get((int)i & _mask);
+            if (e != null && e != REMOVED && o.equals(e) && remove(i, e))
+                return true;
+        }
+        return false;
+    }
+
+    private boolean remove(long position, Object e)
+    {
+        int index = (int)position & _mask;
+        if (_sequences.get(index) != position + 1)
+            return false;
+        // Mark the slot, racing with the consumer that atomically takes the element.
+        if (!_elements.compareAndSet(index, e, REMOVED))
+            return false;
+        _removed.incrementAndGet();
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterator<E> iterator()
+    {
+        long head = _indexes.get(HEAD_OFFSET);
+        long tail = _indexes.get(TAIL_OFFSET);
+        if (tail <= head)
+            return Collections.emptyIterator();
+        int length = (int)Math.min(tail - head, getCapacity());
+        List<E> elements = new ArrayList<>(length);
+        List<Long> positions = new ArrayList<>(length);
+        for (long i = head; i < tail; ++i)
+        {
+            int index = (int)i & _mask;
+            Object e = _elements.get(index);
+            // Only collect elements that have been published and not yet consumed or removed.
+            if (e != null && e != REMOVED && _sequences.get(index) == i + 1)
+            {
+                elements.add((E)e);
+                positions.add(i);
+            }
+        }
+        return new Iterator<>()
+        {
+            private int _next;
+            private int _last = -1;
+
+            @Override
+            public boolean hasNext()
+            {
+                return _next < elements.size();
+            }
+
+            @Override
+            public E next()
+            {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                _last = _next++;
+                return elements.get(_last);
+            }
+
+            @Override
+            public void remove()
+            {
+                if (_last < 0)
+                    throw new IllegalStateException();
+                LockFreeBlockingQueue.this.remove(positions.get(_last), elements.get(_last));
+                _last = -1;
+            }
+        };
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[size=%d,capacity=%d]", getClass().getSimpleName(), hashCode(), size(), getCapacity());
+    }
+
+    private static class Waiter
+    {
+        private static final int WAITING = 0;
+        private static final int SIGNALLED = 1;
+        private static final int CANCELLED = 2;
+
+        private final AtomicInteger _state = new AtomicInteger(WAITING);
+        private final Thread _thread = Thread.currentThread();
+        private Waiter _next;
+
+        private boolean signal()
+        {
+            return _state.compareAndSet(WAITING, SIGNALLED);
+        }
+
+        private boolean cancel()
+        {
+            return _state.compareAndSet(WAITING, CANCELLED);
+        }
+
+        private boolean isSignalled()
+        {
+            return _state.get() == SIGNALLED;
+        }
+
+        private boolean isCancelled()
+        {
+            return _state.get() == CANCELLED;
+        }
+    }
+}
@@ -19,6 +19,8 @@
 package org.eclipse.jetty.util;
 
 import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -28,6 +30,64 @@ import java.util.Set;
  */
 public interface Trie<V>
 {
+    /**
+     * Create a Trie for a key set that will not change after construction.
+     * <p>If all the keys are ISO-8859-1, the returned Trie is a {@link CompactTrie}, which is
+     * sized exactly for its keys rather than having a capacity.  Otherwise it is an immutable
+     * view of an {@link ArrayTernaryTrie} with enough capacity for the keys.  In both cases,
+     * {@link #put(String, Object)} returns false, while {@link #remove(String)} and
+     * {@link #clear()} throw {@link UnsupportedOperationException}.</p>
+     *
+     * @param insensitive true if the keys are case insensitive
+     * @param contents the keys and values of the Trie
+     * @param <V> the Trie entry type
+     * @return a Trie of the contents
+     */
+    public static <V> Trie<V> immutable(boolean insensitive, Map<String, ? extends V> contents)
+    {
+        int capacity = 1;
+        boolean iso88591 = true;
+        for (String key : contents.keySet())
+        {
+            capacity += key.length() + 1;
+            for (int i = 0; iso88591 && i < key.length(); i++)
+            {
+                iso88591 = key.charAt(i) <= 0xFF;
+            }
+        }
+        if (iso88591)
+            return new CompactTrie<>(insensitive, contents);
+
+        Trie<V> trie = new ArrayTernaryTrie<>(insensitive, capacity);
+        for (Map.Entry<String, ? extends V> entry : contents.entrySet())
+        {
+            if (entry.getValue() != null && !trie.put(entry.getKey(), entry.getValue()))
+                throw new IllegalStateException("Trie full");
+        }
+        return new ImmutableTrie<>(trie);
+    }
+
+    /**
+     * Create an immutable copy of a Trie, for when a Trie that has been built with
+     * {@link #put(String, Object)} will not be modified further.
+     *
+     * @param trie the Trie to copy
+     * @param <V> the Trie entry type
+     * @return an immutable Trie with the same entries and case sensitivity
+     * @see #immutable(boolean, Map)
+     */
+    public static <V> Trie<V> immutable(Trie<V> trie)
+    {
+        if (trie instanceof CompactTrie || trie instanceof ImmutableTrie)
+            return trie;
+
+        Map<String, V> contents = new LinkedHashMap<>();
+        for (String key : trie.keySet())
+        {
+            contents.put(key, trie.get(key));
+        }
+        return immutable(trie.isCaseInsensitive(), contents);
+    }
 
     /**
      * Put an entry into the Trie
@@ -22,8 +22,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.StringWriter;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -344,70 +347,7 @@ public class UrlEncoded
     public static void decode88591To(InputStream in, MultiMap<String> map, int maxLength, int maxKeys)
         throws IOException
     {
-        StringBuilder buffer = new StringBuilder();
-        String key = null;
-        String value;
-
-        int b;
-
-        int totalLength = 0;
-        while ((b = in.read()) >= 0)
-        {
-            switch ((char)b)
-            {
-                case '&':
-                    value = buffer.length() == 0 ? "" : buffer.toString();
-                    buffer.setLength(0);
-                    if (key != null)
-                    {
-                        map.add(key, value);
-                    }
-                    else if (value.length() > 0)
-                    {
-                        map.add(value, "");
-                    }
-                    key = null;
-                    checkMaxKeys(map, maxKeys);
-                    break;
-
-                case '=':
-                    if (key != null)
-                    {
-                        buffer.append((char)b);
-                        break;
-                    }
-                    key = buffer.toString();
-                    buffer.setLength(0);
-                    break;
-
-                case '+':
-                    buffer.append(' ');
-                    break;
-
-                case '%':
-                    int code0 = in.read();
-                    int code1 = in.read();
-                    buffer.append(decodeHexChar(code0, code1));
-                    break;
-
-                default:
-                    buffer.append((char)b);
-                    break;
-            }
-            checkMaxLength(++totalLength, maxLength);
-        }
-
-        if (key != null)
-        {
-            value = buffer.length() == 0 ? "" : buffer.toString();
-            buffer.setLength(0);
-            map.add(key, value);
-        }
-        else if (buffer.length() > 0)
-        {
-            map.add(buffer.toString(), "");
-        }
-        checkMaxKeys(map, maxKeys);
+        decodeTo(in, map, new Decoder(StandardCharsets.ISO_8859_1, maxLength, maxKeys));
     }
 
     /**
@@ -422,70 +362,7 @@ public class UrlEncoded
     public static void decodeUtf8To(InputStream in, MultiMap<String> map, int maxLength, int maxKeys)
         throws IOException
     {
-        Utf8StringBuilder buffer = new Utf8StringBuilder();
-        String key = null;
-        String value;
-
-        int b;
-
-        int totalLength = 0;
-        while ((b = in.read()) >= 0)
-        {
-            switch ((char)b)
-            {
-                case '&':
-                    value = buffer.toReplacedString();
-                    buffer.reset();
-                    if (key != null)
-                    {
-                        map.add(key, value);
-                    }
-                    else if (value != null && value.length() > 0)
-                    {
-                        map.add(value, "");
-                    }
-                    key = null;
-                    checkMaxKeys(map, maxKeys);
-                    break;
-
-                case '=':
-                    if (key != null)
-                    {
-                        buffer.append((byte)b);
-                        break;
-                    }
-                    key = buffer.toReplacedString();
-                    buffer.reset();
-                    break;
-
-                case '+':
-                    buffer.append((byte)' ');
-                    break;
-
-                case '%':
-                    char code0 = (char)in.read();
-                    char code1 = (char)in.read();
-                    buffer.append(decodeHexByte(code0, code1));
-                    break;
-
-                default:
-                    buffer.append((byte)b);
-                    break;
-            }
-            checkMaxLength(++totalLength, maxLength);
-        }
-
-        if (key != null)
-        {
-            value = buffer.toReplacedString();
-            buffer.reset();
-            map.add(key, value);
-        }
-        else if (buffer.length() > 0)
-        {
-            map.add(buffer.toReplacedString(), "");
-        }
-        checkMaxKeys(map, maxKeys);
+        decodeTo(in, map, new Decoder(StandardCharsets.UTF_8, maxLength, maxKeys));
     }
 
     public static void decodeUtf16To(InputStream in, MultiMap<String> map, int maxLength, int maxKeys) throws IOException
@@ -632,6 +509,302 @@ public class UrlEncoded
         }
     }
 
+    private static void decodeTo(InputStream in, MultiMap<String> map, Decoder decoder) throws IOException
+    {
+        byte[] bytes = new byte[4096];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int read;
+        while ((read = in.read(bytes)) >= 0)
+        {
+            buffer.limit(read).position(0);
+            decoder.decode(buffer);
+        }
+        decoder.complete();
+        decoder.addTo(map);
+    }
+
+    /**
+     * <p>An incremental decoder of {@code x-www-form-urlencoded} content.</p>
+     * <p>Content is passed to {@link #decode(ByteBuffer)} as it arrives, in buffers of
+     * any size, so that it may be fed from non-blocking reads.  The decoded parameters are
+     * kept as a flat array of names and values, which may be inspected directly with
+     * {@link #getName(int)}, {@link #getValue(int)} and {@link #getValue(String)}, or added
+     * to a {@link MultiMap} with {@link #addTo(MultiMap)} if and when one is needed.</p>
+     * <p>Names and values that need no decoding are created directly from the content,
+     * without being copied to an intermediate buffer.</p>
+     */
+    public static class Decoder
+    {
+        private static final int NO_HEX = -1;
+        private static final int HEX_HI = -2;
+
+        private final Charset _charset;
+        private final int _maxLength;
+        private final int _maxKeys;
+        private String[] _fields = new String[16];
+        private int _size;
+        private byte[] _bytes = new byte[64];
+        private int _length;
+        private String _name;
+        private int _hex = NO_HEX;
+        private long _total;
+        private byte[] _scratch;
+
+        /**
+         * @param charset the charset of the content, which must be {@link #isSupported(Charset) supported}
+         * @param maxLength the maximum length of the content or -1 for no limit
+         * @param maxKeys the maximum number of distinct keys added to a map or -1 for no limit
+         * @throws IllegalArgumentException if the charset is not supported
+         */
+        public Decoder(Charset charset, int maxLength, int maxKeys)
+        {
+            if (!isSupported(charset))
+                throw new IllegalArgumentException("Charset not compatible with ASCII: " + charset);
+            _charset = charset;
+            _maxLength = maxLength;
+            _maxKeys = maxKeys;
+        }
+
+        /**
+         * @param charset the charset
+         * @return whether a Decoder can decode content in the charset, which must encode
+         * the ASCII delimiters of the content as single bytes
+         */
+        public static boolean isSupported(Charset charset)
+        {
+            return Arrays.equals("&=+%".getBytes(charset), "&=+%".getBytes(StandardCharsets.US_ASCII));
+        }
+
+        /**
+         * Decode some content, which is entirely consumed.
+         *
+         * @param buffer the content
+         */
+        public void decode(ByteBuffer buffer)
+        {
+            _total += buffer.remaining();
+            checkMaxLength((int)Math.min(Integer.MAX_VALUE, _total), _maxLength);
+
+            if (buffer.hasArray())
+            {
+                decode(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.arrayOffset() + buffer.limit());
+                buffer.position(buffer.limit());
+            }
+            else
+            {
+                if (_scratch == null || _scratch.length < Math.min(4096, buffer.remaining()))
+                    _scratch = new byte[Math.min(4096, buffer.remaining())];
+                while (buffer.hasRemaining())
+                {
+                    int length = Math.min(_scratch.length, buffer.remaining());
+                    buffer.get(_scratch, 0, length);
+                    decode(_scratch, 0, length);
+                }
+            }
+        }
+
+        private void decode(byte[] bytes, int offset, int end)
+        {
+            int i = offset;
+            while (i < end)
+            {
+                if (_hex != NO_HEX)
+                {
+                    hex(bytes[i++]);
+                    continue;
+                }
+
+                // Scan the bytes that need no decoding.
+                int start = i;
+                byte b = 0;
+                while (i < end)
+                {
+                    b = bytes[i];
+                    if (b == '&' || b == '+' || b == '%' || b == '=' && _name == null)
+                        break;
+                    i++;
+                }
+
+                if (i == end)
+                {
+                    // The name or value may continue in the next buffer.
+                    append(bytes, start, i - start);
+                    break;
+                }
+
+                switch (b)
+                {
+                    case '&':
+                        field(token(bytes, start, i - start));
+                        break;
+                    case '=':
+                        _name = token(bytes, start, i - start);
+                        break;
+                    case '+':
+                        append(bytes, start, i - start);
+                        append((byte)' ');
+                        break;
+                    default:
+                        append(bytes, start, i - start);
+                        _hex = HEX_HI;
+                        break;
+                }
+                i++;
+            }
+        }
+
+        private void hex(byte b)
+        {
+            try
+            {
+                if (_hex == HEX_HI)
+                {
+                    _hex = TypeUtil.convertHexDigit(b);
+                }
+                else
+                {
+                    append((byte)((_hex << 4) + TypeUtil.convertHexDigit(b)));
+                    _hex = NO_HEX;
+                }
+            }
+            catch (NumberFormatException e)
+            {
+                throw new IllegalArgumentException("Not valid encoding '%" + (char)b + "'");
+            }
+        }
+
+        private String token(byte[] bytes, int offset, int length)
+        {
+            if (_length == 0)
+                return length == 0 ? "" : new String(bytes, offset, length, _charset);
+            append(bytes, offset, length);
+            String token = new String(_bytes, 0, _length, _charset);
+            _length = 0;
+            return token;
+        }
+
+        private void append(byte[] bytes, int offset, int length)
+        {
+            if (length == 0)
+                return;
+            if (_length + length > _bytes.length)
+                _bytes = Arrays.copyOf(_bytes, Math.max(_bytes.length * 2, _length + length));
+            System.arraycopy(bytes, offset, _bytes, _length, length);
+            _length += length;
+        }
+
+        private void append(byte b)
+        {
+            if (_length == _bytes.length)
+                _bytes = Arrays.copyOf(_bytes, _bytes.length * 2);
+            _bytes[_length++] = b;
+        }
+
+        private void field(String value)
+        {
+            if (_name != null)
+                add(_name, value);
+            else if (!value.isEmpty())
+                add(value, "");
+            _name = null;
+        }
+
+        private void add(String name, String value)
+        {
+            if (_size == _fields.length)
+                _fields = Arrays.copyOf(_fields, _size * 2);
+            _fields[_size++] = name;
+            _fields[_size++] = value;
+        }
+
+        /**
+         * Complete the decoding at the end of the content.
+         *
+         * @throws IllegalArgumentException if the content ends with an incomplete % encoding
+         */
+        public void complete()
+        {
+            if (_hex != NO_HEX)
+                throw new IllegalArgumentException("Incomplete % encoding");
+            if (_name != null || _length > 0)
+                field(token(_bytes, 0, 0));
+        }
+
+        /**
+         * @return the number of parameters decoded
+         */
+        public int size()
+        {
+            return _size / 2;
+        }
+
+        /**
+         * @param index the index of the parameter
+         * @return the name of the parameter
+         */
+        public String getName(int index)
+        {
+            return _fields[2 * index];
+        }
+
+        /**
+         * @param index the index of the parameter
+         * @return the value of the parameter
+         */
+        public String getValue(int index)
+        {
+            return _fields[2 * index + 1];
+        }
+
+        /**
+         * @param name the name of a parameter
+         * @return the value of the first parameter with the name, or null if there is none
+         */
+        public String getValue(String name)
+        {
+            for (int i = 0; i < _size; i += 2)
+            {
+                if (_fields[i].equals(name))
+                    return _fields[i + 1];
+            }
+            return null;
+        }
+
+        /**
+         * @param name the name of a parameter
+         * @return the values of the parameters with the name, which is empty if there are none
+         */
+        public List<String> getValues(String name)
+        {
+            List<String> values = new ArrayList<>();
+            for (int i = 0; i < _size; i += 2)
+            {
+                if (_fields[i].equals(name))
+                    values.add(_fields[i + 1]);
+            }
+            return values;
+        }
+
+        /**
+         * @param map the map to which to add the parameters decoded
+         * @throws IllegalStateException if the map has more than the maximum number of keys
+         */
+        public void addTo(MultiMap<String> map)
+        {
+            for (int i = 0; i < _size; i += 2)
+            {
+                map.add(_fields[i], _fields[i + 1]);
+                checkMaxKeys(map, _maxKeys);
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x{%s,size=%d,total=%d}", getClass().getSimpleName(), hashCode(), _charset, size(), _total);
+        }
+    }
+
     private static void checkMaxKeys(MultiMap<String> map, int maxKeys)
     {
         int size = map.size();
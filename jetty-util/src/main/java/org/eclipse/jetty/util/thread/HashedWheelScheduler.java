@@ -0,0 +1,459 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+
+package org.eclipse.jetty.util.thread;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.util.StringUtil;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.Name;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.component.Dumpable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Implementation of {@link Scheduler} based on a hashed timing wheel.</p>
+ * <p>Tasks are hashed by their deadline into the buckets of a circular wheel,
+ * that a single thread advances every {@link #getTickDuration() tick};
+ * scheduling and cancelling a task are therefore O(1) operations that do not
+ * contend on a shared lock, unlike the heap of {@link ScheduledExecutorScheduler},
+ * which makes this scheduler suitable for the idle timeouts of a very large number
+ * of connections, that are frequently rescheduled and rarely expire.</p>
+ * <p>The price to pay is precision: tasks run on the tick following their deadline,
+ * so they may run up to one tick late. The tick duration should therefore be chosen
+ * according to the precision required by the scheduled tasks, coarser ticks being
+ * cheaper.</p>
+ * <p>Tasks are run by the wheel thread, so they should be quick and non blocking,
+ * or they should dispatch their work to an executor.</p>
+ */
+@ManagedObject("A scheduler based on a hashed timing wheel")
+public class HashedWheelScheduler extends AbstractLifeCycle implements Scheduler, Dumpable, Runnable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(HashedWheelScheduler.class);
+    // The max number of new tasks moved to the wheel per tick,
+    // so that a burst of new tasks does not delay expirations.
+    private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+    // The max delay, so that deadlines computed from System.nanoTime() do not overflow.
+    private static final long MAX_DELAY_NANOS = Long.MAX_VALUE >> 2;
+    private static final AtomicIntegerFieldUpdater<WheelTask> STATE = AtomicIntegerFieldUpdater.newUpdater(WheelTask.class, "state");
+
+    private final String name;
+    private final boolean daemon;
+    private final ClassLoader classloader;
+    private final ThreadGroup threadGroup;
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Queue<WheelTask> newTasks = new ConcurrentLinkedQueue<>();
+    private final Queue<WheelTask> cancelledTasks = new ConcurrentLinkedQueue<>();
+    private final LongAdder pending = new LongAdder();
+    private volatile Thread thread;
+    private long startNanos;
+    private long tick;
+
+    public HashedWheelScheduler()
+    {
+        this(null, false);
+    }
+
+    public HashedWheelScheduler(String name, boolean daemon)
+    {
+        this(name, daemon, 10, 512);
+    }
+
+    public HashedWheelScheduler(@Name("name") String name, @Name("daemon") boolean daemon, @Name("tickMillis") long tickMillis, @Name("wheelSize") int wheelSize)
+    {
+        this(name, daemon, null, null, tickMillis, TimeUnit.MILLISECONDS, wheelSize);
+    }
+
+    /**
+     * @param name The name of the scheduler thread or null for automatic name
+     * @param daemon True if the scheduler thread should be daemon
+     * @param classLoader The classloader to run the thread with or null to use the current thread context classloader
+     * @param threadGroup The threadgroup to use or null for no thread group
+     * @param tickDuration The duration of a tick of the wheel, which is the precision of this scheduler
+     * @param tickUnit The unit of the tick duration
+     * @param wheelSize The number of buckets of the wheel, rounded up to a power of 2
+     */
+    public HashedWheelScheduler(String name, boolean daemon, ClassLoader classLoader, ThreadGroup threadGroup, long tickDuration, TimeUnit tickUnit, int wheelSize)
+    {
+        if (tickDuration <= 0)
+            throw new IllegalArgumentException("Invalid tick duration " + tickDuration);
+        if (wheelSize <= 0 || wheelSize > 1 << 30)
+            throw new IllegalArgumentException("Invalid wheel size " + wheelSize);
+        this.name = StringUtil.isBlank(name) ? "Scheduler-" + hashCode() : name;
+        this.daemon = daemon;
+        this.classloader = classLoader == null ? Thread.currentThread().getContextClassLoader() : classLoader;
+        this.threadGroup = threadGroup;
+        this.tickNanos = tickUnit.toNanos(tickDuration);
+        int size = Integer.highestOneBit(wheelSize);
+        if (size < wheelSize)
+            size <<= 1;
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; ++i)
+        {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * @return the duration of a tick of the wheel in milliseconds
+     */
+    @ManagedAttribute("The duration of a tick of the wheel in milliseconds")
+    public long getTickDuration()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(tickNanos);
+    }
+
+    /**
+     * @return the number of buckets of the wheel
+     */
+    @ManagedAttribute("The number of buckets of the wheel")
+    public int getWheelSize()
+    {
+        return wheel.length;
+    }
+
+    /**
+     * @return the number of tasks scheduled and not yet run or cancelled
+     */
+    @ManagedAttribute("The number of tasks scheduled and not yet run or cancelled")
+    public long getPendingTasks()
+    {
+        return pending.sum();
+    }
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        startNanos = System.nanoTime();
+        tick = 0;
+        Thread thread = new Thread(threadGroup, this, name);
+        thread.setDaemon(daemon);
+        thread.setContextClassLoader(classloader);
+        this.thread = thread;
+        thread.start();
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        Thread thread = this.thread;
+        this.thread = null;
+        if (thread != null)
+        {
+            thread.interrupt();
+            thread.join();
+        }
+        super.doStop();
+        // Like ScheduledExecutorScheduler, discard the tasks that did not run.
+        for (Bucket bucket : wheel)
+        {
+            bucket.clear();
+        }
+        newTasks.clear();
+        cancelledTasks.clear();
+        pending.reset();
+    }
+
+    @Override
+    public Task schedule(Runnable task, long delay, TimeUnit unit)
+    {
+        if (thread == null)
+            return () -> false;
+        long delayNanos = Math.min(unit.toNanos(delay), MAX_DELAY_NANOS);
+        WheelTask wheelTask = new WheelTask(task, System.nanoTime() + delayNanos);
+        pending.increment();
+        newTasks.offer(wheelTask);
+        return wheelTask;
+    }
+
+    @Override
+    public void run()
+    {
+        try
+        {
+            while (thread == Thread.currentThread())
+            {
+                long deadline = waitForNextTick();
+                if (deadline == Long.MIN_VALUE)
+                    break;
+                try
+                {
+                    removeCancelledTasks();
+                    transferNewTasks();
+                    wheel[(int)(tick & mask)].expire(deadline);
+                }
+                catch (Throwable x)
+                {
+                    // Keep the wheel turning, or no other task would ever run.
+                    LOG.warn("Unable to process tick {} of {}", tick, this, x);
+                }
+                ++tick;
+            }
+        }
+        finally
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("{} exited", this);
+        }
+    }
+
+    /**
+     * @return the deadline of the current tick relative to {@link System#nanoTime()},
+     * or {@link Long#MIN_VALUE} if this scheduler is stopping
+     */
+    private long waitForNextTick()
+    {
+        long deadline = startNanos + (tick + 1) * tickNanos;
+        while (true)
+        {
+            long now = System.nanoTime();
+            long sleepNanos = deadline - now;
+            if (sleepNanos <= 0)
+                return deadline;
+            try
+            {
+                // Round up to the millisecond, as sleeping less has no benefit for coarse ticks.
+                Thread.sleep((sleepNanos + 999_999) / 1_000_000);
+            }
+            catch (InterruptedException x)
+            {
+                if (thread != Thread.currentThread())
+                    return Long.MIN_VALUE;
+            }
+        }
+    }
+
+    private void removeCancelledTasks()
+    {
+        while (true)
+        {
+            WheelTask task = cancelledTasks.poll();
+            if (task == null)
+                return;
+            // The task may still be in the new tasks queue,
+            // in which case it will not be moved to the wheel.
+            Bucket bucket = task.bucket;
+            if (bucket != null)
+                bucket.remove(task);
+        }
+    }
+
+    private void transferNewTasks()
+    {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; ++i)
+        {
+            WheelTask task = newTasks.poll();
+            if (task == null)
+                return;
+            if (task.state != WheelTask.PENDING)
+                continue;
+
+            long ticks = (task.deadline - startNanos) / tickNanos;
+            task.rounds = (ticks - tick) / wheel.length;
+            // Tasks that are already expired run at the current tick.
+            long index = Math.max(ticks, tick) & mask;
+            wheel[(int)index].add(task);
+        }
+    }
+
+    @Override
+    public String dump()
+    {
+        return Dumpable.dump(this);
+    }
+
+    @Override
+    public void dump(Appendable out, String indent) throws IOException
+    {
+        Thread thread = this.thread;
+        if (thread == null)
+            Dumpable.dumpObject(out, this);
+        else
+            Dumpable.dumpObjects(out, indent, this, (Object[])thread.getStackTrace());
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{%s,tick=%dms,size=%d,pending=%d}",
+            getClass().getSimpleName(),
+            hashCode(),
+            getState(),
+            getTickDuration(),
+            getWheelSize(),
+            getPendingTasks());
+    }
+
+    /**
+     * <p>A doubly linked list of tasks, only accessed by the wheel thread.</p>
+     */
+    private class Bucket
+    {
+        private WheelTask head;
+        private WheelTask tail;
+
+        private void add(WheelTask task)
+        {
+            task.bucket = this;
+            if (tail == null)
+            {
+                head = tail = task;
+            }
+            else
+            {
+                tail.next = task;
+                task.prev = tail;
+                tail = task;
+            }
+        }
+
+        private void remove(WheelTask task)
+        {
+            WheelTask next = task.next;
+            if (task.prev != null)
+                task.prev.next = next;
+            if (next != null)
+                next.prev = task.prev;
+            if (task == head)
+                head = next;
+            if (task == tail)
+                tail = task.prev;
+            task.prev = null;
+            task.next = null;
+            task.bucket = null;
+        }
+
+        private void expire(long deadline)
+        {
+            WheelTask task = head;
+            while (task != null)
+            {
+                WheelTask next = task.next;
+                if (task.state != WheelTask.PENDING)
+                {
+                    // Cancelled, will be removed from the cancelled tasks queue.
+                    remove(task);
+                }
+                else if (task.rounds <= 0)
+                {
+                    remove(task);
+                    if (task.deadline - deadline > 0)
+                    {
+                        // Should not happen, but rather than running the task early,
+                        // move it again to the wheel at the next tick.
+                        LOG.warn("Task {} deadline {} after tick deadline {}", task, task.deadline, deadline);
+                        newTasks.offer(task);
+                    }
+                    else
+                    {
+                        task.expire();
+                    }
+                }
+                else
+                {
+                    --task.rounds;
+                }
+                task = next;
+            }
+        }
+
+        private void clear()
+        {
+            WheelTask task = head;
+            while (task != null)
+            {
+                WheelTask next = task.next;
+                task.prev = null;
+                task.next = null;
+                task.bucket = null;
+                task = next;
+            }
+            head = tail = null;
+        }
+    }
+
+    private class WheelTask implements Task
+    {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final Runnable task;
+        private final long deadline;
+        private volatile int state;
+        // Fields only accessed by the wheel thread.
+        private long rounds;
+        private Bucket bucket;
+        private WheelTask prev;
+        private WheelTask next;
+
+        private WheelTask(Runnable task, long deadline)
+        {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean cancel()
+        {
+            if (!STATE.compareAndSet(this, PENDING, CANCELLED))
+                return false;
+            pending.decrement();
+            cancelledTasks.offer(this);
+            return true;
+        }
+
+        private void expire()
+        {
+            if (!STATE.compareAndSet(this, PENDING, EXPIRED))
+                return;
+            pending.decrement();
+            try
+            {
+                task.run();
+            }
+            catch (Throwable x)
+            {
+                LOG.warn("Exception while executing task {}", task, x);
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s.%s@%x[%s]",
+                HashedWheelScheduler.class.getSimpleName(),
+                WheelTask.class.getSimpleName(),
+                hashCode(),
+                task);
+        }
+    }
+}
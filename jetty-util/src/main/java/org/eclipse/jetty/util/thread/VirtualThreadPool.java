@@ -0,0 +1,355 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+
+package org.eclipse.jetty.util.thread;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A {@link ThreadPool} that runs blocking application tasks on virtual threads,
+ * and all the other tasks on a small pool of platform threads.</p>
+ * <p>A task is run on a virtual thread when it is an {@link Invocable} with
+ * {@link Invocable.InvocationType#BLOCKING} invocation type, such as the tasks
+ * that read from a connection and handle requests.
+ * Other tasks, such as selector and producer tasks, are run by the platform thread pool,
+ * which also provides the {@link ThreadPoolBudget} used by connectors to lease their threads.</p>
+ * <p>Since blocking tasks never need a reserved thread, {@link #tryExecute(Runnable)} always
+ * fails when virtual threads are used, so that execution strategies always execute blocking
+ * tasks rather than consuming them in the producer thread.</p>
+ * <p>When the JVM does not support virtual threads, all tasks are run by the platform
+ * thread pool.</p>
+ */
+@ManagedObject("A thread pool using virtual threads for blocking tasks")
+public class VirtualThreadPool extends ContainerLifeCycle implements ThreadPool.SizedThreadPool, TryExecutor
+{
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadPool.class);
+    private static final MethodHandle NEW_VIRTUAL_EXECUTOR = findVirtualExecutorFactory();
+
+    private final AtomicInteger _virtualThreads = new AtomicInteger();
+    private final LongAdder _virtualTasks = new LongAdder();
+    private final SizedThreadPool _platformThreadPool;
+    private final TryExecutor _platformTryExecutor;
+    private String _name = "vtp" + hashCode();
+    private boolean _useVirtualThreads = isSupported();
+    private long _stopTimeout = 5000;
+    private ExecutorService _virtualExecutor;
+
+    /**
+     * Creates a VirtualThreadPool with a default platform thread pool.
+     */
+    public VirtualThreadPool()
+    {
+        this(new QueuedThreadPool(Math.max(8, 2 * Runtime.getRuntime().availableProcessors())));
+    }
+
+    /**
+     * @param platformThreadPool the thread pool for non-blocking tasks, selectors and acceptors
+     */
+    public VirtualThreadPool(SizedThreadPool platformThreadPool)
+    {
+        _platformThreadPool = platformThreadPool;
+        _platformTryExecutor = TryExecutor.asTryExecutor(platformThreadPool);
+        addBean(platformThreadPool);
+    }
+
+    /**
+     * @return whether the JVM supports virtual threads
+     */
+    public static boolean isSupported()
+    {
+        return NEW_VIRTUAL_EXECUTOR != null;
+    }
+
+    private static MethodHandle findVirtualExecutorFactory()
+    {
+        try
+        {
+            // Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefix, 0).factory()),
+            // looked up reflectively as virtual threads require Java 21.
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Class<?> virtualBuilderClass = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            MethodHandle ofVirtual = lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(virtualBuilderClass));
+            MethodHandle name = lookup.findVirtual(virtualBuilderClass, "name", MethodType.methodType(virtualBuilderClass, String.class, long.class));
+            MethodHandle factory = lookup.findVirtual(builderClass, "factory", MethodType.methodType(ThreadFactory.class));
+            MethodHandle executor = lookup.findStatic(Executors.class, "newThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class, ThreadFactory.class));
+            // Verify that virtual threads are not a disabled preview feature.
+            ofVirtual.invoke();
+            MethodHandle threadFactory = MethodHandles.filterReturnValue(
+                MethodHandles.collectArguments(name, 0, ofVirtual),
+                factory.asType(MethodType.methodType(ThreadFactory.class, virtualBuilderClass)));
+            return MethodHandles.filterReturnValue(threadFactory, executor);
+        }
+        catch (Throwable x)
+        {
+            LOG.trace("IGNORED", x);
+            return null;
+        }
+    }
+
+    /**
+     * @return the name of this thread pool
+     */
+    @ManagedAttribute("name of this thread pool")
+    public String getName()
+    {
+        return _name;
+    }
+
+    /**
+     * @param name the name of this thread pool, used to name virtual threads
+     */
+    public void setName(String name)
+    {
+        if (isRunning())
+            throw new IllegalStateException(getState());
+        _name = name;
+    }
+
+    /**
+     * @return whether blocking tasks are run on virtual threads
+     */
+    @ManagedAttribute("whether blocking tasks are run on virtual threads")
+    public boolean isUseVirtualThreads()
+    {
+        return _useVirtualThreads;
+    }
+
+    /**
+     * @param useVirtualThreads whether blocking tasks are run on virtual threads,
+     * ignored if the JVM does not support virtual threads
+     */
+    public void setUseVirtualThreads(boolean useVirtualThreads)
+    {
+        if (isRunning())
+            throw new IllegalStateException(getState());
+        _useVirtualThreads = useVirtualThreads && isSupported();
+    }
+
+    /**
+     * @return the time in ms to wait for virtual threads to complete their tasks when stopping
+     */
+    @ManagedAttribute("time in ms to wait for virtual threads to complete when stopping")
+    public long getStopTimeout()
+    {
+        return _stopTimeout;
+    }
+
+    /**
+     * @param stopTimeout the time in ms to wait for virtual threads to complete their tasks when stopping
+     */
+    public void setStopTimeout(long stopTimeout)
+    {
+        _stopTimeout = stopTimeout;
+    }
+
+    /**
+     * @return the thread pool for non-blocking tasks, selectors and acceptors
+     */
+    public SizedThreadPool getPlatformThreadPool()
+    {
+        return _platformThreadPool;
+    }
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        if (_useVirtualThreads)
+        {
+            try
+            {
+                _virtualExecutor = (ExecutorService)NEW_VIRTUAL_EXECUTOR.invoke(getName() + "-virtual-", 0L);
+            }
+            catch (Throwable x)
+            {
+                throw new IllegalStateException("Could not create virtual thread executor", x);
+            }
+        }
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        super.doStop();
+        ExecutorService virtualExecutor = _virtualExecutor;
+        _virtualExecutor = null;
+        if (virtualExecutor != null)
+        {
+            virtualExecutor.shutdown();
+            long timeout = getStopTimeout();
+            if (timeout > 0 && !virtualExecutor.awaitTermination(timeout, TimeUnit.MILLISECONDS))
+                virtualExecutor.shutdownNow();
+        }
+    }
+
+    @Override
+    public void execute(Runnable task)
+    {
+        ExecutorService virtualExecutor = _virtualExecutor;
+        if (virtualExecutor != null && task instanceof Invocable && Invocable.getInvocationType(task) == Invocable.InvocationType.BLOCKING)
+        {
+            try
+            {
+                virtualExecutor.execute(() -> runVirtual(task));
+                return;
+            }
+            catch (RejectedExecutionException x)
+            {
+                if (isRunning())
+                    throw x;
+                LOG.trace("IGNORED", x);
+            }
+        }
+        _platformThreadPool.execute(task);
+    }
+
+    private void runVirtual(Runnable task)
+    {
+        _virtualThreads.incrementAndGet();
+        _virtualTasks.increment();
+        try
+        {
+            task.run();
+        }
+        catch (Throwable x)
+        {
+            LOG.warn("Task run failed", x);
+        }
+        finally
+        {
+            _virtualThreads.decrementAndGet();
+        }
+    }
+
+    @Override
+    public boolean tryExecute(Runnable task)
+    {
+        // With virtual threads, blocking tasks must always be
+        // executed rather than consumed by a platform thread.
+        if (_virtualExecutor != null)
+            return false;
+        return _platformTryExecutor.tryExecute(task);
+    }
+
+    @Override
+    public void join() throws InterruptedException
+    {
+        _platformThreadPool.join();
+    }
+
+    @Override
+    @ManagedAttribute("number of platform and virtual threads in the pool")
+    public int getThreads()
+    {
+        return _platformThreadPool.getThreads() + getVirtualThreads();
+    }
+
+    /**
+     * @return the number of virtual threads currently running tasks
+     */
+    @ManagedAttribute("number of virtual threads currently running tasks")
+    public int getVirtualThreads()
+    {
+        return _virtualThreads.get();
+    }
+
+    /**
+     * @return the total number of tasks run on virtual threads
+     */
+    @ManagedAttribute("total number of tasks run on virtual threads")
+    public long getVirtualTasks()
+    {
+        return _virtualTasks.longValue();
+    }
+
+    @Override
+    @ManagedAttribute("number of idle platform threads in the pool")
+    public int getIdleThreads()
+    {
+        return _platformThreadPool.getIdleThreads();
+    }
+
+    @Override
+    @ManagedAttribute(value = "platform thread pool is low on threads", readonly = true)
+    public boolean isLowOnThreads()
+    {
+        return _platformThreadPool.isLowOnThreads();
+    }
+
+    @Override
+    @ManagedAttribute("minimum number of platform threads in the pool")
+    public int getMinThreads()
+    {
+        return _platformThreadPool.getMinThreads();
+    }
+
+    @Override
+    @ManagedAttribute("maximum number of platform threads in the pool")
+    public int getMaxThreads()
+    {
+        return _platformThreadPool.getMaxThreads();
+    }
+
+    @Override
+    public void setMinThreads(int threads)
+    {
+        _platformThreadPool.setMinThreads(threads);
+    }
+
+    @Override
+    public void setMaxThreads(int threads)
+    {
+        _platformThreadPool.setMaxThreads(threads);
+    }
+
+    @Override
+    public ThreadPoolBudget getThreadPoolBudget()
+    {
+        return _platformThreadPool.getThreadPoolBudget();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s[%s]@%x{%s,virtual=%b,v=%d,%s}",
+            getClass().getSimpleName(),
+            getName(),
+            hashCode(),
+            getState(),
+            _virtualExecutor != null,
+            getVirtualThreads(),
+            _platformThreadPool);
+    }
+}
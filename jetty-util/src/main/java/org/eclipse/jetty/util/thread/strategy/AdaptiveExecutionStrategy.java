@@ -0,0 +1,669 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+
+package org.eclipse.jetty.util.thread.strategy;
+
+import java.io.Closeable;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.thread.AutoLock;
+import org.eclipse.jetty.util.thread.ExecutionStrategy;
+import org.eclipse.jetty.util.thread.Invocable;
+import org.eclipse.jetty.util.thread.ReservedThreadExecutor;
+import org.eclipse.jetty.util.thread.TryExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A strategy that works like {@link EatWhatYouKill}, but that adapts its
+ * choice of sub-strategy to the measured load rather than deciding per task.</p>
+ * <p>{@link EatWhatYouKill} tries to obtain a reserved thread for every blocking
+ * task, and so under mixed loads it oscillates between Execute Produce Consume (EPC)
+ * when a reserved thread happens to be available, and Produce Execute Consume (PEC)
+ * when it is not, losing the cache locality that EPC is meant to provide.</p>
+ * <p>This strategy tracks the recent hit rate of reserved threads and switches, with
+ * hysteresis, between two modes:</p>
+ * <ul>
+ * <li>{@link Mode#EAT_WHAT_YOU_KILL}: blocking tasks are consumed with EPC if a
+ * reserved thread is available, as in {@link EatWhatYouKill}.</li>
+ * <li>{@link Mode#PRODUCE_EXECUTE_CONSUME}: when the hit rate is low, blocking tasks
+ * are executed with PEC without trying to obtain a reserved thread, except for
+ * periodic probes that measure whether reserved threads are available again.</li>
+ * </ul>
+ * <p>The mode is specific to each strategy, while the {@link ReservedThreadExecutor}
+ * is typically shared by all the strategies of a server, so it is never reconfigured.</p>
+ * <p>This strategy also tracks the recent duration of the tasks that may be invoked
+ * by the producing thread (with {@link Invocable.InvocationType#EITHER} invocation type),
+ * and executes them rather than invoking them when they take longer than
+ * {@link #getLongTaskThreshold()}, so that production is not stalled.  The recent
+ * duration decays for each task executed this way, so that tasks are eventually
+ * invoked again to measure whether they are still long.</p>
+ * <p>The decisions of this strategy are available as JMX counters.</p>
+ */
+@ManagedObject("adaptive execution strategy")
+public class AdaptiveExecutionStrategy extends ContainerLifeCycle implements ExecutionStrategy, Runnable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptiveExecutionStrategy.class);
+    // The hit rate of reserved threads, in fixed point with this scale.
+    private static final int SCALE = 1024;
+    // Switch to PEC mode below this hit rate.
+    private static final int LOW_HIT_RATE = SCALE / 4;
+    // Switch back to EWYK mode above this hit rate.
+    private static final int HIGH_HIT_RATE = 3 * SCALE / 4;
+    // In PEC mode, probe for a reserved thread every this number of blocking tasks.
+    private static final int PROBE_INTERVAL = 32;
+
+    private enum State
+    {
+        IDLE, PRODUCING, REPRODUCING
+    }
+
+    /**
+     * The modes this strategy adapts between.
+     */
+    public enum Mode
+    {
+        /**
+         * Blocking tasks are consumed by the producing thread if a reserved thread is available.
+         */
+        EAT_WHAT_YOU_KILL,
+        /**
+         * Blocking tasks are executed, and reserved threads are only periodically probed.
+         */
+        PRODUCE_EXECUTE_CONSUME
+    }
+
+    /* The sub-strategies used for each task */
+    private enum SubStrategy
+    {
+        PRODUCE_CONSUME,
+        PRODUCE_INVOKE_CONSUME,
+        PRODUCE_EXECUTE_CONSUME,
+        EXECUTE_PRODUCE_CONSUME
+    }
+
+    private final AutoLock _lock = new AutoLock();
+    private final LongAdder _pcMode = new LongAdder();
+    private final LongAdder _picMode = new LongAdder();
+    private final LongAdder _pecMode = new LongAdder();
+    private final LongAdder _epcMode = new LongAdder();
+    private final LongAdder _reservedHits = new LongAdder();
+    private final LongAdder _reservedMisses = new LongAdder();
+    private final LongAdder _reservedSkips = new LongAdder();
+    private final LongAdder _longTaskExecutions = new LongAdder();
+    private final LongAdder _modeSwitches = new LongAdder();
+    private final Producer _producer;
+    private final Executor _executor;
+    private final TryExecutor _tryExecutor;
+    private State _state = State.IDLE;
+    private boolean _pending;
+    private Mode _mode = Mode.EAT_WHAT_YOU_KILL;
+    private int _hitRate = SCALE;
+    private int _skipped;
+    private volatile long _invokeNanos;
+    private volatile long _consumeNanos;
+    private long _longTaskThreshold = TimeUnit.MILLISECONDS.toNanos(1);
+
+    public AdaptiveExecutionStrategy(Producer producer, Executor executor)
+    {
+        _producer = producer;
+        _executor = executor;
+        _tryExecutor = TryExecutor.asTryExecutor(executor);
+        addBean(_producer);
+        addBean(_tryExecutor);
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} created", this);
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        super.doStop();
+        try (AutoLock l = _lock.lock())
+        {
+            _mode = Mode.EAT_WHAT_YOU_KILL;
+            _hitRate = SCALE;
+            _skipped = 0;
+        }
+    }
+
+    @Override
+    public void dispatch()
+    {
+        boolean execute = false;
+        try (AutoLock l = _lock.lock())
+        {
+            switch (_state)
+            {
+                case IDLE:
+                    if (!_pending)
+                    {
+                        _pending = true;
+                        execute = true;
+                    }
+                    break;
+
+                case PRODUCING:
+                    _state = State.REPRODUCING;
+                    break;
+
+                default:
+                    break;
+            }
+        }
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} dispatch {}", this, execute);
+        if (execute)
+            _executor.execute(this);
+    }
+
+    @Override
+    public void run()
+    {
+        tryProduce(true);
+    }
+
+    @Override
+    public void produce()
+    {
+        tryProduce(false);
+    }
+
+    private void tryProduce(boolean wasPending)
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} tryProduce {}", this, wasPending);
+
+        try (AutoLock l = _lock.lock())
+        {
+            if (wasPending)
+                _pending = false;
+
+            switch (_state)
+            {
+                case IDLE:
+                    // Enter PRODUCING
+                    _state = State.PRODUCING;
+                    break;
+
+                case PRODUCING:
+                    // Keep other Thread producing
+                    _state = State.REPRODUCING;
+                    return;
+
+                default:
+                    return;
+            }
+        }
+
+        boolean nonBlocking = Invocable.isNonBlockingInvocation();
+
+        while (isRunning())
+        {
+            try
+            {
+                if (doProduce(nonBlocking))
+                    continue;
+                return;
+            }
+            catch (Throwable th)
+            {
+                LOG.warn("Unable to produce", th);
+            }
+        }
+    }
+
+    private boolean doProduce(boolean nonBlocking)
+    {
+        Runnable task = produceTask();
+
+        if (task == null)
+        {
+            try (AutoLock l = _lock.lock())
+            {
+                // Could another task just have been queued with a produce call?
+                switch (_state)
+                {
+                    case PRODUCING:
+                        _state = State.IDLE;
+                        return false;
+
+                    case REPRODUCING:
+                        _state = State.PRODUCING;
+                        return true;
+
+                    default:
+                        throw new IllegalStateException(toStringLocked());
+                }
+            }
+        }
+
+        SubStrategy subStrategy;
+        Invocable.InvocationType invocationType = Invocable.getInvocationType(task);
+        if (nonBlocking)
+        {
+            // The calling thread cannot block, so we only have a choice between PC and PEC modes,
+            // based on the invocation type of the task
+            switch (invocationType)
+            {
+                case NON_BLOCKING:
+                    subStrategy = SubStrategy.PRODUCE_CONSUME;
+                    break;
+
+                case EITHER:
+                    subStrategy = SubStrategy.PRODUCE_INVOKE_CONSUME;
+                    break;
+
+                default:
+                    subStrategy = SubStrategy.PRODUCE_EXECUTE_CONSUME;
+                    break;
+            }
+        }
+        else
+        {
+            switch (invocationType)
+            {
+                case NON_BLOCKING:
+                    subStrategy = SubStrategy.PRODUCE_CONSUME;
+                    break;
+
+                case BLOCKING:
+                case EITHER:
+                    // Choose EPC if a reserved thread is available and the mode allows
+                    // to try for one, otherwise PEC for blocking tasks, and PIC or PEC
+                    // for tasks that may not block, depending on their recent duration.
+                    try (AutoLock l = _lock.lock())
+                    {
+                        if (_pending || tryReservedThread())
+                        {
+                            _pending = true;
+                            _state = State.IDLE;
+                            subStrategy = SubStrategy.EXECUTE_PRODUCE_CONSUME;
+                        }
+                        else if (invocationType == Invocable.InvocationType.BLOCKING)
+                        {
+                            subStrategy = SubStrategy.PRODUCE_EXECUTE_CONSUME;
+                        }
+                        else if (_invokeNanos > _longTaskThreshold)
+                        {
+                            // Decay the recent duration, as it is only sampled when tasks are invoked.
+                            _invokeNanos -= _invokeNanos >> 4;
+                            _longTaskExecutions.increment();
+                            subStrategy = SubStrategy.PRODUCE_EXECUTE_CONSUME;
+                        }
+                        else
+                        {
+                            // PC mode, but we must consume with non-blocking invocation
+                            // as we may be the last thread and we cannot block
+                            subStrategy = SubStrategy.PRODUCE_INVOKE_CONSUME;
+                        }
+                    }
+                    break;
+
+                default:
+                    throw new IllegalStateException(toString());
+            }
+        }
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} m={} t={}/{}", this, subStrategy, task, invocationType);
+
+        // Consume or execute task
+        switch (subStrategy)
+        {
+            case PRODUCE_CONSUME:
+                _pcMode.increment();
+                runTask(task);
+                return true;
+
+            case PRODUCE_INVOKE_CONSUME:
+                _picMode.increment();
+                long begin = System.nanoTime();
+                invokeTask(task);
+                _invokeNanos = average(_invokeNanos, System.nanoTime() - begin);
+                return true;
+
+            case PRODUCE_EXECUTE_CONSUME:
+                _pecMode.increment();
+                execute(task);
+                return true;
+
+            case EXECUTE_PRODUCE_CONSUME:
+                _epcMode.increment();
+                long start = System.nanoTime();
+                runTask(task);
+                _consumeNanos = average(_consumeNanos, System.nanoTime() - start);
+
+                // Try to produce again?
+                try (AutoLock l = _lock.lock())
+                {
+                    if (_state == State.IDLE)
+                    {
+                        // We beat the pending producer, so we will become the producer instead
+                        _state = State.PRODUCING;
+                        return true;
+                    }
+                }
+                return false;
+
+            default:
+                throw new IllegalStateException(toString());
+        }
+    }
+
+    /**
+     * <p>Tries to obtain a reserved thread to take over production,
+     * if the current mode allows it, and adapts the mode to the hit rate.</p>
+     * <p>Must be called with the lock held.</p>
+     *
+     * @return whether a reserved thread took over production
+     */
+    private boolean tryReservedThread()
+    {
+        if (_mode == Mode.PRODUCE_EXECUTE_CONSUME && ++_skipped < PROBE_INTERVAL)
+        {
+            _reservedSkips.increment();
+            return false;
+        }
+        _skipped = 0;
+
+        boolean hit = _tryExecutor.tryExecute(this);
+        if (hit)
+            _reservedHits.increment();
+        else
+            _reservedMisses.increment();
+
+        // Exponentially weighted moving average of the hit rate. In PEC mode,
+        // probes are less frequent, so they weigh more to be able to recover.
+        int weight = _mode == Mode.EAT_WHAT_YOU_KILL ? 4 : 2;
+        _hitRate += ((hit ? SCALE : 0) - _hitRate) >> weight;
+
+        if (_mode == Mode.EAT_WHAT_YOU_KILL && _hitRate < LOW_HIT_RATE)
+            switchMode(Mode.PRODUCE_EXECUTE_CONSUME);
+        else if (_mode == Mode.PRODUCE_EXECUTE_CONSUME && _hitRate > HIGH_HIT_RATE)
+            switchMode(Mode.EAT_WHAT_YOU_KILL);
+
+        return hit;
+    }
+
+    private void switchMode(Mode mode)
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} switching to {} with hit rate {}%", this, mode, 100 * _hitRate / SCALE);
+        _mode = mode;
+        _modeSwitches.increment();
+    }
+
+    private static long average(long average, long sample)
+    {
+        // Exponentially weighted moving average; concurrent
+        // updates may be lost, which is acceptable for a statistic.
+        return average + ((sample - average) >> 4);
+    }
+
+    private void runTask(Runnable task)
+    {
+        try
+        {
+            task.run();
+        }
+        catch (Throwable x)
+        {
+            LOG.warn("Task run failed", x);
+        }
+    }
+
+    private void invokeTask(Runnable task)
+    {
+        try
+        {
+            Invocable.invokeNonBlocking(task);
+        }
+        catch (Throwable x)
+        {
+            LOG.warn("Task invoke failed", x);
+        }
+    }
+
+    private Runnable produceTask()
+    {
+        try
+        {
+            return _producer.produce();
+        }
+        catch (Throwable e)
+        {
+            LOG.warn("Task produce failed", e);
+            return null;
+        }
+    }
+
+    private void execute(Runnable task)
+    {
+        try
+        {
+            _executor.execute(task);
+        }
+        catch (RejectedExecutionException e)
+        {
+            if (isRunning())
+                LOG.warn("Execute failed", e);
+            else
+                LOG.trace("IGNORED", e);
+
+            if (task instanceof Closeable)
+            {
+                try
+                {
+                    ((Closeable)task).close();
+                }
+                catch (Throwable e2)
+                {
+                    LOG.trace("IGNORED", e2);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the duration in nanoseconds above which tasks that may not block
+     * are executed rather than invoked by the producing thread
+     */
+    @ManagedAttribute("duration in ns above which tasks that may not block are executed rather than invoked")
+    public long getLongTaskThreshold()
+    {
+        return _longTaskThreshold;
+    }
+
+    /**
+     * @param nanos the duration in nanoseconds above which tasks that may not block
+     * are executed rather than invoked by the producing thread
+     */
+    public void setLongTaskThreshold(long nanos)
+    {
+        _longTaskThreshold = nanos;
+    }
+
+    @ManagedAttribute(value = "current mode", readonly = true)
+    public Mode getMode()
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            return _mode;
+        }
+    }
+
+    @ManagedAttribute(value = "recent hit rate of reserved threads in percent", readonly = true)
+    public int getReservedHitRate()
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            return 100 * _hitRate / SCALE;
+        }
+    }
+
+    @ManagedAttribute(value = "number of reserved threads obtained", readonly = true)
+    public long getReservedHits()
+    {
+        return _reservedHits.longValue();
+    }
+
+    @ManagedAttribute(value = "number of reserved threads not obtained", readonly = true)
+    public long getReservedMisses()
+    {
+        return _reservedMisses.longValue();
+    }
+
+    @ManagedAttribute(value = "number of times a reserved thread was not tried in PEC mode", readonly = true)
+    public long getReservedSkips()
+    {
+        return _reservedSkips.longValue();
+    }
+
+    @ManagedAttribute(value = "number of mode switches", readonly = true)
+    public long getModeSwitches()
+    {
+        return _modeSwitches.longValue();
+    }
+
+    @ManagedAttribute(value = "number of tasks that may not block executed because of their recent duration", readonly = true)
+    public long getLongTaskExecutions()
+    {
+        return _longTaskExecutions.longValue();
+    }
+
+    @ManagedAttribute(value = "recent average duration in ns of tasks invoked with PIC mode", readonly = true)
+    public long getAverageInvokeTime()
+    {
+        return _invokeNanos;
+    }
+
+    @ManagedAttribute(value = "recent average duration in ns of tasks consumed with EPC mode", readonly = true)
+    public long getAverageConsumeTime()
+    {
+        return _consumeNanos;
+    }
+
+    @ManagedAttribute(value = "number of tasks consumed with PC mode", readonly = true)
+    public long getPCTasksConsumed()
+    {
+        return _pcMode.longValue();
+    }
+
+    @ManagedAttribute(value = "number of tasks executed with PIC mode", readonly = true)
+    public long getPICTasksExecuted()
+    {
+        return _picMode.longValue();
+    }
+
+    @ManagedAttribute(value = "number of tasks executed with PEC mode", readonly = true)
+    public long getPECTasksExecuted()
+    {
+        return _pecMode.longValue();
+    }
+
+    @ManagedAttribute(value = "number of tasks consumed with EPC mode", readonly = true)
+    public long getEPCTasksConsumed()
+    {
+        return _epcMode.longValue();
+    }
+
+    @ManagedAttribute(value = "whether this execution strategy is idle", readonly = true)
+    public boolean isIdle()
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            return _state == State.IDLE;
+        }
+    }
+
+    @ManagedOperation(value = "resets the task counts", impact = "ACTION")
+    public void reset()
+    {
+        _pcMode.reset();
+        _epcMode.reset();
+        _pecMode.reset();
+        _picMode.reset();
+        _reservedHits.reset();
+        _reservedMisses.reset();
+        _reservedSkips.reset();
+        _longTaskExecutions.reset();
+        _modeSwitches.reset();
+    }
+
+    @Override
+    public String toString()
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            return toStringLocked();
+        }
+    }
+
+    public String toStringLocked()
+    {
+        StringBuilder builder = new StringBuilder();
+        getString(builder);
+        getState(builder);
+        return builder.toString();
+    }
+
+    private void getString(StringBuilder builder)
+    {
+        builder.append(getClass().getSimpleName());
+        builder.append('@');
+        builder.append(Integer.toHexString(hashCode()));
+        builder.append('/');
+        builder.append(_producer);
+        builder.append('/');
+    }
+
+    private void getState(StringBuilder builder)
+    {
+        builder.append(_state);
+        builder.append("/p=");
+        builder.append(_pending);
+        builder.append('/');
+        builder.append(_mode);
+        builder.append("/h=");
+        builder.append(100 * _hitRate / SCALE);
+        builder.append("%/");
+        builder.append(_tryExecutor);
+        builder.append("[pc=");
+        builder.append(getPCTasksConsumed());
+        builder.append(",pic=");
+        builder.append(getPICTasksExecuted());
+        builder.append(",pec=");
+        builder.append(getPECTasksExecuted());
+        builder.append(",epc=");
+        builder.append(getEPCTasksConsumed());
+        builder.append("]");
+        builder.append("@");
+        builder.append(DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(ZonedDateTime.now()));
+    }
+}
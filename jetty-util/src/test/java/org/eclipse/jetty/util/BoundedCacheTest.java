@@ -0,0 +1,129 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+
+public class BoundedCacheTest
+{
+    @Test
+    public void testLeastRecentlyUsedEvicted()
+    {
+        BoundedCache<String, String> cache = new BoundedCache<>(3, 1);
+        cache.putIfAbsent("a", "A");
+        cache.putIfAbsent("b", "B");
+        cache.putIfAbsent("c", "C");
+        assertThat(cache.get("a"), is("A"));
+
+        cache.putIfAbsent("d", "D");
+        assertThat(cache.size(), is(3));
+        assertThat(cache.get("b"), nullValue());
+        assertThat(cache.get("a"), is("A"));
+        assertThat(cache.get("c"), is("C"));
+        assertThat(cache.get("d"), is("D"));
+
+        assertThat(cache.getHits(), is(4L));
+        assertThat(cache.getMisses(), is(1L));
+        assertThat(cache.getEvictions(), is(1L));
+
+        cache.resetStatistics();
+        assertThat(cache.getHits(), is(0L));
+        cache.clear();
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void testWeighted()
+    {
+        BoundedCache<String, String> cache = new BoundedCache<>(10, 1, String::length);
+        cache.putIfAbsent("a", "aaaa");
+        cache.putIfAbsent("b", "bbbb");
+        assertThat(cache.getWeight(), is(8L));
+
+        cache.putIfAbsent("c", "cccccc");
+        assertThat(cache.getWeight(), is(10L));
+        assertThat(cache.getEvictions(), is(1L));
+        assertThat(cache.get("a"), nullValue());
+
+        assertThat(cache.putIfAbsent("d", "ddddddddddd"), nullValue());
+        assertThat(cache.get("d"), nullValue());
+        assertThat(cache.get("c"), is("cccccc"));
+
+        cache.remove("c");
+        assertThat(cache.getWeight(), is(4L));
+    }
+
+    @Test
+    public void testInvalidRemoved()
+    {
+        BoundedCache<String, String> cache = new BoundedCache<>(10, 1, String::length);
+        cache.putIfAbsent("a", "v1");
+        assertThat(cache.get("a", "v1"::equals), is("v1"));
+        assertThat(cache.get("a", "v2"::equals), nullValue());
+        assertThat(cache.size(), is(0));
+        assertThat(cache.getWeight(), is(0L));
+        assertThat(cache.getHits(), is(1L));
+        assertThat(cache.getMisses(), is(1L));
+    }
+
+    @Test
+    public void testBounded()
+    {
+        BoundedCache<Integer, Integer> cache = new BoundedCache<>(512);
+        for (int i = 0; i < 10000; i++)
+        {
+            cache.putIfAbsent(i, i);
+        }
+        assertThat(cache.size(), lessThanOrEqualTo(512));
+        assertThat(cache.getEvictions(), is(10000L - cache.size()));
+    }
+
+    @Test
+    public void testUnbounded()
+    {
+        BoundedCache<Integer, Integer> cache = new BoundedCache<>(0);
+        for (int i = 0; i < 10000; i++)
+        {
+            cache.putIfAbsent(i, i);
+        }
+        assertThat(cache.size(), is(10000));
+        assertThat(cache.getEvictions(), is(0L));
+    }
+
+    @Test
+    public void testComputeIfAbsent()
+    {
+        BoundedCache<String, String> cache = new BoundedCache<>(16);
+        AtomicInteger computed = new AtomicInteger();
+        assertThat(cache.computeIfAbsent("a", k -> k.toUpperCase() + computed.incrementAndGet()), is("A1"));
+        assertThat(cache.computeIfAbsent("a", k -> k.toUpperCase() + computed.incrementAndGet()), is("A1"));
+        assertThat(cache.computeIfAbsent("b", k -> null), nullValue());
+        assertThat(cache.size(), is(1));
+        assertThat(cache.putIfAbsent("a", "X"), is("A1"));
+        assertThat(cache.remove("a"), is("A1"));
+        assertThat(cache.get("a"), nullValue());
+    }
+}
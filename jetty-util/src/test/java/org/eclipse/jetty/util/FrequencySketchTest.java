@@ -0,0 +1,93 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+public class FrequencySketchTest
+{
+    @Test
+    public void testFrequency()
+    {
+        FrequencySketch sketch = new FrequencySketch(64);
+        assertThat(sketch.frequency("a"), is(0));
+
+        for (int i = 0; i < 5; i++)
+        {
+            sketch.increment("a");
+        }
+        sketch.increment("b");
+
+        assertThat(sketch.frequency("a"), greaterThanOrEqualTo(5));
+        assertThat(sketch.frequency("b"), greaterThanOrEqualTo(1));
+        assertThat(sketch.frequency("a"), greaterThan(sketch.frequency("b")));
+    }
+
+    @Test
+    public void testMaxFrequency()
+    {
+        FrequencySketch sketch = new FrequencySketch(64);
+        for (int i = 0; i < 100; i++)
+        {
+            sketch.increment("a");
+        }
+        assertThat(sketch.frequency("a"), is(15));
+    }
+
+    @Test
+    public void testAging()
+    {
+        FrequencySketch sketch = new FrequencySketch(16);
+        for (int i = 0; i < 15; i++)
+        {
+            sketch.increment("hot");
+        }
+        assertThat(sketch.frequency("hot"), is(15));
+
+        // Enough distinct items to trigger the halving of all the counters.
+        for (int i = 0; i < 200; i++)
+        {
+            sketch.increment(i);
+        }
+        assertThat(sketch.frequency("hot"), lessThan(15));
+        assertThat(sketch.frequency("hot"), greaterThan(0));
+    }
+
+    @Test
+    public void testHugeCapacity()
+    {
+        // The size of the sketch is bounded, whatever the capacity.
+        FrequencySketch sketch = new FrequencySketch(Integer.MAX_VALUE);
+        assertThat(sketch.toString(), containsString("length=1048576,"));
+        sketch.ensureCapacity((1 << 30) + 1);
+        assertThat(sketch.toString(), containsString("length=1048576,"));
+        sketch.increment("a");
+        assertThat(sketch.frequency("a"), is(1));
+
+        sketch.ensureCapacity(-1);
+        assertThat(sketch.toString(), containsString("length=16,"));
+    }
+}
@@ -0,0 +1,291 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+
+package org.eclipse.jetty.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LockFreeBlockingQueueTest
+{
+    @Test
+    public void testCapacityRoundedUp()
+    {
+        LockFreeBlockingQueue<String> queue = new LockFreeBlockingQueue<>(3);
+        assertEquals(4, queue.getCapacity());
+        assertEquals(4, queue.remainingCapacity());
+    }
+
+    @Test
+    public void testWrap()
+    {
+        LockFreeBlockingQueue<String> queue = new LockFreeBlockingQueue<>(4);
+        for (int i = 0; i < 10; i++)
+        {
+            assertTrue(queue.offer("one"));
+            assertTrue(queue.offer("two"));
+            assertTrue(queue.offer("three"));
+            assertEquals(3, queue.size());
+            assertEquals("one", queue.peek());
+            assertEquals("one", queue.poll());
+            assertEquals("two", queue.poll());
+            assertEquals("three", queue.poll());
+            assertEquals(0, queue.size());
+            assertNull(queue.poll());
+        }
+    }
+
+    @Test
+    public void testFull()
+    {
+        LockFreeBlockingQueue<String> queue = new LockFreeBlockingQueue<>(2);
+        assertTrue(queue.offer("one"));
+        assertTrue(queue.offer("two"));
+        assertFalse(queue.offer("three"));
+        assertEquals(0, queue.remainingCapacity());
+        assertEquals("one", queue.poll());
+        assertTrue(queue.offer("three"));
+        assertThat(new ArrayList<>(queue), contains("two", "three"));
+    }
+
+    @Test
+    public void testRemove()
+    {
+        LockFreeBlockingQueue<String> queue = new LockFreeBlockingQueue<>(4);
+        for (int i = 0; i < 3; i++)
+        {
+            assertTrue(queue.offer("one"));
+            assertTrue(queue.offer("two"));
+            assertTrue(queue.offer("three"));
+            assertTrue(queue.remove("two"));
+            assertFalse(queue.remove("two"));
+            assertEquals(2, queue.size());
+            assertThat(new ArrayList<>(queue), contains("one", "three"));
+
+            assertTrue(queue.remove("one"));
+            assertEquals("three", queue.peek());
+            assertEquals("three", queue.poll());
+            assertNull(queue.poll());
+            assertTrue(queue.isEmpty());
+        }
+    }
+
+    @Test
+    public void testRemoveAllRetainAll()
+    {
+        LockFreeBlockingQueue<String> queue = new LockFreeBlockingQueue<>(8);
+        queue.addAll(List.of("one", "two", "three", "four"));
+        assertTrue(queue.removeAll(List.of("one", "three")));
+        assertThat(new ArrayList<>(queue), contains("two", "four"));
+        assertTrue(queue.retainAll(List.of("four")));
+        assertEquals(1, queue.size());
+        assertEquals("four", queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testPollTimeout() throws Exception
+    {
+        LockFreeBlockingQueue<String> queue = new LockFreeBlockingQueue<>(4);
+        long start = System.nanoTime();
+        assertNull(queue.poll(100, TimeUnit.MILLISECONDS));
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), greaterThanOrEqualTo(100L));
+
+        // The timed out waiter does not steal the signal for the next element.
+        assertTrue(queue.offer("one"));
+        assertEquals("one", queue.poll(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testTake() throws Exception
+    {
+        LockFreeBlockingQueue<String> queue = new LockFreeBlockingQueue<>(4);
+        AtomicReference<String> taken = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        Thread thread = new Thread(() ->
+        {
+            try
+            {
+                taken.set(queue.take());
+                latch.countDown();
+            }
+            catch (InterruptedException x)
+            {
+                x.printStackTrace();
+            }
+        });
+        thread.start();
+
+        Thread.sleep(100);
+        assertTrue(queue.offer("one"));
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals("one", taken.get());
+        thread.join();
+    }
+
+    @Test
+    public void testTakeInterrupted() throws Exception
+    {
+        LockFreeBlockingQueue<String> queue = new LockFreeBlockingQueue<>(4);
+        CountDownLatch latch = new CountDownLatch(1);
+        Thread thread = new Thread(() ->
+        {
+            try
+            {
+                queue.take();
+            }
+            catch (InterruptedException x)
+            {
+                latch.countDown();
+            }
+        });
+        thread.start();
+
+        Thread.sleep(100);
+        thread.interrupt();
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        thread.join();
+
+        assertTrue(queue.offer("one"));
+        assertEquals("one", queue.poll(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testDrainTo()
+    {
+        LockFreeBlockingQueue<String> queue = new LockFreeBlockingQueue<>(8);
+        queue.offer("one");
+        queue.offer("two");
+        queue.offer("three");
+        List<String> list = new ArrayList<>();
+        assertEquals(2, queue.drainTo(list, 2));
+        assertThat(list, contains("one", "two"));
+        assertEquals(1, queue.size());
+        queue.clear();
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testConcurrentProducersConsumers() throws Exception
+    {
+        LockFreeBlockingQueue<Integer> queue = new LockFreeBlockingQueue<>(64);
+        int producers = 4;
+        int consumers = 4;
+        int iterations = 100_000;
+        Set<Integer> consumed = ConcurrentHashMap.newKeySet();
+        CountDownLatch latch = new CountDownLatch(producers * iterations);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < consumers; c++)
+        {
+            Thread thread = new Thread(() ->
+            {
+                try
+                {
+                    while (true)
+                    {
+                        Integer element = queue.poll(10, TimeUnit.MILLISECONDS);
+                        if (element == null)
+                            continue;
+                        if (element < 0)
+                            return;
+                        if (consumed.add(element))
+                            latch.countDown();
+                    }
+                }
+                catch (InterruptedException x)
+                {
+                    x.printStackTrace();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (int p = 0; p < producers; p++)
+        {
+            int base = p * iterations;
+            Thread thread = new Thread(() ->
+            {
+                try
+                {
+                    for (int i = 0; i < iterations; i++)
+                    {
+                        queue.put(base + i);
+                    }
+                }
+                catch (InterruptedException x)
+                {
+                    x.printStackTrace();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        assertThat(consumed.size(), is(producers * iterations));
+        for (int c = 0; c < consumers; c++)
+        {
+            queue.put(-1);
+        }
+        for (Thread thread : threads)
+        {
+            thread.join(5000);
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testQueuedThreadPool() throws Exception
+    {
+        QueuedThreadPool pool = new QueuedThreadPool(8, 2, new LockFreeBlockingQueue<>());
+        pool.start();
+        try
+        {
+            int jobs = 10_000;
+            CountDownLatch latch = new CountDownLatch(jobs);
+            for (int i = 0; i < jobs; i++)
+            {
+                pool.execute(latch::countDown);
+            }
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        }
+        finally
+        {
+            pool.stop();
+        }
+    }
+}
@@ -20,9 +20,12 @@ package org.eclipse.jetty.util;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Stream;
 
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -30,8 +33,10 @@ import org.junit.jupiter.params.provider.MethodSource;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.in;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class TrieTest
@@ -57,6 +62,8 @@ public class TrieTest
             trie.put("", 9);
         }
 
+        impls.add(Trie.immutable(impls.get(0)));
+
         return impls.stream().map(Arguments::of);
     }
 
@@ -250,4 +257,80 @@ public class TrieTest
         testGetBestArray(trie);
         testGetBestBuffer(trie);
     }
+
+    @Test
+    public void testCompactTrieCaseSensitive()
+    {
+        Map<String, Integer> contents = new HashMap<>();
+        contents.put("/", 1);
+        contents.put("/foo", 2);
+        contents.put("/foo/bar", 3);
+        contents.put("/Foo/bar", 4);
+        contents.put("/foobar", 5);
+        Trie<Integer> trie = Trie.immutable(false, contents);
+
+        assertFalse(trie.isCaseInsensitive());
+        assertThat(trie.get("/Foo/bar"), is(4));
+        assertThat(trie.get("/FOO/bar"), nullValue());
+        assertThat(trie.get("/fo"), nullValue());
+        assertThat(trie.getBest("/foo/bar/info"), is(3));
+        assertThat(trie.getBest("/foo/ba"), is(2));
+        assertThat(trie.getBest("/FOO/bar"), is(1));
+        assertThat(trie.getBest(BufferUtil.toDirectBuffer("/foobarx"), 0, 8), is(5));
+        assertThat(trie.getBest("x"), nullValue());
+        assertThat(trie.get("/\u0100"), nullValue());
+        assertThat(trie.keySet().size(), is(5));
+    }
+
+    @Test
+    public void testCompactTrieImmutable()
+    {
+        Map<String, Integer> contents = new HashMap<>();
+        contents.put("foo", 1);
+        Trie<Integer> trie = Trie.immutable(true, contents);
+        contents.put("bar", 2);
+
+        assertTrue(trie.isFull());
+        assertFalse(trie.put("bar", 2));
+        assertThat(trie.get("bar"), nullValue());
+        assertThrows(UnsupportedOperationException.class, () -> trie.remove("foo"));
+        assertThrows(UnsupportedOperationException.class, trie::clear);
+        assertThat(trie.get("FOO"), is(1));
+
+        contents.put("\u0100", 3);
+        assertThrows(IllegalArgumentException.class, () -> new CompactTrie<>(true, contents));
+        Trie<Integer> unicode = Trie.immutable(true, contents);
+        assertThat(unicode.get("\u0100"), is(3));
+        assertThat(unicode.get("FOO"), is(1));
+        assertTrue(unicode.isFull());
+        assertFalse(unicode.put("baz", 4));
+        assertThat(unicode.get("baz"), nullValue());
+        assertThrows(UnsupportedOperationException.class, () -> unicode.remove("foo"));
+        assertThrows(UnsupportedOperationException.class, unicode::clear);
+        assertThrows(UnsupportedOperationException.class, () -> unicode.keySet().clear());
+        assertThat(unicode.keySet().size(), is(3));
+    }
+
+    @Test
+    public void testCompactTrieSameAsArrayTernaryTrie()
+    {
+        String[] words = {"a", "ab", "abc", "abd", "b", "ba", "bad", "bed", "bee", "bead", "c"};
+        ArrayTernaryTrie<String> ternary = new ArrayTernaryTrie<>(false, 256);
+        for (String word : words)
+        {
+            ternary.put(word, word);
+        }
+        Trie<String> compact = Trie.immutable(ternary);
+
+        for (String a : words)
+        {
+            for (String b : new String[]{"", "a", "d", "ead", "x"})
+            {
+                String key = a + b;
+                assertThat(key, compact.get(key), is(ternary.get(key)));
+                assertThat(key, compact.getBest(key), is(ternary.getBest(key)));
+                assertThat(key, compact.getBest(BufferUtil.toBuffer(key), 0, key.length()), is(ternary.getBest(BufferUtil.toBuffer(key), 0, key.length())));
+            }
+        }
+    }
 }
@@ -19,6 +19,7 @@
 package org.eclipse.jetty.util;
 
 import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -38,6 +39,7 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.DynamicTest.dynamicTest;
@@ -262,6 +264,67 @@ public class URLEncodedTest
         assertThat(urlEncoded.getString("text"), is(expected));
     }
 
+    @Test
+    public void testDecoderSplitBuffers()
+    {
+        String form = "a=1&b=%E0%B8%9F+x&&c&d=&e=f=g&%C3%A4=%c3%a4";
+        byte[] bytes = form.getBytes(StandardCharsets.US_ASCII);
+        for (int split = 0; split <= bytes.length; split++)
+        {
+            for (boolean direct : new boolean[]{false, true})
+            {
+                UrlEncoded.Decoder decoder = new UrlEncoded.Decoder(UTF_8, -1, -1);
+                decoder.decode(buffer(bytes, 0, split, direct));
+                decoder.decode(buffer(bytes, split, bytes.length - split, direct));
+                decoder.complete();
+
+                MultiMap<String> expected = new MultiMap<>();
+                UrlEncoded.decodeUtf8To(form, expected);
+                MultiMap<String> actual = new MultiMap<>();
+                decoder.addTo(actual);
+                assertEquals(expected, actual, "split " + split);
+
+                assertThat(decoder.size(), is(6));
+                assertThat(decoder.getName(1), is("b"));
+                assertThat(decoder.getValue(1), is("\u0e1f x"));
+                assertThat(decoder.getValue("c"), is(""));
+                assertThat(decoder.getValue("e"), is("f=g"));
+                assertThat(decoder.getValue("\u00e4"), is("\u00e4"));
+                assertThat(decoder.getValue("x"), is((String)null));
+            }
+        }
+    }
+
+    private static ByteBuffer buffer(byte[] bytes, int offset, int length, boolean direct)
+    {
+        if (!direct)
+            return ByteBuffer.wrap(bytes, offset, length);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+        buffer.put(bytes, offset, length).flip();
+        return buffer;
+    }
+
+    @Test
+    public void testDecoderLimits()
+    {
+        UrlEncoded.Decoder decoder = new UrlEncoded.Decoder(UTF_8, -1, -1);
+        decoder.decode(ByteBuffer.wrap("a=%4".getBytes(StandardCharsets.US_ASCII)));
+        assertThrows(IllegalArgumentException.class, decoder::complete);
+
+        UrlEncoded.Decoder tooLong = new UrlEncoded.Decoder(UTF_8, 8, -1);
+        tooLong.decode(ByteBuffer.wrap("a=1&b=2&".getBytes(StandardCharsets.US_ASCII)));
+        assertThrows(IllegalStateException.class, () -> tooLong.decode(ByteBuffer.wrap("c".getBytes(StandardCharsets.US_ASCII))));
+
+        UrlEncoded.Decoder tooMany = new UrlEncoded.Decoder(UTF_8, -1, 2);
+        tooMany.decode(ByteBuffer.wrap("a=1&a=2&b=3&c=4".getBytes(StandardCharsets.US_ASCII)));
+        tooMany.complete();
+        assertThrows(IllegalStateException.class, () -> tooMany.addTo(new MultiMap<>()));
+
+        assertFalse(UrlEncoded.Decoder.isSupported(StandardCharsets.UTF_16));
+        assertTrue(UrlEncoded.Decoder.isSupported(StandardCharsets.ISO_8859_1));
+        assertThrows(IllegalArgumentException.class, () -> new UrlEncoded.Decoder(StandardCharsets.UTF_16, -1, -1));
+    }
+
     public static Stream<Arguments> invalidTestData()
     {
         ArrayList<Arguments> data = new ArrayList<>();
@@ -0,0 +1,149 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+
+package org.eclipse.jetty.util.thread;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HashedWheelSchedulerTest
+{
+    private HashedWheelScheduler scheduler;
+
+    @AfterEach
+    public void after() throws Exception
+    {
+        if (scheduler != null)
+            scheduler.stop();
+    }
+
+    @Test
+    public void testTasksSpanningSeveralRounds() throws Exception
+    {
+        // A wheel of 8 ticks of 10 ms is 80 ms per round.
+        scheduler = new HashedWheelScheduler("wheel", false, 10, 8);
+        scheduler.start();
+
+        int tasks = 50;
+        CountDownLatch latch = new CountDownLatch(tasks);
+        AtomicInteger early = new AtomicInteger();
+        for (int i = 0; i < tasks; ++i)
+        {
+            long delay = 5L * i;
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+            scheduler.schedule(() ->
+            {
+                if (System.nanoTime() - deadline < 0)
+                    early.incrementAndGet();
+                latch.countDown();
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertThat(early.get(), is(0));
+        assertThat(scheduler.getPendingTasks(), is(0L));
+    }
+
+    @Test
+    public void testCancelledTasksDoNotRun() throws Exception
+    {
+        scheduler = new HashedWheelScheduler("wheel", false, 10, 16);
+        scheduler.start();
+
+        AtomicInteger runs = new AtomicInteger();
+        List<Scheduler.Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i)
+        {
+            tasks.add(scheduler.schedule(runs::incrementAndGet, 100 + i % 200, TimeUnit.MILLISECONDS));
+        }
+        assertThat(scheduler.getPendingTasks(), is(1000L));
+
+        // Cancel every other task, some before and some after they are moved to the wheel.
+        for (int i = 0; i < tasks.size(); i += 2)
+        {
+            assertTrue(tasks.get(i).cancel());
+            assertFalse(tasks.get(i).cancel());
+            if (i == tasks.size() / 2)
+                Thread.sleep(50);
+        }
+
+        Thread.sleep(500);
+        assertThat(runs.get(), is(500));
+        assertThat(scheduler.getPendingTasks(), is(0L));
+        for (int i = 1; i < tasks.size(); i += 2)
+        {
+            assertFalse(tasks.get(i).cancel());
+        }
+    }
+
+    @Test
+    public void testFailingTaskDoesNotStopWheel() throws Exception
+    {
+        scheduler = new HashedWheelScheduler("wheel", false, 10, 8);
+        scheduler.start();
+
+        CountDownLatch latch = new CountDownLatch(1);
+        scheduler.schedule(() ->
+        {
+            throw new Error("test");
+        }, 10, TimeUnit.MILLISECONDS);
+        scheduler.schedule(latch::countDown, 50, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testVeryLargeDelay() throws Exception
+    {
+        scheduler = new HashedWheelScheduler("wheel", false, 10, 8);
+        scheduler.start();
+
+        AtomicInteger runs = new AtomicInteger();
+        Scheduler.Task task = scheduler.schedule(runs::incrementAndGet, Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        CountDownLatch latch = new CountDownLatch(1);
+        scheduler.schedule(latch::countDown, 100, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertThat(runs.get(), is(0));
+        assertTrue(task.cancel());
+    }
+
+    @Test
+    public void testScheduleAfterStop() throws Exception
+    {
+        scheduler = new HashedWheelScheduler();
+        scheduler.start();
+        scheduler.stop();
+
+        Scheduler.Task task = scheduler.schedule(() -> {}, 1, TimeUnit.MILLISECONDS);
+        assertFalse(task.cancel());
+        assertThat(scheduler.getWheelSize(), is(512));
+    }
+}
@@ -43,7 +43,8 @@ public class SchedulerTest
     {
         return Stream.of(
             TimerScheduler.class,
-            ScheduledExecutorScheduler.class
+            ScheduledExecutorScheduler.class,
+            HashedWheelScheduler.class
         );
     }
 
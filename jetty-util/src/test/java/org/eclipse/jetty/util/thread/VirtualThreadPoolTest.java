@@ -0,0 +1,178 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+
+package org.eclipse.jetty.util.thread;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.jetty.util.thread.ThreadPool.SizedThreadPool;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class VirtualThreadPoolTest extends AbstractThreadPoolTest
+{
+    @Override
+    protected SizedThreadPool newPool(int max)
+    {
+        return new VirtualThreadPool(new QueuedThreadPool(max));
+    }
+
+    @Test
+    public void testNonBlockingTaskRunsOnPlatformThread() throws Exception
+    {
+        VirtualThreadPool pool = new VirtualThreadPool(new QueuedThreadPool(8));
+        pool.setName("test");
+        pool.start();
+        try
+        {
+            AtomicReference<Thread> thread = new AtomicReference<>();
+            CountDownLatch latch = new CountDownLatch(1);
+            pool.execute(new Task(Invocable.InvocationType.NON_BLOCKING, () ->
+            {
+                thread.set(Thread.currentThread());
+                latch.countDown();
+            }));
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertThat(thread.get().getName(), startsWith("qtp"));
+            assertThat(pool.getVirtualTasks(), is(0L));
+        }
+        finally
+        {
+            pool.stop();
+        }
+    }
+
+    @Test
+    public void testBlockingTaskRunsOnVirtualThread() throws Exception
+    {
+        assumeTrue(VirtualThreadPool.isSupported());
+
+        VirtualThreadPool pool = new VirtualThreadPool(new QueuedThreadPool(8));
+        pool.setName("test");
+        pool.start();
+        try
+        {
+            assertTrue(pool.isUseVirtualThreads());
+            AtomicReference<Thread> thread = new AtomicReference<>();
+            CountDownLatch latch = new CountDownLatch(1);
+            pool.execute(new Task(Invocable.InvocationType.BLOCKING, () ->
+            {
+                thread.set(Thread.currentThread());
+                latch.countDown();
+            }));
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertThat(thread.get().getName(), startsWith("test-virtual-"));
+            assertThat(pool.getVirtualTasks(), is(1L));
+
+            // Blocking tasks must never be consumed by a reserved platform thread.
+            assertFalse(pool.tryExecute(() -> {}));
+        }
+        finally
+        {
+            pool.stop();
+        }
+    }
+
+    @Test
+    public void testManyBlockingTasks() throws Exception
+    {
+        VirtualThreadPool pool = new VirtualThreadPool(new QueuedThreadPool(8));
+        pool.start();
+        try
+        {
+            // With virtual threads all tasks block concurrently, without
+            // virtual threads they are queued to the platform thread pool.
+            int tasks = 64;
+            CountDownLatch latch = new CountDownLatch(tasks);
+            for (int i = 0; i < tasks; i++)
+            {
+                pool.execute(new Task(Invocable.InvocationType.BLOCKING, () ->
+                {
+                    try
+                    {
+                        Thread.sleep(10);
+                    }
+                    catch (InterruptedException x)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                    latch.countDown();
+                }));
+            }
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+            assertThat(pool.getVirtualTasks(), is(VirtualThreadPool.isSupported() ? (long)tasks : 0L));
+        }
+        finally
+        {
+            pool.stop();
+        }
+    }
+
+    @Test
+    public void testVirtualThreadsDisabled() throws Exception
+    {
+        VirtualThreadPool pool = new VirtualThreadPool(new QueuedThreadPool(8));
+        pool.setUseVirtualThreads(false);
+        pool.start();
+        try
+        {
+            assertFalse(pool.isUseVirtualThreads());
+            CountDownLatch latch = new CountDownLatch(1);
+            pool.execute(new Task(Invocable.InvocationType.BLOCKING, latch::countDown));
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertThat(pool.getVirtualTasks(), is(0L));
+        }
+        finally
+        {
+            pool.stop();
+        }
+    }
+
+    private static class Task implements Runnable, Invocable
+    {
+        private final InvocationType _invocationType;
+        private final Runnable _task;
+
+        private Task(InvocationType invocationType, Runnable task)
+        {
+            _invocationType = invocationType;
+            _task = task;
+        }
+
+        @Override
+        public void run()
+        {
+            _task.run();
+        }
+
+        @Override
+        public InvocationType getInvocationType()
+        {
+            return _invocationType;
+        }
+    }
+}
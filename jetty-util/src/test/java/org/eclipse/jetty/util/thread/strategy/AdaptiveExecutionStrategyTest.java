@@ -0,0 +1,171 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2020 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under
+// the terms of the Eclipse Public License 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0
+//
+// This Source Code may also be made available under the following
+// Secondary Licenses when the conditions for such availability set
+// forth in the Eclipse Public License, v. 2.0 are satisfied:
+// the Apache License v2.0 which is available at
+// https://www.apache.org/licenses/LICENSE-2.0
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+
+package org.eclipse.jetty.util.thread.strategy;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.thread.ExecutionStrategy.Producer;
+import org.eclipse.jetty.util.thread.Invocable;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AdaptiveExecutionStrategyTest
+{
+    private QueuedThreadPool _threads;
+    private AdaptiveExecutionStrategy _strategy;
+
+    @BeforeEach
+    public void before() throws Exception
+    {
+        _threads = new QueuedThreadPool(20);
+        // No reserved threads, so that EPC mode is never possible.
+        _threads.setReservedThreads(0);
+        _threads.start();
+    }
+
+    @AfterEach
+    public void after() throws Exception
+    {
+        if (_strategy != null)
+            _strategy.stop();
+        _threads.stop();
+    }
+
+    @Test
+    public void testSwitchToProduceExecuteConsumeWithoutReservedThreads() throws Exception
+    {
+        int tasks = 200;
+        CountDownLatch latch = new CountDownLatch(tasks);
+        _strategy = new AdaptiveExecutionStrategy(new TaskProducer(tasks, Invocable.InvocationType.BLOCKING, 0, latch), _threads);
+        _strategy.start();
+
+        _strategy.produce();
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertThat(_strategy.getMode(), is(AdaptiveExecutionStrategy.Mode.PRODUCE_EXECUTE_CONSUME));
+        assertThat(_strategy.getModeSwitches(), is(1L));
+        assertThat(_strategy.getReservedHits(), is(0L));
+        assertThat(_strategy.getReservedSkips(), greaterThan(0L));
+        assertThat(_strategy.getPECTasksExecuted(), is((long)tasks));
+    }
+
+    @Test
+    public void testLongTasksAreExecuted() throws Exception
+    {
+        int tasks = 20;
+        CountDownLatch latch = new CountDownLatch(tasks);
+        _strategy = new AdaptiveExecutionStrategy(new TaskProducer(tasks, Invocable.InvocationType.EITHER, 5, latch), _threads);
+        _strategy.setLongTaskThreshold(TimeUnit.MICROSECONDS.toNanos(100));
+        _strategy.start();
+
+        _strategy.produce();
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertThat(_strategy.getPICTasksExecuted(), greaterThan(0L));
+        // Long tasks are mostly executed, and only invoked again once their recent duration has decayed.
+        assertThat(_strategy.getLongTaskExecutions(), greaterThan(_strategy.getPICTasksExecuted()));
+    }
+
+    @Test
+    public void testTasksInvokedAgainWhenNoLongerLong() throws Exception
+    {
+        int longTasks = 20;
+        int tasks = 220;
+        CountDownLatch latch = new CountDownLatch(tasks);
+        // Long tasks are followed by short tasks.
+        TaskProducer longProducer = new TaskProducer(longTasks, Invocable.InvocationType.EITHER, 5, latch);
+        TaskProducer shortProducer = new TaskProducer(tasks - longTasks, Invocable.InvocationType.EITHER, 0, latch);
+        Producer producer = () ->
+        {
+            Runnable task = longProducer.produce();
+            return task != null ? task : shortProducer.produce();
+        };
+        _strategy = new AdaptiveExecutionStrategy(producer, _threads);
+        _strategy.setLongTaskThreshold(TimeUnit.MICROSECONDS.toNanos(100));
+        _strategy.start();
+
+        _strategy.produce();
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertThat(_strategy.getLongTaskExecutions(), greaterThan(0L));
+        assertThat(_strategy.getAverageInvokeTime(), lessThan(_strategy.getLongTaskThreshold()));
+        assertThat(_strategy.getPICTasksExecuted() + _strategy.getLongTaskExecutions(), is((long)tasks));
+    }
+
+    private static class TaskProducer implements Producer
+    {
+        private final Invocable.InvocationType _type;
+        private final long _sleep;
+        private final CountDownLatch _latch;
+        private int _tasks;
+
+        private TaskProducer(int tasks, Invocable.InvocationType type, long sleep, CountDownLatch latch)
+        {
+            _tasks = tasks;
+            _type = type;
+            _sleep = sleep;
+            _latch = latch;
+        }
+
+        @Override
+        public Runnable produce()
+        {
+            if (_tasks-- <= 0)
+                return null;
+            return new Task();
+        }
+
+        private class Task implements Runnable, Invocable
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    if (_sleep > 0)
+                        Thread.sleep(_sleep);
+                }
+                catch (InterruptedException x)
+                {
+                    throw new RuntimeException(x);
+                }
+                finally
+                {
+                    _latch.countDown();
+                }
+            }
+
+            @Override
+            public InvocationType getInvocationType()
+            {
+                return _type;
+            }
+        }
+    }
+}
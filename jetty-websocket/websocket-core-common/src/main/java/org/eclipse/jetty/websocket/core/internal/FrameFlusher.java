@@ -31,6 +31,7 @@ import java.util.concurrent.atomic.LongAdder;
 
 import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.io.RetainableByteBufferLease;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.IteratingCallback;
@@ -66,7 +67,7 @@ public class FrameFlusher extends IteratingCallback
     private final List<Entry> previousEntries;
     private final List<Entry> failedEntries;
 
-    private List<ByteBuffer> releasableBuffers = new ArrayList<>();
+    private final RetainableByteBufferLease releasableBuffers;
     private ByteBuffer batchBuffer;
     private boolean canEnqueue = true;
     private boolean flushed = true;
@@ -86,6 +87,7 @@ public class FrameFlusher extends IteratingCallback
         this.failedEntries = new ArrayList<>(maxGather);
         this.buffers = new ArrayList<>((maxGather * 2) + 1);
         this.timeoutScheduler = scheduler;
+        this.releasableBuffers = new RetainableByteBufferLease(bufferPool);
     }
 
     public boolean isUseDirectByteBuffers()
@@ -256,8 +258,7 @@ public class FrameFlusher extends IteratingCallback
                     else
                     {
                         // Add headers to the list of buffers.
-                        ByteBuffer headerBuffer = acquireBuffer(Generator.MAX_HEADER_LENGTH);
-                        releasableBuffers.add(headerBuffer);
+                        ByteBuffer headerBuffer = acquireReleasableBuffer(Generator.MAX_HEADER_LENGTH);
                         generator.generateHeader(entry.frame, headerBuffer);
                         buffers.add(headerBuffer);
                     }
@@ -268,8 +269,7 @@ public class FrameFlusher extends IteratingCallback
                     {
                         if (entry.frame.isMasked())
                         {
-                            payload = acquireBuffer(entry.frame.getPayloadLength());
-                            releasableBuffers.add(payload);
+                            payload = acquireReleasableBuffer(entry.frame.getPayloadLength());
                             generator.generatePayload(entry.frame, payload);
                         }
 
@@ -281,19 +281,10 @@ public class FrameFlusher extends IteratingCallback
                 flushed = flush;
             }
 
-            // If we are going to flush we should release any buffers we have allocated after the callback completes.
+            // If we are going to flush we should recycle the buffers we have allocated once the write completes,
+            // before the next process() can acquire from the same lease.
             if (flush)
-            {
-                final List<ByteBuffer> callbackBuffers = releasableBuffers;
-                releasableBuffers = new ArrayList<>();
-                releasingCallback = Callback.from(releasingCallback, () ->
-                {
-                    for (ByteBuffer buffer : callbackBuffers)
-                    {
-                        bufferPool.release(buffer);
-                    }
-                });
-            }
+                releasingCallback = Callback.from(this::recycleBuffers, releasingCallback);
         }
 
         if (LOG.isDebugEnabled())
@@ -348,6 +339,24 @@ public class FrameFlusher extends IteratingCallback
         return bufferPool.acquire(capacity, isUseDirectByteBuffers());
     }
 
+    private void recycleBuffers()
+    {
+        try (AutoLock l = lock.lock())
+        {
+            releasableBuffers.recycle();
+        }
+    }
+
+    private ByteBuffer acquireReleasableBuffer(int capacity)
+    {
+        // Small buffers such as frame headers are sliced out
+        // of a single pooled buffer shared by the whole write.
+        ByteBuffer buffer = releasableBuffers.acquire(capacity, isUseDirectByteBuffers());
+        BufferUtil.clear(buffer);
+        releasableBuffers.append(buffer, true);
+        return buffer;
+    }
+
     private int getQueueSize()
     {
         try (AutoLock l = lock.lock())
@@ -418,11 +427,7 @@ public class FrameFlusher extends IteratingCallback
             failedEntries.addAll(entries);
             entries.clear();
 
-            for (ByteBuffer buffer : releasableBuffers)
-            {
-                bufferPool.release(buffer);
-            }
-            releasableBuffers.clear();
+            releasableBuffers.dispose();
 
             if (closedCause == null)
                 closedCause = failure;